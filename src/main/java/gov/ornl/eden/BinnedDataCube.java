@@ -0,0 +1,379 @@
+package gov.ornl.eden;
+
+import gov.ornl.datatable.DataModel;
+import gov.ornl.datatable.Histogram;
+import gov.ornl.datatable.SummaryStats;
+import gov.ornl.datatable.Tuple;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Precomputed 2D binned counts of pairs of columns in the style of imMens.
+ * Each column is divided into equal bins between its minimum and maximum, at
+ * about the resolution of an axis on screen, and each materialized pair of
+ * columns keeps a summed-area table of the tuple counts of its bin cells.
+ *
+ * While a query brushes a single column, the histogram of the queried tuples
+ * on any axis and the line density between that column and an adjacent axis
+ * are read from the tables in time proportional to the bins rather than to
+ * the tuples. Brushed ranges are snapped to the bins whose center they
+ * contain. Queries on more than one column cannot be answered from 2D
+ * tables, in which case callers fall back to the tuples.
+ *
+ * The tables are built once after loading on a background thread, the pairs
+ * of adjacent axes first and then the others by their distance, for as many
+ * pairs as fit the memory budget. Pairs that are asked for later are built
+ * if the budget still has room.
+ */
+public class BinnedDataCube {
+	private static final Logger log = LoggerFactory.getLogger(BinnedDataCube.class);
+
+	public static final int DEFAULT_BIN_COUNT = 512;
+	public static final long DEFAULT_MAX_BYTES = 64L * 1024L * 1024L;
+
+	private static final ExecutorService cubeExecutor = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "eden-data-cube");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+
+	private DataModel dataModel;
+	// the number of tuples when the cube was created; the cube is disposed
+	// and replaced when the tuples change
+	private int tupleCount;
+	private int binCount;
+	private int columnCount;
+	private float minValues[];
+	private float maxValues[];
+	// bin counts of each column, set once they are built
+	private volatile int columnCounts[][];
+	private MemoryBoundedCache<Long, int[]> pairTables;
+	private ConcurrentHashMap<Long, Boolean> pendingPairs = new ConcurrentHashMap<Long, Boolean>();
+	private volatile boolean disposed = false;
+
+	public BinnedDataCube(DataModel dataModel, int binCount, long maxBytes) {
+		this.dataModel = dataModel;
+		this.binCount = binCount;
+		tupleCount = dataModel.getTupleCount();
+		columnCount = dataModel.getColumnCount();
+		minValues = new float[columnCount];
+		maxValues = new float[columnCount];
+		for (int i = 0; i < columnCount; i++) {
+			SummaryStats summaryStats = dataModel.getColumn(i).getSummaryStats();
+			minValues[i] = summaryStats.getMin();
+			maxValues[i] = summaryStats.getMax();
+		}
+		pairTables = new MemoryBoundedCache<Long, int[]>(maxBytes,
+				table -> 4L * table.length);
+	}
+
+	/**
+	 * Schedules the building of the column bin counts and of the pair tables
+	 * in order of the distance of the columns in the given axis order.
+	 */
+	public void build(final int axisColumnIndices[]) {
+		cubeExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				long start = System.currentTimeMillis();
+				if (disposed) {
+					return;
+				}
+				buildColumnCounts();
+				int builtPairCount = 0;
+				for (int distance = 1; distance < axisColumnIndices.length; distance++) {
+					for (int i = 0; i + distance < axisColumnIndices.length; i++) {
+						if (disposed || !hasRoomForPair()) {
+							log.debug("Built " + builtPairCount
+									+ " data cube pairs in "
+									+ (System.currentTimeMillis() - start)
+									+ " ms");
+							return;
+						}
+						int column1 = axisColumnIndices[i];
+						int column2 = axisColumnIndices[i + distance];
+						if (buildPair(Math.min(column1, column2),
+								Math.max(column1, column2))) {
+							builtPairCount++;
+						}
+					}
+				}
+				log.debug("Built all " + builtPairCount
+						+ " data cube pairs in "
+						+ (System.currentTimeMillis() - start) + " ms");
+			}
+		});
+	}
+
+	/**
+	 * Stops building. Called when the cube is replaced.
+	 */
+	public void dispose() {
+		disposed = true;
+		pairTables.clear();
+	}
+
+	public int getBinCount() {
+		return binCount;
+	}
+
+	public long getSizeInBytes() {
+		return pairTables.getSizeInBytes();
+	}
+
+	/**
+	 * Returns the bin counts of the queried tuples in the bins of a column's
+	 * histogram, or null if they cannot be read from the cube. The query
+	 * must select ranges of one column only, and that column must be paired
+	 * with the requested one.
+	 */
+	public double[] getQueryHistogram(QueryState queryState, int columnIndex) {
+		int counts[][] = columnCounts;
+		if (counts == null || queryState.getColumnCount() != 1
+				|| columnIndex >= columnCount) {
+			return null;
+		}
+		Histogram histogram = dataModel.getColumn(columnIndex)
+				.getSummaryStats().getHistogram();
+		if (histogram == null || histogram.getNumBins() == 0) {
+			return null;
+		}
+		int brushedColumnIndex = dataModel.getColumnIndex(queryState.getColumn(0));
+		if (brushedColumnIndex < 0 || brushedColumnIndex >= columnCount) {
+			return null;
+		}
+		boolean brushedBins[] = getBrushedBins(queryState, brushedColumnIndex);
+
+		int fineCounts[] = new int[binCount];
+		if (brushedColumnIndex == columnIndex) {
+			for (int bin = 0; bin < binCount; bin++) {
+				if (brushedBins[bin]) {
+					fineCounts[bin] = counts[columnIndex][bin];
+				}
+			}
+		} else {
+			int table[] = getPairTable(brushedColumnIndex, columnIndex);
+			if (table == null) {
+				return null;
+			}
+			boolean brushedFirst = brushedColumnIndex < columnIndex;
+			// sum each run of brushed bins for every bin of the other column
+			for (int start = 0; start < binCount; start++) {
+				if (!brushedBins[start]) {
+					continue;
+				}
+				int end = start;
+				while (end + 1 < binCount && brushedBins[end + 1]) {
+					end++;
+				}
+				for (int bin = 0; bin < binCount; bin++) {
+					fineCounts[bin] += brushedFirst ? getCellSum(table, start,
+							end, bin, bin) : getCellSum(table, bin, bin,
+							start, end);
+				}
+				start = end;
+			}
+		}
+
+		// the fine bins span the same range as the histogram bins
+		double binCounts[] = new double[histogram.getNumBins()];
+		for (int bin = 0; bin < binCount; bin++) {
+			int histogramBin = (int) (((bin + 0.5) / binCount) * binCounts.length);
+			binCounts[histogramBin] += fineCounts[bin];
+		}
+		return binCounts;
+	}
+
+	/**
+	 * Returns the tuple counts of the line density between two columns in
+	 * densityBinCount x densityBinCount cells indexed by (left bin *
+	 * densityBinCount) + right bin, or null if they cannot be read from the
+	 * cube. The query must select ranges of one of the two columns only.
+	 */
+	public int[] getDensityCounts(QueryState queryState, int leftColumnIndex,
+			int rightColumnIndex, int densityBinCount, boolean countFocus,
+			boolean countContext) {
+		if (queryState.getColumnCount() != 1 || leftColumnIndex == rightColumnIndex
+				|| leftColumnIndex >= columnCount || rightColumnIndex >= columnCount) {
+			return null;
+		}
+		int brushedColumnIndex = dataModel.getColumnIndex(queryState.getColumn(0));
+		if (brushedColumnIndex != leftColumnIndex
+				&& brushedColumnIndex != rightColumnIndex) {
+			return null;
+		}
+		int table[] = getPairTable(leftColumnIndex, rightColumnIndex);
+		if (table == null) {
+			return null;
+		}
+		boolean brushedBins[] = getBrushedBins(queryState, brushedColumnIndex);
+
+		boolean leftFirst = leftColumnIndex < rightColumnIndex;
+		int densityCounts[] = new int[densityBinCount * densityBinCount];
+		for (int leftBin = 0; leftBin < binCount; leftBin++) {
+			int leftDensityBin = (int) (((leftBin + 0.5) / binCount) * densityBinCount);
+			for (int rightBin = 0; rightBin < binCount; rightBin++) {
+				boolean focus = brushedBins[brushedColumnIndex == leftColumnIndex ? leftBin
+						: rightBin];
+				if (focus ? !countFocus : !countContext) {
+					continue;
+				}
+				int count = leftFirst ? getCellSum(table, leftBin, leftBin,
+						rightBin, rightBin) : getCellSum(table, rightBin,
+						rightBin, leftBin, leftBin);
+				if (count > 0) {
+					int rightDensityBin = (int) (((rightBin + 0.5) / binCount) * densityBinCount);
+					densityCounts[(leftDensityBin * densityBinCount) + rightDensityBin] += count;
+				}
+			}
+		}
+		return densityCounts;
+	}
+
+	/**
+	 * Returns the summed-area table of a pair of columns with the lower
+	 * column index first, or null if it is not built, in which case it is
+	 * scheduled for building if it fits the memory budget.
+	 */
+	private int[] getPairTable(int columnIndex1, int columnIndex2) {
+		final int first = Math.min(columnIndex1, columnIndex2);
+		final int second = Math.max(columnIndex1, columnIndex2);
+		Long key = getPairKey(first, second);
+		int table[] = pairTables.get(key);
+		if (table != null || disposed || !hasRoomForPair()) {
+			return table;
+		}
+		if (pendingPairs.putIfAbsent(key, Boolean.TRUE) == null) {
+			cubeExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (!disposed && hasRoomForPair()) {
+							buildPair(first, second);
+						}
+					} finally {
+						pendingPairs.remove(getPairKey(first, second));
+					}
+				}
+			});
+		}
+		return null;
+	}
+
+	private boolean hasRoomForPair() {
+		return pairTables.getSizeInBytes() + (4L * binCount * binCount) <= pairTables
+				.getMaxBytes();
+	}
+
+	private void buildColumnCounts() {
+		int counts[][] = new int[columnCount][binCount];
+		for (int tupleIndex = 0; tupleIndex < tupleCount; tupleIndex++) {
+			Tuple tuple = dataModel.getTuple(tupleIndex);
+			for (int i = 0; i < columnCount; i++) {
+				int bin = toBin(i, tuple.getElement(i));
+				if (bin >= 0) {
+					counts[i][bin]++;
+				}
+			}
+		}
+		if (!disposed) {
+			columnCounts = counts;
+		}
+	}
+
+	// counts the tuples in the cells of a pair, first < second, and sums them
+	// up in place
+	private boolean buildPair(int first, int second) {
+		Long key = getPairKey(first, second);
+		if (pairTables.get(key) != null) {
+			return false;
+		}
+		int table[] = new int[binCount * binCount];
+		for (int tupleIndex = 0; tupleIndex < tupleCount; tupleIndex++) {
+			Tuple tuple = dataModel.getTuple(tupleIndex);
+			int firstBin = toBin(first, tuple.getElement(first));
+			int secondBin = toBin(second, tuple.getElement(second));
+			if (firstBin >= 0 && secondBin >= 0) {
+				table[(firstBin * binCount) + secondBin]++;
+			}
+		}
+		for (int firstBin = 0; firstBin < binCount; firstBin++) {
+			int rowSum = 0;
+			for (int secondBin = 0; secondBin < binCount; secondBin++) {
+				int index = (firstBin * binCount) + secondBin;
+				rowSum += table[index];
+				table[index] = rowSum + (firstBin > 0 ? table[index - binCount] : 0);
+			}
+		}
+		if (!disposed) {
+			pairTables.put(key, table);
+		}
+		return true;
+	}
+
+	// sum of the cells in the inclusive bin ranges of a summed-area table
+	private int getCellSum(int table[], int firstStart, int firstEnd,
+			int secondStart, int secondEnd) {
+		int sum = table[(firstEnd * binCount) + secondEnd];
+		if (firstStart > 0) {
+			sum -= table[((firstStart - 1) * binCount) + secondEnd];
+		}
+		if (secondStart > 0) {
+			sum -= table[(firstEnd * binCount) + secondStart - 1];
+		}
+		if (firstStart > 0 && secondStart > 0) {
+			sum += table[((firstStart - 1) * binCount) + secondStart - 1];
+		}
+		return sum;
+	}
+
+	// marks the bins whose center lies in a range of the brushed column
+	private boolean[] getBrushedBins(QueryState queryState, int columnIndex) {
+		boolean brushedBins[] = new boolean[binCount];
+		float binWidth = (maxValues[columnIndex] - minValues[columnIndex]) / binCount;
+		for (int bin = 0; bin < binCount; bin++) {
+			float center = minValues[columnIndex] + ((bin + 0.5f) * binWidth);
+			for (int range = 0; range < queryState.getRangeCount(0); range++) {
+				if (center >= queryState.getMinValue(0, range)
+						&& center <= queryState.getMaxValue(0, range)) {
+					brushedBins[bin] = true;
+					break;
+				}
+			}
+		}
+		return brushedBins;
+	}
+
+	// bin of a value, or -1 for NaN
+	private int toBin(int columnIndex, float value) {
+		if (Float.isNaN(value)) {
+			return -1;
+		}
+		float range = maxValues[columnIndex] - minValues[columnIndex];
+		if (range <= 0.f) {
+			return 0;
+		}
+		int bin = (int) (((value - minValues[columnIndex]) / range) * binCount);
+		if (bin < 0) {
+			return 0;
+		} else if (bin >= binCount) {
+			return binCount - 1;
+		}
+		return bin;
+	}
+
+	private static Long getPairKey(int first, int second) {
+		return ((long) first << 32) | second;
+	}
+}
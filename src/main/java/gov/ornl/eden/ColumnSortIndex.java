@@ -0,0 +1,88 @@
+package gov.ornl.eden;
+
+import gov.ornl.datatable.DataModel;
+
+import java.util.Arrays;
+
+/**
+ * The tuples of one column in ascending order of their values. A value range
+ * maps to a contiguous interval of sorted positions found by binary search,
+ * so the tuples in a range are enumerated without looking at the others.
+ * Float.floatToIntBits maps every NaN, whatever its sign bit, to the one
+ * positive canonical NaN, so NaN values sort after all other values,
+ * including positive infinity, and fall in no range.
+ */
+public class ColumnSortIndex {
+	private float sortedValues[];
+	private int sortedTuples[];
+
+	public ColumnSortIndex(DataModel dataModel, int columnIndex) {
+		int tupleCount = dataModel.getTupleCount();
+
+		// sort the values together with their tuple index as one long key
+		long keys[] = new long[tupleCount];
+		for (int i = 0; i < tupleCount; i++) {
+			int bits = Float.floatToIntBits(dataModel.getTuple(i).getElement(
+					columnIndex));
+			// flip the magnitude of negative values so the bits order as ints
+			bits ^= (bits >> 31) & 0x7fffffff;
+			keys[i] = ((long) bits << 32) | i;
+		}
+		Arrays.parallelSort(keys);
+
+		sortedValues = new float[tupleCount];
+		sortedTuples = new int[tupleCount];
+		for (int i = 0; i < tupleCount; i++) {
+			int bits = (int) (keys[i] >> 32);
+			bits ^= (bits >> 31) & 0x7fffffff;
+			sortedValues[i] = Float.intBitsToFloat(bits);
+			sortedTuples[i] = (int) keys[i];
+		}
+	}
+
+	public int getTupleCount() {
+		return sortedTuples.length;
+	}
+
+	public int getTuple(int position) {
+		return sortedTuples[position];
+	}
+
+	public float getValue(int position) {
+		return sortedValues[position];
+	}
+
+	/**
+	 * Returns the first position whose value is not less than the given value.
+	 */
+	public int lowerBound(float value) {
+		int low = 0;
+		int high = sortedValues.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sortedValues[mid] < value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the first position whose value is greater than the given value.
+	 */
+	public int upperBound(float value) {
+		int low = 0;
+		int high = sortedValues.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sortedValues[mid] <= value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
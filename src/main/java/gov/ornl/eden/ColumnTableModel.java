@@ -4,13 +4,15 @@ import gov.ornl.datatable.Column;
 import gov.ornl.datatable.ColumnSelectionRange;
 import gov.ornl.datatable.DataModel;
 import gov.ornl.datatable.DataModelListener;
+import gov.ornl.datatable.SummaryStats;
 import gov.ornl.datatable.Tuple;
 
 import java.util.ArrayList;
 
 import javax.swing.table.AbstractTableModel;
 
-public class ColumnTableModel extends AbstractTableModel implements DataModelListener {
+public class ColumnTableModel extends AbstractTableModel implements DataModelListener,
+		QuerySchedulerListener {
 
 	private static final long serialVersionUID = 1L;
 	private DataModel dataModel;
@@ -18,25 +20,86 @@ public class ColumnTableModel extends AbstractTableModel implements DataModelLis
 			"StDev", "Variance", "Q1", "Q3", "IQR", "Skewness", "Kustosis",
 			"Min", "Max"};
 	private boolean showQueryStatistics = false;
+	// statistics of the queried tuples from the last result the query
+	// scheduler published for the applied query
+	private QueryStatistics queryStatistics;
+	private QueryScheduler queryScheduler;
+	private boolean exactQuantilesEnabled = false;
 
-	public ColumnTableModel(DataModel dataModel) {
+	public ColumnTableModel(DataModel dataModel, QueryScheduler queryScheduler) {
 		this.dataModel = dataModel;
+		this.queryScheduler = queryScheduler;
 		dataModel.addDataModelListener(this);
+		queryScheduler.addQuerySchedulerListener(this);
 	}
 
 	public void setShowQueryStatistics(boolean showQueryStatistics) {
 		if (this.showQueryStatistics != showQueryStatistics) {
 			this.showQueryStatistics = showQueryStatistics;
+			updateQueryStatistics();
 			this.fireTableDataChanged();
 		}
 	}
 
+	/**
+	 * Sets whether the quartiles of the queried tuples are computed exactly
+	 * in the background after they were estimated from the quantile sketches.
+	 */
+	public void setExactQuantilesEnabled(boolean exactQuantilesEnabled) {
+		if (this.exactQuantilesEnabled != exactQuantilesEnabled) {
+			this.exactQuantilesEnabled = exactQuantilesEnabled;
+			updateQueryStatistics();
+		}
+	}
+
+	// takes the statistics the scheduler published for the applied query
+	private void updateQueryStatistics() {
+		if (!showQueryStatistics) {
+			queryStatistics = null;
+			return;
+		}
+		QueryResult result = queryScheduler.getAppliedResult();
+		if (result != null) {
+			setQueryStatistics(result.getQueryStatistics());
+		} else if (queryStatistics != null) {
+			// the scheduler publishes the statistics of the new query shortly
+			setQueryStatistics(queryStatistics);
+		}
+	}
+
+	private void setQueryStatistics(final QueryStatistics statistics) {
+		queryStatistics = statistics;
+		if (exactQuantilesEnabled && statistics != null
+				&& !statistics.hasExactQuantiles()) {
+			statistics.computeExactQuantilesLater(new Runnable() {
+				@Override
+				public void run() {
+					if (queryStatistics == statistics) {
+						fireTableDataChanged();
+					}
+				}
+			});
+		}
+	}
+
+	@Override
+	public void queryResultPublished(QueryScheduler queryScheduler,
+			QueryResult result) {
+		if (!showQueryStatistics || !result.isAppliedQuery()) {
+			return;
+		}
+		setQueryStatistics(result.getQueryStatistics());
+		fireTableDataChanged();
+	}
+
 	public boolean isShowingQueryStatistics() {
 		return showQueryStatistics;
 	}
 
 	@Override
 	public void dataModelChanged(DataModel dataModel) {
+		// the scheduler publishes the statistics of the new tuples
+		queryStatistics = null;
 		this.fireTableDataChanged();
 	}
 
@@ -139,80 +202,97 @@ public class ColumnTableModel extends AbstractTableModel implements DataModelLis
 //		}
 	}
 
+	/**
+	 * Returns the statistics of the queried tuples if they are shown, the
+	 * column is enabled and the scheduler has published them, or null.
+	 */
+	private QueryStatistics getQueryStatistics(Column column) {
+		if (queryStatistics == null
+				|| queryStatistics.getColumnCount() != dataModel.getColumnCount()
+				|| dataModel.getColumnIndex(column) < 0) {
+			return null;
+		}
+		return queryStatistics;
+	}
+
 	private Object getColumnStatValue(Column column, int statIndex) {
         if (statIndex == 0) {
             return new Boolean(column.isEnabled());
         } else if (statIndex == 1) {
             return column.getName();
-        } else if (statIndex == 2) {
-            if (showQueryStatistics && dataModel.getActiveQuery().hasColumnSelections()) {
-                return dataModel.getActiveQuery().getColumnQuerySummaryStats(column).getMean();
-            } else {
-                return column.getSummaryStats().getMean();
-            }
-        } else if (statIndex == 3) {
-            if (showQueryStatistics  && dataModel.getActiveQuery().hasColumnSelections()) {
-                return dataModel.getActiveQuery().getColumnQuerySummaryStats(column).getMedian();
-            } else {
-                return column.getSummaryStats().getMedian();
-            }
-        } else if (statIndex == 4) {
-            if (showQueryStatistics && dataModel.getActiveQuery().hasColumnSelections()) {
-                return dataModel.getActiveQuery().getColumnQuerySummaryStats(column).getStandardDeviation();
-            } else {
-                return column.getSummaryStats().getStandardDeviation();
-            }
-        } else if (statIndex == 5) {
-            if (showQueryStatistics && dataModel.getActiveQuery().hasColumnSelections()) {
-                return dataModel.getActiveQuery().getColumnQuerySummaryStats(column).getVariance();
-            } else {
-                return column.getSummaryStats().getVariance();
-            }
-        } else if (statIndex == 6) {
-            if (showQueryStatistics && dataModel.getActiveQuery().hasColumnSelections()) {
-                return dataModel.getActiveQuery().getColumnQuerySummaryStats(column).getQuantile1();
-            } else {
-                return column.getSummaryStats().getQuantile1();
-            }
-        } else if (statIndex == 7) {
-            if (showQueryStatistics && dataModel.getActiveQuery().hasColumnSelections()) {
-                return dataModel.getActiveQuery().getColumnQuerySummaryStats(column).getQuantile3();
-            } else {
-                return column.getSummaryStats().getQuantile3();
-            }
-        } else if (statIndex == 8) {
-            if (showQueryStatistics && dataModel.getActiveQuery().hasColumnSelections()) {
-                return dataModel.getActiveQuery().getColumnQuerySummaryStats(column).getIQR();
-            } else {
-                return column.getSummaryStats().getIQR();
-            }
-        } else if (statIndex == 9) {
-            if (showQueryStatistics && dataModel.getActiveQuery().hasColumnSelections()) {
-                return dataModel.getActiveQuery().getColumnQuerySummaryStats(column).getSkewness();
-            } else {
-                return column.getSummaryStats().getSkewness();
-            }
-        } else if (statIndex == 10) {
-            if (showQueryStatistics && dataModel.getActiveQuery().hasColumnSelections()) {
-                return dataModel.getActiveQuery().getColumnQuerySummaryStats(column).getKurtosis();
-            } else {
-                return column.getSummaryStats().getKurtosis();
-            }
-        } else if (statIndex == 11) {
-            if (showQueryStatistics && dataModel.getActiveQuery().hasColumnSelections()) {
-                return dataModel.getActiveQuery().getColumnQuerySummaryStats(column).getMin();
-            } else {
-                return column.getSummaryStats().getMin();
-            }
-        } else if (statIndex == 12) {
-            if (showQueryStatistics && dataModel.getActiveQuery().hasColumnSelections()) {
-                return dataModel.getActiveQuery().getColumnQuerySummaryStats(column).getMax();
-            } else {
-                return column.getSummaryStats().getMax();
+        }
+
+        if (showQueryStatistics && dataModel.getActiveQuery().hasColumnSelections()) {
+            // the data model's query summary statistics are not updated by
+            // the scheduler, so the cell stays empty until it publishes
+            QueryStatistics columnQueryStatistics = getQueryStatistics(column);
+            if (columnQueryStatistics == null) {
+                return null;
             }
+            return getQueryStatValue(columnQueryStatistics,
+                    dataModel.getColumnIndex(column), statIndex);
         }
+        return getSummaryStatValue(column.getSummaryStats(), statIndex);
+    }
 
-        return null;
+    private static Object getQueryStatValue(QueryStatistics statistics,
+            int columnIndex, int statIndex) {
+        switch (statIndex) {
+        case 2:
+            return (float) statistics.getMean(columnIndex);
+        case 3:
+            return statistics.getMedian(columnIndex);
+        case 4:
+            return (float) statistics.getStandardDeviation(columnIndex);
+        case 5:
+            return (float) statistics.getVariance(columnIndex);
+        case 6:
+            return statistics.getQuantile1(columnIndex);
+        case 7:
+            return statistics.getQuantile3(columnIndex);
+        case 8:
+            return statistics.getIQR(columnIndex);
+        case 9:
+            return (float) statistics.getSkewness(columnIndex);
+        case 10:
+            return (float) statistics.getKurtosis(columnIndex);
+        case 11:
+            return statistics.getMin(columnIndex);
+        case 12:
+            return statistics.getMax(columnIndex);
+        default:
+            return null;
+        }
+    }
+
+    private static Object getSummaryStatValue(SummaryStats summaryStats,
+            int statIndex) {
+        switch (statIndex) {
+        case 2:
+            return summaryStats.getMean();
+        case 3:
+            return summaryStats.getMedian();
+        case 4:
+            return summaryStats.getStandardDeviation();
+        case 5:
+            return summaryStats.getVariance();
+        case 6:
+            return summaryStats.getQuantile1();
+        case 7:
+            return summaryStats.getQuantile3();
+        case 8:
+            return summaryStats.getIQR();
+        case 9:
+            return summaryStats.getSkewness();
+        case 10:
+            return summaryStats.getKurtosis();
+        case 11:
+            return summaryStats.getMin();
+        case 12:
+            return summaryStats.getMax();
+        default:
+            return null;
+        }
     }
 
 	@Override
@@ -333,6 +413,7 @@ public class ColumnTableModel extends AbstractTableModel implements DataModelLis
 
 	@Override
 	public void tuplesAdded(DataModel dataModel, ArrayList<Tuple> newTuples) {
+		queryStatistics = null;
 		this.fireTableDataChanged();
 	}
 
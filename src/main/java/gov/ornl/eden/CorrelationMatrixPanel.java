@@ -33,7 +33,8 @@ import org.slf4j.LoggerFactory;
 @SuppressWarnings("serial")
 public class CorrelationMatrixPanel extends JPanel implements
 		MouseMotionListener, MouseListener, ComponentListener,
-		DataModelListener, RendererListener, WindowListener {
+		DataModelListener, RendererListener, WindowListener,
+		QuerySchedulerListener {
 	public final static DecimalFormat DECIMAL_FORMAT = new DecimalFormat(
 			"##0.0###");
 	// public static final Font CORR_COEF_FONT = new Font("Dialog", Font.PLAIN,
@@ -44,6 +45,7 @@ public class CorrelationMatrixPanel extends JPanel implements
 			.getLogger(CorrelationMatrixPanel.class);
 
 	private DataModel dataModel;
+	private QueryScheduler queryScheduler;
 	private MatrixRenderer matrixRenderer = null;
 	private BufferedImage matrixImage = null;
 
@@ -52,6 +54,9 @@ public class CorrelationMatrixPanel extends JPanel implements
 	private int highlightedRow = -1;
 	private int highlightedCol = -1;
 	private boolean useQueryCorrelations = true;
+	// statistics of the queried tuples from the last result the query
+	// scheduler published for the applied query
+	private QueryStatistics queryStatistics;
 	private Color coefRectFillColor = new Color(240, 240, 250);
 
 	private Color focusPointColor = PCPanel.DEFAULT_FOCUS_LINE_COLOR;
@@ -60,9 +65,13 @@ public class CorrelationMatrixPanel extends JPanel implements
 	private ArrayList<Column> matrixColumns;
 	private ArrayList<ScatterPlotFrame> scatterplotFrameList = new ArrayList<ScatterPlotFrame>();
 
-	public CorrelationMatrixPanel(DataModel dataModel) {
+	public CorrelationMatrixPanel(DataModel dataModel,
+			QueryScheduler queryScheduler) {
 		this.dataModel = dataModel;
+		this.queryScheduler = queryScheduler;
 		this.dataModel.addDataModelListener(this);
+		queryScheduler.addQuerySchedulerListener(this);
+		queryScheduler.setCorrelationsEnabled(this, useQueryCorrelations);
 		addComponentListener(this);
 		addMouseMotionListener(this);
 		addMouseListener(this);
@@ -79,6 +88,7 @@ public class CorrelationMatrixPanel extends JPanel implements
 	@Override
 	public void dataModelChanged(DataModel dataModel) {
 		matrixColumns = null;
+		queryStatistics = null;
 		layoutMatrix();
 		startMatrixRenderer();
 	}
@@ -100,6 +110,7 @@ public class CorrelationMatrixPanel extends JPanel implements
 	public void setUseQueryCorrelationCoefficients(boolean useQueryCorrelations) {
 		if (this.useQueryCorrelations != useQueryCorrelations) {
 			this.useQueryCorrelations = useQueryCorrelations;
+			queryScheduler.setCorrelationsEnabled(this, useQueryCorrelations);
 			this.startMatrixRenderer();
 		}
 	}
@@ -160,9 +171,10 @@ public class CorrelationMatrixPanel extends JPanel implements
 			Column column = matrixColumns.get(highlightedRow);
 			float corrCoef;
 
-			if (this.useQueryCorrelations && (dataModel.getActiveQuery().getColumnQuerySummaryStats(column) != null)) {
-				corrCoef = dataModel.getActiveQuery().getColumnQuerySummaryStats(column).getCorrelationCoefficients().get(highlightedCol);
-//				corrCoef = column.getQueryCorrelationCoefficients().get(highlightedCol);
+			QueryStatistics queryStatistics = getQueryStatistics();
+			if (queryStatistics != null) {
+				corrCoef = queryStatistics.getCorrelationCoefficients(
+						dataModel.getColumnIndex(column)).get(highlightedCol);
 			} else {
 				corrCoef = column.getSummaryStats().getCorrelationCoefficients().get(highlightedCol);
 			}
@@ -222,11 +234,13 @@ public class CorrelationMatrixPanel extends JPanel implements
 		}
 
 		if (matrixRenderer != null) {
-			matrixRenderer.isRunning = false;
+			matrixRenderer.cancel();
 			matrixRenderer.removeRendererListener(this);
 		}
-		matrixRenderer = new MatrixRenderer(dataModel, cellSize, matrixRect,this.useQueryCorrelations, matrixColumns);
+		matrixRenderer = new MatrixRenderer(dataModel, cellSize, matrixRect,
+				getQueryStatistics(), matrixColumns);
 		matrixRenderer.addRendererListener(this);
+		matrixRenderer.setRenderTarget(this, "matrix");
 		matrixRenderer.start();
 	}
 
@@ -269,7 +283,8 @@ public class CorrelationMatrixPanel extends JPanel implements
 					contextConfig.labelFont = new Font("Dialog", Font.PLAIN, 10);
 
 					ScatterPlotFrame frame = new ScatterPlotFrame(dataModel,
-							xColumn, yColumn, focusConfig, contextConfig);
+							queryScheduler, xColumn, yColumn, focusConfig,
+							contextConfig);
 					frame.setVisible(true);
 					frame.setColumns(xColumn, yColumn);
 					scatterplotFrameList.add(frame);
@@ -324,14 +339,39 @@ public class CorrelationMatrixPanel extends JPanel implements
 	@Override
 	public void queryChanged(DataModel dataModel) {
 		// layoutMatrix();
-		startMatrixRenderer();
+		// the matrix is rendered when the scheduler publishes the statistics
 	}
 
 	@Override
 	public void tuplesAdded(DataModel dataModel, ArrayList<Tuple> newTuples) {
+		queryStatistics = null;
 		startMatrixRenderer();
 	}
 
+	@Override
+	public void queryResultPublished(QueryScheduler queryScheduler,
+			QueryResult result) {
+		if (result.isAppliedQuery()) {
+			queryStatistics = result.getQueryStatistics();
+			startMatrixRenderer();
+			repaint();
+		}
+	}
+
+	/**
+	 * Returns the correlations of the queried tuples the query scheduler
+	 * published last if the matrix shows them, or null to show the
+	 * correlations of all tuples.
+	 */
+	private QueryStatistics getQueryStatistics() {
+		if (!useQueryCorrelations || queryStatistics == null
+				|| !queryStatistics.hasCorrelations()
+				|| queryStatistics.getColumnCount() != dataModel.getColumnCount()) {
+			return null;
+		}
+		return queryStatistics;
+	}
+
 	@Override
 	public void columnDisabled(DataModel dataModel, Column disabledColumn) {
 		matrixColumns = null;
@@ -0,0 +1,155 @@
+package gov.ornl.eden;
+
+import gov.ornl.datatable.Column;
+import gov.ornl.datatable.DataModel;
+import gov.ornl.datatable.Histogram;
+import gov.ornl.datatable.Tuple;
+
+import java.util.Map;
+
+/**
+ * Histograms of each column under the selections of all other columns, as
+ * in crossfilter, so an axis shows the distribution its own brush chooses
+ * from. Each tuple keeps a reference count of the column filters it fails.
+ * A tuple counts in the histogram of every column if it fails none, only in
+ * the histogram of the failed column if it fails one, and nowhere otherwise.
+ *
+ * The filters are the tuple bitmaps of the selected columns from the query
+ * engine. When a filter changes, only the tuples in the difference of its
+ * old and new bitmap change their count, and their contributions are moved
+ * between the histograms, so the cost follows the brushed tuples rather than
+ * the number of columns times the number of tuples.
+ */
+public class CrossfilterHistograms {
+	private DataModel dataModel;
+	private int tupleCount;
+	private int columnCount;
+	private double histogramMinValues[];
+	private double histogramMaxValues[];
+	private double histograms[][];
+	// number of column filters each tuple fails
+	private int failCounts[];
+	// filter of each column, or null if the column is not selected
+	private TupleBitmap filters[];
+
+	public CrossfilterHistograms(DataModel dataModel) {
+		this.dataModel = dataModel;
+		tupleCount = dataModel.getTupleCount();
+		columnCount = dataModel.getColumnCount();
+		histogramMinValues = new double[columnCount];
+		histogramMaxValues = new double[columnCount];
+		histograms = new double[columnCount][];
+		for (int i = 0; i < columnCount; i++) {
+			Column column = dataModel.getColumn(i);
+			histogramMinValues[i] = column.getSummaryStats().getMin();
+			histogramMaxValues[i] = column.getSummaryStats().getMax();
+			Histogram histogram = column.getSummaryStats().getHistogram();
+			histograms[i] = new double[histogram != null ? histogram
+					.getNumBins() : 0];
+		}
+		failCounts = new int[tupleCount];
+		filters = new TupleBitmap[columnCount];
+
+		// without filters every tuple counts on every column
+		for (int tupleIndex = 0; tupleIndex < tupleCount; tupleIndex++) {
+			addContribution(tupleIndex, 1);
+		}
+	}
+
+	/**
+	 * Sets the filters to the given bitmaps of the selected columns. Returns
+	 * false if the bitmaps do not fit the tuples or columns, in which case
+	 * the histograms are not changed.
+	 */
+	public synchronized boolean update(Map<Column, TupleBitmap> columnBitmaps) {
+		if (dataModel.getTupleCount() != tupleCount
+				|| dataModel.getColumnCount() != columnCount) {
+			return false;
+		}
+		TupleBitmap newFilters[] = new TupleBitmap[columnCount];
+		for (Map.Entry<Column, TupleBitmap> entry : columnBitmaps.entrySet()) {
+			int columnIndex = dataModel.getColumnIndex(entry.getKey());
+			if (columnIndex < 0 || columnIndex >= columnCount) {
+				return false;
+			}
+			newFilters[columnIndex] = entry.getValue();
+		}
+
+		for (int i = 0; i < columnCount; i++) {
+			TupleBitmap oldFilter = filters[i];
+			TupleBitmap newFilter = newFilters[i];
+			if (oldFilter == newFilter) {
+				continue;
+			}
+
+			// the tuples whose failure of this filter changes
+			int changedTuples[];
+			if (oldFilter != null && newFilter != null) {
+				changedTuples = oldFilter.xor(newFilter).toArray();
+			} else {
+				changedTuples = getFailingTuples(oldFilter != null ? oldFilter
+						: newFilter);
+			}
+
+			for (int tupleIndex : changedTuples) {
+				addContribution(tupleIndex, -1);
+			}
+			filters[i] = newFilter;
+			for (int tupleIndex : changedTuples) {
+				failCounts[tupleIndex] += fails(i, tupleIndex) ? 1 : -1;
+				addContribution(tupleIndex, 1);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns a copy of the bin counts of a column under all filters but its
+	 * own, over the bins of the column's histogram of all tuples.
+	 */
+	public synchronized double[] getHistogram(int columnIndex) {
+		return histograms[columnIndex].clone();
+	}
+
+	private boolean fails(int columnIndex, int tupleIndex) {
+		TupleBitmap filter = filters[columnIndex];
+		return filter != null && !filter.contains(tupleIndex);
+	}
+
+	private int[] getFailingTuples(TupleBitmap filter) {
+		TupleBitmap.Builder builder = new TupleBitmap.Builder(tupleCount);
+		for (int tupleIndex = 0; tupleIndex < tupleCount; tupleIndex++) {
+			if (!filter.contains(tupleIndex)) {
+				builder.add(tupleIndex);
+			}
+		}
+		return builder.build().toArray();
+	}
+
+	// adds or removes a tuple in the histograms it counts in
+	private void addContribution(int tupleIndex, int count) {
+		int failCount = failCounts[tupleIndex];
+		if (failCount > 1) {
+			return;
+		}
+		Tuple tuple = dataModel.getTuple(tupleIndex);
+		for (int i = 0; i < columnCount; i++) {
+			if (failCount == 0 || fails(i, tupleIndex)) {
+				addValue(i, tuple.getElement(i), count);
+			}
+		}
+	}
+
+	private void addValue(int columnIndex, float value, int count) {
+		double bins[] = histograms[columnIndex];
+		double range = histogramMaxValues[columnIndex] - histogramMinValues[columnIndex];
+		if (bins.length == 0 || Float.isNaN(value)
+				|| value < histogramMinValues[columnIndex]
+				|| value > histogramMaxValues[columnIndex]) {
+			return;
+		}
+		int bin = range > 0. ? (int) (((value - histogramMinValues[columnIndex]) / range) * bins.length)
+				: 0;
+		bins[Math.min(bin, bins.length - 1)] += count;
+	}
+}
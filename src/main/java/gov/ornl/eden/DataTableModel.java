@@ -7,13 +7,34 @@ import org.slf4j.LoggerFactory;
 import javax.swing.table.AbstractTableModel;
 import java.util.ArrayList;
 
-public class DataTableModel extends AbstractTableModel implements DataModelListener {
+public class DataTableModel extends AbstractTableModel implements DataModelListener,
+        QuerySchedulerListener {
     private final static Logger log = LoggerFactory.getLogger(DataTableModel.class);
     private DataModel dataModel;
+    private QueryScheduler queryScheduler;
+    // indices of the queried tuples in the flags the query scheduler wrote
+    // last, built when the table first asks for them
+    private QueryFlagSnapshot queryFlags;
+    private int queriedTuples[];
 
-    public DataTableModel(DataModel dataModel) {
+    public DataTableModel(DataModel dataModel, QueryScheduler queryScheduler) {
         this.dataModel = dataModel;
+        this.queryScheduler = queryScheduler;
         dataModel.addDataModelListener(this);
+        queryScheduler.addQuerySchedulerListener(this);
+    }
+
+    /**
+     * Returns the indices of the tuples the applied query selects, or null if
+     * the query scheduler has not applied the query since the tuples changed.
+     */
+    private int[] getQueriedTuples() {
+        QueryFlagSnapshot tupleQueryFlags = queryScheduler.getTupleQueryFlags();
+        if (tupleQueryFlags != queryFlags) {
+            queryFlags = tupleQueryFlags;
+            queriedTuples = queryFlags != null ? queryFlags.getQueriedTuples() : null;
+        }
+        return queriedTuples;
     }
 
     public Class getColumnClass(int c) {
@@ -24,7 +45,8 @@ public class DataTableModel extends AbstractTableModel implements DataModelListe
     public int getRowCount() {
         if (dataModel.getActiveQuery().hasColumnSelections()) {
             // a query is set so return the number of queried tuples
-            return dataModel.getQueriedTupleCount();
+            int queriedTuples[] = getQueriedTuples();
+            return queriedTuples != null ? queriedTuples.length : 0;
         } else {
             // no query is set so return the totoal number of tuples
             return dataModel.getTupleCount();
@@ -39,14 +61,26 @@ public class DataTableModel extends AbstractTableModel implements DataModelListe
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
         if (columnIndex < dataModel.getColumnCount() && columnIndex >= 0) {
-            if (dataModel.getActiveQuery().hasColumnSelections()) {
-                if (rowIndex >= 0 && rowIndex < dataModel.getQueriedTupleCount()) {
-                    return dataModel.getActiveQuery().getTuples().get(rowIndex).getElement(columnIndex);
-                }
-            } else {
-                if (rowIndex >= 0 && rowIndex < dataModel.getTupleCount()) {
-                    return dataModel.getTuples().get(rowIndex).getElement(columnIndex);
-                }
+            Tuple tuple = getTuple(rowIndex);
+            if (tuple != null) {
+                return tuple.getElement(columnIndex);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the tuple shown in a row, or null if there is no such row.
+     */
+    public Tuple getTuple(int rowIndex) {
+        if (dataModel.getActiveQuery().hasColumnSelections()) {
+            int queriedTuples[] = getQueriedTuples();
+            if (queriedTuples != null && rowIndex >= 0 && rowIndex < queriedTuples.length) {
+                return dataModel.getTuple(queriedTuples[rowIndex]);
+            }
+        } else {
+            if (rowIndex >= 0 && rowIndex < dataModel.getTupleCount()) {
+                return dataModel.getTuples().get(rowIndex);
             }
         }
         return null;
@@ -78,6 +112,13 @@ public class DataTableModel extends AbstractTableModel implements DataModelListe
         fireTableDataChanged();
     }
 
+    @Override
+    public void queryResultPublished(QueryScheduler queryScheduler, QueryResult result) {
+        if (result.isAppliedToTuples()) {
+            fireTableDataChanged();
+        }
+    }
+
     @Override
     public void dataModelColumnSelectionAdded(DataModel dataModel, ColumnSelectionRange columnSelectionRange) {
         fireTableDataChanged();
@@ -56,6 +56,8 @@ public class EDEN implements DataModelListener, ActionListener, WindowListener,
 
 	private JFrame edenFrame;
 	private DataModel dataModel;
+	// evaluates the queries of the data model for all views
+	private QueryScheduler queryScheduler;
 	private PCPanel pcPanel;
 	private CorrelationMatrixPanel corrMatrixPanel;
 	private ColumnTableModel colTableModel;
@@ -71,20 +73,31 @@ public class EDEN implements DataModelListener, ActionListener, WindowListener,
 	private JMenuItem runMultiCollinearityFilterMenuItem;
 	private JRadioButtonMenuItem renderTuplesAsLines;
 	private JRadioButtonMenuItem renderTuplesAsDots;
+	private JRadioButtonMenuItem renderTuplesAsDensity;
+	private JCheckBoxMenuItem logDensityScaleMenuItem;
+	private JCheckBoxMenuItem accumulateLinesMenuItem;
+	private JRadioButtonMenuItem linearToneMappingMenuItem;
+	private JRadioButtonMenuItem logToneMappingMenuItem;
+	private JRadioButtonMenuItem equalizedToneMappingMenuItem;
 	private JCheckBoxMenuItem showFrequencyDataMenuItem;
 	private DisplaySettingsPanel settingsPanel;
 	private JCheckBoxMenuItem showPCLinesMenuItem;
 	private JRadioButtonMenuItem medianDisplayMenuItem;
+	private JCheckBoxMenuItem exactQuantilesMenuItem;
 	private JRadioButtonMenuItem meanDisplayMenuItem;
 	private JMenuItem removeUnselectedDataMenuItem;
 	private JCheckBox queryStatsCheckBox;
 	private JCheckBoxMenuItem antialiasMenuItem;
+	private JCheckBoxMenuItem parallelLineRenderingMenuItem;
+	private JCheckBoxMenuItem progressiveLineRenderingMenuItem;
+	private JCheckBoxMenuItem dataCubeMenuItem;
 	private JCheckBoxMenuItem showCorrelationIndicatorsMenuItem;
 	private JCheckBoxMenuItem useQueryCorrelationsMenuItem;
 	private JMenuItem arrangeByDispersion;
 	private JMenuItem arrangeByCorrelation;
 	private JCheckBoxMenuItem useSelectedDataArrangeMenuItem;
 	private JCheckBoxMenuItem useQueryFrequencyDataMenuItem;
+	private JCheckBoxMenuItem crossfilterFrequencyDataMenuItem;
 	private JMenuItem arrangeByDispersionDifference;
 	private JMenuItem arrangeByTypical;
 	private JMenuItem arrangeByTypicalDifference;
@@ -122,6 +135,8 @@ public class EDEN implements DataModelListener, ActionListener, WindowListener,
 
 	private void initialize() {
 		dataModel = new DataModel();
+		queryScheduler = new QueryScheduler(dataModel, new QueryEngine(
+				dataModel));
 		dataModel.addDataModelListener(this);
 
 		edenFrame = new JFrame();
@@ -181,6 +196,29 @@ public class EDEN implements DataModelListener, ActionListener, WindowListener,
 		antialiasMenuItem.addActionListener(this);
 		menu.add(antialiasMenuItem);
 
+		parallelLineRenderingMenuItem = new JCheckBoxMenuItem(
+				"Parallel Line Rendering", true);
+		parallelLineRenderingMenuItem.setSelected(pcPanel
+				.isParallelLineRenderingEnabled());
+		parallelLineRenderingMenuItem.setMnemonic(KeyEvent.VK_L);
+		parallelLineRenderingMenuItem.addActionListener(this);
+		menu.add(parallelLineRenderingMenuItem);
+
+		progressiveLineRenderingMenuItem = new JCheckBoxMenuItem(
+				"Progressive Line Rendering", true);
+		progressiveLineRenderingMenuItem.setSelected(pcPanel
+				.isProgressiveLineRenderingEnabled());
+		progressiveLineRenderingMenuItem.setMnemonic(KeyEvent.VK_R);
+		progressiveLineRenderingMenuItem.addActionListener(this);
+		menu.add(progressiveLineRenderingMenuItem);
+
+		dataCubeMenuItem = new JCheckBoxMenuItem(
+				"Precompute Binned Data Cube", false);
+		dataCubeMenuItem.setSelected(pcPanel.isDataCubeEnabled());
+		dataCubeMenuItem.setMnemonic(KeyEvent.VK_U);
+		dataCubeMenuItem.addActionListener(this);
+		menu.add(dataCubeMenuItem);
+
 		showPCLinesMenuItem = new JCheckBoxMenuItem(
 				"Show Parallel Coordinate Lines", true);
 		showPCLinesMenuItem.setSelected(pcPanel.isShowingPolylines());
@@ -221,6 +259,11 @@ public class EDEN implements DataModelListener, ActionListener, WindowListener,
 		useQueryFrequencyDataMenuItem.setMnemonic(KeyEvent.VK_S);
 		useQueryFrequencyDataMenuItem.setSelected(true);
 		frequencyMenu.add(useQueryFrequencyDataMenuItem);
+		crossfilterFrequencyDataMenuItem = new JCheckBoxMenuItem("Exclude Own Axis Selection", false);
+		crossfilterFrequencyDataMenuItem.addItemListener(this);
+		crossfilterFrequencyDataMenuItem.setMnemonic(KeyEvent.VK_X);
+		crossfilterFrequencyDataMenuItem.setSelected(pcPanel.isShowingCrossfilterHistograms());
+		frequencyMenu.add(crossfilterFrequencyDataMenuItem);
 
 		JMenu dispersionDisplayMenu = new JMenu("Dispersion Display");
 		menu.add(dispersionDisplayMenu);
@@ -240,6 +283,12 @@ public class EDEN implements DataModelListener, ActionListener, WindowListener,
 		}
 		medianDisplayMenuItem.addItemListener(this);
 		meanDisplayMenuItem.addItemListener(this);
+		dispersionDisplayMenu.addSeparator();
+		exactQuantilesMenuItem = new JCheckBoxMenuItem("Exact Quantiles", false);
+		exactQuantilesMenuItem.setMnemonic(KeyEvent.VK_X);
+		exactQuantilesMenuItem.setSelected(pcPanel.isExactQuantilesEnabled());
+		exactQuantilesMenuItem.addItemListener(this);
+		dispersionDisplayMenu.add(exactQuantilesMenuItem);
 
 		JMenu correlationDisplayMenu = new JMenu("Correlation Indicators");
 		menu.add(correlationDisplayMenu);
@@ -261,7 +310,6 @@ public class EDEN implements DataModelListener, ActionListener, WindowListener,
 
 		JMenu tupleRenderMenu = new JMenu("Tuple Rendering");
 		menu.add(tupleRenderMenu);
-		tupleRenderMenu.setEnabled(false);
 
 		group = new ButtonGroup();
 		renderTuplesAsLines = new JRadioButtonMenuItem("Polylines", true);
@@ -272,15 +320,64 @@ public class EDEN implements DataModelListener, ActionListener, WindowListener,
 		renderTuplesAsDots.setMnemonic(KeyEvent.VK_D);
 		group.add(renderTuplesAsDots);
 		tupleRenderMenu.add(renderTuplesAsDots);
+		// dot rendering is not implemented by the line renderers yet
+		renderTuplesAsDots.setEnabled(false);
+		renderTuplesAsDensity = new JRadioButtonMenuItem("Line Density", false);
+		renderTuplesAsDensity.setMnemonic(KeyEvent.VK_N);
+		group.add(renderTuplesAsDensity);
+		tupleRenderMenu.add(renderTuplesAsDensity);
 		if (pcPanel.getTupleDisplayMode() == PCPanel.RENDER_TUPLES_AS_DOTS) {
 			renderTuplesAsDots.setSelected(true);
-			renderTuplesAsLines.setSelected(false);
 		} else if (pcPanel.getTupleDisplayMode() == PCPanel.RENDER_TUPLES_AS_LINES) {
-			renderTuplesAsDots.setSelected(false);
 			renderTuplesAsLines.setSelected(true);
+		} else if (pcPanel.getTupleDisplayMode() == PCPanel.RENDER_TUPLES_AS_DENSITY) {
+			renderTuplesAsDensity.setSelected(true);
 		}
 		renderTuplesAsDots.addItemListener(this);
 		renderTuplesAsLines.addItemListener(this);
+		renderTuplesAsDensity.addItemListener(this);
+
+		tupleRenderMenu.addSeparator();
+		logDensityScaleMenuItem = new JCheckBoxMenuItem(
+				"Logarithmic Density Scale", true);
+		logDensityScaleMenuItem.setMnemonic(KeyEvent.VK_L);
+		logDensityScaleMenuItem.setSelected(pcPanel.getDensityScale() == PCDensityRenderer.LOG_DENSITY_SCALE);
+		logDensityScaleMenuItem.addItemListener(this);
+		tupleRenderMenu.add(logDensityScaleMenuItem);
+
+		tupleRenderMenu.addSeparator();
+		accumulateLinesMenuItem = new JCheckBoxMenuItem(
+				"Accumulate Line Overlap", false);
+		accumulateLinesMenuItem.setMnemonic(KeyEvent.VK_A);
+		accumulateLinesMenuItem.setSelected(pcPanel.getLineRenderingBackend() == PCLineRenderer.ACCUMULATION_RENDERING);
+		accumulateLinesMenuItem.addItemListener(this);
+		tupleRenderMenu.add(accumulateLinesMenuItem);
+
+		JMenu toneMappingMenu = new JMenu("Line Overlap Tone Mapping");
+		tupleRenderMenu.add(toneMappingMenu);
+		group = new ButtonGroup();
+		linearToneMappingMenuItem = new JRadioButtonMenuItem("Linear", false);
+		linearToneMappingMenuItem.setMnemonic(KeyEvent.VK_I);
+		group.add(linearToneMappingMenuItem);
+		toneMappingMenu.add(linearToneMappingMenuItem);
+		logToneMappingMenuItem = new JRadioButtonMenuItem("Logarithmic", false);
+		logToneMappingMenuItem.setMnemonic(KeyEvent.VK_L);
+		group.add(logToneMappingMenuItem);
+		toneMappingMenu.add(logToneMappingMenuItem);
+		equalizedToneMappingMenuItem = new JRadioButtonMenuItem("Histogram Equalized", false);
+		equalizedToneMappingMenuItem.setMnemonic(KeyEvent.VK_H);
+		group.add(equalizedToneMappingMenuItem);
+		toneMappingMenu.add(equalizedToneMappingMenuItem);
+		if (pcPanel.getLineToneMapping() == LineAccumulationBuffer.LINEAR_TONE_MAPPING) {
+			linearToneMappingMenuItem.setSelected(true);
+		} else if (pcPanel.getLineToneMapping() == LineAccumulationBuffer.LOG_TONE_MAPPING) {
+			logToneMappingMenuItem.setSelected(true);
+		} else {
+			equalizedToneMappingMenuItem.setSelected(true);
+		}
+		linearToneMappingMenuItem.addItemListener(this);
+		logToneMappingMenuItem.addItemListener(this);
+		equalizedToneMappingMenuItem.addItemListener(this);
 
 		JMenu arrangeMenu = new JMenu("Arrange Axes");
 		menu.add(arrangeMenu);
@@ -364,7 +461,7 @@ public class EDEN implements DataModelListener, ActionListener, WindowListener,
 	}
 
 	private void initializePanel() {
-		pcPanel = new PCPanel(dataModel);
+		pcPanel = new PCPanel(dataModel, queryScheduler);
 		pcPanel.setBackground(Color.white);
 
 		// int initialAlphaValue = (int) ((double)
@@ -385,7 +482,7 @@ public class EDEN implements DataModelListener, ActionListener, WindowListener,
 		// plotSplit.setDividerLocation(300);
 		// plotSplit.setOneTouchExpandable(true);
 		//
-		corrMatrixPanel = new CorrelationMatrixPanel(dataModel);
+		corrMatrixPanel = new CorrelationMatrixPanel(dataModel, queryScheduler);
 		corrMatrixPanel.setBackground(Color.white);
 
 		// varSummaryPanel = new VariableSummaryPanel(dataModel);
@@ -407,7 +504,7 @@ public class EDEN implements DataModelListener, ActionListener, WindowListener,
 		// mainSplit.setDividerLocation(200);
 		// mainSplit.setOneTouchExpandable(true);
 
-        dataTableModel = new DataTableModel(dataModel);
+        dataTableModel = new DataTableModel(dataModel, queryScheduler);
         dataTable = new JTable(dataTableModel);
         dataTable.setPreferredScrollableViewportSize(new Dimension(500, 70));
         dataTable.getSelectionModel().addListSelectionListener(this); //TODO: handle selections of tuples in data table
@@ -416,7 +513,7 @@ public class EDEN implements DataModelListener, ActionListener, WindowListener,
         dataTablePanel.setLayout(new BorderLayout());
         dataTablePanel.add(dataTableScroller, BorderLayout.CENTER);
 
-		colTableModel = new ColumnTableModel(dataModel);
+		colTableModel = new ColumnTableModel(dataModel, queryScheduler);
 		statsTable = new JTable(colTableModel);
 		statsTable.setPreferredScrollableViewportSize(new Dimension(500, 70));
 		statsTable.getSelectionModel().addListSelectionListener(this);
@@ -640,11 +737,13 @@ public class EDEN implements DataModelListener, ActionListener, WindowListener,
 			}
 		} else if (e.getSource() == this.removeSelectedDataMenuItem) {
 			// remove selected lines from data model
+			applyQueryToDataModel();
 			int linesRemoved = dataModel.removeSelectedTuples();
 			JOptionPane.showMessageDialog(edenFrame, linesRemoved
 					+ " tuples removed.", "Tuples Removed",
 					JOptionPane.INFORMATION_MESSAGE);
 		} else if (e.getSource() == removeUnselectedDataMenuItem) {
+			applyQueryToDataModel();
 			int linesRemoved = dataModel.removeUnselectedTuples();
 //			int linesRemoved = dataModel.removeSelectedTuples();
 			JOptionPane.showMessageDialog(edenFrame, linesRemoved
@@ -671,6 +770,7 @@ public class EDEN implements DataModelListener, ActionListener, WindowListener,
 				return;
 			}
 			if (useSelectedDataArrangeMenuItem.isSelected() && dataModel.getActiveQuery().hasColumnSelections()) {
+				applyQueryToDataModel();
 				dataModel.orderColumnsByCorrelation(dataModel.getHighlightedColumn(), true);
 			} else {
 				dataModel.orderColumnsByCorrelation(dataModel.getHighlightedColumn(), false);
@@ -690,6 +790,12 @@ public class EDEN implements DataModelListener, ActionListener, WindowListener,
 			pcPanel.arrangeColumnsByTypicalDifference();
 		} else if (e.getSource() == this.antialiasMenuItem) {
 			pcPanel.setAntialiasEnabled(antialiasMenuItem.isSelected());
+		} else if (e.getSource() == this.parallelLineRenderingMenuItem) {
+			pcPanel.setParallelLineRenderingEnabled(parallelLineRenderingMenuItem.isSelected());
+		} else if (e.getSource() == this.progressiveLineRenderingMenuItem) {
+			pcPanel.setProgressiveLineRenderingEnabled(progressiveLineRenderingMenuItem.isSelected());
+		} else if (e.getSource() == this.dataCubeMenuItem) {
+			pcPanel.setDataCubeEnabled(dataCubeMenuItem.isSelected());
 		} else if (e.getActionCommand().equals("screen capture")) {
 			String lastDirectoryPath = (String) GUIContext.getInstance().getProperties().get("LAST_SCREEN_CAPTURE_DIRECTORY_PATH");
 			JFileChooser chooser = new JFileChooser(lastDirectoryPath);
@@ -758,6 +864,7 @@ public class EDEN implements DataModelListener, ActionListener, WindowListener,
 			writer.write(headerLine + "\n");
 
 			// Get tuple lines and write to file
+			applyQueryToDataModel();
 			ArrayList<Tuple> queriedTuples = dataModel.getQueriedTuples();
 			for (int iTuple = 0; iTuple < queriedTuples.size(); iTuple++) {
 				Tuple tuple = queriedTuples.get(iTuple);
@@ -791,12 +898,22 @@ public class EDEN implements DataModelListener, ActionListener, WindowListener,
 							"No Highlighted Axis", JOptionPane.ERROR_MESSAGE);
 			return;
 		}
+		applyQueryToDataModel();
 		dataModel.runMulticollinearityFilter(dataModel.getHighlightedColumn(),
 				true, 0.5f);
 		// dataModel.runMulticollienarityFilter(dataModel.getHighlightedColumn(),
 		// true, 0.5f);
 	}
 
+	/**
+	 * Has the data model apply the active query before an operation that
+	 * reads its queried tuples or query statistics. The views apply queries
+	 * through the query scheduler, which does not update them.
+	 */
+	private void applyQueryToDataModel() {
+		dataModel.setQueriedTuples();
+	}
+
 	private void runMultipleLinearRegression() {
 		if (dataModel.getHighlightedColumn() == null) {
 			JOptionPane.showMessageDialog(this.edenFrame,
@@ -831,19 +948,13 @@ public class EDEN implements DataModelListener, ActionListener, WindowListener,
             ArrayList<Tuple> selectedTuples = new ArrayList<>();
 			if (dataTable.getSelectedRowCount() > 0) {
 				int selectedRows[] = dataTable.getSelectedRows();
-				if (dataModel.getActiveQuery().hasColumnSelections()) {
-					// get tuples from queried tuple list
-                    for (int rowIndex : selectedRows) {
-                        Tuple tuple = dataModel.getActiveQuery().getTuples().get(rowIndex);
-                        selectedTuples.add(tuple);
-                    }
-				} else {
-					// get tuples from full tuple list
-                    for (int rowIndex : selectedRows) {
-                        Tuple tuple = dataModel.getTuples().get(rowIndex);
+				// the rows list the queried tuples if a query is set
+                for (int rowIndex : selectedRows) {
+                    Tuple tuple = dataTableModel.getTuple(rowIndex);
+                    if (tuple != null) {
                         selectedTuples.add(tuple);
                     }
-				}
+                }
 			}
             pcPanel.setHighlightedTuples(selectedTuples);
 
@@ -879,14 +990,45 @@ public class EDEN implements DataModelListener, ActionListener, WindowListener,
 			pcPanel.setTupleDisplayMode(PCPanel.RENDER_TUPLES_AS_LINES);
 		} else if (event.getItem() == this.renderTuplesAsDots) {
 			pcPanel.setTupleDisplayMode(PCPanel.RENDER_TUPLES_AS_DOTS);
+		} else if (event.getItem() == this.renderTuplesAsDensity) {
+			pcPanel.setTupleDisplayMode(PCPanel.RENDER_TUPLES_AS_DENSITY);
+		} else if (event.getItem() == this.logDensityScaleMenuItem) {
+			if (logDensityScaleMenuItem.isSelected()) {
+				pcPanel.setDensityScale(PCDensityRenderer.LOG_DENSITY_SCALE);
+			} else {
+				pcPanel.setDensityScale(PCDensityRenderer.LINEAR_DENSITY_SCALE);
+			}
+		} else if (event.getItem() == this.accumulateLinesMenuItem) {
+			if (accumulateLinesMenuItem.isSelected()) {
+				pcPanel.setLineRenderingBackend(PCLineRenderer.ACCUMULATION_RENDERING);
+			} else {
+				pcPanel.setLineRenderingBackend(PCLineRenderer.JAVA2D_RENDERING);
+			}
+		} else if (event.getItem() == this.linearToneMappingMenuItem) {
+			if (linearToneMappingMenuItem.isSelected()) {
+				pcPanel.setLineToneMapping(LineAccumulationBuffer.LINEAR_TONE_MAPPING);
+			}
+		} else if (event.getItem() == this.logToneMappingMenuItem) {
+			if (logToneMappingMenuItem.isSelected()) {
+				pcPanel.setLineToneMapping(LineAccumulationBuffer.LOG_TONE_MAPPING);
+			}
+		} else if (event.getItem() == this.equalizedToneMappingMenuItem) {
+			if (equalizedToneMappingMenuItem.isSelected()) {
+				pcPanel.setLineToneMapping(LineAccumulationBuffer.HISTOGRAM_EQUALIZED_TONE_MAPPING);
+			}
 		} else if (event.getItem() == this.showFrequencyDataMenuItem) {
 			pcPanel.setShowFrequencyInfo(showFrequencyDataMenuItem.isSelected());
 		} else if (event.getItem() == this.useQueryFrequencyDataMenuItem) {
 			pcPanel.setUseQueryFrequencyData(useQueryFrequencyDataMenuItem.isSelected());
+		} else if (event.getItem() == this.crossfilterFrequencyDataMenuItem) {
+			pcPanel.setShowCrossfilterHistograms(crossfilterFrequencyDataMenuItem.isSelected());
 		} else if (event.getSource() == meanDisplayMenuItem) {
 			pcPanel.setDispersionDisplayMode(PCPanel.MEAN_DISPERSION_BOX_MODE);
 		} else if (event.getSource() == medianDisplayMenuItem) {
 			pcPanel.setDispersionDisplayMode(PCPanel.MEDIAN_DISPERSION_BOX_MODE);
+		} else if (event.getItem() == exactQuantilesMenuItem) {
+			pcPanel.setExactQuantilesEnabled(exactQuantilesMenuItem.isSelected());
+			colTableModel.setExactQuantilesEnabled(exactQuantilesMenuItem.isSelected());
 		} else if (event.getItem() == showPCLinesMenuItem) {
 			pcPanel.setShowingPolylines(showPCLinesMenuItem.isSelected());
 		} else if (event.getItem() == this.queryStatsCheckBox) {
@@ -0,0 +1,225 @@
+package gov.ornl.eden;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * A hit-count buffer that line segments are rasterized into without going
+ * through Java2D. Each pixel counts the number of segments that cover it, so
+ * the full range of line overlap is kept until a tone mapping pass turns the
+ * counts into an image.
+ *
+ * Callers that rasterize from several threads at once must restrict each
+ * thread to its own range of columns.
+ */
+public class LineAccumulationBuffer {
+	public static final int LINEAR_TONE_MAPPING = 0;
+	public static final int LOG_TONE_MAPPING = 1;
+	public static final int HISTOGRAM_EQUALIZED_TONE_MAPPING = 2;
+
+	// upper bound on the number of count levels used for equalization
+	private static final int MAX_EQUALIZATION_LEVELS = 65536;
+
+	private int width;
+	private int height;
+	private int counts[];
+
+	public LineAccumulationBuffer(int width, int height) {
+		this.width = width;
+		this.height = height;
+		counts = new int[width * height];
+	}
+
+	/**
+	 * Creates a copy of the given buffer.
+	 */
+	public LineAccumulationBuffer(LineAccumulationBuffer source) {
+		width = source.width;
+		height = source.height;
+		counts = source.counts.clone();
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Adds one hit to every pixel covered by the segment from (x0, y0) to
+	 * (x1, y1) that falls in the columns minX (inclusive) to maxX
+	 * (exclusive). Segments wider than one pixel are thickened across the
+	 * minor axis of the segment.
+	 */
+	public void addLine(int x0, int y0, int x1, int y1, int lineSize,
+			int minX, int maxX) {
+		addLine(x0, y0, x1, y1, lineSize, minX, maxX, 1);
+	}
+
+	/**
+	 * Adds weight to every pixel covered by the segment. A segment added
+	 * earlier is removed exactly by adding it again with a weight of -1.
+	 */
+	public void addLine(int x0, int y0, int x1, int y1, int lineSize,
+			int minX, int maxX, int weight) {
+		if (minX < 0) {
+			minX = 0;
+		}
+		if (maxX > width) {
+			maxX = width;
+		}
+
+		int dx = Math.abs(x1 - x0);
+		int dy = Math.abs(y1 - y0);
+		int stepX = x0 < x1 ? 1 : -1;
+		int stepY = y0 < y1 ? 1 : -1;
+		boolean xMajor = dx >= dy;
+		int runStart = -(lineSize - 1) / 2;
+		int runEnd = runStart + lineSize;
+
+		int x = x0;
+		int y = y0;
+		int error = dx - dy;
+		while (true) {
+			if (xMajor) {
+				if (x >= minX && x < maxX) {
+					for (int i = runStart; i < runEnd; i++) {
+						int py = y + i;
+						if (py >= 0 && py < height) {
+							counts[(py * width) + x] += weight;
+						}
+					}
+				}
+			} else if (y >= 0 && y < height) {
+				int rowOffset = y * width;
+				for (int i = runStart; i < runEnd; i++) {
+					int px = x + i;
+					if (px >= minX && px < maxX) {
+						counts[rowOffset + px] += weight;
+					}
+				}
+			}
+
+			if (x == x1 && y == y1) {
+				break;
+			}
+			int error2 = error * 2;
+			if (error2 > -dy) {
+				error -= dy;
+				x += stepX;
+			}
+			if (error2 < dx) {
+				error += dx;
+				y += stepY;
+			}
+		}
+	}
+
+	/**
+	 * Copies columnCount columns of counts starting at sourceX in the source
+	 * buffer to the columns starting at targetX in this buffer. Both buffers
+	 * must have the same height.
+	 */
+	public void copyColumns(LineAccumulationBuffer source, int sourceX,
+			int targetX, int columnCount) {
+		if (sourceX < 0 || targetX < 0) {
+			return;
+		}
+		columnCount = Math.min(columnCount, Math.min(source.width - sourceX,
+				width - targetX));
+		if (columnCount <= 0) {
+			return;
+		}
+		for (int y = 0; y < height; y++) {
+			System.arraycopy(source.counts, (y * source.width) + sourceX,
+					counts, (y * width) + targetX, columnCount);
+		}
+	}
+
+	public int getMaxCount() {
+		int maxCount = 0;
+		for (int count : counts) {
+			if (count > maxCount) {
+				maxCount = count;
+			}
+		}
+		return maxCount;
+	}
+
+	/**
+	 * Tone maps the counts to an image in the given color. A pixel covered by
+	 * a single segment gets the alpha of the color and the most covered pixel
+	 * is fully opaque.
+	 */
+	public BufferedImage toImage(Color color, int toneMapping) {
+		BufferedImage image = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_ARGB);
+		int maxCount = getMaxCount();
+		if (maxCount == 0) {
+			return image;
+		}
+
+		int rgb = color.getRGB() & 0x00ffffff;
+		int minAlpha = color.getAlpha();
+
+		// map each count level to a normalized intensity once
+		int levelCount = Math.min(maxCount, MAX_EQUALIZATION_LEVELS - 1) + 1;
+		float levelIntensity[] = new float[levelCount];
+		if (toneMapping == HISTOGRAM_EQUALIZED_TONE_MAPPING) {
+			long levelHistogram[] = new long[levelCount];
+			long coveredPixelCount = 0;
+			for (int count : counts) {
+				if (count > 0) {
+					levelHistogram[toLevel(count, maxCount, levelCount)]++;
+					coveredPixelCount++;
+				}
+			}
+			long cumulativeCount = 0;
+			for (int level = 1; level < levelCount; level++) {
+				cumulativeCount += levelHistogram[level];
+				levelIntensity[level] = (float) cumulativeCount / coveredPixelCount;
+			}
+		} else if (toneMapping == LOG_TONE_MAPPING) {
+			double logMax = Math.log1p(maxCount);
+			for (int level = 1; level < levelCount; level++) {
+				levelIntensity[level] = (float) (Math.log1p(toCount(level, maxCount, levelCount)) / logMax);
+			}
+		} else {
+			for (int level = 1; level < levelCount; level++) {
+				levelIntensity[level] = (float) toCount(level, maxCount, levelCount) / maxCount;
+			}
+		}
+
+		int levelPixels[] = new int[levelCount];
+		for (int level = 1; level < levelCount; level++) {
+			int alpha = minAlpha + (int) (levelIntensity[level] * (255 - minAlpha));
+			levelPixels[level] = (Math.min(alpha, 255) << 24) | rgb;
+		}
+
+		int pixels[] = ((DataBufferInt) image.getRaster().getDataBuffer())
+				.getData();
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] > 0) {
+				pixels[i] = levelPixels[toLevel(counts[i], maxCount, levelCount)];
+			}
+		}
+		return image;
+	}
+
+	private static int toLevel(int count, int maxCount, int levelCount) {
+		if (maxCount < levelCount) {
+			return count;
+		}
+		return Math.max(1, (int) (((long) count * (levelCount - 1)) / maxCount));
+	}
+
+	private static double toCount(int level, int maxCount, int levelCount) {
+		if (maxCount < levelCount) {
+			return level;
+		}
+		return ((double) level * maxCount) / (levelCount - 1);
+	}
+}
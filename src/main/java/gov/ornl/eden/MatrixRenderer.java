@@ -18,22 +18,24 @@ public class MatrixRenderer extends Renderer {
 	// private DataModel dataModel;
 	private int cellSize;
 	private Rectangle matrixRect;
-	private boolean useQueryCorrelations;
+	private QueryStatistics queryStatistics;
 	private ArrayList<Column> columns;
 	private DataModel dataModel;
 
+	/**
+	 * queryStatistics hold the correlations of the queried tuples to show, or
+	 * are null to show the correlations of all tuples.
+	 */
 	public MatrixRenderer(DataModel dataModel, int cellSize, Rectangle matrixRect,
-			boolean useQueryCorrelations, ArrayList<Column> columns) {
+			QueryStatistics queryStatistics, ArrayList<Column> columns) {
 		this.dataModel = dataModel;
 		this.cellSize = cellSize;
 		this.matrixRect = matrixRect;
-		this.useQueryCorrelations = useQueryCorrelations;
+		this.queryStatistics = queryStatistics;
 		this.columns = columns;
 	}
 
 	public void run() {
-		isRunning = true;
-
 		image = new BufferedImage(matrixRect.width, matrixRect.height,
 				BufferedImage.TYPE_INT_ARGB);
 		Graphics2D g2 = (Graphics2D) image.getGraphics();
@@ -57,9 +59,9 @@ public class MatrixRenderer extends Renderer {
 			// column.getCorrelationCoefficients();
 			ArrayList<Float> correlationList;
 
-			if (useQueryCorrelations && (dataModel.getActiveQuery().getColumnQuerySummaryStats(column) != null)) {
-				correlationList = dataModel.getActiveQuery().getColumnQuerySummaryStats(column).getCorrelationCoefficients();
-//				correlationList = column.getQueryCorrelationCoefficients();
+			if (queryStatistics != null) {
+				correlationList = queryStatistics.getCorrelationCoefficients(
+						dataModel.getColumnIndex(column));
 			} else {
 				correlationList = column.getSummaryStats().getCorrelationCoefficients();
 			}
@@ -0,0 +1,91 @@
+package gov.ornl.eden;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * A least recently used cache whose capacity is a number of bytes rather
+ * than a number of entries. The size of each value is estimated when it is
+ * added, and the least recently used entries are evicted until the total
+ * fits the budget again. Values larger than the whole budget are not stored.
+ *
+ * The cache is shared between renderer threads and the event dispatch
+ * thread, so all methods are synchronized.
+ */
+public class MemoryBoundedCache<K, V> {
+	private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<K, Entry<V>>(
+			16, 0.75f, true);
+	private final ToLongFunction<V> sizeEstimator;
+	private long maxBytes;
+	private long totalBytes = 0;
+
+	public MemoryBoundedCache(long maxBytes, ToLongFunction<V> sizeEstimator) {
+		this.maxBytes = maxBytes;
+		this.sizeEstimator = sizeEstimator;
+	}
+
+	public synchronized V get(K key) {
+		Entry<V> entry = entries.get(key);
+		return entry == null ? null : entry.value;
+	}
+
+	public synchronized void put(K key, V value) {
+		long size = sizeEstimator.applyAsLong(value);
+		remove(key);
+		if (size > maxBytes) {
+			return;
+		}
+		entries.put(key, new Entry<V>(value, size));
+		totalBytes += size;
+		evict();
+	}
+
+	public synchronized void remove(K key) {
+		Entry<V> entry = entries.remove(key);
+		if (entry != null) {
+			totalBytes -= entry.size;
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		totalBytes = 0;
+	}
+
+	public synchronized int getEntryCount() {
+		return entries.size();
+	}
+
+	public synchronized long getSizeInBytes() {
+		return totalBytes;
+	}
+
+	public synchronized long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public synchronized void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		evict();
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+		while (totalBytes > maxBytes && iterator.hasNext()) {
+			totalBytes -= iterator.next().getValue().size;
+			iterator.remove();
+		}
+	}
+
+	private static class Entry<V> {
+		final V value;
+		final long size;
+
+		Entry(V value, long size) {
+			this.value = value;
+			this.size = size;
+		}
+	}
+}
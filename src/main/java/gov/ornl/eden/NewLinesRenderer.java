@@ -63,7 +63,6 @@ public class NewLinesRenderer extends Renderer {
 	}
 
 	public void run() {
-		isRunning = true;
 		// log.debug("started rendering");
 
 		for (fadeCounter = fadeSteps; fadeCounter >= 0; fadeCounter--) {
@@ -105,7 +104,7 @@ public class NewLinesRenderer extends Renderer {
 			}
 
 			try {
-				sleep(5);
+				Thread.sleep(5);
 			} catch (InterruptedException e) {
 				e.printStackTrace();
 			}
@@ -62,6 +62,8 @@ public class PCAxesRenderer extends Renderer {
 	private boolean useQueryFrequency;
 	private boolean antialias;
 	private int correlationIndicatorHeight;
+	private QueryStatistics queryStatistics;
+	private double queryHistograms[][];
 
 	public PCAxesRenderer(DataModel dataModel, int screenWidth,
 			int screenHeight, int axisBarWidth, boolean showAxesAsBars,
@@ -93,9 +95,23 @@ public class PCAxesRenderer extends Renderer {
 		// scatterplotOffset = (axisSpacing - scatterplotSize) / 2;
 	}
 
-	public void run() {
-		isRunning = true;
+	/**
+	 * Sets the statistics of the queried tuples, which replace the data
+	 * model's query histograms and correlations if they are given.
+	 */
+	public void setQueryStatistics(QueryStatistics queryStatistics) {
+		this.queryStatistics = queryStatistics;
+	}
 
+	/**
+	 * Sets the query histograms of the columns by data model index, which are
+	 * drawn instead of those of the query statistics where they are not null.
+	 */
+	public void setQueryHistograms(double queryHistograms[][]) {
+		this.queryHistograms = queryHistograms;
+	}
+
+	public void run() {
 		image = new BufferedImage(screenWidth, screenHeight,
 				BufferedImage.TYPE_INT_ARGB);
 		Graphics2D g2 = (Graphics2D) image.getGraphics();
@@ -128,9 +144,11 @@ public class PCAxesRenderer extends Renderer {
 
 				// g2.setColor(AXIS_BAR_LINE_COLOR);
 				double freqData[];
-				if (useQueryFrequency && (dataModel.getActiveQuery().getColumnQuerySummaryStats(axis.column) != null)) {
-					freqData = dataModel.getActiveQuery().getColumnQuerySummaryStats(axis.column).getHistogram().getArray();
-//					freqData = axis.column.getQueryHistogram().getArray();
+				if (useQueryFrequency && queryHistograms != null
+						&& queryHistograms[axis.dataModelIndex] != null) {
+					freqData = queryHistograms[axis.dataModelIndex];
+				} else if (useQueryFrequency && queryStatistics != null) {
+					freqData = queryStatistics.getHistogram(axis.dataModelIndex);
 				} else {
 					freqData = axis.column.getSummaryStats().getHistogram().getArray();
 				}
@@ -388,9 +406,9 @@ public class PCAxesRenderer extends Renderer {
 			if (showCorrelationIndicators) {
 				g2.setStroke(new BasicStroke(1.f));
 				ArrayList<Float> correlationCoefficients;
-				if (useQueryCorrelations && (dataModel.getActiveQuery().getColumnQuerySummaryStats(axis.column) != null)) {
-					correlationCoefficients = dataModel.getActiveQuery().getColumnQuerySummaryStats(axis.column).getCorrelationCoefficients();
-//					correlationCoefficients = axis.column.getQueryCorrelationCoefficients();
+				if (useQueryCorrelations && queryStatistics != null
+						&& queryStatistics.hasCorrelations()) {
+					correlationCoefficients = queryStatistics.getCorrelationCoefficients(axis.dataModelIndex);
 				} else {
 					correlationCoefficients = axis.column.getSummaryStats().getCorrelationCoefficients();
 				}
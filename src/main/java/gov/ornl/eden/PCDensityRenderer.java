@@ -0,0 +1,255 @@
+package gov.ornl.eden;
+
+import gov.ornl.datatable.DataModel;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Renders the focus or context tuples as aggregate line density. For each
+ * pair of adjacent axes the tuples are counted in a 2D grid of (left axis
+ * bin, right axis bin) cells and every non-empty cell is drawn as a single
+ * segment whose opacity encodes the cell count. The drawing cost depends on
+ * the number of bins and axis pairs rather than the number of tuples.
+ *
+ * If a binned data cube is given, the counts of the axis pairs it can answer
+ * for the query are read from it and only the other pairs count tuples.
+ */
+public class PCDensityRenderer extends Renderer {
+	private final Logger log = LoggerFactory.getLogger(PCDensityRenderer.class);
+
+	public static final int LINEAR_DENSITY_SCALE = 0;
+	public static final int LOG_DENSITY_SCALE = 1;
+
+	public static final int DEFAULT_BIN_COUNT = 64;
+
+	// keep the sparsest bins visible against the background
+	private static final float MIN_ALPHA = 0.08f;
+
+	private DataModel dataModel;
+	private int width;
+	private int height;
+	private int axisBarWidthHalf;
+	private ArrayList<PCAxis> axisList;
+	private PCPolylineBuffer tupleLines;
+	private Color lineColor;
+	private boolean showFocusLines;
+	private boolean showContextLines;
+	private boolean antialias;
+	private int lineSize;
+	private int binCount;
+	private int densityScale;
+	private QueryFlagSnapshot queryFlags;
+	private BinnedDataCube dataCube;
+	private QueryState queryState;
+
+	public PCDensityRenderer(DataModel dataModel, int width, int height,
+			int axisBarWidth, boolean showAxesAsBars,
+			ArrayList<PCAxis> axisList, Color lineColor,
+			boolean showFocusLines, boolean showContextLines,
+			boolean antialias, PCPolylineBuffer tupleLines, int lineSize,
+			int binCount, int densityScale) {
+		this.dataModel = dataModel;
+		this.width = width;
+		this.height = height;
+		this.axisList = new ArrayList<PCAxis>(axisList);
+		this.tupleLines = tupleLines;
+		this.lineColor = lineColor;
+		this.showFocusLines = showFocusLines;
+		this.showContextLines = showContextLines;
+		this.antialias = antialias;
+		this.lineSize = lineSize;
+		this.binCount = binCount;
+		this.densityScale = densityScale;
+		if (showAxesAsBars) {
+			axisBarWidthHalf = axisBarWidth / 2;
+		} else {
+			axisBarWidthHalf = 0;
+		}
+	}
+
+	/**
+	 * Sets the query flags that decide the focus tuples instead of those of
+	 * the data model, for instance while a query is brushed.
+	 */
+	public void setQueryFlags(QueryFlagSnapshot queryFlags) {
+		this.queryFlags = queryFlags;
+	}
+
+	public void setBinnedDataCube(BinnedDataCube dataCube,
+			QueryState queryState) {
+		this.dataCube = dataCube;
+		this.queryState = queryState;
+	}
+
+	public void run() {
+		int pairCount = axisList.size() - 1;
+		if (pairCount < 1 || tupleLines == null) {
+			isRunning = false;
+			return;
+		}
+
+		// count tuples in each (left bin, right bin) cell of each axis pair
+		int binCounts[][] = new int[pairCount][];
+		boolean countedPairs = dataCube != null;
+		if (dataCube != null) {
+			for (int ipair = 0; ipair < pairCount; ipair++) {
+				binCounts[ipair] = dataCube.getDensityCounts(queryState,
+						axisList.get(ipair).dataModelIndex,
+						axisList.get(ipair + 1).dataModelIndex, binCount,
+						showFocusLines, showContextLines);
+				countedPairs &= binCounts[ipair] != null;
+			}
+		}
+		if (!countedPairs) {
+			countTuples(binCounts);
+		}
+		if (!isRunning) {
+			return;
+		}
+
+		int maxCount = 0;
+		for (int ipair = 0; ipair < pairCount; ipair++) {
+			for (int count : binCounts[ipair]) {
+				if (count > maxCount) {
+					maxCount = count;
+				}
+			}
+		}
+
+		BufferedImage newImage = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2 = newImage.createGraphics();
+		if (antialias) {
+			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_ON);
+		} else {
+			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_OFF);
+		}
+		g2.setStroke(new BasicStroke(lineSize));
+
+		if (maxCount > 0) {
+			for (int ipair = 0; ipair < pairCount; ipair++) {
+				if (!isRunning) {
+					g2.dispose();
+					return;
+				}
+				drawAxisPair(g2, axisList.get(ipair), axisList.get(ipair + 1),
+						binCounts[ipair], maxCount);
+			}
+		}
+		g2.dispose();
+
+		if (isRunning) {
+			image = newImage;
+			isRunning = false;
+			fireRendererFinished();
+		}
+	}
+
+	// counts the tuples of the pairs the data cube did not answer
+	private void countTuples(int binCounts[][]) {
+		boolean countTuple[] = new boolean[tupleLines.getTupleCount()];
+		for (int i = 0; i < countTuple.length; i++) {
+			boolean queried = queryFlags != null ? queryFlags.getQueryFlag(i)
+					: dataModel.getTuple(i).getQueryFlag();
+			countTuple[i] = queried ? showFocusLines : showContextLines;
+		}
+
+		int axisBins[][] = new int[axisList.size()][];
+		for (int ipair = 0; ipair < binCounts.length; ipair++) {
+			if (!isRunning) {
+				return;
+			}
+			if (binCounts[ipair] != null) {
+				continue;
+			}
+			for (int iaxis = ipair; iaxis <= ipair + 1; iaxis++) {
+				if (axisBins[iaxis] == null) {
+					PCAxis axis = axisList.get(iaxis);
+					short yPositions[] = tupleLines.getAxisY(iaxis);
+					axisBins[iaxis] = new int[yPositions.length];
+					for (int i = 0; i < yPositions.length; i++) {
+						axisBins[iaxis][i] = toBin(axis, yPositions[i]);
+					}
+				}
+			}
+
+			int leftBins[] = axisBins[ipair];
+			int rightBins[] = axisBins[ipair + 1];
+			int counts[] = new int[binCount * binCount];
+			for (int i = 0; i < countTuple.length; i++) {
+				if (countTuple[i]) {
+					counts[(leftBins[i] * binCount) + rightBins[i]]++;
+				}
+			}
+			binCounts[ipair] = counts;
+		}
+	}
+
+	private void drawAxisPair(Graphics2D g2, PCAxis leftAxis,
+			PCAxis rightAxis, int counts[], int maxCount) {
+		// sort the non-empty bins so the densest segments are drawn last
+		long sortedBins[] = new long[counts.length];
+		int nonEmptyBinCount = 0;
+		for (int ibin = 0; ibin < counts.length; ibin++) {
+			if (counts[ibin] > 0) {
+				sortedBins[nonEmptyBinCount++] = ((long) counts[ibin] << 32) | ibin;
+			}
+		}
+		Arrays.sort(sortedBins, 0, nonEmptyBinCount);
+
+		int x0 = leftAxis.xPosition + axisBarWidthHalf;
+		int x1 = rightAxis.xPosition - axisBarWidthHalf;
+		int lastCount = -1;
+		for (int i = 0; i < nonEmptyBinCount; i++) {
+			int count = (int) (sortedBins[i] >>> 32);
+			int bin = (int) (sortedBins[i] & 0xffffffffL);
+
+			if (count != lastCount) {
+				g2.setColor(getDensityColor(count, maxCount));
+				lastCount = count;
+			}
+
+			int y0 = toScreenY(leftAxis, bin / binCount);
+			int y1 = toScreenY(rightAxis, bin % binCount);
+			g2.drawLine(x0, y0, x1, y1);
+		}
+	}
+
+	private Color getDensityColor(int count, int maxCount) {
+		float norm;
+		if (densityScale == LOG_DENSITY_SCALE) {
+			norm = (float) (Math.log1p(count) / Math.log1p(maxCount));
+		} else {
+			norm = (float) count / maxCount;
+		}
+		float alpha = MIN_ALPHA + (norm * (1.f - MIN_ALPHA));
+		return new Color(lineColor.getRed(), lineColor.getGreen(),
+				lineColor.getBlue(), (int) (alpha * 255));
+	}
+
+	private int toBin(PCAxis axis, int y) {
+		int bin = (int) (((float) (axis.bottomPosition - y) / axis.axisHeight) * binCount);
+		if (bin < 0) {
+			return 0;
+		} else if (bin >= binCount) {
+			return binCount - 1;
+		}
+		return bin;
+	}
+
+	private int toScreenY(PCAxis axis, int bin) {
+		return axis.bottomPosition
+				- (int) (((bin + 0.5f) / binCount) * axis.axisHeight);
+	}
+}
@@ -0,0 +1,59 @@
+package gov.ornl.eden;
+
+/**
+ * The hit counts of one parallel coordinate line layer, together with the
+ * polylines and the query flags they were accumulated from. A renderer that
+ * is given the accumulation of the previous render can update a copy of the
+ * counts by subtracting the tuples that left the layer and adding the tuples
+ * that entered it, instead of accumulating every tuple again.
+ *
+ * An accumulation is not modified after it has been created.
+ */
+public class PCLineAccumulation {
+	private PCPolylineBuffer tupleLines;
+	private QueryFlagSnapshot queryFlags;
+	private LineAccumulationBuffer counts;
+	private boolean focusLayer;
+	private int lineSize;
+	private int axisBarWidthHalf;
+
+	public PCLineAccumulation(PCPolylineBuffer tupleLines,
+			QueryFlagSnapshot queryFlags, LineAccumulationBuffer counts,
+			boolean focusLayer, int lineSize, int axisBarWidthHalf) {
+		this.tupleLines = tupleLines;
+		this.queryFlags = queryFlags;
+		this.counts = counts;
+		this.focusLayer = focusLayer;
+		this.lineSize = lineSize;
+		this.axisBarWidthHalf = axisBarWidthHalf;
+	}
+
+	public PCPolylineBuffer getTupleLines() {
+		return tupleLines;
+	}
+
+	public QueryFlagSnapshot getQueryFlags() {
+		return queryFlags;
+	}
+
+	public LineAccumulationBuffer getCounts() {
+		return counts;
+	}
+
+	public boolean isFocusLayer() {
+		return focusLayer;
+	}
+
+	/**
+	 * Returns true if the counts were accumulated from the same polylines
+	 * with the same layer and line geometry, so that only the query flags
+	 * can differ.
+	 */
+	public boolean isCompatible(PCPolylineBuffer tupleLines, boolean focusLayer,
+			int lineSize, int axisBarWidthHalf, int width, int height) {
+		return this.tupleLines == tupleLines && this.focusLayer == focusLayer
+				&& this.lineSize == lineSize
+				&& this.axisBarWidthHalf == axisBarWidthHalf
+				&& counts.getWidth() == width && counts.getHeight() == height;
+	}
+}
@@ -1,17 +1,18 @@
 package gov.ornl.eden;
 
 import gov.ornl.datatable.DataModel;
-import gov.ornl.datatable.Tuple;
 
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
-import java.awt.Point;
 import java.awt.RenderingHints;
 import java.awt.geom.Ellipse2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +24,26 @@ public class PCLineRenderer extends Renderer {
 			6f, 6f);
 	public static final int DOT_SHAPE_WIDTH_HALF = (int) (DOT_SHAPE.width / 2.);
 
+	// below this many tuples the cost of the extra buffers outweighs the gain
+	public static final int MIN_PARALLEL_TUPLE_COUNT = 20000;
+
+	// draws each segment with Graphics2D
+	public static final int JAVA2D_RENDERING = 0;
+	// counts segment hits per pixel and tone maps the counts to an image
+	public static final int ACCUMULATION_RENDERING = 1;
+
+	// progressive rendering only pays off when a full pass is noticeably slow
+	public static final int MIN_PROGRESSIVE_TUPLE_COUNT = 100000;
+	// time between intermediate images in progressive mode
+	public static final long PROGRESSIVE_FRAME_INTERVAL = 50;
+
+	// tuples drawn between checks of the frame timer
+	private static final int PROGRESSIVE_CHUNK_SIZE = 2048;
+	// tuples accumulated per round of axis pair tasks
+	private static final int ACCUMULATION_CHUNK_SIZE = 65536;
+
+	private static final ForkJoinPool RENDER_POOL = ForkJoinPool.commonPool();
+
 	private DataModel dataModel;
 	private int width;
 	private int height;
@@ -34,14 +55,35 @@ public class PCLineRenderer extends Renderer {
 	private Color lineColor;
 	private boolean showFocusLines;
 	private boolean showContextLines;
-	private ArrayList<Point[]> tupleLines;
+	private PCPolylineBuffer tupleLines;
 	private boolean antialias;
 	private int lineSize;
+	private boolean parallel;
+	private int renderingBackend;
+	private int toneMapping;
+	private boolean progressive;
+	private boolean complete = false;
+	private long renderTime;
+	private int sampleIndices[];
+	private int sampleSize;
+	private boolean sampleQueryFlags[];
+	private MemoryBoundedCache<PCStripKey, BufferedImage> imageStripCache;
+	private MemoryBoundedCache<PCStripKey, LineAccumulationBuffer> countStripCache;
+	private int queryGeneration;
+	private int axisTop;
+	private int axisBottom;
+	private QueryFlagSnapshot queryFlags;
+	private PCLineAccumulation previousAccumulation;
+	private PCLineAccumulation lineAccumulation;
 
 	public PCLineRenderer(DataModel dataModel, int width, int height,
 			int axisBarWidth, int axisSpacing, boolean showAxesAsBars,
 			Color lineColor, boolean showFocusLines, boolean showContextLines,
-			boolean antialias, ArrayList<Point[]> tupleLines, int lineSize) {
+			boolean antialias, PCPolylineBuffer tupleLines, int lineSize,
+			boolean parallel, int renderingBackend, int toneMapping) {
+		this.parallel = parallel;
+		this.renderingBackend = renderingBackend;
+		this.toneMapping = toneMapping;
 		this.showFocusLines = showFocusLines;
 		this.showContextLines = showContextLines;
 		this.dataModel = dataModel;
@@ -62,17 +104,486 @@ public class PCLineRenderer extends Renderer {
 		}
 	}
 
+	/**
+	 * Lets this renderer take the strips between adjacent axes from the given
+	 * caches instead of drawing them, and add the strips it draws. The image
+	 * cache is used by the Java2D back end and the count cache by the
+	 * accumulation back end. The lines are drawn with the given query flags,
+	 * which must be those of the query generation; the generation must change
+	 * whenever the flags change. The caches are not used if the flags are
+	 * null. axisTop and axisBottom are the vertical extent of the axes the y
+	 * positions of the tuple lines were mapped to.
+	 */
+	public void setStripCaches(
+			MemoryBoundedCache<PCStripKey, BufferedImage> imageStripCache,
+			MemoryBoundedCache<PCStripKey, LineAccumulationBuffer> countStripCache,
+			QueryFlagSnapshot queryFlags, int queryGeneration, int axisTop,
+			int axisBottom) {
+		this.imageStripCache = imageStripCache;
+		this.countStripCache = countStripCache;
+		this.queryFlags = queryFlags;
+		this.queryGeneration = queryGeneration;
+		this.axisTop = axisTop;
+		this.axisBottom = axisBottom;
+	}
+
+	/**
+	 * Gives the accumulation back end the query flags to render with and the
+	 * accumulation of the previous render of this layer. If the previous
+	 * accumulation is compatible and fewer tuples changed their query flag
+	 * than the layer holds, only the changed tuples are rasterized.
+	 */
+	public void setQueryDelta(QueryFlagSnapshot queryFlags,
+			PCLineAccumulation previousAccumulation) {
+		this.queryFlags = queryFlags;
+		this.previousAccumulation = previousAccumulation;
+	}
+
+	/**
+	 * Returns the accumulation of the completed render, or null if the render
+	 * did not use query flags that can be compared with a later render.
+	 */
+	public PCLineAccumulation getLineAccumulation() {
+		return lineAccumulation;
+	}
+
+	public PCPolylineBuffer getTupleLines() {
+		return tupleLines;
+	}
+
+	/**
+	 * In progressive mode the tuples are drawn in a stratified order and an
+	 * intermediate image is published through fireRendererFinished() every
+	 * PROGRESSIVE_FRAME_INTERVAL milliseconds until the pass is complete.
+	 * Only used for at least MIN_PROGRESSIVE_TUPLE_COUNT tuples.
+	 */
+	public void setProgressive(boolean progressive) {
+		this.progressive = progressive;
+	}
+
+	public boolean isProgressive() {
+		return progressive;
+	}
+
+	/**
+	 * Restricts the render to the first sampleSize tuples of the given tuple
+	 * sample, using the given query flags (indexed by sample position) in
+	 * place of the tuple query flags. Used for quick previews of a query that
+	 * has not been applied to the data model yet.
+	 */
+	public void setTupleSample(int sampleIndices[], int sampleSize,
+			boolean sampleQueryFlags[]) {
+		this.sampleIndices = sampleIndices;
+		this.sampleSize = sampleSize;
+		this.sampleQueryFlags = sampleQueryFlags;
+	}
+
+	public boolean isSampled() {
+		return sampleIndices != null;
+	}
+
+	public int getSampleSize() {
+		return sampleSize;
+	}
+
+	/**
+	 * Returns the time in milliseconds the last complete pass took.
+	 */
+	public long getRenderTime() {
+		return renderTime;
+	}
+
+	/**
+	 * Returns true once the final image has been rendered, as opposed to an
+	 * intermediate progressive image.
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
 	public void run() {
 		// log.debug("Starting rendering function " + this.getId());
-		isRunning = true;
+		long startTime = System.currentTimeMillis();
 
-		int linesDrawn = 0;
-		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		PCStripKey stripKeys[] = getStripKeys();
+		BufferedImage newImage;
+		if (renderingBackend == ACCUMULATION_RENDERING) {
+			newImage = renderAccumulation(stripKeys);
+		} else {
+			newImage = renderJava2D(stripKeys);
+		}
 
-		if (!isRunning)
+		if (isRunning && newImage != null) {
+			renderTime = System.currentTimeMillis() - startTime;
+			image = newImage;
+			complete = true;
+			isRunning = false;
+			fireRendererFinished();
+		}
+	}
+
+	private boolean isProgressivePass() {
+		return progressive && sampleIndices == null
+				&& tupleLines.getTupleCount() >= MIN_PROGRESSIVE_TUPLE_COUNT;
+	}
+
+	private void publishIntermediateImage(BufferedImage intermediateImage) {
+		if (isRunning) {
+			image = intermediateImage;
+			fireRendererFinished();
+		}
+	}
+
+	/**
+	 * Returns a stride that is coprime to tupleCount and close to tupleCount
+	 * divided by the golden ratio. Visiting (k * stride) % tupleCount for
+	 * increasing k reaches every tuple once, and every prefix of that
+	 * sequence is spread evenly over the whole table.
+	 */
+	private static int getProgressiveStride(int tupleCount) {
+		int stride = Math.max(1, (int) (tupleCount * 0.6180339887));
+		while (gcd(stride, tupleCount) != 1) {
+			stride++;
+		}
+		return stride;
+	}
+
+	private static int gcd(int a, int b) {
+		while (b != 0) {
+			int t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+
+	private BufferedImage renderJava2D(PCStripKey stripKeys[]) {
+		BufferedImage newImage = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_ARGB);
+		boolean drawPair[] = new boolean[tupleLines.getAxisCount()];
+		int redrawPairCount = 0;
+		Graphics2D g2 = newImage.createGraphics();
+		for (int iaxis = 1; iaxis < tupleLines.getAxisCount(); iaxis++) {
+			BufferedImage stripImage = null;
+			if (stripKeys[iaxis] != null) {
+				stripImage = imageStripCache.get(stripKeys[iaxis]);
+			}
+			if (stripImage == null) {
+				drawPair[iaxis] = true;
+				redrawPairCount++;
+			} else {
+				g2.drawImage(stripImage, tupleLines.getAxisX(iaxis - 1), 0, null);
+			}
+		}
+		g2.dispose();
+
+		if (redrawPairCount > 0 && (isProgressivePass() || isSampled())) {
+			if (!drawTupleLinesChunked(newImage, drawPair, isProgressivePass())) {
+				return null;
+			}
+		} else if (redrawPairCount > 0) {
+			int taskCount = getTaskCount(tupleLines.getTupleCount());
+			if (taskCount > 1) {
+				if (!renderParallel(newImage, taskCount, drawPair)) {
+					return null;
+				}
+			} else if (!drawTupleLines(newImage, 0, tupleLines.getTupleCount(), drawPair)) {
+				return null;
+			}
+		}
+
+		for (int iaxis = 1; iaxis < tupleLines.getAxisCount(); iaxis++) {
+			if (drawPair[iaxis] && stripKeys[iaxis] != null) {
+				int x0 = tupleLines.getAxisX(iaxis - 1);
+				int x1 = tupleLines.getAxisX(iaxis);
+				BufferedImage stripImage = new BufferedImage(x1 - x0, height,
+						BufferedImage.TYPE_INT_ARGB);
+				Graphics2D stripG2 = stripImage.createGraphics();
+				stripG2.drawImage(newImage.getSubimage(x0, 0, x1 - x0, height),
+						0, 0, null);
+				stripG2.dispose();
+				imageStripCache.put(stripKeys[iaxis], stripImage);
+			}
+		}
+
+		return newImage;
+	}
+
+	/**
+	 * Rasterizes the segments into a hit-count buffer and tone maps it. Each
+	 * axis pair owns the columns from its left axis up to its right axis, so
+	 * pairs can be accumulated concurrently into the same buffer. The tuples
+	 * are processed in chunks, in stratified order for a progressive pass.
+	 * Tone mapping normalizes the counts, so a sampled render looks like a
+	 * full one.
+	 */
+	private BufferedImage renderAccumulation(PCStripKey stripKeys[]) {
+		if (canApplyQueryDelta()) {
+			int changedTuples[] = queryFlags.getChangedTuples(previousAccumulation
+					.getQueryFlags());
+			if (changedTuples != null && changedTuples.length < getLayerTupleCount()) {
+				return renderAccumulationDelta(stripKeys, changedTuples);
+			}
+		}
+
+		LineAccumulationBuffer accumulation = new LineAccumulationBuffer(width,
+				height);
+
+		ArrayList<Integer> redrawAxes = new ArrayList<Integer>();
+		for (int iaxis = 1; iaxis < tupleLines.getAxisCount(); iaxis++) {
+			LineAccumulationBuffer stripCounts = null;
+			if (stripKeys[iaxis] != null) {
+				stripCounts = countStripCache.get(stripKeys[iaxis]);
+			}
+			if (stripCounts == null) {
+				redrawAxes.add(iaxis);
+			} else {
+				accumulation.copyColumns(stripCounts, 0,
+						tupleLines.getAxisX(iaxis - 1), stripCounts.getWidth());
+			}
+		}
+
+		boolean progressivePass = isProgressivePass();
+		TupleCursor cursor = new TupleCursor(progressivePass);
+		boolean parallelPass = parallel && redrawAxes.size() > 1
+				&& cursor.getPassLength() >= MIN_PARALLEL_TUPLE_COUNT;
+		int chunkIndices[] = new int[Math.min(ACCUMULATION_CHUNK_SIZE,
+				Math.max(cursor.getPassLength(), 1))];
+		long lastFrameTime = System.currentTimeMillis();
+
+		while (cursor.hasNext() && !redrawAxes.isEmpty()) {
+			int chunkSize = cursor.nextChunk(chunkIndices);
+			accumulatePairs(accumulation, redrawAxes, chunkIndices, chunkSize,
+					1, parallelPass);
+
+			if (!isRunning) {
+				return null;
+			}
+
+			if (progressivePass && cursor.hasNext()
+					&& System.currentTimeMillis() - lastFrameTime >= PROGRESSIVE_FRAME_INTERVAL) {
+				publishIntermediateImage(accumulation.toImage(lineColor,
+						toneMapping));
+				lastFrameTime = System.currentTimeMillis();
+			}
+		}
+
+		cacheCountStrips(stripKeys, accumulation, redrawAxes);
+		if (queryFlags != null && !isSampled()) {
+			lineAccumulation = new PCLineAccumulation(tupleLines, queryFlags,
+					accumulation, showFocusLines, lineSize, axisBarWidthHalf);
+		}
+
+		return accumulation.toImage(lineColor, toneMapping);
+	}
+
+	/**
+	 * Updates a copy of the previous counts with the tuples whose query flag
+	 * changed: tuples that entered this layer are added and tuples that left
+	 * it are subtracted, so the cost follows the size of the change rather
+	 * than the size of the table.
+	 */
+	private BufferedImage renderAccumulationDelta(PCStripKey stripKeys[],
+			int changedTuples[]) {
+		LineAccumulationBuffer accumulation = new LineAccumulationBuffer(
+				previousAccumulation.getCounts());
+
+		int enteredTuples[] = new int[changedTuples.length];
+		int enteredCount = 0;
+		int leftTuples[] = new int[changedTuples.length];
+		int leftCount = 0;
+		for (int ituple : changedTuples) {
+			if (queryFlags.getQueryFlag(ituple) == showFocusLines) {
+				enteredTuples[enteredCount++] = ituple;
+			} else {
+				leftTuples[leftCount++] = ituple;
+			}
+		}
+
+		ArrayList<Integer> axes = new ArrayList<Integer>();
+		for (int iaxis = 1; iaxis < tupleLines.getAxisCount(); iaxis++) {
+			axes.add(iaxis);
+		}
+		boolean parallelPass = parallel && axes.size() > 1
+				&& changedTuples.length >= MIN_PARALLEL_TUPLE_COUNT;
+		accumulatePairs(accumulation, axes, leftTuples, leftCount, -1,
+				parallelPass);
+		accumulatePairs(accumulation, axes, enteredTuples, enteredCount, 1,
+				parallelPass);
+		if (!isRunning) {
+			return null;
+		}
+
+		cacheCountStrips(stripKeys, accumulation, axes);
+		lineAccumulation = new PCLineAccumulation(tupleLines, queryFlags,
+				accumulation, showFocusLines, lineSize, axisBarWidthHalf);
+
+		return accumulation.toImage(lineColor, toneMapping);
+	}
+
+	private boolean canApplyQueryDelta() {
+		return queryFlags != null && previousAccumulation != null
+				&& !isSampled() && showFocusLines != showContextLines
+				&& previousAccumulation.isCompatible(tupleLines, showFocusLines,
+						lineSize, axisBarWidthHalf, width, height);
+	}
+
+	/**
+	 * Returns the number of tuples drawn in this layer, which is what a full
+	 * accumulation pass costs.
+	 */
+	private int getLayerTupleCount() {
+		if (showFocusLines) {
+			return queryFlags.getQueriedTupleCount();
+		}
+		return queryFlags.getTupleCount() - queryFlags.getQueriedTupleCount();
+	}
+
+	/**
+	 * Accumulates the given tuples into the given axis pairs, one task per
+	 * pair.
+	 */
+	private void accumulatePairs(LineAccumulationBuffer accumulation,
+			ArrayList<Integer> axes, int tupleIndices[], int tupleIndexCount,
+			int weight, boolean parallelPass) {
+		if (tupleIndexCount == 0) {
 			return;
+		}
 
-		Graphics2D g2 = (Graphics2D) image.getGraphics();
+		ArrayList<AccumulatePairTask> tasks = new ArrayList<AccumulatePairTask>();
+		for (int iaxis : axes) {
+			tasks.add(new AccumulatePairTask(accumulation, iaxis, tupleIndices,
+					tupleIndexCount, weight));
+		}
+		if (parallelPass) {
+			for (AccumulatePairTask task : tasks) {
+				RENDER_POOL.execute(task);
+			}
+			for (AccumulatePairTask task : tasks) {
+				task.join();
+			}
+		} else {
+			for (AccumulatePairTask task : tasks) {
+				task.invoke();
+			}
+		}
+	}
+
+	private void cacheCountStrips(PCStripKey stripKeys[],
+			LineAccumulationBuffer accumulation, ArrayList<Integer> axes) {
+		for (int iaxis : axes) {
+			if (stripKeys[iaxis] != null) {
+				int x0 = tupleLines.getAxisX(iaxis - 1);
+				int x1 = tupleLines.getAxisX(iaxis);
+				LineAccumulationBuffer stripCounts = new LineAccumulationBuffer(
+						x1 - x0, height);
+				stripCounts.copyColumns(accumulation, x0, 0, x1 - x0);
+				countStripCache.put(stripKeys[iaxis], stripCounts);
+			}
+		}
+	}
+
+	private void accumulatePair(LineAccumulationBuffer accumulation,
+			int rightAxis, int tupleIndices[], int tupleIndexCount, int weight) {
+		int leftX = tupleLines.getAxisX(rightAxis - 1);
+		int rightX = tupleLines.getAxisX(rightAxis);
+		int minX = rightAxis == 1 ? 0 : leftX;
+		int maxX = rightAxis == tupleLines.getAxisCount() - 1 ? width : rightX;
+
+		int x0 = leftX + axisBarWidthHalf;
+		int x1 = rightX - axisBarWidthHalf;
+		short y0[] = tupleLines.getAxisY(rightAxis - 1);
+		short y1[] = tupleLines.getAxisY(rightAxis);
+		for (int i = 0; i < tupleIndexCount; i++) {
+			if ((i & 0xfff) == 0 && !isRunning) {
+				return;
+			}
+			int ituple = tupleIndices[i];
+			accumulation.addLine(x0, y0[ituple], x1, y1[ituple], lineSize,
+					minX, maxX, weight);
+		}
+	}
+
+	/**
+	 * Returns the cache key of each axis pair, indexed by the right axis of
+	 * the pair. The keys are null if this render does not use the strip
+	 * cache, which is the case for sampled renders since their query flags
+	 * are not the data model's, and for renders without query flags.
+	 */
+	private PCStripKey[] getStripKeys() {
+		PCStripKey stripKeys[] = new PCStripKey[tupleLines.getAxisCount()];
+		boolean useCache = !isSampled() && queryFlags != null
+				&& (renderingBackend == ACCUMULATION_RENDERING ? countStripCache != null
+						: imageStripCache != null);
+		if (!useCache) {
+			return stripKeys;
+		}
+
+		for (int iaxis = 1; iaxis < tupleLines.getAxisCount(); iaxis++) {
+			int stripWidth = tupleLines.getAxisX(iaxis) - tupleLines.getAxisX(iaxis - 1);
+			if (stripWidth <= 0) {
+				continue;
+			}
+			stripKeys[iaxis] = new PCStripKey(
+					tupleLines.getAxisColumn(iaxis - 1),
+					tupleLines.getAxisColumn(iaxis), queryGeneration,
+					showFocusLines, lineColor, lineSize, antialias,
+					axisBarWidthHalf, stripWidth, height, axisTop, axisBottom);
+		}
+		return stripKeys;
+	}
+
+	/**
+	 * Returns the number of tiles to rasterize the given number of tuples
+	 * in, or 1 if they are drawn on the renderer thread.
+	 */
+	private int getTaskCount(int tupleCount) {
+		if (!parallel || tupleCount < MIN_PARALLEL_TUPLE_COUNT) {
+			return 1;
+		}
+		return Math.max(1, Math.min(RENDER_POOL.getParallelism(),
+				tupleCount / (MIN_PARALLEL_TUPLE_COUNT / 2)));
+	}
+
+	/**
+	 * Splits the tuples into contiguous shares that are rasterized into
+	 * separate buffers on the fork-join pool. The buffers are composited in
+	 * tuple order so the result matches the single-threaded drawing order.
+	 */
+	private boolean renderParallel(BufferedImage targetImage, int taskCount,
+			boolean drawPair[]) {
+		int tupleCount = tupleLines.getTupleCount();
+		int tuplesPerTask = (tupleCount + taskCount - 1) / taskCount;
+		ArrayList<LineRenderTask> tasks = new ArrayList<LineRenderTask>();
+		for (int start = 0; start < tupleCount; start += tuplesPerTask) {
+			tasks.add(new LineRenderTask(start, Math.min(start + tuplesPerTask,
+					tupleCount), drawPair));
+		}
+
+		for (LineRenderTask task : tasks) {
+			RENDER_POOL.execute(task);
+		}
+
+		Graphics2D g2 = targetImage.createGraphics();
+		for (LineRenderTask task : tasks) {
+			BufferedImage tileImage = task.join();
+			if (!isRunning || tileImage == null) {
+				g2.dispose();
+				return false;
+			}
+			g2.drawImage(tileImage, 0, 0, null);
+		}
+		g2.dispose();
+
+		return true;
+	}
+
+	private boolean drawTupleLines(BufferedImage targetImage, int startTuple,
+			int endTuple, boolean drawPair[]) {
+		if (!isRunning)
+			return false;
+
+		Graphics2D g2 = (Graphics2D) targetImage.getGraphics();
 		if (antialias) {
 			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
 					RenderingHints.VALUE_ANTIALIAS_ON);
@@ -84,41 +595,292 @@ public class PCLineRenderer extends Renderer {
 		g2.setColor(lineColor);
 		g2.setStroke(new BasicStroke(lineSize));
 
-		// for (int iTuple = 0; iTuple < dataModel.getTupleCount(); iTuple++) {
-		for (int i = 0; i < tupleLines.size(); i++) {
+		// resolve the focus/context filter once so the segment loops below
+		// only touch the y arrays of the current axis pair
+		boolean drawTuple[] = new boolean[endTuple - startTuple];
+		for (int i = startTuple; i < endTuple; i++) {
+			boolean queryFlag = queryFlags != null ? queryFlags.getQueryFlag(i)
+					: dataModel.getTuple(i).getQueryFlag();
+			drawTuple[i - startTuple] = queryFlag ? showFocusLines : showContextLines;
+		}
+
+		for (int iaxis = 1; iaxis < tupleLines.getAxisCount(); iaxis++) {
+			if (!drawPair[iaxis]) {
+				continue;
+			}
 			if (!isRunning) {
 				// log.debug("Exited rendering loop " + this.getId());
-				return;
+				g2.dispose();
+				return false;
+			}
+
+			clipToPair(g2, iaxis);
+			int x0 = tupleLines.getAxisX(iaxis - 1) + axisBarWidthHalf;
+			int x1 = tupleLines.getAxisX(iaxis) - axisBarWidthHalf;
+			short y0[] = tupleLines.getAxisY(iaxis - 1);
+			short y1[] = tupleLines.getAxisY(iaxis);
+			for (int i = startTuple; i < endTuple; i++) {
+				if (drawTuple[i - startTuple]) {
+					g2.drawLine(x0, y0[i], x1, y1[i]);
+				}
+			}
+		}
+
+		g2.dispose();
+		return true;
+	}
+
+	/**
+	 * Draws the tuples of the pass (the tuple sample, or all tuples in
+	 * stratified order) in chunks. If publishFrames is set, a copy of the
+	 * partial image is published whenever PROGRESSIVE_FRAME_INTERVAL has
+	 * passed since the last one.
+	 *
+	 * With parallel rendering each round hands the next chunk of the pass to
+	 * every task, and the tasks draw their chunks on the fork-join pool into
+	 * tiles of their own, like renderParallel(). The tiles are composited
+	 * over the target image for each intermediate image and at the end.
+	 */
+	private boolean drawTupleLinesChunked(BufferedImage targetImage,
+			boolean drawPair[], boolean publishFrames) {
+		TupleCursor cursor = new TupleCursor(publishFrames);
+		int taskCount = getTaskCount(cursor.getPassLength());
+		BufferedImage tileImages[] = new BufferedImage[taskCount];
+		Graphics2D tileGraphics[] = new Graphics2D[taskCount];
+		int chunkIndices[][] = new int[taskCount][PROGRESSIVE_CHUNK_SIZE];
+		for (int itask = 0; itask < taskCount; itask++) {
+			tileImages[itask] = taskCount > 1 ? new BufferedImage(width,
+					height, BufferedImage.TYPE_INT_ARGB_PRE) : targetImage;
+			tileGraphics[itask] = createLineGraphics(tileImages[itask]);
+		}
+		long lastFrameTime = System.currentTimeMillis();
+
+		boolean finished = true;
+		while (cursor.hasNext()) {
+			if (!isRunning) {
+				finished = false;
+				break;
+			}
+
+			if (taskCount > 1) {
+				ArrayList<ChunkRenderTask> tasks = new ArrayList<ChunkRenderTask>();
+				for (int itask = 0; itask < taskCount && cursor.hasNext(); itask++) {
+					int chunkSize = cursor.nextChunk(chunkIndices[itask]);
+					tasks.add(new ChunkRenderTask(tileGraphics[itask],
+							chunkIndices[itask], chunkSize, drawPair));
+				}
+				for (ChunkRenderTask task : tasks) {
+					RENDER_POOL.execute(task);
+				}
+				for (ChunkRenderTask task : tasks) {
+					task.join();
+				}
+			} else {
+				int chunkSize = cursor.nextChunk(chunkIndices[0]);
+				drawChunk(tileGraphics[0], chunkIndices[0], chunkSize, drawPair);
+			}
+
+			if (publishFrames && cursor.hasNext()
+					&& System.currentTimeMillis() - lastFrameTime >= PROGRESSIVE_FRAME_INTERVAL) {
+				BufferedImage intermediateImage = new BufferedImage(width,
+						height, BufferedImage.TYPE_INT_ARGB);
+				Graphics2D imageG2 = intermediateImage.createGraphics();
+				imageG2.drawImage(targetImage, 0, 0, null);
+				if (taskCount > 1) {
+					for (BufferedImage tileImage : tileImages) {
+						imageG2.drawImage(tileImage, 0, 0, null);
+					}
+				}
+				imageG2.dispose();
+				publishIntermediateImage(intermediateImage);
+				lastFrameTime = System.currentTimeMillis();
 			}
+		}
 
-			Tuple tuple = dataModel.getTuple(i);
-//			log.debug("tuple query flag is " + tuple.getQueryFlag());
+		for (Graphics2D g2 : tileGraphics) {
+			g2.dispose();
+		}
+		if (!finished) {
+			return false;
+		}
+		if (taskCount > 1) {
+			Graphics2D g2 = targetImage.createGraphics();
+			for (BufferedImage tileImage : tileImages) {
+				g2.drawImage(tileImage, 0, 0, null);
+			}
+			g2.dispose();
+		}
+		return true;
+	}
+
+	private Graphics2D createLineGraphics(BufferedImage targetImage) {
+		Graphics2D g2 = (Graphics2D) targetImage.getGraphics();
+		if (antialias) {
+			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_ON);
+		} else {
+			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_OFF);
+		}
+		g2.setColor(lineColor);
+		g2.setStroke(new BasicStroke(lineSize));
+		return g2;
+	}
 
-			if ((tuple.getQueryFlag() && !showFocusLines) || (!tuple.getQueryFlag() && !showContextLines)) {
-//				log.debug("skipping tuple drawing");
+	private void drawChunk(Graphics2D g2, int chunkIndices[], int chunkSize,
+			boolean drawPair[]) {
+		for (int iaxis = 1; iaxis < tupleLines.getAxisCount(); iaxis++) {
+			if (!drawPair[iaxis]) {
 				continue;
 			}
+			clipToPair(g2, iaxis);
+			int x0 = tupleLines.getAxisX(iaxis - 1) + axisBarWidthHalf;
+			int x1 = tupleLines.getAxisX(iaxis) - axisBarWidthHalf;
+			short y0[] = tupleLines.getAxisY(iaxis - 1);
+			short y1[] = tupleLines.getAxisY(iaxis);
+			for (int i = 0; i < chunkSize; i++) {
+				int ituple = chunkIndices[i];
+				g2.drawLine(x0, y0[ituple], x1, y1[ituple]);
+			}
+		}
+	}
+
+	/**
+	 * Restricts drawing to the columns of a pair's strip, from its left axis
+	 * up to its right axis, the region a cached strip is copied from. Line
+	 * caps and antialiasing of the neighbouring pairs would otherwise end up
+	 * in the strip.
+	 */
+	private void clipToPair(Graphics2D g2, int rightAxis) {
+		int x0 = tupleLines.getAxisX(rightAxis - 1);
+		g2.setClip(x0, 0, tupleLines.getAxisX(rightAxis) - x0, height);
+	}
+
+	private class LineRenderTask extends RecursiveTask<BufferedImage> {
+		private static final long serialVersionUID = 1L;
+		private int startTuple;
+		private int endTuple;
+		private boolean drawPair[];
+
+		public LineRenderTask(int startTuple, int endTuple, boolean drawPair[]) {
+			this.startTuple = startTuple;
+			this.endTuple = endTuple;
+			this.drawPair = drawPair;
+		}
 
-			
-			Point[] tuplePoints = tupleLines.get(i);
-			int x0 = tuplePoints[0].x + axisBarWidthHalf;
-			int y0 = tuplePoints[0].y;
-			for (int j = 1; j < tuplePoints.length; j++) {
-				int x1 = tuplePoints[j].x - axisBarWidthHalf;
-				int y1 = tuplePoints[j].y;
-				g2.drawLine(x0, y0, x1, y1);
-				x0 = tuplePoints[j].x + axisBarWidthHalf;
-				y0 = y1;
+		@Override
+		protected BufferedImage compute() {
+			BufferedImage tileImage = new BufferedImage(width, height,
+					BufferedImage.TYPE_INT_ARGB_PRE);
+			if (!drawTupleLines(tileImage, startTuple, endTuple, drawPair)) {
+				return null;
 			}
-			
-			linesDrawn++;
+			return tileImage;
 		}
+	}
 
-		if (isRunning) {
-			isRunning = false;
-			fireRendererFinished();
+	private class ChunkRenderTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private Graphics2D g2;
+		private int chunkIndices[];
+		private int chunkSize;
+		private boolean drawPair[];
+
+		public ChunkRenderTask(Graphics2D g2, int chunkIndices[],
+				int chunkSize, boolean drawPair[]) {
+			this.g2 = g2;
+			this.chunkIndices = chunkIndices;
+			this.chunkSize = chunkSize;
+			this.drawPair = drawPair;
+		}
+
+		@Override
+		protected void compute() {
+			drawChunk(g2, chunkIndices, chunkSize, drawPair);
+		}
+	}
+
+	private class AccumulatePairTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private LineAccumulationBuffer accumulation;
+		private int rightAxis;
+		private int tupleIndices[];
+		private int tupleIndexCount;
+		private int weight;
+
+		public AccumulatePairTask(LineAccumulationBuffer accumulation,
+				int rightAxis, int tupleIndices[], int tupleIndexCount,
+				int weight) {
+			this.accumulation = accumulation;
+			this.rightAxis = rightAxis;
+			this.tupleIndices = tupleIndices;
+			this.tupleIndexCount = tupleIndexCount;
+			this.weight = weight;
+		}
+
+		@Override
+		protected void compute() {
+			accumulatePair(accumulation, rightAxis, tupleIndices,
+					tupleIndexCount, weight);
+		}
+	}
+
+	/**
+	 * Walks the tuples of one pass in drawing order, either the tuple sample
+	 * or the whole table (in stratified order if requested), and hands out
+	 * the indices of the tuples passing the focus/context filter in chunks.
+	 * The query flags come from the query flag snapshot if there is one.
+	 */
+	private class TupleCursor {
+		private int passLength;
+		private int stride = 1;
+		private int position = 0;
+		private int nextTuple = 0;
+
+		public TupleCursor(boolean stratified) {
+			if (sampleIndices != null) {
+				passLength = sampleSize;
+			} else {
+				passLength = tupleLines.getTupleCount();
+				if (stratified) {
+					stride = getProgressiveStride(passLength);
+				}
+			}
+		}
+
+		public int getPassLength() {
+			return passLength;
+		}
+
+		public boolean hasNext() {
+			return position < passLength;
+		}
+
+		public int nextChunk(int chunkIndices[]) {
+			int chunkSize = 0;
+			for (; chunkSize < chunkIndices.length && position < passLength; position++) {
+				int ituple;
+				boolean queryFlag;
+				if (sampleIndices != null) {
+					ituple = sampleIndices[position];
+					queryFlag = sampleQueryFlags[position];
+				} else {
+					ituple = nextTuple;
+					if (queryFlags != null) {
+						queryFlag = queryFlags.getQueryFlag(ituple);
+					} else {
+						queryFlag = dataModel.getTuple(ituple).getQueryFlag();
+					}
+					nextTuple += stride;
+					if (nextTuple >= passLength) {
+						nextTuple -= passLength;
+					}
+				}
+				if (queryFlag ? showFocusLines : showContextLines) {
+					chunkIndices[chunkSize++] = ituple;
+				}
+			}
+			return chunkSize;
 		}
-		
-//		log.debug("drew " + linesDrawn + " lines [showFocusLines = " + showFocusLines + "]");
 	}
-}
\ No newline at end of file
+}
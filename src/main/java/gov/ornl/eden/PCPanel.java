@@ -8,7 +8,6 @@ import gov.ornl.datatable.DataModel;
 import gov.ornl.datatable.DataModelListener;
 import gov.ornl.datatable.Histogram;
 import gov.ornl.datatable.Histogram.BinInfo;
-import gov.ornl.datatable.SummaryStats;
 import gov.ornl.datatable.Tuple;
 
 import java.awt.BasicStroke;
@@ -34,6 +33,8 @@ import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.swing.JComponent;
 import javax.swing.SwingUtilities;
@@ -44,9 +45,20 @@ import org.slf4j.LoggerFactory;
 
 public class PCPanel extends JComponent implements ActionListener,
 		RendererListener, DataModelListener, ComponentListener, MouseListener,
-		MouseMotionListener, WindowListener {
+		MouseMotionListener, WindowListener, QuerySchedulerListener {
 	private final Logger log = LoggerFactory.getLogger(PCPanel.class);
 	private final int DELAY = 100;
+	// apply a brushed query to the full data once the pointer rests this long
+	private static final int BRUSH_IDLE_DELAY = 300;
+	// time budget in milliseconds for a preview frame while brushing
+	private static final long PREVIEW_FRAME_BUDGET = 30;
+	private static final int MIN_PREVIEW_SAMPLE_SIZE = 2000;
+	private static final int MAX_PREVIEW_SAMPLE_SIZE = 250000;
+	private static final int DEFAULT_PREVIEW_SAMPLE_SIZE = 20000;
+	// memory bound in bytes for each of the axis pair strip caches
+	public static final long DEFAULT_LINE_STRIP_CACHE_SIZE = 64L * 1024 * 1024;
+	// memory bound in bytes for the scatterplot matrix cell cache
+	public static final long DEFAULT_SCATTERPLOT_CELL_CACHE_SIZE = 128L * 1024 * 1024;
 	public static final Font TITLE_FONT = new Font("Dialog", Font.BOLD, 10);
 
 	public static final int MEAN_DISPERSION_BOX_MODE = 0;
@@ -54,6 +66,7 @@ public class PCPanel extends JComponent implements ActionListener,
 
 	public static final int RENDER_TUPLES_AS_DOTS = 0;
 	public static final int RENDER_TUPLES_AS_LINES = 1;
+	public static final int RENDER_TUPLES_AS_DENSITY = 2;
 
 	public final static Color DEFAULT_CONTEXT_LINE_COLOR = new Color(210, 210, 210, 40);
 	public final static Color DEFAULT_FOCUS_LINE_COLOR = new Color(20, 20, 80, 40);
@@ -92,8 +105,9 @@ public class PCPanel extends JComponent implements ActionListener,
 
 	private ArrayList<PCAxis> axisList;
 	private PCAxesRenderer axesRenderer = null;
-	private PCLineRenderer contextLineRenderer = null;
-	private PCLineRenderer focusLineRenderer = null;
+	private Renderer contextLineRenderer = null;
+	private Renderer focusLineRenderer = null;
+	private ScatterplotMatrixRenderer scatterplotMatrixRenderer = null;
 	private DataModel dataModel;
 	private Point startDragPoint = new Point(), endDragPoint = new Point();
 	private boolean dragging = false;
@@ -110,9 +124,11 @@ public class PCPanel extends JComponent implements ActionListener,
 	private int scatterplotAxisSize = /* 12 */14;
 
 	// HashMaps for scatterplot images
-	private HashMap<String, HashMap<String, BufferedImage>> rowPointsSPlotMap = new HashMap<String, HashMap<String, BufferedImage>>();
-	private HashMap<String, HashMap<String, BufferedImage>> rowContextSPlotMap = new HashMap<String, HashMap<String, BufferedImage>>();
-	private HashMap<String, HashMap<String, BufferedImage>> rowAxesSPlotMap = new HashMap<String, HashMap<String, BufferedImage>>();
+	private MemoryBoundedCache<ScatterplotCellKey, BufferedImage> scatterplotCellCache = new MemoryBoundedCache<ScatterplotCellKey, BufferedImage>(
+			DEFAULT_SCATTERPLOT_CELL_CACHE_SIZE, image -> 4L * image.getWidth() * image.getHeight());
+	// query generation of the last complete scatterplot matrix render
+	private int scatterplotCellGeneration = -1;
+	private ConcurrentHashMap<Renderer, ScatterplotCellKey> scatterplotAxesKeys = new ConcurrentHashMap<Renderer, ScatterplotCellKey>();
 
 	ScatterplotConfiguration focusScatterPlotConfig;
 	ScatterplotConfiguration contextScatterPlotConfig;
@@ -120,12 +136,38 @@ public class PCPanel extends JComponent implements ActionListener,
 	private ArrayList<Rectangle> scatterplotRectList;
 	private int mouseOverScatterplotRectIndex = -1;
 	private Timer waitingTimer;
+	private Timer brushIdleTimer;
+	private TupleReservoirSample tupleSample;
+	private int previewSampleSize = 0;
+	private boolean previewSampleQueryFlags[];
+	// exact query flags of a brushed query while it is being dragged
+	private QueryFlagSnapshot previewQueryFlags;
+	private QueryScheduler queryScheduler;
+	// queried tuple count of the query being brushed, or -1 if not brushing
+	private int brushedQueriedTupleCount = -1;
+	// incremented whenever the tuple query flags may change
+	private int queryGeneration = 0;
+	// statistics of the queried tuples from the last result the query
+	// scheduler published for the applied query
+	private QueryStatistics queryStatistics;
+	private PCLineAccumulation focusLineAccumulation;
+	private PCLineAccumulation contextLineAccumulation;
+	private MemoryBoundedCache<PCStripKey, BufferedImage> lineImageStripCache = new MemoryBoundedCache<PCStripKey, BufferedImage>(
+			DEFAULT_LINE_STRIP_CACHE_SIZE, image -> 4L * image.getWidth() * image.getHeight());
+	private MemoryBoundedCache<PCStripKey, LineAccumulationBuffer> lineCountStripCache = new MemoryBoundedCache<PCStripKey, LineAccumulationBuffer>(
+			DEFAULT_LINE_STRIP_CACHE_SIZE, counts -> 4L * counts.getWidth() * counts.getHeight());
 	private BufferedImage newLinesImage;
 
 	private int tupleDisplayMode = RENDER_TUPLES_AS_LINES;
+	private int densityBinCount = PCDensityRenderer.DEFAULT_BIN_COUNT;
+	private int densityScale = PCDensityRenderer.LOG_DENSITY_SCALE;
 
 	private ArrayList<ScatterPlotFrame> scatterplotFrameList = new ArrayList<ScatterPlotFrame>();
-	private ArrayList<Point[]> tupleLines;
+	private PCPolylineBuffer tupleLines;
+	private HashMap<Column, float[]> normalizedValueCache = new HashMap<Column, float[]>();
+	private HashMap<Column, short[]> yPositionCache = new HashMap<Column, short[]>();
+	private int yPositionCacheAxisBottom = -1;
+	private int yPositionCacheAxisHeight = -1;
 	private boolean showQueriedData = true;
 	private boolean showPolylines = true;
 
@@ -135,7 +177,20 @@ public class PCPanel extends JComponent implements ActionListener,
 	private boolean showCorrelationIndicators = true;
 	private boolean useQueryCorrelations = true;
 	private boolean useQueryFrequencyData = true;
+	private boolean exactQuantilesEnabled = false;
+	private boolean dataCubeEnabled = false;
+	private long dataCubeMaxBytes = BinnedDataCube.DEFAULT_MAX_BYTES;
+	private BinnedDataCube dataCube;
+	private boolean showCrossfilterHistograms = false;
+	// bins of the last result the query scheduler published with crossfilter
+	// histograms, by data model index
+	private double crossfilterHistograms[][];
+	private int quantileSketchK = QuantileSketch.DEFAULT_K;
 	private boolean antialiasEnabled = true;
+	private boolean parallelLineRenderingEnabled = Runtime.getRuntime().availableProcessors() > 1;
+	private boolean progressiveLineRenderingEnabled = true;
+	private int lineRenderingBackend = PCLineRenderer.JAVA2D_RENDERING;
+	private int lineToneMapping = LineAccumulationBuffer.LOG_TONE_MAPPING;
 
 	private int correlationIndicatorHeight = 10;
 	private Font titleFont = new Font("Dialog", Font.BOLD, 12);
@@ -146,9 +201,9 @@ public class PCPanel extends JComponent implements ActionListener,
     private PCAxisSelection draggingAxisSelection;
 
 	private ArrayList<Tuple> highlightedTuples = new ArrayList<>();
-    private ArrayList<Point[]> highlightedTupleLines = new ArrayList<>();
+    private PCPolylineBuffer highlightedTupleLines;
 
-	public PCPanel(DataModel dataModel) {
+	public PCPanel(DataModel dataModel, QueryScheduler queryScheduler) {
 		focusScatterPlotConfig = new ScatterplotConfiguration();
 		focusScatterPlotConfig.showAxisLabels = false;
 		focusScatterPlotConfig.showAxisNames = true;
@@ -163,6 +218,9 @@ public class PCPanel extends JComponent implements ActionListener,
 
 		this.dataModel = dataModel;
 		this.dataModel.addDataModelListener(this);
+		this.queryScheduler = queryScheduler;
+		queryScheduler.addQuerySchedulerListener(this);
+		updateQueryStatisticsSettings();
 		addComponentListener(this);
 		addMouseListener(this);
 		addMouseMotionListener(this);
@@ -188,9 +246,122 @@ public class PCPanel extends JComponent implements ActionListener,
 		return antialiasEnabled;
 	}
 
+	public void setParallelLineRenderingEnabled(boolean parallelLineRenderingEnabled) {
+		if (this.parallelLineRenderingEnabled != parallelLineRenderingEnabled) {
+			this.parallelLineRenderingEnabled = parallelLineRenderingEnabled;
+			startFocusLineRenderer();
+			startContextLineRenderer();
+		}
+	}
+
+	public boolean isParallelLineRenderingEnabled() {
+		return parallelLineRenderingEnabled;
+	}
+
+	public void setProgressiveLineRenderingEnabled(boolean progressiveLineRenderingEnabled) {
+		if (this.progressiveLineRenderingEnabled != progressiveLineRenderingEnabled) {
+			this.progressiveLineRenderingEnabled = progressiveLineRenderingEnabled;
+			startFocusLineRenderer();
+			startContextLineRenderer();
+		}
+	}
+
+	public boolean isProgressiveLineRenderingEnabled() {
+		return progressiveLineRenderingEnabled;
+	}
+
+	/**
+	 * Sets whether a binned data cube is built after loading, from which the
+	 * axis histograms follow a brush on one column as it is dragged.
+	 */
+	public void setDataCubeEnabled(boolean dataCubeEnabled) {
+		if (this.dataCubeEnabled != dataCubeEnabled) {
+			this.dataCubeEnabled = dataCubeEnabled;
+			rebuildDataCube();
+		}
+	}
+
+	public boolean isDataCubeEnabled() {
+		return dataCubeEnabled;
+	}
+
+	/**
+	 * Sets the memory budget of the pair tables of the data cube.
+	 */
+	public void setDataCubeMaxBytes(long dataCubeMaxBytes) {
+		if (this.dataCubeMaxBytes != dataCubeMaxBytes) {
+			this.dataCubeMaxBytes = dataCubeMaxBytes;
+			rebuildDataCube();
+		}
+	}
+
+	public long getDataCubeMaxBytes() {
+		return dataCubeMaxBytes;
+	}
+
+	private void rebuildDataCube() {
+		if (dataCube != null) {
+			dataCube.dispose();
+			dataCube = null;
+		}
+		if (!dataCubeEnabled || axisList == null
+				|| dataModel.getTupleCount() == 0) {
+			return;
+		}
+		int axisColumnIndices[] = new int[axisList.size()];
+		for (int iaxis = 0; iaxis < axisList.size(); iaxis++) {
+			axisColumnIndices[iaxis] = axisList.get(iaxis).dataModelIndex;
+		}
+		dataCube = new BinnedDataCube(dataModel,
+				BinnedDataCube.DEFAULT_BIN_COUNT, dataCubeMaxBytes);
+		dataCube.build(axisColumnIndices);
+	}
+
+	public void setLineRenderingBackend(int lineRenderingBackend) {
+		if (this.lineRenderingBackend != lineRenderingBackend) {
+			this.lineRenderingBackend = lineRenderingBackend;
+			lineImageStripCache.clear();
+			lineCountStripCache.clear();
+			focusLineAccumulation = contextLineAccumulation = null;
+			if (tupleDisplayMode == RENDER_TUPLES_AS_LINES) {
+				startFocusLineRenderer();
+				startContextLineRenderer();
+			}
+		}
+	}
+
+	public int getLineRenderingBackend() {
+		return lineRenderingBackend;
+	}
+
+	public void setLineToneMapping(int lineToneMapping) {
+		if (this.lineToneMapping != lineToneMapping) {
+			this.lineToneMapping = lineToneMapping;
+			if (tupleDisplayMode == RENDER_TUPLES_AS_LINES
+					&& lineRenderingBackend == PCLineRenderer.ACCUMULATION_RENDERING) {
+				startFocusLineRenderer();
+				startContextLineRenderer();
+			}
+		}
+	}
+
+	public int getLineToneMapping() {
+		return lineToneMapping;
+	}
+
+	public void setLineStripCacheSize(long maxBytes) {
+		lineImageStripCache.setMaxBytes(maxBytes);
+		lineCountStripCache.setMaxBytes(maxBytes);
+	}
+
+	public long getLineStripCacheSize() {
+		return lineImageStripCache.getMaxBytes();
+	}
+
 	public void setShowCorrelationIndicators(boolean showCorrelationIndicators) {
 		if (this.showCorrelationIndicators != showCorrelationIndicators) {
 			this.showCorrelationIndicators = showCorrelationIndicators;
+			updateQueryStatisticsSettings();
 			this.startAxesImageRenderer();
 		}
 	}
@@ -202,6 +373,7 @@ public class PCPanel extends JComponent implements ActionListener,
 	public void setUseQueryCorrelationCoefficients(boolean useQueryCorrelations) {
 		if (this.useQueryCorrelations != useQueryCorrelations) {
 			this.useQueryCorrelations = useQueryCorrelations;
+			updateQueryStatisticsSettings();
 			this.startAxesImageRenderer();
 		}
 	}
@@ -217,6 +389,59 @@ public class PCPanel extends JComponent implements ActionListener,
 		return useQueryCorrelations;
 	}
 
+	/**
+	 * Sets whether the query histogram of each axis leaves out the axis's own
+	 * selection, so it shows the distribution under all other selections.
+	 */
+	public void setShowCrossfilterHistograms(boolean showCrossfilterHistograms) {
+		if (this.showCrossfilterHistograms != showCrossfilterHistograms) {
+			this.showCrossfilterHistograms = showCrossfilterHistograms;
+			if (!showCrossfilterHistograms) {
+				crossfilterHistograms = null;
+			}
+			updateCrossfilterHistogramsSettings();
+			startAxesImageRenderer();
+		}
+	}
+
+	public boolean isShowingCrossfilterHistograms() {
+		return showCrossfilterHistograms;
+	}
+
+	/**
+	 * Sets whether the query box plots are replaced with exact quartiles,
+	 * computed in the background, once the brush is released.
+	 */
+	public void setExactQuantilesEnabled(boolean exactQuantilesEnabled) {
+		if (this.exactQuantilesEnabled != exactQuantilesEnabled) {
+			this.exactQuantilesEnabled = exactQuantilesEnabled;
+			computeExactQuantiles();
+			layoutAxes();
+			startAxesImageRenderer();
+		}
+	}
+
+	public boolean isExactQuantilesEnabled() {
+		return exactQuantilesEnabled;
+	}
+
+	/**
+	 * Sets the normalized rank error of the quartiles that are estimated for
+	 * the query box plots.
+	 */
+	public void setQuantileRankError(double rankError) {
+		int k = QuantileSketch.getK(rankError);
+		if (quantileSketchK != k) {
+			// the axes are laid out again when the new statistics are published
+			quantileSketchK = k;
+			updateQueryStatisticsSettings();
+		}
+	}
+
+	public double getQuantileRankError() {
+		return QuantileSketch.getRankError(quantileSketchK);
+	}
+
 	public void setDispersionDisplayMode(int dispersionDisplayMode) {
 		if (this.dispersionDisplayMode != dispersionDisplayMode) {
 			this.dispersionDisplayMode = dispersionDisplayMode;
@@ -390,6 +615,7 @@ public class PCPanel extends JComponent implements ActionListener,
 	public void setShowFrequencyInfo(boolean showFrequencyInfo) {
 		if (this.showFrequencyInfo != showFrequencyInfo) {
 			this.showFrequencyInfo = showFrequencyInfo;
+			updateCrossfilterHistogramsSettings();
 			layoutAxes();
 			startFocusLineRenderer();
 			startContextLineRenderer();
@@ -458,6 +684,34 @@ public class PCPanel extends JComponent implements ActionListener,
 		}
 	}
 
+	public int getDensityBinCount() {
+		return densityBinCount;
+	}
+
+	public void setDensityBinCount(int densityBinCount) {
+		if (this.densityBinCount != densityBinCount && densityBinCount > 0) {
+			this.densityBinCount = densityBinCount;
+			if (tupleDisplayMode == RENDER_TUPLES_AS_DENSITY) {
+				startFocusLineRenderer();
+				startContextLineRenderer();
+			}
+		}
+	}
+
+	public int getDensityScale() {
+		return densityScale;
+	}
+
+	public void setDensityScale(int densityScale) {
+		if (this.densityScale != densityScale) {
+			this.densityScale = densityScale;
+			if (tupleDisplayMode == RENDER_TUPLES_AS_DENSITY) {
+				startFocusLineRenderer();
+				startContextLineRenderer();
+			}
+		}
+	}
+
     public void drawHighlightedTuples(Graphics2D g2) {
         g2.setColor(highlightedLineColor);
         g2.setStroke(new BasicStroke(pcLineSize));
@@ -469,15 +723,17 @@ public class PCPanel extends JComponent implements ActionListener,
             axisBarWidthHalf = 0;
         }
 
-        for (Point tuplePoints[] : highlightedTupleLines) {
-            int x0 = tuplePoints[0].x + axisBarWidthHalf;
-            int y0 = tuplePoints[0].y;
-            for (int j = 1; j < tuplePoints.length; j++) {
-                int x1 = tuplePoints[j].x - axisBarWidthHalf;
-                int y1 = tuplePoints[j].y;
-                g2.drawLine(x0, y0, x1, y1);
-                x0 = tuplePoints[j].x + axisBarWidthHalf;
-                y0 = y1;
+        if (highlightedTupleLines == null) {
+            return;
+        }
+
+        for (int iaxis = 1; iaxis < highlightedTupleLines.getAxisCount(); iaxis++) {
+            int x0 = highlightedTupleLines.getAxisX(iaxis - 1) + axisBarWidthHalf;
+            int x1 = highlightedTupleLines.getAxisX(iaxis) - axisBarWidthHalf;
+            short y0[] = highlightedTupleLines.getAxisY(iaxis - 1);
+            short y1[] = highlightedTupleLines.getAxisY(iaxis);
+            for (int ituple = 0; ituple < highlightedTupleLines.getTupleCount(); ituple++) {
+                g2.drawLine(x0, y0[ituple], x1, y1[ituple]);
             }
         }
     }
@@ -601,14 +857,10 @@ public class PCPanel extends JComponent implements ActionListener,
 		if (dataModel.getHighlightedColumn() != null
 				&& dataModel.getHighlightedColumn().isEnabled()) {
 
-			HashMap<String, BufferedImage> rowPointsSPlots = rowPointsSPlotMap
-					.get(dataModel.getHighlightedColumn().getName());
-			HashMap<String, BufferedImage> rowContextSPlots = rowContextSPlotMap
-					.get(dataModel.getHighlightedColumn().getName());
-			HashMap<String, BufferedImage> rowAxesSPlots = rowAxesSPlotMap
-					.get(dataModel.getHighlightedColumn().getName());
-
-			if (rowPointsSPlots != null) {
+			// cells of the last complete render are shown until the render
+			// for the current query is done
+			Column highlightedColumn = dataModel.getHighlightedColumn();
+			if (scatterplotCellGeneration >= 0) {
 				for (int icolumn = 0; icolumn < axisList.size(); icolumn++) {
 					PCAxis currentAxis = axisList.get(icolumn);
 					Column currentColumn = axisList.get(icolumn).column;
@@ -623,22 +875,26 @@ public class PCPanel extends JComponent implements ActionListener,
 					int x = spRect.x;
 					int y = spRect.y + 2;
 
-					String columnName = currentColumn.getName();
 					// int x = (icolumn * axisSpacing) + scatterplotOffset;
 					// int y = this.axisBottom + secondaryFont.getSize() + 20;
 					// int y = axisList.get(icolumn).scatterplot_y0;
 
 					// draw scatterplot axes
-					if (rowAxesSPlots != null) {
-						BufferedImage image = rowAxesSPlots.get(columnName);
-						if (image != null) {
-							g2.drawImage(image, x, y, null);
-						}
+					BufferedImage cellAxesImage = scatterplotCellCache
+							.get(getScatterplotCellKey(highlightedColumn,
+									currentColumn,
+									ScatterplotCellKey.AXES_LAYER, 0));
+					if (cellAxesImage != null) {
+						g2.drawImage(cellAxesImage, x, y, null);
 					}
 
 					// draw context scatterplot
-					if (showFilteredData && rowContextSPlots != null) {
-						BufferedImage image = rowContextSPlots.get(columnName);
+					if (showFilteredData) {
+						BufferedImage image = scatterplotCellCache
+								.get(getScatterplotCellKey(highlightedColumn,
+										currentColumn,
+										ScatterplotCellKey.CONTEXT_LAYER,
+										scatterplotCellGeneration));
 						if (image != null) {
 							g2.drawImage(image, x + this.scatterplotAxisSize,
 									y, null);
@@ -646,7 +902,11 @@ public class PCPanel extends JComponent implements ActionListener,
 					}
 
 					// draw focus scatterplot
-					BufferedImage image = rowPointsSPlots.get(columnName);
+					BufferedImage image = scatterplotCellCache
+							.get(getScatterplotCellKey(highlightedColumn,
+									currentColumn,
+									ScatterplotCellKey.FOCUS_LAYER,
+									scatterplotCellGeneration));
 					if (image != null) {
 						g2.drawImage(image, x + this.scatterplotAxisSize, y,
 								null);
@@ -669,9 +929,10 @@ public class PCPanel extends JComponent implements ActionListener,
 		g2.setFont(secondaryFont);
 		String statusString = "Showing " + dataModel.getTupleCount()
 				+ " tuples";
-		if (dataModel.getQueriedTupleCount() > 0) {
-			statusString += " (" + dataModel.getQueriedTupleCount()
-					+ " selected)";
+		int queriedTupleCount = brushedQueriedTupleCount >= 0 ? brushedQueriedTupleCount
+				: getAppliedQueriedTupleCount();
+		if (queriedTupleCount > 0) {
+			statusString += " (" + queriedTupleCount + " selected)";
 		}
 		int statusStringWidth = g2.getFontMetrics().stringWidth(statusString);
 		g2.drawString(statusString,
@@ -688,35 +949,82 @@ public class PCPanel extends JComponent implements ActionListener,
 			return;
 		}
 
+		if (scatterplotMatrixRenderer != null) {
+			scatterplotMatrixRenderer.cancel();
+			scatterplotMatrixRenderer.removeRendererListener(this);
+		}
+
+		ArrayList<Column> columns = new ArrayList<Column>();
+		for (PCAxis axis : axisList) {
+			columns.add(axis.column);
+		}
+		scatterplotMatrixRenderer = new ScatterplotMatrixRenderer(dataModel,
+				columns, scatterplotSize, scatterplotAxisSize,
+				focusScatterPlotConfig, contextScatterPlotConfig,
+				antialiasEnabled);
+		scatterplotMatrixRenderer.addRendererListener(this);
+		scatterplotMatrixRenderer.setCellCache(scatterplotCellCache,
+				queryScheduler.getTupleQueryFlags(), queryGeneration,
+				dataModel.getHighlightedColumn());
+		scatterplotMatrixRenderer.setRenderTarget(this, "scatterplotMatrix");
+		scatterplotMatrixRenderer.start();
+
+		for (Renderer renderer : scatterplotAxesKeys.keySet()) {
+			if (renderer.isCancelled()) {
+				scatterplotAxesKeys.remove(renderer);
+			}
+		}
+
+		// the axes do not depend on the query, so cached axes are reused
 		for (int ix = 0; ix < axisList.size(); ix++) {
 			for (int iy = 0; iy < axisList.size(); iy++) {
-				ScatterplotPointsRenderer renderer = new ScatterplotPointsRenderer(
-						dataModel, axisList.get(ix).column,
-						axisList.get(iy).column, scatterplotSize,
-						scatterplotAxisSize, focusScatterPlotConfig, null,
-						true, false, antialiasEnabled);
-				renderer.addRendererListener(this);
-				renderer.setName("focus");
-				renderer.start();
-				ScatterplotPointsRenderer contextRenderer = new ScatterplotPointsRenderer(
-						dataModel, axisList.get(ix).column,
-						axisList.get(iy).column, scatterplotSize,
-						scatterplotAxisSize, contextScatterPlotConfig, null,
-						false, true, antialiasEnabled);
-				contextRenderer.addRendererListener(this);
-				contextRenderer.setName("context");
-				contextRenderer.start();
+				ScatterplotCellKey axesKey = getScatterplotCellKey(
+						axisList.get(ix).column, axisList.get(iy).column,
+						ScatterplotCellKey.AXES_LAYER, 0);
+				if (scatterplotCellCache.get(axesKey) != null) {
+					continue;
+				}
 				ScatterplotAxesRenderer axesRenderer = new ScatterplotAxesRenderer(
 						dataModel, axisList.get(ix).column,
 						axisList.get(iy).column, scatterplotSize,
 						scatterplotAxisSize, focusScatterPlotConfig,
 						antialiasEnabled);
 				axesRenderer.addRendererListener(this);
+				axesRenderer.setRenderTarget(this, "scatterplotAxes "
+						+ axisList.get(ix).column.getName() + " "
+						+ axisList.get(iy).column.getName());
+				scatterplotAxesKeys.put(axesRenderer, axesKey);
 				axesRenderer.start();
 			}
 		}
 	}
 
+	/**
+	 * Returns the cache key of one layer of a scatterplot matrix cell with
+	 * the current cell size and style.
+	 */
+	private ScatterplotCellKey getScatterplotCellKey(Column xColumn,
+			Column yColumn, int layer, int generation) {
+		Object style;
+		if (layer == ScatterplotCellKey.FOCUS_LAYER) {
+			style = focusScatterPlotConfig.getPointStyle();
+		} else if (layer == ScatterplotCellKey.CONTEXT_LAYER) {
+			style = contextScatterPlotConfig.getPointStyle();
+		} else {
+			style = focusScatterPlotConfig.getAxesStyle();
+		}
+		return new ScatterplotCellKey(xColumn, yColumn, layer, generation,
+				scatterplotSize, scatterplotAxisSize, antialiasEnabled, style);
+	}
+
+	public void setScatterplotCellCacheSize(long maxBytes) {
+		scatterplotCellCache.setMaxBytes(maxBytes);
+	}
+
+	public long getScatterplotCellCacheSize() {
+		return scatterplotCellCache.getMaxBytes();
+	}
+
 	private void startAxesImageRenderer() {
 		if (screenWidth == 0 && screenHeight == 0) {
 			log.debug("PCPanel.startAxesImageRenderer(): width and height are zero so aborting render.");
@@ -724,7 +1032,7 @@ public class PCPanel extends JComponent implements ActionListener,
 		}
 
 		if (axesRenderer != null) {
-			axesRenderer.isRunning = false;
+			axesRenderer.cancel();
 			axesRenderer.removeRendererListener(this);
 		}
 
@@ -734,7 +1042,17 @@ public class PCPanel extends JComponent implements ActionListener,
 				showCorrelationIndicators, useQueryCorrelations,
 				useQueryFrequencyData, antialiasEnabled, titleFont,
 				secondaryFont, correlationIndicatorHeight);
+		double crossfilterHistograms[][] = getCrossfilterHistograms();
+		// the statistics catch up when the brush is released
+		axesRenderer.setQueryStatistics(getQueryStatistics());
+		if (dragging) {
+			axesRenderer.setQueryHistograms(crossfilterHistograms != null ? crossfilterHistograms
+					: getDataCubeHistograms());
+		} else {
+			axesRenderer.setQueryHistograms(crossfilterHistograms);
+		}
 		axesRenderer.addRendererListener(this);
+		axesRenderer.setRenderTarget(this, "axes");
 		axesRenderer.start();
 	}
 
@@ -744,7 +1062,7 @@ public class PCPanel extends JComponent implements ActionListener,
 		}
 
 		if (contextLineRenderer != null) {
-			contextLineRenderer.isRunning = false;
+			contextLineRenderer.cancel();
 			contextLineRenderer.removeRendererListener(this);
 		}
 		if (screenWidth == 0 && screenHeight == 0) {
@@ -752,12 +1070,52 @@ public class PCPanel extends JComponent implements ActionListener,
 			return;
 		}
 
-		contextLineRenderer = new PCLineRenderer(dataModel, screenWidth,
-				screenHeight, this.axisBarWidth, this.axisSpacing,
-				this.showAxesAsBars, contextLineColor, false, true,
-				antialiasEnabled, tupleLines, pcLineSize);
+		if (tupleDisplayMode == RENDER_TUPLES_AS_DENSITY) {
+			PCDensityRenderer densityRenderer = new PCDensityRenderer(
+					dataModel, screenWidth, screenHeight, this.axisBarWidth,
+					this.showAxesAsBars, axisList, contextLineColor, false, true,
+					antialiasEnabled, tupleLines, pcLineSize, densityBinCount,
+					densityScale);
+			// the cube only stands in for the scan while a query is brushed
+			if (dragging && dataCube != null) {
+				densityRenderer.setBinnedDataCube(dataCube, new QueryState(
+						dataModel.getActiveQuery()));
+			}
+			densityRenderer.setQueryFlags(previewQueryFlags);
+			contextLineRenderer = densityRenderer;
+		} else if (isAwaitingQueryFlags()) {
+			// rendered when the query scheduler publishes the flags
+			return;
+		} else {
+			PCLineRenderer lineRenderer = new PCLineRenderer(dataModel,
+					screenWidth, screenHeight, this.axisBarWidth,
+					this.axisSpacing, this.showAxesAsBars, contextLineColor,
+					false, true, antialiasEnabled, tupleLines, pcLineSize,
+					parallelLineRenderingEnabled, lineRenderingBackend,
+					lineToneMapping);
+			lineRenderer.setProgressive(progressiveLineRenderingEnabled);
+			if (previewQueryFlags != null) {
+				// the strip caches only hold strips of data model queries
+				lineRenderer.setQueryDelta(previewQueryFlags,
+						contextLineAccumulation);
+			} else {
+				// the flags the tuples hold as of queryGeneration
+				QueryFlagSnapshot queryFlags = queryScheduler.getTupleQueryFlags();
+				lineRenderer.setStripCaches(lineImageStripCache,
+						lineCountStripCache, queryFlags, queryGeneration,
+						axisTop, axisBottom);
+				if (previewSampleQueryFlags != null) {
+					lineRenderer.setTupleSample(tupleSample.getIndices(),
+							previewSampleQueryFlags.length, previewSampleQueryFlags);
+				} else if (lineRenderingBackend == PCLineRenderer.ACCUMULATION_RENDERING) {
+					lineRenderer.setQueryDelta(queryFlags, contextLineAccumulation);
+				}
+			}
+			contextLineRenderer = lineRenderer;
+		}
 
 		contextLineRenderer.addRendererListener(this);
+		contextLineRenderer.setRenderTarget(this, "contextLines");
 		log.debug("Starting context line renderer "
 				+ contextLineRenderer.getId());
 		contextLineRenderer.start();
@@ -771,6 +1129,7 @@ public class PCPanel extends JComponent implements ActionListener,
 				screenWidth, screenHeight, this.axisBarWidth,
 				this.showAxesAsBars, newTuples);
 		newLineRenderer.addRendererListener(this);
+		newLineRenderer.setRenderTarget(this, "newLines");
 		newLineRenderer.start();
 	}
 
@@ -780,70 +1139,387 @@ public class PCPanel extends JComponent implements ActionListener,
 		}
 
 		if (focusLineRenderer != null) {
-			focusLineRenderer.isRunning = false;
+			focusLineRenderer.cancel();
 			focusLineRenderer.removeRendererListener(this);
 		}
 		if (screenWidth == 0 && screenHeight == 0) {
 			log.debug("focusLineRenderer(): width and height are zero so aborting render.");
 			return;
 		}
-		focusLineRenderer = new PCLineRenderer(dataModel, screenWidth,
-				screenHeight, this.axisBarWidth, this.axisSpacing,
-				this.showAxesAsBars, focusLineColor, true, false,
-				antialiasEnabled, tupleLines, pcLineSize);
+		if (tupleDisplayMode == RENDER_TUPLES_AS_DENSITY) {
+			PCDensityRenderer densityRenderer = new PCDensityRenderer(
+					dataModel, screenWidth, screenHeight, this.axisBarWidth,
+					this.showAxesAsBars, axisList, focusLineColor, true, false,
+					antialiasEnabled, tupleLines, pcLineSize, densityBinCount,
+					densityScale);
+			// the cube only stands in for the scan while a query is brushed
+			if (dragging && dataCube != null) {
+				densityRenderer.setBinnedDataCube(dataCube, new QueryState(
+						dataModel.getActiveQuery()));
+			}
+			densityRenderer.setQueryFlags(previewQueryFlags);
+			focusLineRenderer = densityRenderer;
+		} else if (isAwaitingQueryFlags()) {
+			// rendered when the query scheduler publishes the flags
+			return;
+		} else {
+			PCLineRenderer lineRenderer = new PCLineRenderer(dataModel,
+					screenWidth, screenHeight, this.axisBarWidth,
+					this.axisSpacing, this.showAxesAsBars, focusLineColor,
+					true, false, antialiasEnabled, tupleLines, pcLineSize,
+					parallelLineRenderingEnabled, lineRenderingBackend,
+					lineToneMapping);
+			lineRenderer.setProgressive(progressiveLineRenderingEnabled);
+			if (previewQueryFlags != null) {
+				// the strip caches only hold strips of data model queries
+				lineRenderer.setQueryDelta(previewQueryFlags,
+						focusLineAccumulation);
+			} else {
+				// the flags the tuples hold as of queryGeneration
+				QueryFlagSnapshot queryFlags = queryScheduler.getTupleQueryFlags();
+				lineRenderer.setStripCaches(lineImageStripCache,
+						lineCountStripCache, queryFlags, queryGeneration,
+						axisTop, axisBottom);
+				if (previewSampleQueryFlags != null) {
+					lineRenderer.setTupleSample(tupleSample.getIndices(),
+							previewSampleQueryFlags.length, previewSampleQueryFlags);
+				} else if (lineRenderingBackend == PCLineRenderer.ACCUMULATION_RENDERING) {
+					lineRenderer.setQueryDelta(queryFlags, focusLineAccumulation);
+				}
+			}
+			focusLineRenderer = lineRenderer;
+		}
 		focusLineRenderer.addRendererListener(this);
+		focusLineRenderer.setRenderTarget(this, "focusLines");
 		log.debug("Starting focus line renderer " + focusLineRenderer.getId());
 		focusLineRenderer.start();
 	}
 
+	/**
+	 * Returns true if the accumulation back end is to render the lines of the
+	 * applied query but the query scheduler has not written its flags to the
+	 * tuples since they changed. The back end takes the tuples that changed
+	 * since its previous counts from the flags, so the lines are rendered
+	 * when they are published.
+	 */
+	private boolean isAwaitingQueryFlags() {
+		return lineRenderingBackend == PCLineRenderer.ACCUMULATION_RENDERING
+				&& previewQueryFlags == null && previewSampleQueryFlags == null
+				&& queryScheduler.getTupleQueryFlags() == null;
+	}
+
+	// the number of tuples the applied query selects, or 0 if it has no
+	// selections or the query scheduler has not applied it yet
+	private int getAppliedQueriedTupleCount() {
+		QueryFlagSnapshot queryFlags = queryScheduler.getTupleQueryFlags();
+		if (queryFlags == null || !dataModel.getActiveQuery().hasColumnSelections()) {
+			return 0;
+		}
+		return queryFlags.getQueriedTupleCount();
+	}
+
+	/**
+	 * Returns the histograms of the axes by data model index under all
+	 * selections but their own, or null if they are not shown or the query
+	 * scheduler has not published them yet. They follow the query the
+	 * scheduler evaluated last.
+	 */
+	private double[][] getCrossfilterHistograms() {
+		if (!showCrossfilterHistograms || !showFrequencyInfo
+				|| axisList == null || crossfilterHistograms == null
+				|| crossfilterHistograms.length != dataModel.getColumnCount()) {
+			return null;
+		}
+		return crossfilterHistograms;
+	}
+
+	// the query scheduler builds the crossfilter histograms while they are
+	// shown
+	private void updateCrossfilterHistogramsSettings() {
+		queryScheduler.setCrossfilterHistogramsEnabled(showCrossfilterHistograms
+				&& showFrequencyInfo);
+	}
+
+	/**
+	 * Returns the histograms of the brushed query on the axes by data model
+	 * index as far as the data cube can answer them, or null.
+	 */
+	private double[][] getDataCubeHistograms() {
+		if (dataCube == null || axisList == null) {
+			return null;
+		}
+		QueryState queryState = new QueryState(dataModel.getActiveQuery());
+		double histograms[][] = new double[dataModel.getColumnCount()][];
+		for (PCAxis axis : axisList) {
+			histograms[axis.dataModelIndex] = dataCube.getQueryHistogram(
+					queryState, axis.dataModelIndex);
+		}
+		return histograms;
+	}
+
+	/**
+	 * Returns the statistics of the queried tuples the query scheduler
+	 * published last, or null if there are none for the enabled columns.
+	 * They are computed on the scheduler's thread whenever the applied query
+	 * changes, so they lag behind the query until the scheduler catches up.
+	 */
+	private QueryStatistics getQueryStatistics() {
+		if (queryStatistics == null
+				|| queryStatistics.getColumnCount() != dataModel.getColumnCount()) {
+			return null;
+		}
+		return queryStatistics;
+	}
+
+	// has the scheduler compute the statistics the axes show
+	private void updateQueryStatisticsSettings() {
+		queryScheduler.setCorrelationsEnabled(this, showCorrelationIndicators
+				&& useQueryCorrelations);
+		queryScheduler.setQuantileSketchK(quantileSketchK);
+	}
+
+	/**
+	 * Computes the exact quantiles of the query statistics in the background
+	 * if they are enabled and the brush is not dragged, and lays out the axes
+	 * again when they are ready.
+	 */
+	private void computeExactQuantiles() {
+		if (!exactQuantilesEnabled || dragging || queryStatistics == null
+				|| queryStatistics.hasExactQuantiles()) {
+			return;
+		}
+		final QueryStatistics statistics = queryStatistics;
+		statistics.computeExactQuantilesLater(new Runnable() {
+			@Override
+			public void run() {
+				if (queryStatistics == statistics) {
+					layoutAxes();
+					startAxesImageRenderer();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Renders the focus and context lines from a random tuple sample with the
+	 * query as it is being brushed, before it is applied to the data model.
+	 * The sample size follows the time the previous previews took so each
+	 * preview frame stays within PREVIEW_FRAME_BUDGET.
+	 *
+	 * brushedQueryFlags are the exact flags of the brushed query from the
+	 * query scheduler, or null if the query has no selections. The
+	 * accumulation backend renders all tuples with them and updates its
+	 * previous counts with the tuples that changed, the other backends take
+	 * the sample flags from them.
+	 */
+	private void startPreviewLineRenderers(QueryFlagSnapshot brushedQueryFlags) {
+		if (tupleLines == null) {
+			return;
+		}
+		if (tupleDisplayMode == RENDER_TUPLES_AS_DENSITY) {
+			// the pairs next to the brushed axis are read from the data cube
+			if (dataCube != null && brushedQueryFlags != null) {
+				previewQueryFlags = brushedQueryFlags;
+				startFocusLineRenderer();
+				startContextLineRenderer();
+				previewQueryFlags = null;
+			}
+			return;
+		}
+		if (tupleDisplayMode != RENDER_TUPLES_AS_LINES) {
+			return;
+		}
+
+		if (brushedQueryFlags != null
+				&& lineRenderingBackend == PCLineRenderer.ACCUMULATION_RENDERING) {
+			previewQueryFlags = brushedQueryFlags;
+			startFocusLineRenderer();
+			startContextLineRenderer();
+			previewQueryFlags = null;
+			return;
+		}
+
+		if (tupleSample == null) {
+			tupleSample = new TupleReservoirSample(dataModel.getTupleCount(),
+					MAX_PREVIEW_SAMPLE_SIZE, 0L);
+		}
+
+		int sampleSize = Math.min(previewSampleSize > 0 ? previewSampleSize
+				: DEFAULT_PREVIEW_SAMPLE_SIZE, tupleSample.size());
+		if (brushedQueryFlags != null) {
+			previewSampleQueryFlags = new boolean[sampleSize];
+			int sampleIndices[] = tupleSample.getIndices();
+			for (int isample = 0; isample < sampleSize; isample++) {
+				previewSampleQueryFlags[isample] = brushedQueryFlags
+						.getQueryFlag(sampleIndices[isample]);
+			}
+		} else {
+			previewSampleQueryFlags = evaluateSampleQuery(sampleSize);
+		}
+		startFocusLineRenderer();
+		startContextLineRenderer();
+		previewSampleQueryFlags = null;
+	}
+
+	/**
+	 * Evaluates the active query on the first sampleSize tuples of the tuple
+	 * sample. A tuple is selected if its value falls in one of the ranges of
+	 * every column selection.
+	 */
+	private boolean[] evaluateSampleQuery(int sampleSize) {
+		boolean queryFlags[] = new boolean[sampleSize];
+		Arrays.fill(queryFlags, true);
+
+		int sampleIndices[] = tupleSample.getIndices();
+		for (ColumnSelection columnSelection : dataModel.getActiveQuery().getAllColumnSelections()) {
+			ArrayList<ColumnSelectionRange> ranges = columnSelection.getColumnSelectionRanges();
+			if (ranges.isEmpty()) {
+				continue;
+			}
+
+			int columnIndex = dataModel.getColumnIndex(columnSelection.getColumn());
+			for (int isample = 0; isample < sampleSize; isample++) {
+				if (!queryFlags[isample]) {
+					continue;
+				}
+				float value = dataModel.getTuple(sampleIndices[isample]).getElement(columnIndex);
+				boolean inRange = false;
+				for (ColumnSelectionRange range : ranges) {
+					if (value >= range.getMinValue() && value <= range.getMaxValue()) {
+						inRange = true;
+						break;
+					}
+				}
+				queryFlags[isample] = inRange;
+			}
+		}
+
+		return queryFlags;
+	}
+
+	/**
+	 * Adjusts the preview sample size to the measured speed of the finished
+	 * line renderer. Full renders only provide the initial estimate.
+	 */
+	private void updatePreviewSampleSize(PCLineRenderer lineRenderer) {
+		if (!lineRenderer.isComplete()
+				|| (!lineRenderer.isSampled() && previewSampleSize > 0)) {
+			return;
+		}
+
+		long renderedCount = lineRenderer.isSampled() ? lineRenderer.getSampleSize() : dataModel.getTupleCount();
+		long renderTime = Math.max(1, lineRenderer.getRenderTime());
+		int estimate = (int) Math.min(MAX_PREVIEW_SAMPLE_SIZE,
+				(renderedCount * PREVIEW_FRAME_BUDGET) / renderTime);
+		if (previewSampleSize > 0) {
+			estimate = (previewSampleSize + estimate) / 2;
+		}
+		previewSampleSize = Math.max(MIN_PREVIEW_SAMPLE_SIZE, estimate);
+	}
+
+	private void restartBrushIdleTimer() {
+		if (brushIdleTimer == null) {
+			brushIdleTimer = new Timer(BRUSH_IDLE_DELAY, this);
+			brushIdleTimer.setRepeats(false);
+		}
+		brushIdleTimer.restart();
+	}
+
+	/**
+	 * Rebuilds the polyline buffer from the per-column caches. Axes that keep
+	 * their vertical extent reuse their y arrays, so reordering, enabling or
+	 * disabling axes only computes the columns that were not shown before,
+	 * and a resize only rescales the cached normalized values.
+	 */
 	private void recalculatePolylines() {
 		if (dataModel.getTupleCount() == 0) {
 			return;
 		}
-		
-		tupleLines = new ArrayList<Point[]>();
 
-		for (int ituple = 0; ituple < dataModel.getTupleCount(); ituple++) {
-			Tuple currentTuple = dataModel.getTuple(ituple);
+		if (axisBottom != yPositionCacheAxisBottom || axisHeight != yPositionCacheAxisHeight) {
+			yPositionCache.clear();
+			yPositionCacheAxisBottom = axisBottom;
+			yPositionCacheAxisHeight = axisHeight;
+		}
 
-			Point tuplePoints[] = new Point[dataModel.getColumnCount()];
-			for (int iaxis = 0; iaxis < axisList.size(); iaxis++) {
-				PCAxis axis = axisList.get(iaxis);
-				int xPosition = axis.xPosition;
-				float currentValue = currentTuple.getElement(axis.dataModelIndex);
-				double normValue = (currentValue - axis.column.getSummaryStats().getMin())
-                        / (axis.column.getSummaryStats().getMax() - axis.column.getSummaryStats().getMin());
-				int currentYPosition = axis.bottomPosition - (int) (normValue * axis.axisHeight);
-				tuplePoints[iaxis] = new Point(xPosition, currentYPosition);
+		PCPolylineBuffer polylines = new PCPolylineBuffer(dataModel.getTupleCount(),
+				axisList.size());
+		for (int iaxis = 0; iaxis < axisList.size(); iaxis++) {
+			PCAxis axis = axisList.get(iaxis);
+			polylines.setAxisX(iaxis, axis.xPosition);
+			polylines.setAxisColumn(iaxis, axis.column);
+
+			short yPositions[] = yPositionCache.get(axis.column);
+			if (yPositions == null || yPositions.length != dataModel.getTupleCount()) {
+				float normValues[] = getNormalizedValues(axis);
+				yPositions = new short[normValues.length];
+				for (int ituple = 0; ituple < normValues.length; ituple++) {
+					yPositions[ituple] = (short) (axis.bottomPosition - (int) (normValues[ituple] * axis.axisHeight));
+				}
+				yPositionCache.put(axis.column, yPositions);
 			}
+			polylines.setAxisY(iaxis, yPositions);
+		}
+
+		tupleLines = polylines;
+	}
 
-			tupleLines.add(tuplePoints);
+	private float[] getNormalizedValues(PCAxis axis) {
+		float normValues[] = normalizedValueCache.get(axis.column);
+		if (normValues == null || normValues.length != dataModel.getTupleCount()) {
+			double minValue = axis.column.getSummaryStats().getMin();
+			double valueRange = axis.column.getSummaryStats().getMax() - minValue;
+			normValues = new float[dataModel.getTupleCount()];
+			for (int ituple = 0; ituple < normValues.length; ituple++) {
+				float currentValue = dataModel.getTuple(ituple).getElement(axis.dataModelIndex);
+				normValues[ituple] = (float) ((currentValue - minValue) / valueRange);
+			}
+			normalizedValueCache.put(axis.column, normValues);
 		}
+		return normValues;
+	}
+
+	private void clearPolylineCaches() {
+		normalizedValueCache.clear();
+		yPositionCache.clear();
 	}
 
     private void calculateHighlightedPolylines() {
-        highlightedTupleLines.clear();
         if (highlightedTuples.isEmpty()) {
+            highlightedTupleLines = null;
             return;
         }
 
-        for (int ituple = 0; ituple < highlightedTuples.size(); ituple++) {
-            Tuple currentTuple = highlightedTuples.get(ituple);
+        highlightedTupleLines = calculatePolylines(highlightedTuples);
+    }
 
-            Point tuplePoints[] = new Point[dataModel.getColumnCount()];
-            for (int iaxis = 0; iaxis < axisList.size(); iaxis++) {
-                PCAxis axis = axisList.get(iaxis);
-                int xPosition = axis.xPosition;
-                float currentValue = currentTuple.getElement(axis.dataModelIndex);
-                double normValue = (currentValue - axis.column.getSummaryStats().getMin())
-                        / (axis.column.getSummaryStats().getMax() - axis.column.getSummaryStats().getMin());
-                int currentYPosition = axis.bottomPosition - (int) (normValue * axis.axisHeight);
-                tuplePoints[iaxis] = new Point(xPosition, currentYPosition);
-            }
+	/**
+	 * Fills a new polyline buffer for the given tuples one axis at a time so
+	 * the min/max lookup is done once per axis and each y array is written
+	 * sequentially.
+	 */
+	private PCPolylineBuffer calculatePolylines(List<Tuple> tuples) {
+		PCPolylineBuffer polylines = new PCPolylineBuffer(tuples.size(),
+				axisList.size());
 
-            highlightedTupleLines.add(tuplePoints);
-        }
-    }
+		for (int iaxis = 0; iaxis < axisList.size(); iaxis++) {
+			PCAxis axis = axisList.get(iaxis);
+			polylines.setAxisX(iaxis, axis.xPosition);
+			polylines.setAxisColumn(iaxis, axis.column);
+
+			double minValue = axis.column.getSummaryStats().getMin();
+			double valueRange = axis.column.getSummaryStats().getMax() - minValue;
+			short yPositions[] = new short[tuples.size()];
+			polylines.setAxisY(iaxis, yPositions);
+			for (int ituple = 0; ituple < tuples.size(); ituple++) {
+				float currentValue = tuples.get(ituple).getElement(axis.dataModelIndex);
+				double normValue = (currentValue - minValue) / valueRange;
+				yPositions[ituple] = (short) (axis.bottomPosition - (int) (normValue * axis.axisHeight));
+			}
+		}
+
+		return polylines;
+	}
 
 	protected void layoutAxes() {
 		if (dataModel.getColumnCount() == 0) {
@@ -916,11 +1592,27 @@ public class PCPanel extends JComponent implements ActionListener,
 		 * axisBottom = screenHeight - BORDER_SIZE - rangeLabelSize -
 		 * scatterplotSize; axisHeight = axisBottom - axisTop;
 		 */
+		QueryStatistics queryStatistics = getQueryStatistics();
 		for (int iaxis = 0; iaxis < axisList.size(); iaxis++) {
 			PCAxis axis = axisList.get(iaxis);
 
 			Column column = axis.column;
-            SummaryStats columnQueryStats = dataModel.getActiveQuery().getColumnQuerySummaryStats(column);
+            float queryMean = 0.f;
+            float queryStandardDeviation = 0.f;
+            float queryMedian = 0.f;
+            float queryQuantile1 = 0.f;
+            float queryQuantile3 = 0.f;
+            float queryLowerWhisker = 0.f;
+            float queryUpperWhisker = 0.f;
+            if (queryStatistics != null) {
+                queryMean = (float) queryStatistics.getMean(axis.dataModelIndex);
+                queryStandardDeviation = (float) queryStatistics.getStandardDeviation(axis.dataModelIndex);
+                queryMedian = queryStatistics.getMedian(axis.dataModelIndex);
+                queryQuantile1 = queryStatistics.getQuantile1(axis.dataModelIndex);
+                queryQuantile3 = queryStatistics.getQuantile3(axis.dataModelIndex);
+                queryLowerWhisker = queryStatistics.getLowerWhisker(axis.dataModelIndex);
+                queryUpperWhisker = queryStatistics.getUpperWhisker(axis.dataModelIndex);
+            }
 
 			axis.xPosition = BORDER_SIZE + (axisSpacing / 2)
 					+ (iaxis * axisSpacing);
@@ -952,8 +1644,8 @@ public class PCPanel extends JComponent implements ActionListener,
             axis.meanPosition = axis.bottomPosition - (int) (normValue * axis.axisHeight);
 
             // calculate the query mean position
-            if (columnQueryStats != null) {
-                normValue = (columnQueryStats.getMean() - axis.column.getSummaryStats().getMin())
+            if (queryStatistics != null) {
+                normValue = (queryMean - axis.column.getSummaryStats().getMin())
                         / (axis.column.getSummaryStats().getMax() - axis.column.getSummaryStats().getMin());
                 axis.queryMeanPosition = axis.bottomPosition
                         - (int) (normValue * axis.axisHeight);
@@ -976,13 +1668,13 @@ public class PCPanel extends JComponent implements ActionListener,
                     axis.axisBarRectangle.width - 6, lowValueY - highValueY);
 
 			// calculate query mean-centered standard deviation range box
-            if (columnQueryStats != null) {
-                float queryLowValue = columnQueryStats.getMean() - columnQueryStats.getStandardDeviation();
+            if (queryStatistics != null) {
+                float queryLowValue = queryMean - queryStandardDeviation;
                 normValue = (queryLowValue - axis.column.getSummaryStats().getMin())
                         / (axis.column.getSummaryStats().getMax() - axis.column.getSummaryStats().getMin());
                 int queryLowValueY = axis.bottomPosition - (int) (normValue * axis.axisHeight);
                 queryLowValueY = queryLowValueY > axis.bottomPosition ? axis.bottomPosition : queryLowValueY;
-                float queryHighValue = columnQueryStats.getMean() + columnQueryStats.getStandardDeviation();
+                float queryHighValue = queryMean + queryStandardDeviation;
                 normValue = (queryHighValue - axis.column.getSummaryStats().getMin()) / (axis.column.getSummaryStats().getMax() - axis.column.getSummaryStats().getMin());
                 int queryHighValueY = axis.bottomPosition - (int) (normValue * axis.axisHeight);
                 queryHighValueY = queryHighValueY < axis.topPosition ? axis.topPosition : queryHighValueY;
@@ -996,8 +1688,8 @@ public class PCPanel extends JComponent implements ActionListener,
             axis.medianPosition = axis.bottomPosition - (int) (normValue * axis.axisHeight);
 
             // calculate the query median line position
-            if (columnQueryStats != null) {
-                normValue = (columnQueryStats.getMedian() - axis.column.getSummaryStats().getMin())
+            if (queryStatistics != null) {
+                normValue = (queryMedian - axis.column.getSummaryStats().getMin())
                         / (axis.column.getSummaryStats().getMax() - axis.column.getSummaryStats().getMin());
                 axis.queryMedianPosition = axis.bottomPosition - (int) (normValue * axis.axisHeight);
             }
@@ -1018,10 +1710,10 @@ public class PCPanel extends JComponent implements ActionListener,
                     q3Y, axis.axisBarRectangle.width - 6, q1Y - q3Y);
 
             // calculate Query IQR range box
-            if (columnQueryStats != null) {
-                normValue = (columnQueryStats.getQuantile1() - axis.column.getSummaryStats().getMin()) / (axis.column.getSummaryStats().getMax() - axis.column.getSummaryStats().getMin());
+            if (queryStatistics != null) {
+                normValue = (queryQuantile1 - axis.column.getSummaryStats().getMin()) / (axis.column.getSummaryStats().getMax() - axis.column.getSummaryStats().getMin());
                 int queryQ1Y = axis.bottomPosition - (int) (normValue * axis.axisHeight);
-                normValue = (columnQueryStats.getQuantile3() - axis.column.getSummaryStats().getMin())
+                normValue = (queryQuantile3 - axis.column.getSummaryStats().getMin())
                         / (axis.column.getSummaryStats().getMax() - axis.column.getSummaryStats().getMin());
                 int queryQ3Y = axis.bottomPosition - (int) (normValue * axis.axisHeight);
                 axis.QueryIQRBoxRectangle = new Rectangle(axis.axisBarRectangle.x + 7, queryQ3Y, axis.axisBarRectangle.width - 14, queryQ1Y - queryQ3Y);
@@ -1036,11 +1728,11 @@ public class PCPanel extends JComponent implements ActionListener,
             axis.IQRWhiskerRectangle = new Rectangle(axis.IQRBoxRectangle.x, upperWhiskerY, axis.IQRBoxRectangle.width, lowerWhiskerY - upperWhiskerY);
 
             // calculate Query IQR whiskers
-            if (columnQueryStats != null) {
-                normValue = (columnQueryStats.getLowerWhisker() - axis.column.getSummaryStats().getMin())
+            if (queryStatistics != null) {
+                normValue = (queryLowerWhisker - axis.column.getSummaryStats().getMin())
                         / (axis.column.getSummaryStats().getMax() - axis.column.getSummaryStats().getMin());
                 int queryLowerWhiskerY = axis.bottomPosition - (int) (normValue * axis.axisHeight);
-                normValue = (columnQueryStats.getUpperWhisker() - axis.column.getSummaryStats().getMin())
+                normValue = (queryUpperWhisker - axis.column.getSummaryStats().getMin())
                         / (axis.column.getSummaryStats().getMax() - axis.column.getSummaryStats().getMin());
                 int queryUpperWhiskerY = axis.bottomPosition - (int) (normValue * axis.axisHeight);
                 axis.QueryIQRWhiskerRectangle = new Rectangle(axis.QueryIQRBoxRectangle.x, queryUpperWhiskerY,
@@ -1254,6 +1946,13 @@ public class PCPanel extends JComponent implements ActionListener,
               draggingAxisSelection.setMaxPosition(queryMaxPosition);
 			}
 
+			// the preview starts when the scheduler publishes the result
+			queryScheduler.submit(dataModel.getActiveQuery());
+			if (dataCube != null && !showCrossfilterHistograms
+					&& showFrequencyInfo && useQueryFrequencyData) {
+				startAxesImageRenderer();
+			}
+			restartBrushIdleTimer();
 			repaint();
 		} else if (mouseOverLabelAxis != null) {
 			draggingAxis = true;
@@ -1339,7 +2038,7 @@ public class PCPanel extends JComponent implements ActionListener,
 //							.setMaxQueryValue((float) binInfo.highEdge);
 //					mouseOverAxis.column
 //							.setMinQueryValue((float) binInfo.lowEdge);
-					dataModel.setQueriedTuples();
+					queryScheduler.apply();
 					// startFocusLineRenderer();
 					// startContextLineRenderer();
 					// startScatterplotRenderers();
@@ -1351,7 +2050,7 @@ public class PCPanel extends JComponent implements ActionListener,
                         dataModel.clearColumnSelectionRange(mouseOverAxisSelection.getColumnSelectionRange());
                         mouseOverAxisSelection = null;
                         mouseOverAxisQuery = false;
-//                        dataModel.setQueriedTuples();
+                        queryScheduler.apply();
                     }
 //					if (mouseOverAxis.column.isQuerySet()) {
 //						mouseOverAxis.column.setQueryFlag(false);
@@ -1385,7 +2084,8 @@ public class PCPanel extends JComponent implements ActionListener,
 					contextConfig.labelFont = new Font("Dialog", Font.PLAIN, 10);
 
 					ScatterPlotFrame frame = new ScatterPlotFrame(dataModel,
-							xColumn, yColumn, focusConfig, contextConfig);
+							queryScheduler, xColumn, yColumn, focusConfig,
+							contextConfig);
 					frame.setVisible(true);
 					frame.setColumns(xColumn, yColumn);
 					scatterplotFrameList.add(frame);
@@ -1415,8 +2115,13 @@ public class PCPanel extends JComponent implements ActionListener,
 	public void mouseReleased(MouseEvent event) {
 		if (dragging) {
 			dragging = false;
-			dataModel.setQueriedTuples();
+			if (brushIdleTimer != null) {
+				brushIdleTimer.stop();
+			}
+			queryScheduler.cancel();
+			queryScheduler.apply();
 			draggingAxisSelection = null;
+			brushedQueriedTupleCount = -1;
 			// startFocusLineRenderer();
 			// repaint();
 		} else if (mouseOverLabelAxis != null) {
@@ -1519,10 +2224,21 @@ public class PCPanel extends JComponent implements ActionListener,
 	public void dataModelChanged(DataModel dataModel) {
 		axesImage = contextImage = focusImage = null;
 		axisList = null;
+		clearPolylineCaches();
+		tupleSample = null;
+		// the scheduler evaluates the query again for the new tuples
+		queryGeneration++;
+		lineImageStripCache.clear();
+		lineCountStripCache.clear();
+		queryStatistics = null;
+		crossfilterHistograms = null;
+		focusLineAccumulation = contextLineAccumulation = null;
+		scatterplotCellCache.clear();
+		scatterplotCellGeneration = -1;
 		layoutAxes();
+		rebuildDataCube();
 		recalculatePolylines();
         calculateHighlightedPolylines();
-		dataModel.setQueriedTuples();
 
 		if (dataModel.getTupleCount() > 0) {
 			startAxesImageRenderer();
@@ -1540,7 +2256,6 @@ public class PCPanel extends JComponent implements ActionListener,
 				layoutAxes();
 				recalculatePolylines();
                 calculateHighlightedPolylines();
-				dataModel.setQueriedTuples();
 				if (dataModel.getTupleCount() > 0) {
 					startAxesImageRenderer();
 					startContextLineRenderer();
@@ -1568,7 +2283,6 @@ public class PCPanel extends JComponent implements ActionListener,
 		layoutAxes();
 		recalculatePolylines();
         calculateHighlightedPolylines();
-		dataModel.setQueriedTuples();
 		if (dataModel.getTupleCount() > 0) {
 			startAxesImageRenderer();
 			startContextLineRenderer();
@@ -1584,7 +2298,6 @@ public class PCPanel extends JComponent implements ActionListener,
 		layoutAxes();
 		recalculatePolylines();
         calculateHighlightedPolylines();
-		dataModel.setQueriedTuples();
 		if (dataModel.getTupleCount() > 0) {
 			startAxesImageRenderer();
 			startContextLineRenderer();
@@ -1603,6 +2316,47 @@ public class PCPanel extends JComponent implements ActionListener,
 		startNewLinesRenderer(newTuples);
 	}
 
+	@Override
+	public void queryResultPublished(QueryScheduler queryScheduler,
+			QueryResult result) {
+		if (result.isAppliedQuery()) {
+			queryStatistics = result.getQueryStatistics();
+			crossfilterHistograms = result.getCrossfilterHistograms();
+			computeExactQuantiles();
+			layoutAxes();
+			startAxesImageRenderer();
+			if (result.isAppliedToTuples()) {
+				// the cached strips and scatterplot cells stay valid if no
+				// tuple flag changed, as when an axis without selections is
+				// hidden or shown
+				int changedTuples[] = result.getTupleFlagChanges();
+				if (changedTuples == null || changedTuples.length > 0) {
+					queryGeneration++;
+				}
+				axesImage = focusImage = contextImage = null;
+				recalculateQueryBoxes();
+				startFocusLineRenderer();
+				startScatterplotRenderers();
+				startContextLineRenderer();
+			}
+			repaint();
+			return;
+		}
+		if (!dragging) {
+			return;
+		}
+		QueryFlagSnapshot queryFlags = result.getQueryFlags();
+		brushedQueriedTupleCount = queryFlags != null ? queryFlags
+				.getQueriedTupleCount() : -1;
+		startPreviewLineRenderers(queryFlags);
+		crossfilterHistograms = result.getCrossfilterHistograms();
+		if (showCrossfilterHistograms && showFrequencyInfo
+				&& useQueryFrequencyData) {
+			startAxesImageRenderer();
+		}
+		repaint();
+	}
+
 	@Override
 	public void rendererFinished(Renderer renderer) {
 		if (renderer == axesRenderer) {
@@ -1610,9 +2364,23 @@ public class PCPanel extends JComponent implements ActionListener,
 			repaint();
 		} else if (renderer == contextLineRenderer) {
 			contextImage = renderer.getRenderedImage();
+			if (renderer instanceof PCLineRenderer) {
+				PCLineRenderer lineRenderer = (PCLineRenderer) renderer;
+				updatePreviewSampleSize(lineRenderer);
+				if (lineRenderer.getLineAccumulation() != null) {
+					contextLineAccumulation = lineRenderer.getLineAccumulation();
+				}
+			}
 			repaint();
 		} else if (renderer == focusLineRenderer) {
 			focusImage = renderer.getRenderedImage();
+			if (renderer instanceof PCLineRenderer) {
+				PCLineRenderer lineRenderer = (PCLineRenderer) renderer;
+				updatePreviewSampleSize(lineRenderer);
+				if (lineRenderer.getLineAccumulation() != null) {
+					focusLineAccumulation = lineRenderer.getLineAccumulation();
+				}
+			}
 			repaint();
 
 		} else if (renderer instanceof NewLinesRenderer) {
@@ -1622,52 +2390,15 @@ public class PCPanel extends JComponent implements ActionListener,
 				newLinesImage = null;
 			}
 			repaint();
-		} else if (renderer instanceof ScatterplotPointsRenderer) {
-			if (renderer.getName().equals("focus")) {
-				String xColumnName = ((ScatterplotPointsRenderer) renderer)
-						.getXColumn().getName();
-				String yColumnName = ((ScatterplotPointsRenderer) renderer)
-						.getYColumn().getName();
-
-				HashMap<String, BufferedImage> rowPlots = rowPointsSPlotMap
-						.get(xColumnName);
-				if (rowPlots == null) {
-					rowPlots = new HashMap<String, BufferedImage>();
-					rowPointsSPlotMap.put(xColumnName, rowPlots);
-				}
-
-				rowPlots.put(yColumnName, renderer.getRenderedImage());
-				repaint();
-			} else if (renderer.getName().equals("context")) {
-				String xColumnName = ((ScatterplotPointsRenderer) renderer)
-						.getXColumn().getName();
-				String yColumnName = ((ScatterplotPointsRenderer) renderer)
-						.getYColumn().getName();
-
-				HashMap<String, BufferedImage> rowSPlots = rowContextSPlotMap
-						.get(xColumnName);
-				if (rowSPlots == null) {
-					rowSPlots = new HashMap<String, BufferedImage>();
-					rowContextSPlotMap.put(xColumnName, rowSPlots);
-				}
-
-				rowSPlots.put(yColumnName, renderer.getRenderedImage());
-				repaint();
-			}
+		} else if (renderer == scatterplotMatrixRenderer) {
+			scatterplotCellGeneration = scatterplotMatrixRenderer
+					.getQueryGeneration();
+			repaint();
 		} else if (renderer instanceof ScatterplotAxesRenderer) {
-			String xColumnName = ((ScatterplotAxesRenderer) renderer)
-					.getXColumn().getName();
-			String yColumnName = ((ScatterplotAxesRenderer) renderer)
-					.getYColumn().getName();
-
-			HashMap<String, BufferedImage> rowAxesSPlots = rowAxesSPlotMap
-					.get(xColumnName);
-			if (rowAxesSPlots == null) {
-				rowAxesSPlots = new HashMap<String, BufferedImage>();
-				rowAxesSPlotMap.put(xColumnName, rowAxesSPlots);
+			ScatterplotCellKey axesKey = scatterplotAxesKeys.remove(renderer);
+			if (axesKey != null) {
+				scatterplotCellCache.put(axesKey, renderer.getRenderedImage());
 			}
-
-			rowAxesSPlots.put(yColumnName, renderer.getRenderedImage());
 			repaint();
 		}
 	}
@@ -1675,6 +2406,10 @@ public class PCPanel extends JComponent implements ActionListener,
 	public void arrangeColumnsByCorrelation(Column compareColumn,
 			boolean useQueryCorrelations) {
 		int compareColumnIndex = dataModel.getColumnIndex(compareColumn);
+		QueryStatistics queryStatistics = getQueryStatistics();
+		if (queryStatistics == null || !queryStatistics.hasCorrelations()) {
+			useQueryCorrelations = false;
+		}
 
 		ArrayList<PCAxis> newAxisList = new ArrayList<PCAxis>();
 
@@ -1689,7 +2424,8 @@ public class PCPanel extends JComponent implements ActionListener,
 
 			float corrCoefficient;
 			if (useQueryCorrelations) {
-				corrCoefficient = dataModel.getActiveQuery().getColumnQuerySummaryStats(axis.column).getCorrelationCoefficients().get(compareColumnIndex);
+				corrCoefficient = (float) queryStatistics.getCorrelationCoefficient(
+						axis.dataModelIndex, compareColumnIndex);
 			} else {
 				corrCoefficient = axis.column.getSummaryStats().getCorrelationCoefficients().get(compareColumnIndex);
 			}
@@ -1924,18 +2660,16 @@ public class PCPanel extends JComponent implements ActionListener,
 	@Override
 	public void highlightedColumnChanged(DataModel dataModel) {
 		startAxesImageRenderer();
+		// renders only the cells that are not cached
+		startScatterplotRenderers();
 	}
 
 	@Override
 	public void queryChanged(DataModel dataModel) {
-		axesImage = focusImage = contextImage = null;
-
-		layoutAxes();
+		// the lines are rendered when the query scheduler publishes the
+		// flags it writes to the tuples
 		recalculateQueryBoxes();
-		startAxesImageRenderer();
-		startFocusLineRenderer();
-		startScatterplotRenderers();
-		startContextLineRenderer();
+		repaint();
 	}
 	
 	@Override
@@ -2011,6 +2745,12 @@ public class PCPanel extends JComponent implements ActionListener,
 			this.waitingTimer = null;
 			// Resize
 			this.applyResize();
+		} else if (event.getSource() == this.brushIdleTimer) {
+			// the pointer rests while brushing so show the full data
+			if (dragging) {
+				queryScheduler.cancel();
+				queryScheduler.apply();
+			}
 		}
 	}
 
@@ -0,0 +1,66 @@
+package gov.ornl.eden;
+
+import gov.ornl.datatable.Column;
+
+/**
+ * Screen coordinates of the parallel coordinate polylines. Rather than one
+ * point object per tuple per axis, the buffer keeps one x position per axis
+ * and one array of y positions per axis, indexed by tuple. Renderers walk a
+ * pair of adjacent y arrays sequentially when drawing the segments between
+ * two axes.
+ *
+ * A buffer is not modified after it has been handed to a renderer; the panel
+ * builds a new buffer whenever the layout changes. The per-axis y arrays of
+ * axes whose column and vertical extent did not change are shared with the
+ * previous buffer. The column shown on each axis is kept so renderers can
+ * identify the axis pairs they draw.
+ */
+public class PCPolylineBuffer {
+	private int tupleCount;
+	private int axisX[];
+	private short axisY[][];
+	private Column axisColumns[];
+
+	public PCPolylineBuffer(int tupleCount, int axisCount) {
+		this.tupleCount = tupleCount;
+		axisX = new int[axisCount];
+		axisY = new short[axisCount][];
+		axisColumns = new Column[axisCount];
+	}
+
+	public int getTupleCount() {
+		return tupleCount;
+	}
+
+	public int getAxisCount() {
+		return axisX.length;
+	}
+
+	public int getAxisX(int axisIndex) {
+		return axisX[axisIndex];
+	}
+
+	public void setAxisX(int axisIndex, int x) {
+		axisX[axisIndex] = x;
+	}
+
+	public short[] getAxisY(int axisIndex) {
+		return axisY[axisIndex];
+	}
+
+	public void setAxisY(int axisIndex, short yPositions[]) {
+		axisY[axisIndex] = yPositions;
+	}
+
+	public Column getAxisColumn(int axisIndex) {
+		return axisColumns[axisIndex];
+	}
+
+	public void setAxisColumn(int axisIndex, Column column) {
+		axisColumns[axisIndex] = column;
+	}
+
+	public int getY(int axisIndex, int tupleIndex) {
+		return axisY[axisIndex][tupleIndex];
+	}
+}
@@ -0,0 +1,84 @@
+package gov.ornl.eden;
+
+import gov.ornl.datatable.Column;
+
+import java.awt.Color;
+
+/**
+ * Identifies the rendered segments between two adjacent parallel coordinate
+ * axes. A cached strip can be used again if the same two columns are
+ * adjacent, the query has not changed since the strip was drawn (same query
+ * generation) and the layer is drawn in the same style and size, between
+ * the same top and bottom axis positions.
+ */
+public class PCStripKey {
+	private final Column leftColumn;
+	private final Column rightColumn;
+	private final int queryGeneration;
+	private final boolean focusLayer;
+	private final Color lineColor;
+	private final int lineSize;
+	private final boolean antialias;
+	private final int axisBarWidthHalf;
+	private final int stripWidth;
+	private final int stripHeight;
+	private final int axisTop;
+	private final int axisBottom;
+
+	public PCStripKey(Column leftColumn, Column rightColumn,
+			int queryGeneration, boolean focusLayer, Color lineColor,
+			int lineSize, boolean antialias, int axisBarWidthHalf,
+			int stripWidth, int stripHeight, int axisTop, int axisBottom) {
+		this.leftColumn = leftColumn;
+		this.rightColumn = rightColumn;
+		this.queryGeneration = queryGeneration;
+		this.focusLayer = focusLayer;
+		this.lineColor = lineColor;
+		this.lineSize = lineSize;
+		this.antialias = antialias;
+		this.axisBarWidthHalf = axisBarWidthHalf;
+		this.stripWidth = stripWidth;
+		this.stripHeight = stripHeight;
+		this.axisTop = axisTop;
+		this.axisBottom = axisBottom;
+	}
+
+	@Override
+	public boolean equals(Object object) {
+		if (this == object) {
+			return true;
+		}
+		if (!(object instanceof PCStripKey)) {
+			return false;
+		}
+		PCStripKey other = (PCStripKey) object;
+		return leftColumn == other.leftColumn
+				&& rightColumn == other.rightColumn
+				&& queryGeneration == other.queryGeneration
+				&& focusLayer == other.focusLayer
+				&& lineColor.equals(other.lineColor)
+				&& lineSize == other.lineSize && antialias == other.antialias
+				&& axisBarWidthHalf == other.axisBarWidthHalf
+				&& stripWidth == other.stripWidth
+				&& stripHeight == other.stripHeight
+				&& axisTop == other.axisTop
+				&& axisBottom == other.axisBottom;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = System.identityHashCode(leftColumn);
+		hash = (31 * hash) + System.identityHashCode(rightColumn);
+		hash = (31 * hash) + queryGeneration;
+		hash = (31 * hash) + (focusLayer ? 1 : 0);
+		hash = (31 * hash) + lineColor.hashCode();
+		hash = (31 * hash) + lineSize;
+		hash = (31 * hash) + (antialias ? 1 : 0);
+		hash = (31 * hash) + axisBarWidthHalf;
+		hash = (31 * hash) + stripWidth;
+		hash = (31 * hash) + stripHeight;
+		hash = (31 * hash) + axisTop;
+		hash = (31 * hash) + axisBottom;
+		return hash;
+	}
+}
@@ -0,0 +1,126 @@
+package gov.ornl.eden;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * A scatterplot point shape rendered once into a small premultiplied image.
+ * Points are drawn by blending the sprite pixels straight into the pixel
+ * array of a TYPE_INT_ARGB_PRE image at integer offsets, which avoids a
+ * Graphics2D shape rendering and transform change per point.
+ */
+public class PointSprite {
+	private int width;
+	private int height;
+	// sprite pixel that corresponds to the origin of the shape
+	private int originX;
+	private int originY;
+	// offsets and premultiplied colors of the non-transparent sprite pixels
+	private int pixelX[];
+	private int pixelY[];
+	private int pixelColors[];
+
+	public PointSprite(Shape shape, Color color, boolean antialias) {
+		this(shape, color, new BasicStroke(2.f), antialias);
+	}
+
+	public PointSprite(Shape shape, Color color, Stroke stroke,
+			boolean antialias) {
+		Rectangle bounds = stroke.createStrokedShape(shape).getBounds();
+		width = bounds.width + 2;
+		height = bounds.height + 2;
+		originX = 1 - bounds.x;
+		originY = 1 - bounds.y;
+
+		BufferedImage spriteImage = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_ARGB_PRE);
+		Graphics2D g2 = spriteImage.createGraphics();
+		if (antialias) {
+			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_ON);
+		}
+		g2.setStroke(stroke);
+		g2.setColor(color);
+		g2.translate(originX, originY);
+		g2.draw(shape);
+		g2.dispose();
+
+		int spritePixels[] = ((DataBufferInt) spriteImage.getRaster()
+				.getDataBuffer()).getData();
+		int pixelCount = 0;
+		for (int pixel : spritePixels) {
+			if (pixel != 0) {
+				pixelCount++;
+			}
+		}
+		pixelX = new int[pixelCount];
+		pixelY = new int[pixelCount];
+		pixelColors = new int[pixelCount];
+		int next = 0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int pixel = spritePixels[(y * width) + x];
+				if (pixel != 0) {
+					pixelX[next] = x - originX;
+					pixelY[next] = y - originY;
+					pixelColors[next] = pixel;
+					next++;
+				}
+			}
+		}
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Blends the sprite over the target pixels, which must be premultiplied
+	 * ARGB, with the origin of the shape at (x, y). Pixels outside the target
+	 * are skipped.
+	 */
+	public void stamp(int targetPixels[], int targetWidth, int targetHeight,
+			int x, int y) {
+		for (int i = 0; i < pixelColors.length; i++) {
+			int px = x + pixelX[i];
+			int py = y + pixelY[i];
+			if (px < 0 || py < 0 || px >= targetWidth || py >= targetHeight) {
+				continue;
+			}
+			int index = (py * targetWidth) + px;
+			targetPixels[index] = blend(pixelColors[i], targetPixels[index]);
+		}
+	}
+
+	/**
+	 * Source over compositing of two premultiplied ARGB pixels.
+	 */
+	private static int blend(int source, int target) {
+		int inverseAlpha = 255 - (source >>> 24);
+		if (inverseAlpha == 0 || target == 0) {
+			return source;
+		}
+		int a = (source >>> 24) + scale(target >>> 24, inverseAlpha);
+		int r = ((source >> 16) & 0xff) + scale((target >> 16) & 0xff, inverseAlpha);
+		int g = ((source >> 8) & 0xff) + scale((target >> 8) & 0xff, inverseAlpha);
+		int b = (source & 0xff) + scale(target & 0xff, inverseAlpha);
+		return (a << 24) | (r << 16) | (g << 8) | b;
+	}
+
+	private static int scale(int value, int factor) {
+		// value * factor / 255, rounded
+		int product = (value * factor) + 128;
+		return (product + (product >> 8)) >> 8;
+	}
+}
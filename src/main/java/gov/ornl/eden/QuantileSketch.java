@@ -0,0 +1,339 @@
+package gov.ornl.eden;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A mergeable quantile sketch of float values after Karnin, Lang and Liberty
+ * (KLL). Values are kept in levels of compactors; an item at level h stands
+ * for 2^h values. When a level is full its items are sorted and every other
+ * one, starting at a random offset, is promoted to the next level, so the
+ * sketch keeps O(k log(n / k)) items for n values while the total weight
+ * stays exactly n.
+ *
+ * The normalized rank error shrinks with k, roughly as 2.3 / k^0.97 with 99%
+ * confidence, which is about 1.3% for the default k of 200. Sketches of the
+ * same k are merged by concatenating their levels, so the sketches of the
+ * chunks of a parallel pass combine into the sketch of all values.
+ */
+public class QuantileSketch {
+	public static final int DEFAULT_K = 200;
+
+	private static final int MIN_K = 8;
+	private static final int MIN_CAPACITY = 2;
+	private static final double CAPACITY_RATIO = 2. / 3.;
+	private static final double RANK_ERROR_COEFFICIENT = 2.296;
+	private static final double RANK_ERROR_EXPONENT = 0.9723;
+
+	private int k;
+	private float levels[][];
+	private int levelSizes[];
+	private int levelCount;
+	// items kept in all levels and the number they may reach before compacting
+	private int itemCount;
+	private int maxItemCount;
+	private long count;
+	private float minValue = Float.POSITIVE_INFINITY;
+	private float maxValue = Float.NEGATIVE_INFINITY;
+
+	public QuantileSketch() {
+		this(DEFAULT_K);
+	}
+
+	public QuantileSketch(int k) {
+		if (k < MIN_K) {
+			throw new IllegalArgumentException("k must be at least " + MIN_K);
+		}
+		this.k = k;
+		levels = new float[1][];
+		levelSizes = new int[1];
+		levelCount = 1;
+		levels[0] = new float[k];
+		maxItemCount = getCapacity(0);
+	}
+
+	/**
+	 * Returns the smallest k whose normalized rank error is at most the given
+	 * fraction, for instance 0.01 for quantiles within 1% of their rank.
+	 */
+	public static int getK(double rankError) {
+		int k = (int) Math.ceil(Math.pow(RANK_ERROR_COEFFICIENT / rankError,
+				1. / RANK_ERROR_EXPONENT));
+		return Math.max(MIN_K, k);
+	}
+
+	/**
+	 * Returns the normalized rank error of sketches with the given k.
+	 */
+	public static double getRankError(int k) {
+		return RANK_ERROR_COEFFICIENT / Math.pow(k, RANK_ERROR_EXPONENT);
+	}
+
+	public int getK() {
+		return k;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public float getMin() {
+		return count > 0 ? minValue : Float.NaN;
+	}
+
+	public float getMax() {
+		return count > 0 ? maxValue : Float.NaN;
+	}
+
+	public void update(float value) {
+		if (Float.isNaN(value)) {
+			return;
+		}
+		if (value < minValue) {
+			minValue = value;
+		}
+		if (value > maxValue) {
+			maxValue = value;
+		}
+		addItem(0, value);
+		count++;
+		if (itemCount >= maxItemCount) {
+			compress();
+		}
+	}
+
+	/**
+	 * Adds the values of another sketch of the same k to this one. The other
+	 * sketch is not changed.
+	 */
+	public void merge(QuantileSketch other) {
+		if (other.k != k) {
+			throw new IllegalArgumentException("Sketches of k " + k + " and "
+					+ other.k + " cannot be merged");
+		}
+		if (other.count == 0) {
+			return;
+		}
+		while (levelCount < other.levelCount) {
+			addLevel();
+		}
+		for (int h = 0; h < other.levelCount; h++) {
+			for (int i = 0; i < other.levelSizes[h]; i++) {
+				addItem(h, other.levels[h][i]);
+			}
+		}
+		count += other.count;
+		minValue = Math.min(minValue, other.minValue);
+		maxValue = Math.max(maxValue, other.maxValue);
+		while (itemCount >= maxItemCount) {
+			compress();
+		}
+	}
+
+	/**
+	 * Returns the value whose rank is closest to the given fraction of the
+	 * values, or NaN if the sketch is empty.
+	 */
+	public float getQuantile(double fraction) {
+		return new SortedView(this, null).getQuantile(fraction);
+	}
+
+	private int getCapacity(int level) {
+		int depth = levelCount - level - 1;
+		return Math.max(MIN_CAPACITY,
+				(int) Math.ceil(k * Math.pow(CAPACITY_RATIO, depth)));
+	}
+
+	private void addItem(int level, float value) {
+		if (levelSizes[level] == levels[level].length) {
+			levels[level] = Arrays.copyOf(levels[level],
+					Math.max(MIN_CAPACITY, levels[level].length * 2));
+		}
+		levels[level][levelSizes[level]++] = value;
+		itemCount++;
+	}
+
+	private void addLevel() {
+		levels = Arrays.copyOf(levels, levelCount + 1);
+		levelSizes = Arrays.copyOf(levelSizes, levelCount + 1);
+		levels[levelCount] = new float[MIN_CAPACITY];
+		levelCount++;
+		maxItemCount = 0;
+		for (int h = 0; h < levelCount; h++) {
+			maxItemCount += getCapacity(h);
+		}
+	}
+
+	// compacts the lowest full level into the one above it
+	private void compress() {
+		for (int h = 0; h < levelCount; h++) {
+			if (levelSizes[h] < getCapacity(h)) {
+				continue;
+			}
+			if (h + 1 == levelCount) {
+				addLevel();
+			}
+			float items[] = levels[h];
+			int size = levelSizes[h];
+			Arrays.sort(items, 0, size);
+			// an odd item out stays at this level
+			int pairedSize = size & ~1;
+			int offset = ThreadLocalRandom.current().nextBoolean() ? 1 : 0;
+			for (int i = offset; i < pairedSize; i += 2) {
+				addItem(h + 1, items[i]);
+			}
+			itemCount -= pairedSize;
+			if (pairedSize < size) {
+				items[0] = items[size - 1];
+			}
+			levelSizes[h] = size - pairedSize;
+			if (itemCount < maxItemCount) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * The items of a sketch sorted by value with their cumulative weights. The
+	 * items of a second sketch of removed values may be subtracted, in which
+	 * case the rank error is relative to the number of values added and
+	 * removed rather than to the number of values left.
+	 */
+	public static class SortedView {
+		private float values[];
+		private long cumulativeWeights[];
+		private long totalWeight;
+
+		public SortedView(QuantileSketch added, QuantileSketch removed) {
+			int size = added.itemCount + (removed != null ? removed.itemCount : 0);
+			values = new float[size];
+			long weights[] = new long[size];
+			size = addItems(added, 1, values, weights, 0);
+			if (removed != null) {
+				size = addItems(removed, -1, values, weights, size);
+			}
+			sort(values, weights);
+
+			// a value that was added and removed again must not count
+			// before its removal, so equal values share one weight
+			int distinctSize = 0;
+			for (int i = 0; i < size; i++) {
+				if (distinctSize > 0 && values[i] == values[distinctSize - 1]) {
+					weights[distinctSize - 1] += weights[i];
+				} else {
+					values[distinctSize] = values[i];
+					weights[distinctSize++] = weights[i];
+				}
+			}
+			size = distinctSize;
+			values = Arrays.copyOf(values, size);
+			weights = Arrays.copyOf(weights, size);
+
+			cumulativeWeights = weights;
+			for (int i = 1; i < size; i++) {
+				cumulativeWeights[i] += cumulativeWeights[i - 1];
+			}
+			totalWeight = size > 0 ? cumulativeWeights[size - 1] : 0;
+		}
+
+		public long getTotalWeight() {
+			return totalWeight;
+		}
+
+		/**
+		 * Returns the first value whose cumulative weight reaches the given
+		 * fraction of the total weight, or NaN if no values are left.
+		 */
+		public float getQuantile(double fraction) {
+			if (totalWeight <= 0) {
+				return Float.NaN;
+			}
+			double target = Math.max(1., Math.ceil(fraction * totalWeight));
+			for (int i = 0; i < values.length; i++) {
+				if (cumulativeWeights[i] >= target) {
+					return values[i];
+				}
+			}
+			return values[values.length - 1];
+		}
+
+		/**
+		 * Returns the smallest value that is at least the given one, or NaN
+		 * if there is none.
+		 */
+		public float getCeiling(float value) {
+			int i = Arrays.binarySearch(values, value);
+			if (i < 0) {
+				i = -i - 1;
+			}
+			while (i > 0 && values[i - 1] == value) {
+				i--;
+			}
+			// skip values whose weight was removed again
+			long weightBefore = i > 0 ? cumulativeWeights[i - 1] : 0;
+			for (; i < values.length; i++) {
+				if (cumulativeWeights[i] > weightBefore) {
+					return values[i];
+				}
+			}
+			return Float.NaN;
+		}
+
+		/**
+		 * Returns the largest value that is at most the given one, or NaN if
+		 * there is none.
+		 */
+		public float getFloor(float value) {
+			int end = Arrays.binarySearch(values, value);
+			if (end < 0) {
+				end = -end - 2;
+			}
+			while (end >= 0 && end + 1 < values.length
+					&& values[end + 1] == value) {
+				end++;
+			}
+			// skip values whose weight was removed again
+			for (int i = end; i >= 0; i--) {
+				long weightFrom = cumulativeWeights[end]
+						- (i > 0 ? cumulativeWeights[i - 1] : 0);
+				if (weightFrom > 0) {
+					return values[i];
+				}
+			}
+			return Float.NaN;
+		}
+
+		private static int addItems(QuantileSketch sketch, int sign,
+				float values[], long weights[], int offset) {
+			for (int h = 0; h < sketch.levelCount; h++) {
+				long weight = sign * (1L << h);
+				for (int i = 0; i < sketch.levelSizes[h]; i++) {
+					values[offset] = sketch.levels[h][i];
+					weights[offset++] = weight;
+				}
+			}
+			return offset;
+		}
+
+		// sorts the values and carries the weights along
+		private static void sort(float values[], long weights[]) {
+			Integer order[] = new Integer[values.length];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+			final float unsortedValues[] = values.clone();
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer i, Integer j) {
+					return Float.compare(unsortedValues[i], unsortedValues[j]);
+				}
+			});
+			long unsortedWeights[] = weights.clone();
+			for (int i = 0; i < order.length; i++) {
+				values[i] = unsortedValues[order[i]];
+				weights[i] = unsortedWeights[order[i]];
+			}
+		}
+	}
+}
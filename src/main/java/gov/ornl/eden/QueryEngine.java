@@ -0,0 +1,438 @@
+package gov.ornl.eden;
+
+import gov.ornl.datatable.Column;
+import gov.ornl.datatable.ColumnSelectionRange;
+import gov.ornl.datatable.DataModel;
+import gov.ornl.datatable.Query;
+import gov.ornl.datatable.Tuple;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Evaluates queries of a data model from sorted column indices. Each range of
+ * a column selection is resolved by binary search to an interval of the
+ * column's sort order, and the tuples of the interval form the range's
+ * bitmap, so a query on a single axis costs O(log n) plus the number of
+ * matches.
+ *
+ * A tuple matches if its value falls in one of the ranges of every column
+ * selection, which is how the data model sets the tuple query flags. The
+ * column indices are built on a background thread the first time a column is
+ * queried, and queries on a column without an index are not evaluated until
+ * the index is ready. Until then a query can be evaluated by a parallel scan
+ * of the tuples.
+ */
+public class QueryEngine {
+	private static final Logger log = LoggerFactory.getLogger(QueryEngine.class);
+
+	// tuples per leaf task of a scan, one bitmap chunk
+	private static final int SCAN_CHUNK_SIZE = 65536;
+
+	private static final ExecutorService indexExecutor = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "eden-column-index");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+
+	private DataModel dataModel;
+	private ConcurrentHashMap<Column, ColumnSortIndex> sortIndices = new ConcurrentHashMap<Column, ColumnSortIndex>();
+	private ConcurrentHashMap<Column, Boolean> pendingIndices = new ConcurrentHashMap<Column, Boolean>();
+	// incremented when the tuples change so that stale builds are dropped
+	private volatile int indexGeneration = 0;
+	private IdentityHashMap<ColumnSelectionRange, RangeBitmap> rangeBitmapCache = new IdentityHashMap<ColumnSelectionRange, RangeBitmap>();
+	private HashMap<Column, ColumnBitmap> columnBitmapCache = new HashMap<Column, ColumnBitmap>();
+	private QueryFlagSnapshot lastQueryFlags;
+	// selected tuples of each column in the last evaluation, or null
+	private volatile Map<Column, TupleBitmap> lastColumnBitmaps;
+
+	public QueryEngine(DataModel dataModel) {
+		this.dataModel = dataModel;
+	}
+
+	/**
+	 * Drops all column indices. Called when the tuples of the data model
+	 * change.
+	 */
+	public synchronized void clear() {
+		indexGeneration++;
+		sortIndices.clear();
+		pendingIndices.clear();
+		rangeBitmapCache.clear();
+		columnBitmapCache.clear();
+		lastQueryFlags = null;
+		lastColumnBitmaps = null;
+	}
+
+	/**
+	 * Returns the sort index of the given column, or null if it is not built
+	 * yet, in which case it is scheduled for building.
+	 */
+	public ColumnSortIndex getSortIndex(final Column column) {
+		ColumnSortIndex sortIndex = sortIndices.get(column);
+		if (sortIndex != null) {
+			return sortIndex;
+		}
+
+		if (pendingIndices.putIfAbsent(column, Boolean.TRUE) == null) {
+			final int generation = indexGeneration;
+			indexExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					if (generation != indexGeneration) {
+						return;
+					}
+					int columnIndex = dataModel.getColumnIndex(column);
+					if (columnIndex < 0) {
+						pendingIndices.remove(column);
+						return;
+					}
+					long start = System.currentTimeMillis();
+					ColumnSortIndex newIndex = new ColumnSortIndex(dataModel,
+							columnIndex);
+					// an index built while the tuples changed is dropped,
+					// clear() has already removed the pending entry
+					if (generation == indexGeneration) {
+						sortIndices.put(column, newIndex);
+						pendingIndices.remove(column);
+						log.debug("Built sort index of " + column.getName()
+								+ " in " + (System.currentTimeMillis() - start)
+								+ " ms");
+					}
+				}
+			});
+		}
+		return null;
+	}
+
+	/**
+	 * Evaluates the query against all tuples. Returns null if the query has
+	 * no column selections, since the data model decides what an empty query
+	 * selects, or if a selected column has no sort index yet.
+	 *
+	 * Each range maps to a bitmap of the tuples in its sort interval, the
+	 * range bitmaps of a column are combined by OR and the column bitmaps by
+	 * AND. Range and column bitmaps are cached, so when one brush changes
+	 * only its column is evaluated again. If the query has the same ranges as
+	 * the previous evaluation and only their bounds moved, as while dragging
+	 * a brush edge, only the tuples in the sort interval slices between the
+	 * old and new bounds are tested and the previous flags are flipped where
+	 * they changed. The snapshot records the flipped tuples, so comparing it
+	 * with the previous one returns them without a scan.
+	 */
+	public QueryFlagSnapshot evaluate(Query query) {
+		return evaluate(new QueryState(query), dataModel.getTupleCount());
+	}
+
+	/**
+	 * Evaluates a copy of a query like evaluate(Query) against the first
+	 * tupleCount tuples, the number of tuples when the query was copied.
+	 * Only sort indices of that many tuples are used. Safe to call off the
+	 * event dispatch thread.
+	 */
+	public synchronized QueryFlagSnapshot evaluate(QueryState queryState,
+			int tupleCount) {
+
+		IdentityHashMap<ColumnSelectionRange, RangeBitmap> usedRangeBitmaps = new IdentityHashMap<ColumnSelectionRange, RangeBitmap>();
+		HashMap<Column, ColumnBitmap> usedColumnBitmaps = new HashMap<Column, ColumnBitmap>();
+		ArrayList<TupleBitmap> columnBitmaps = new ArrayList<TupleBitmap>();
+		// tuples that may have changed if only range bounds moved
+		TupleBitmap candidates = null;
+		boolean incremental = lastQueryFlags != null
+				&& lastQueryFlags.getTupleCount() == tupleCount;
+		boolean indexed = true;
+		for (int icolumn = 0; icolumn < queryState.getColumnCount(); icolumn++) {
+			Column column = queryState.getColumn(icolumn);
+			ColumnSortIndex sortIndex = getSortIndex(column);
+			if (sortIndex == null || sortIndex.getTupleCount() != tupleCount) {
+				indexed = false;
+				continue;
+			}
+
+			TupleBitmap rangeBitmaps[] = new TupleBitmap[queryState.getRangeCount(icolumn)];
+			for (int i = 0; i < rangeBitmaps.length; i++) {
+				ColumnSelectionRange range = queryState.getRange(icolumn, i);
+				float minValue = queryState.getMinValue(icolumn, i);
+				float maxValue = queryState.getMaxValue(icolumn, i);
+				RangeBitmap rangeBitmap = rangeBitmapCache.get(range);
+				if (rangeBitmap == null) {
+					rangeBitmap = new RangeBitmap(sortIndex, minValue,
+							maxValue, null);
+					incremental = false;
+				} else if (rangeBitmap.minValue != minValue
+						|| rangeBitmap.maxValue != maxValue) {
+					rangeBitmap = new RangeBitmap(sortIndex, minValue,
+							maxValue, rangeBitmap);
+					candidates = candidates == null ? rangeBitmap.slice
+							: candidates.or(rangeBitmap.slice);
+				}
+				usedRangeBitmaps.put(range, rangeBitmap);
+				rangeBitmaps[i] = rangeBitmap.bitmap;
+			}
+
+			ColumnBitmap columnBitmap = columnBitmapCache.get(column);
+			if (columnBitmap == null
+					|| !Arrays.equals(columnBitmap.rangeBitmaps, rangeBitmaps)) {
+				columnBitmap = new ColumnBitmap(rangeBitmaps);
+			}
+			usedColumnBitmaps.put(column, columnBitmap);
+			columnBitmaps.add(columnBitmap.bitmap);
+		}
+
+		// a removed range changes the query without moving any bounds
+		if (usedRangeBitmaps.size() != rangeBitmapCache.size()) {
+			incremental = false;
+		}
+		// keep only the bitmaps of the ranges in the current query
+		rangeBitmapCache = usedRangeBitmaps;
+		columnBitmapCache = usedColumnBitmaps;
+		if (indexed) {
+			HashMap<Column, TupleBitmap> selectedTuples = new HashMap<Column, TupleBitmap>();
+			for (Map.Entry<Column, ColumnBitmap> entry : usedColumnBitmaps.entrySet()) {
+				selectedTuples.put(entry.getKey(), entry.getValue().bitmap);
+			}
+			lastColumnBitmaps = Collections.unmodifiableMap(selectedTuples);
+		} else {
+			lastColumnBitmaps = null;
+		}
+
+		if (!indexed || columnBitmaps.isEmpty()) {
+			lastQueryFlags = null;
+			return null;
+		}
+
+		QueryFlagSnapshot queryFlags;
+		if (incremental) {
+			if (candidates == null) {
+				return lastQueryFlags;
+			}
+			TupleBitmap.Builder changedBuilder = new TupleBitmap.Builder(
+					tupleCount);
+			int changedCount = 0;
+			for (int tupleIndex : candidates.toArray()) {
+				boolean queryFlag = true;
+				for (int i = 0; i < columnBitmaps.size() && queryFlag; i++) {
+					queryFlag = columnBitmaps.get(i).contains(tupleIndex);
+				}
+				if (queryFlag != lastQueryFlags.getQueryFlag(tupleIndex)) {
+					changedBuilder.add(tupleIndex);
+					changedCount++;
+				}
+			}
+			if (changedCount == 0) {
+				return lastQueryFlags;
+			}
+			TupleBitmap changed = changedBuilder.build();
+			queryFlags = new QueryFlagSnapshot(lastQueryFlags, changed.toArray(),
+					lastQueryFlags.getBitmap().xor(changed));
+		} else {
+			TupleBitmap queryBitmap = columnBitmaps.get(0);
+			for (int i = 1; i < columnBitmaps.size(); i++) {
+				queryBitmap = queryBitmap.and(columnBitmaps.get(i));
+			}
+			queryFlags = new QueryFlagSnapshot(queryBitmap, tupleCount);
+		}
+		lastQueryFlags = queryFlags;
+		return queryFlags;
+	}
+
+	/**
+	 * Returns the bitmap of the tuples that the ranges of each selected
+	 * column select in the last evaluation, which is empty for a query
+	 * without selections, or null if the last evaluation was not indexed.
+	 * Unlike the query flags these change whenever a range moves, even if
+	 * the other columns exclude the tuples it passes over. Does not wait for
+	 * an evaluation that is running.
+	 */
+	public Map<Column, TupleBitmap> getColumnBitmaps() {
+		return lastColumnBitmaps;
+	}
+
+	/**
+	 * Evaluates the query by testing the values of every tuple, without the
+	 * sort indices, as a parallel reduction over chunks of tuples. Returns
+	 * null if the query has no column selections.
+	 */
+	public QueryFlagSnapshot scan(Query query) {
+		return scan(new QueryState(query), dataModel.getTupleCount(), null);
+	}
+
+	/**
+	 * Scans a copy of a query like scan(Query) over the first tupleCount
+	 * tuples. The scan stops early and returns null once the cancellation
+	 * flag, if given, reads true.
+	 */
+	public QueryFlagSnapshot scan(QueryState queryState, int tupleCount,
+			AtomicBoolean cancelled) {
+		if (queryState.isEmpty()) {
+			return null;
+		}
+
+		int columnIndices[] = new int[queryState.getColumnCount()];
+		float rangeMinValues[][] = new float[columnIndices.length][];
+		float rangeMaxValues[][] = new float[columnIndices.length][];
+		for (int i = 0; i < columnIndices.length; i++) {
+			columnIndices[i] = dataModel.getColumnIndex(queryState.getColumn(i));
+			rangeMinValues[i] = new float[queryState.getRangeCount(i)];
+			rangeMaxValues[i] = new float[queryState.getRangeCount(i)];
+			for (int j = 0; j < rangeMinValues[i].length; j++) {
+				rangeMinValues[i][j] = queryState.getMinValue(i, j);
+				rangeMaxValues[i][j] = queryState.getMaxValue(i, j);
+			}
+		}
+
+		TupleBitmap bitmap = ForkJoinPool.commonPool().invoke(
+				new ScanTask(columnIndices, rangeMinValues, rangeMaxValues,
+						cancelled, tupleCount, 0, tupleCount));
+		if (cancelled != null && cancelled.get()) {
+			return null;
+		}
+		return new QueryFlagSnapshot(bitmap, tupleCount);
+	}
+
+	// scans the tuples of whole bitmap chunks so the results merge cheaply
+	private class ScanTask extends RecursiveTask<TupleBitmap> {
+		private static final long serialVersionUID = 1L;
+		private int columnIndices[];
+		private float rangeMinValues[][];
+		private float rangeMaxValues[][];
+		private AtomicBoolean cancelled;
+		private int tupleCount;
+		private int startTuple;
+		private int endTuple;
+
+		ScanTask(int columnIndices[], float rangeMinValues[][],
+				float rangeMaxValues[][], AtomicBoolean cancelled,
+				int tupleCount, int startTuple, int endTuple) {
+			this.columnIndices = columnIndices;
+			this.rangeMinValues = rangeMinValues;
+			this.rangeMaxValues = rangeMaxValues;
+			this.cancelled = cancelled;
+			this.tupleCount = tupleCount;
+			this.startTuple = startTuple;
+			this.endTuple = endTuple;
+		}
+
+		@Override
+		protected TupleBitmap compute() {
+			int chunkCount = (endTuple - startTuple + SCAN_CHUNK_SIZE - 1)
+					/ SCAN_CHUNK_SIZE;
+			if (chunkCount > 1) {
+				int middle = startTuple + ((chunkCount / 2) * SCAN_CHUNK_SIZE);
+				ScanTask left = new ScanTask(columnIndices, rangeMinValues,
+						rangeMaxValues, cancelled, tupleCount, startTuple, middle);
+				ScanTask right = new ScanTask(columnIndices, rangeMinValues,
+						rangeMaxValues, cancelled, tupleCount, middle, endTuple);
+				left.fork();
+				TupleBitmap rightBitmap = right.compute();
+				return left.join().or(rightBitmap);
+			}
+
+			if (cancelled != null && cancelled.get()) {
+				return TupleBitmap.EMPTY;
+			}
+			TupleBitmap.Builder builder = new TupleBitmap.Builder(tupleCount);
+			for (int i = startTuple; i < endTuple; i++) {
+				Tuple tuple = dataModel.getTuple(i);
+				boolean queryFlag = true;
+				for (int icolumn = 0; icolumn < columnIndices.length && queryFlag; icolumn++) {
+					float value = tuple.getElement(columnIndices[icolumn]);
+					queryFlag = false;
+					for (int irange = 0; irange < rangeMinValues[icolumn].length; irange++) {
+						if (value >= rangeMinValues[icolumn][irange]
+								&& value <= rangeMaxValues[icolumn][irange]) {
+							queryFlag = true;
+							break;
+						}
+					}
+				}
+				if (queryFlag) {
+					builder.add(i);
+				}
+			}
+			return builder.build();
+		}
+	}
+
+	// the tuples of one selection range
+	private static class RangeBitmap {
+		final float minValue;
+		final float maxValue;
+		final int start;
+		final int end;
+		final TupleBitmap bitmap;
+		// the tuples that entered or left the range since the previous bounds
+		final TupleBitmap slice;
+
+		RangeBitmap(ColumnSortIndex sortIndex, float minValue, float maxValue,
+				RangeBitmap previous) {
+			this.minValue = minValue;
+			this.maxValue = maxValue;
+			start = sortIndex.lowerBound(minValue);
+			end = Math.max(start, sortIndex.upperBound(maxValue));
+
+			if (previous == null) {
+				bitmap = start < end ? TupleBitmap.fromSortedPositions(
+						sortIndex, start, end) : TupleBitmap.EMPTY;
+				slice = bitmap;
+				return;
+			}
+
+			// the positions between the old and new start and between the
+			// old and new end, or both intervals if they do not overlap
+			TupleBitmap.Builder builder = new TupleBitmap.Builder(
+					sortIndex.getTupleCount());
+			if (start < previous.end && previous.start < end) {
+				addPositions(builder, sortIndex, Math.min(start, previous.start),
+						Math.max(start, previous.start));
+				addPositions(builder, sortIndex, Math.min(end, previous.end),
+						Math.max(end, previous.end));
+			} else {
+				addPositions(builder, sortIndex, previous.start, previous.end);
+				addPositions(builder, sortIndex, start, end);
+			}
+			slice = builder.build();
+			bitmap = previous.bitmap.xor(slice);
+		}
+
+		private static void addPositions(TupleBitmap.Builder builder,
+				ColumnSortIndex sortIndex, int start, int end) {
+			for (int position = start; position < end; position++) {
+				builder.add(sortIndex.getTuple(position));
+			}
+		}
+	}
+	// the union of the range bitmaps of one column selection
+	private static class ColumnBitmap {
+		final TupleBitmap rangeBitmaps[];
+		final TupleBitmap bitmap;
+
+		ColumnBitmap(TupleBitmap rangeBitmaps[]) {
+			this.rangeBitmaps = rangeBitmaps;
+			TupleBitmap union = TupleBitmap.EMPTY;
+			for (TupleBitmap rangeBitmap : rangeBitmaps) {
+				union = union.or(rangeBitmap);
+			}
+			bitmap = union;
+		}
+	}
+}
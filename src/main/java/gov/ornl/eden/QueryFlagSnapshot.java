@@ -0,0 +1,140 @@
+package gov.ornl.eden;
+
+import gov.ornl.datatable.DataModel;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * A copy of the query flags of all tuples at one point in time. Comparing two
+ * snapshots gives the tuples whose flag changed in between, which lets views
+ * update their state from the change rather than from the whole table.
+ */
+public class QueryFlagSnapshot {
+	private boolean queryFlags[];
+	private int queriedTupleCount = 0;
+	private TupleBitmap bitmap;
+	// the snapshot this one was derived from and the tuples flipped since;
+	// weak so that a run of derived snapshots does not stay reachable
+	private WeakReference<QueryFlagSnapshot> base;
+	private int baseChangedTuples[];
+
+	public QueryFlagSnapshot(DataModel dataModel) {
+		queryFlags = new boolean[dataModel.getTupleCount()];
+		for (int i = 0; i < queryFlags.length; i++) {
+			queryFlags[i] = dataModel.getTuple(i).getQueryFlag();
+			if (queryFlags[i]) {
+				queriedTupleCount++;
+			}
+		}
+	}
+
+	/**
+	 * Creates a snapshot of query flags that were evaluated outside of the
+	 * data model, such as a query that is still being brushed. The array is
+	 * not copied.
+	 */
+	public QueryFlagSnapshot(boolean queryFlags[], int queriedTupleCount) {
+		this.queryFlags = queryFlags;
+		this.queriedTupleCount = queriedTupleCount;
+	}
+
+	/**
+	 * Creates a snapshot from the bitmap of the queried tuples. Snapshots
+	 * that both have a bitmap are compared through the bitmaps.
+	 */
+	public QueryFlagSnapshot(TupleBitmap bitmap, int tupleCount) {
+		this.bitmap = bitmap;
+		queryFlags = new boolean[tupleCount];
+		bitmap.setFlags(queryFlags);
+		queriedTupleCount = bitmap.getCardinality();
+	}
+
+	/**
+	 * Creates a snapshot that differs from the previous one in the flags of
+	 * the given tuples, with bitmap as the bitmap of the queried tuples.
+	 * Comparing the new snapshot with the previous one returns changedTuples
+	 * without a scan.
+	 */
+	public QueryFlagSnapshot(QueryFlagSnapshot previous, int changedTuples[],
+			TupleBitmap bitmap) {
+		this.bitmap = bitmap;
+		queryFlags = previous.queryFlags.clone();
+		queriedTupleCount = previous.queriedTupleCount;
+		for (int tupleIndex : changedTuples) {
+			queryFlags[tupleIndex] = !queryFlags[tupleIndex];
+			queriedTupleCount += queryFlags[tupleIndex] ? 1 : -1;
+		}
+		base = new WeakReference<QueryFlagSnapshot>(previous);
+		baseChangedTuples = changedTuples;
+	}
+
+	/**
+	 * Returns the bitmap of the queried tuples, or null if the snapshot was
+	 * not created from a bitmap.
+	 */
+	public TupleBitmap getBitmap() {
+		return bitmap;
+	}
+
+	public int getTupleCount() {
+		return queryFlags.length;
+	}
+
+	public int getQueriedTupleCount() {
+		return queriedTupleCount;
+	}
+
+	public boolean getQueryFlag(int tupleIndex) {
+		return queryFlags[tupleIndex];
+	}
+
+	/**
+	 * Returns the indices of the queried tuples in ascending order.
+	 */
+	public int[] getQueriedTuples() {
+		if (bitmap != null) {
+			return bitmap.toArray();
+		}
+		int queriedTuples[] = new int[queriedTupleCount];
+		int next = 0;
+		for (int i = 0; i < queryFlags.length && next < queriedTupleCount; i++) {
+			if (queryFlags[i]) {
+				queriedTuples[next++] = i;
+			}
+		}
+		return queriedTuples;
+	}
+
+	/**
+	 * Returns the indices of the tuples whose query flag differs between the
+	 * previous snapshot and this one, in ascending order, or null if the
+	 * snapshots were taken from tables of different sizes.
+	 */
+	public int[] getChangedTuples(QueryFlagSnapshot previous) {
+		if (previous.queryFlags.length != queryFlags.length) {
+			return null;
+		}
+		if (base != null && base.get() == previous) {
+			return baseChangedTuples.clone();
+		}
+		if (bitmap != null && previous.bitmap != null) {
+			return bitmap.xor(previous.bitmap).toArray();
+		}
+
+		int changedCount = 0;
+		for (int i = 0; i < queryFlags.length; i++) {
+			if (queryFlags[i] != previous.queryFlags[i]) {
+				changedCount++;
+			}
+		}
+
+		int changedTuples[] = new int[changedCount];
+		int next = 0;
+		for (int i = 0; i < queryFlags.length && next < changedCount; i++) {
+			if (queryFlags[i] != previous.queryFlags[i]) {
+				changedTuples[next++] = i;
+			}
+		}
+		return changedTuples;
+	}
+}
@@ -0,0 +1,112 @@
+package gov.ornl.eden;
+
+/**
+ * The result of a query evaluated by a QueryScheduler, published to its
+ * listeners on the event dispatch thread. Everything in it was computed on
+ * the scheduler's thread and is not changed afterwards, so views can use it
+ * without computing anything from the tuples themselves.
+ *
+ * A result is either of the query applied to the data model, which the
+ * scheduler evaluates whenever the query changes, or of a query that is
+ * being brushed and was submitted before it is applied. Only results of the
+ * applied query have statistics. A result of the applied query that serves
+ * QueryScheduler.apply() is also written to the query flags of the tuples
+ * before it is published.
+ */
+public class QueryResult {
+	private long generation;
+	private boolean appliedQuery;
+	private QueryFlagSnapshot queryFlags;
+	private int changedTuples[];
+	private QueryStatistics queryStatistics;
+	private double crossfilterHistograms[][];
+	private QueryFlagSnapshot tupleQueryFlags;
+	private int tupleFlagChanges[];
+
+	public QueryResult(long generation, boolean appliedQuery,
+			QueryFlagSnapshot queryFlags, int changedTuples[],
+			QueryStatistics queryStatistics, double crossfilterHistograms[][],
+			QueryFlagSnapshot tupleQueryFlags, int tupleFlagChanges[]) {
+		this.generation = generation;
+		this.appliedQuery = appliedQuery;
+		this.queryFlags = queryFlags;
+		this.changedTuples = changedTuples;
+		this.queryStatistics = queryStatistics;
+		this.crossfilterHistograms = crossfilterHistograms;
+		this.tupleQueryFlags = tupleQueryFlags;
+		this.tupleFlagChanges = tupleFlagChanges;
+	}
+
+	public long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Returns true if this is a result of the query applied to the data
+	 * model and false if it is of a brushed query.
+	 */
+	public boolean isAppliedQuery() {
+		return appliedQuery;
+	}
+
+	/**
+	 * Returns the query flags of the tuples, or null if the query has no
+	 * selections.
+	 */
+	public QueryFlagSnapshot getQueryFlags() {
+		return queryFlags;
+	}
+
+	/**
+	 * Returns the tuples whose flag changed since the previously published
+	 * result in ascending order, or null if there is no previous result to
+	 * compare with.
+	 */
+	public int[] getChangedTuples() {
+		return changedTuples;
+	}
+
+	/**
+	 * Returns the statistics of the queried tuples, or null if the query has
+	 * no selections or is a brushed query.
+	 */
+	public QueryStatistics getQueryStatistics() {
+		return queryStatistics;
+	}
+
+	/**
+	 * Returns the bin counts of each column by data model index under the
+	 * selections of all other columns, see CrossfilterHistograms, or null if
+	 * they are not enabled in the scheduler or the query was not evaluated
+	 * from the column bitmaps of the query engine.
+	 */
+	public double[][] getCrossfilterHistograms() {
+		return crossfilterHistograms;
+	}
+
+	/**
+	 * Returns true if the result was written to the query flags of the
+	 * tuples.
+	 */
+	public boolean isAppliedToTuples() {
+		return tupleQueryFlags != null;
+	}
+
+	/**
+	 * Returns the query flags written to the tuples, which select all tuples
+	 * if the query has no selections, or null if the result was not written
+	 * to them.
+	 */
+	public QueryFlagSnapshot getTupleQueryFlags() {
+		return tupleQueryFlags;
+	}
+
+	/**
+	 * Returns the tuples whose query flag was set because it changed since
+	 * the previous write in ascending order, or null if the flags of all
+	 * tuples were set or the result was not written to the tuples.
+	 */
+	public int[] getTupleFlagChanges() {
+		return tupleFlagChanges;
+	}
+}
@@ -0,0 +1,545 @@
+package gov.ornl.eden;
+
+import gov.ornl.datatable.Column;
+import gov.ornl.datatable.ColumnSelectionRange;
+import gov.ornl.datatable.DataModel;
+import gov.ornl.datatable.DataModelListener;
+import gov.ornl.datatable.Query;
+import gov.ornl.datatable.Tuple;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.SwingUtilities;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Evaluates the queries of a data model with a query engine on a background
+ * thread so that neither brushing nor applying a query blocks the event
+ * dispatch thread. One scheduler is shared by all views of a data model.
+ *
+ * The scheduler listens to the data model and evaluates the active query
+ * whenever it changes. For this applied query it also computes the query
+ * statistics, derived from those of the previous applied query by the
+ * tuples that changed. If enabled, the crossfilter histograms are brought
+ * up to date with the column bitmaps of every evaluation as well, so only
+ * their bins reach the views. Views can submit a query that is being brushed, which
+ * is evaluated without statistics. Each submission copies the query and gets
+ * a generation number. Only the latest submission of each kind is kept: a
+ * submission replaces one of its kind that has not started and cancels a
+ * scan of its kind that is running, so a burst of brush events collapses
+ * into one evaluation. A result that is superseded before it completes is
+ * dropped.
+ *
+ * Each completed result is published once to the listeners on the event
+ * dispatch thread as an immutable QueryResult, in generation order, with the
+ * tuples whose flag changed since the previously published result.
+ *
+ * Views apply the active query to the tuples through apply() rather than
+ * DataModel.setQueriedTuples(), so neither the evaluation nor the views'
+ * response to it runs as part of the call. The result of the applied query
+ * is written to the query flags of the tuples on the event dispatch thread
+ * right before it is published, and only the flags that changed since the
+ * previous write are set.
+ *
+ * The scheduler has to be created before the views of the data model, so it
+ * hears of a query change before they do.
+ */
+public class QueryScheduler implements DataModelListener {
+	private static final Logger log = LoggerFactory.getLogger(QueryScheduler.class);
+
+	private static final ExecutorService queryExecutor = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "eden-query");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private DataModel dataModel;
+	private QueryEngine queryEngine;
+	private List<QuerySchedulerListener> listeners = new CopyOnWriteArrayList<QuerySchedulerListener>();
+	private AtomicReference<PendingQuery> pendingAppliedQuery = new AtomicReference<PendingQuery>();
+	private AtomicReference<PendingQuery> pendingBrushedQuery = new AtomicReference<PendingQuery>();
+	private AtomicBoolean scheduled = new AtomicBoolean(false);
+	// the evaluation that is running, if any
+	private volatile PendingQuery runningQuery;
+	private volatile boolean resetPublishedQueryFlags = false;
+	private volatile boolean resetQueryStatistics = false;
+	private volatile boolean correlationsEnabled = false;
+	// views that need the correlations; event dispatch thread
+	private HashSet<Object> correlationViews = new HashSet<Object>();
+	private volatile boolean crossfilterHistogramsEnabled = false;
+	private volatile int quantileSketchK = QuantileSketch.DEFAULT_K;
+	// generations up to these are not published; event dispatch thread
+	private long discardedGeneration = 0;
+	private long discardedBrushedGeneration = 0;
+	private long nextGeneration = 0;
+	private long appliedGeneration = 0;
+	private QueryResult appliedResult;
+	// the flags the tuples hold since the last write, or null if unknown
+	private QueryFlagSnapshot tupleQueryFlags;
+	// the latest apply() is served by the first applied result of at least
+	// this generation
+	private volatile long applyGeneration = 0;
+	private volatile boolean resetWrittenQueryFlags = false;
+	// incremented on the event dispatch thread when the tuples change, so
+	// results of queries submitted before are dropped
+	private volatile int tupleGeneration = 0;
+	// the last result handed to the event dispatch thread and the statistics
+	// of the last applied query; worker thread
+	private QueryFlagSnapshot publishedQueryFlags;
+	private long servedApplyGeneration = 0;
+	private QueryFlagSnapshot writtenQueryFlags;
+	private QueryStatistics queryStatistics;
+	private CrossfilterHistograms crossfilterHistograms;
+
+	public QueryScheduler(DataModel dataModel, QueryEngine queryEngine) {
+		this.dataModel = dataModel;
+		this.queryEngine = queryEngine;
+		dataModel.addDataModelListener(this);
+		apply();
+	}
+
+	public QueryEngine getQueryEngine() {
+		return queryEngine;
+	}
+
+	public void addQuerySchedulerListener(QuerySchedulerListener listener) {
+		if (!listeners.contains(listener)) {
+			listeners.add(listener);
+		}
+	}
+
+	public void removeQuerySchedulerListener(QuerySchedulerListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Sets whether the given view needs the correlation coefficients of all
+	 * column pairs in the statistics of the applied query. They are computed
+	 * while any view needs them. Called on the event dispatch thread.
+	 */
+	public void setCorrelationsEnabled(Object view, boolean enabled) {
+		if (enabled) {
+			correlationViews.add(view);
+		} else {
+			correlationViews.remove(view);
+		}
+		boolean correlationsEnabled = !correlationViews.isEmpty();
+		if (this.correlationsEnabled != correlationsEnabled) {
+			this.correlationsEnabled = correlationsEnabled;
+			if (correlationsEnabled) {
+				submitActiveQuery();
+			}
+		}
+	}
+
+	/**
+	 * Sets whether the results include the histograms of each column under
+	 * the selections of all other columns.
+	 */
+	public void setCrossfilterHistogramsEnabled(
+			boolean crossfilterHistogramsEnabled) {
+		if (this.crossfilterHistogramsEnabled != crossfilterHistogramsEnabled) {
+			this.crossfilterHistogramsEnabled = crossfilterHistogramsEnabled;
+			if (crossfilterHistogramsEnabled) {
+				submitActiveQuery();
+			}
+		}
+	}
+
+	/**
+	 * Sets the k of the quantile sketches of the applied query statistics,
+	 * see QuantileSketch.getK() for the k of a rank error.
+	 */
+	public void setQuantileSketchK(int quantileSketchK) {
+		if (this.quantileSketchK != quantileSketchK) {
+			this.quantileSketchK = quantileSketchK;
+			submitActiveQuery();
+		}
+	}
+
+	/**
+	 * Returns the last published result of the query applied to the data
+	 * model, or null if the query changed since. Called on the event dispatch
+	 * thread.
+	 */
+	public QueryResult getAppliedResult() {
+		if (appliedResult == null
+				|| appliedResult.getGeneration() != appliedGeneration) {
+			return null;
+		}
+		return appliedResult;
+	}
+
+	/**
+	 * Returns the query flags the tuples hold as of the last result that was
+	 * written to them, or null if none was written since the tuples changed.
+	 * Unlike the live flags of the tuples they do not change while they are
+	 * read, and they change only when a result is published. Called on the
+	 * event dispatch thread.
+	 */
+	public QueryFlagSnapshot getTupleQueryFlags() {
+		return tupleQueryFlags;
+	}
+
+	/**
+	 * Applies the active query to the tuples of the data model. The query is
+	 * evaluated on the scheduler's thread and its flags are written to the
+	 * tuples when the result is published; if the query changes again before
+	 * it completes, the later state is applied instead. The data model's own
+	 * list of queried tuples and query summary statistics are not updated.
+	 * Called on the event dispatch thread.
+	 */
+	public void apply() {
+		// the generation the submission below gets
+		applyGeneration = nextGeneration + 1;
+		submitActiveQuery();
+	}
+
+	/**
+	 * Schedules the evaluation of the current state of a query that is being
+	 * brushed and returns its generation. Called on the event dispatch
+	 * thread.
+	 */
+	public long submit(Query query) {
+		return submit(query, false);
+	}
+
+	/**
+	 * Drops the brushed queries that are pending or running and their
+	 * results that are not published yet. The next result is published
+	 * without changed tuples. Called on the event dispatch thread when the
+	 * brush is released.
+	 */
+	public void cancel() {
+		pendingBrushedQuery.set(null);
+		PendingQuery running = runningQuery;
+		if (running != null && !running.applied) {
+			running.cancelled.set(true);
+		}
+		discardedBrushedGeneration = nextGeneration;
+		resetPublishedQueryFlags = true;
+	}
+
+	// evaluates the active query again, e.g. after it was applied
+	private void submitActiveQuery() {
+		appliedGeneration = submit(dataModel.getActiveQuery(), true);
+	}
+
+	private long submit(Query query, boolean applied) {
+		long generation = ++nextGeneration;
+		PendingQuery pending = new PendingQuery(new QueryState(query),
+				dataModel.getTupleCount(), tupleGeneration, generation, applied);
+		(applied ? pendingAppliedQuery : pendingBrushedQuery).set(pending);
+		PendingQuery running = runningQuery;
+		if (running != null && running.applied == applied) {
+			running.cancelled.set(true);
+		}
+		if (scheduled.compareAndSet(false, true)) {
+			queryExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					boolean finished = false;
+					try {
+						evaluatePendingQueries();
+						finished = true;
+					} finally {
+						if (!finished) {
+							// the next submission schedules the evaluation
+							scheduled.set(false);
+						}
+					}
+				}
+			});
+		}
+		return generation;
+	}
+
+	// drops everything derived from the tuples when they change
+	private void resetTuples() {
+		pendingBrushedQuery.set(null);
+		PendingQuery running = runningQuery;
+		if (running != null) {
+			running.cancelled.set(true);
+		}
+		discardedGeneration = nextGeneration;
+		tupleGeneration++;
+		resetPublishedQueryFlags = true;
+		resetQueryStatistics = true;
+		resetWrittenQueryFlags = true;
+		tupleQueryFlags = null;
+		queryEngine.clear();
+		apply();
+	}
+
+	private void evaluatePendingQueries() {
+		while (true) {
+			PendingQuery pending = pendingAppliedQuery.getAndSet(null);
+			if (pending == null) {
+				pending = pendingBrushedQuery.getAndSet(null);
+			}
+			if (pending == null) {
+				scheduled.set(false);
+				// a query may have been submitted before the flag was reset
+				if ((pendingAppliedQuery.get() == null && pendingBrushedQuery
+						.get() == null) || !scheduled.compareAndSet(false, true)) {
+					return;
+				}
+				continue;
+			}
+
+			runningQuery = pending;
+			QueryFlagSnapshot queryFlags;
+			QueryStatistics statistics = null;
+			double histograms[][] = null;
+			try {
+				if (resetQueryStatistics) {
+					resetQueryStatistics = false;
+					queryStatistics = null;
+					crossfilterHistograms = null;
+				}
+				if (isStale(pending)) {
+					continue;
+				}
+				queryFlags = queryEngine.evaluate(pending.queryState,
+						pending.tupleCount);
+				if (queryFlags == null && !pending.queryState.isEmpty()) {
+					queryFlags = queryEngine.scan(pending.queryState,
+							pending.tupleCount, pending.cancelled);
+				}
+				if (pending.applied && queryFlags != null && !isStale(pending)) {
+					statistics = updateQueryStatistics(queryFlags);
+				}
+				if (!isStale(pending)) {
+					histograms = updateCrossfilterHistograms();
+				}
+			} finally {
+				runningQuery = null;
+			}
+			AtomicReference<PendingQuery> newerQuery = pending.applied ? pendingAppliedQuery
+					: pendingBrushedQuery;
+			if (isStale(pending) || newerQuery.get() != null) {
+				continue;
+			}
+
+			if (resetPublishedQueryFlags) {
+				resetPublishedQueryFlags = false;
+				publishedQueryFlags = null;
+			}
+			int changedTuples[] = null;
+			if (queryFlags != null && publishedQueryFlags != null) {
+				changedTuples = queryFlags.getChangedTuples(publishedQueryFlags);
+			}
+			publishedQueryFlags = queryFlags;
+
+			QueryFlagSnapshot tupleFlags = null;
+			int tupleFlagChanges[] = null;
+			long apply = applyGeneration;
+			if (resetWrittenQueryFlags) {
+				resetWrittenQueryFlags = false;
+				writtenQueryFlags = null;
+			}
+			if (pending.applied && apply > servedApplyGeneration
+					&& pending.generation >= apply) {
+				servedApplyGeneration = apply;
+				tupleFlags = queryFlags != null ? queryFlags
+						: getAllQueriedFlags(pending.tupleCount);
+				if (writtenQueryFlags != null) {
+					tupleFlagChanges = tupleFlags
+							.getChangedTuples(writtenQueryFlags);
+				}
+				writtenQueryFlags = tupleFlags;
+			}
+			publish(new QueryResult(pending.generation, pending.applied,
+					queryFlags, changedTuples, statistics, histograms,
+					tupleFlags, tupleFlagChanges));
+		}
+	}
+
+	// a query is stale once it was cancelled or the tuples changed after it
+	// was submitted, in which case its result is dropped
+	private boolean isStale(PendingQuery pending) {
+		return pending.cancelled.get()
+				|| pending.tupleGeneration != tupleGeneration;
+	}
+
+	// the data model selects all tuples if the query has no selections
+	private static QueryFlagSnapshot getAllQueriedFlags(int tupleCount) {
+		boolean queryFlags[] = new boolean[tupleCount];
+		Arrays.fill(queryFlags, true);
+		return new QueryFlagSnapshot(queryFlags, tupleCount);
+	}
+
+	/**
+	 * Brings the statistics of the applied query up to date with its flags,
+	 * with all parts that are otherwise computed on first use.
+	 */
+	private QueryStatistics updateQueryStatistics(QueryFlagSnapshot queryFlags) {
+		int k = quantileSketchK;
+		if (queryStatistics == null || queryStatistics.getQuantileSketchK() != k) {
+			queryStatistics = QueryStatistics.compute(dataModel, queryFlags,
+					correlationsEnabled, k);
+		} else {
+			queryStatistics = queryStatistics.update(queryFlags,
+					correlationsEnabled);
+		}
+		queryStatistics.prepare();
+		return queryStatistics;
+	}
+
+	/**
+	 * Brings the crossfilter histograms up to date with the column bitmaps of
+	 * the last evaluation and returns a copy of their bins, or null if they
+	 * are not enabled or the evaluation was not indexed.
+	 */
+	private double[][] updateCrossfilterHistograms() {
+		if (!crossfilterHistogramsEnabled) {
+			crossfilterHistograms = null;
+			return null;
+		}
+		Map<Column, TupleBitmap> columnBitmaps = queryEngine.getColumnBitmaps();
+		if (columnBitmaps == null) {
+			return null;
+		}
+		if (crossfilterHistograms == null
+				|| !crossfilterHistograms.update(columnBitmaps)) {
+			// the columns or tuples changed since they were built
+			crossfilterHistograms = new CrossfilterHistograms(dataModel);
+			if (!crossfilterHistograms.update(columnBitmaps)) {
+				return null;
+			}
+		}
+		double histograms[][] = new double[dataModel.getColumnCount()][];
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = crossfilterHistograms.getHistogram(i);
+		}
+		return histograms;
+	}
+
+	private void publish(final QueryResult result) {
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				if (result.getGeneration() <= discardedGeneration
+						|| (!result.isAppliedQuery() && result.getGeneration() <= discardedBrushedGeneration)) {
+					return;
+				}
+				if (result.isAppliedToTuples()) {
+					writeTupleQueryFlags(result);
+				}
+				if (result.isAppliedQuery()) {
+					appliedResult = result;
+				}
+				for (QuerySchedulerListener listener : listeners) {
+					listener.queryResultPublished(QueryScheduler.this, result);
+				}
+			}
+		});
+	}
+
+	// sets the query flags of the tuples that changed since the last write,
+	// or of all tuples if they are not known
+	private void writeTupleQueryFlags(QueryResult result) {
+		QueryFlagSnapshot queryFlags = result.getTupleQueryFlags();
+		if (queryFlags.getTupleCount() != dataModel.getTupleCount()) {
+			return;
+		}
+		int changedTuples[] = result.getTupleFlagChanges();
+		if (changedTuples == null) {
+			for (int i = 0; i < queryFlags.getTupleCount(); i++) {
+				dataModel.getTuple(i).setQueryFlag(queryFlags.getQueryFlag(i));
+			}
+		} else {
+			for (int tupleIndex : changedTuples) {
+				dataModel.getTuple(tupleIndex).setQueryFlag(
+						queryFlags.getQueryFlag(tupleIndex));
+			}
+		}
+		tupleQueryFlags = queryFlags;
+	}
+
+	@Override
+	public void dataModelChanged(DataModel dataModel) {
+		resetTuples();
+	}
+
+	@Override
+	public void tuplesAdded(DataModel dataModel, ArrayList<Tuple> newTuples) {
+		resetTuples();
+	}
+
+	@Override
+	public void queryChanged(DataModel dataModel) {
+		// the data model set the flags of the tuples itself, so all of them
+		// are written with the result
+		resetWrittenQueryFlags = true;
+		apply();
+	}
+
+	@Override
+	public void dataModelColumnSelectionAdded(DataModel dataModel,
+			ColumnSelectionRange columnSelectionRange) {
+		submitActiveQuery();
+	}
+
+	@Override
+	public void dataModelColumnSelectionRemoved(DataModel dataModel,
+			ColumnSelectionRange columnSelectionRange) {
+		submitActiveQuery();
+	}
+
+	@Override
+	public void highlightedColumnChanged(DataModel dataModel) {
+	}
+
+	@Override
+	public void columnDisabled(DataModel dataModel, Column disabledColumn) {
+		// the query ignores the columns that are disabled
+		apply();
+	}
+
+	@Override
+	public void columnsDisabled(DataModel dataModel,
+			ArrayList<Column> disabledColumns) {
+		apply();
+	}
+
+	@Override
+	public void columnEnabled(DataModel dataModel, Column enabledColumn) {
+		apply();
+	}
+
+	private static class PendingQuery {
+		final QueryState queryState;
+		// the number and generation of the tuples when it was submitted
+		final int tupleCount;
+		final int tupleGeneration;
+		final long generation;
+		final boolean applied;
+		final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+		PendingQuery(QueryState queryState, int tupleCount,
+				int tupleGeneration, long generation, boolean applied) {
+			this.queryState = queryState;
+			this.tupleCount = tupleCount;
+			this.tupleGeneration = tupleGeneration;
+			this.generation = generation;
+			this.applied = applied;
+		}
+	}
+}
@@ -0,0 +1,10 @@
+package gov.ornl.eden;
+
+public interface QuerySchedulerListener {
+	/**
+	 * Called on the event dispatch thread for each result the query
+	 * scheduler publishes, in the order the queries were submitted.
+	 */
+	public void queryResultPublished(QueryScheduler queryScheduler,
+			QueryResult result);
+}
@@ -0,0 +1,79 @@
+package gov.ornl.eden;
+
+import gov.ornl.datatable.Column;
+import gov.ornl.datatable.ColumnSelection;
+import gov.ornl.datatable.ColumnSelectionRange;
+import gov.ornl.datatable.Query;
+
+import java.util.ArrayList;
+
+/**
+ * A copy of the non-empty column selections of a query and the bounds of
+ * their ranges at one point in time. Brushing changes the ranges of the
+ * active query in place, so a query that is evaluated off the event dispatch
+ * thread is copied first. The ranges themselves are kept only as identities.
+ */
+public class QueryState {
+	private Column columns[];
+	private ColumnSelectionRange ranges[][];
+	private float minValues[][];
+	private float maxValues[][];
+
+	public QueryState(Query query) {
+		ArrayList<ColumnSelection> columnSelections = new ArrayList<ColumnSelection>();
+		for (ColumnSelection columnSelection : query.getAllColumnSelections()) {
+			if (!columnSelection.getColumnSelectionRanges().isEmpty()) {
+				columnSelections.add(columnSelection);
+			}
+		}
+
+		int columnCount = columnSelections.size();
+		columns = new Column[columnCount];
+		ranges = new ColumnSelectionRange[columnCount][];
+		minValues = new float[columnCount][];
+		maxValues = new float[columnCount][];
+		for (int i = 0; i < columnCount; i++) {
+			ColumnSelection columnSelection = columnSelections.get(i);
+			ArrayList<ColumnSelectionRange> columnRanges = columnSelection.getColumnSelectionRanges();
+			columns[i] = columnSelection.getColumn();
+			ranges[i] = columnRanges.toArray(new ColumnSelectionRange[columnRanges.size()]);
+			minValues[i] = new float[ranges[i].length];
+			maxValues[i] = new float[ranges[i].length];
+			for (int j = 0; j < ranges[i].length; j++) {
+				minValues[i][j] = ranges[i][j].getMinValue();
+				maxValues[i][j] = ranges[i][j].getMaxValue();
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the query has no column selection with a range.
+	 */
+	public boolean isEmpty() {
+		return columns.length == 0;
+	}
+
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	public Column getColumn(int index) {
+		return columns[index];
+	}
+
+	public int getRangeCount(int index) {
+		return ranges[index].length;
+	}
+
+	public ColumnSelectionRange getRange(int index, int rangeIndex) {
+		return ranges[index][rangeIndex];
+	}
+
+	public float getMinValue(int index, int rangeIndex) {
+		return minValues[index][rangeIndex];
+	}
+
+	public float getMaxValue(int index, int rangeIndex) {
+		return maxValues[index][rangeIndex];
+	}
+}
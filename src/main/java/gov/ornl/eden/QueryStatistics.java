@@ -0,0 +1,773 @@
+package gov.ornl.eden;
+
+import gov.ornl.datatable.Column;
+import gov.ornl.datatable.DataModel;
+import gov.ornl.datatable.Histogram;
+import gov.ornl.datatable.Tuple;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Summary statistics of the queried tuples for every column of a data model:
+ * the count, mean, variance, skewness, kurtosis, minimum, maximum and
+ * histogram of each column and optionally the correlation coefficients of all
+ * column pairs.
+ *
+ * The moments are kept as running central moments in the style of Welford,
+ * and two sets of moments are combined with the pairwise formulas of Chan and
+ * Pebay. The same formulas add a tuple, remove it (as a set with a count of
+ * minus one) and merge the results of the chunks of the parallel reduction,
+ * so the statistics of a new query are derived from those of the previous
+ * one in time proportional to the tuples that changed. NaN values are left
+ * out of the statistics of their column and of the pairs that include it.
+ *
+ * Quantiles and box plot whiskers come from a KLL quantile sketch of each
+ * column. Sketches cannot forget values, so the values of tuples that leave
+ * the query go to a second sketch that is subtracted from the first. Its
+ * rank error grows with the number of removed values, and the statistics
+ * are computed again once more values were removed than half of those left.
+ * Exact quantiles can be computed on request by sorting the queried values.
+ */
+public class QueryStatistics {
+	// tuples per leaf task of the parallel computation
+	private static final int CHUNK_SIZE = 65536;
+
+	// moment arrays of a column or pair
+	private static final int N = 0;
+	private static final int MEAN = 1;
+	private static final int M2 = 2;
+	private static final int M3 = 3;
+	private static final int M4 = 4;
+	private static final int MOMENT_COUNT = 5;
+
+	// co-moment arrays of a pair
+	private static final int PAIR_N = 0;
+	private static final int PAIR_MEAN_X = 1;
+	private static final int PAIR_MEAN_Y = 2;
+	private static final int PAIR_M2_X = 3;
+	private static final int PAIR_M2_Y = 4;
+	private static final int PAIR_C = 5;
+	private static final int PAIR_MOMENT_COUNT = 6;
+
+	// box plot values of a column
+	private static final int QUANTILE_1 = 0;
+	private static final int MEDIAN = 1;
+	private static final int QUANTILE_3 = 2;
+	private static final int LOWER_WHISKER = 3;
+	private static final int UPPER_WHISKER = 4;
+	private static final int BOX_PLOT_VALUE_COUNT = 5;
+
+	private static final ExecutorService quantileExecutor = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "eden-quantiles");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+
+	private DataModel dataModel;
+	private QueryFlagSnapshot queryFlags;
+	// the number of tuples when the statistics were computed
+	private int tupleCount;
+	private boolean computeCorrelations;
+	private int columnCount;
+	private double moments[][];
+	private float minValues[];
+	private float maxValues[];
+	// set when a removed value was the minimum or maximum of its column
+	private boolean extremaStale[];
+	private double histogramMinValues[];
+	private double histogramMaxValues[];
+	private double histograms[][];
+	// moments of the pairs i < j in row order of the upper triangle, or null
+	// if correlations were not computed
+	private double pairMoments[][];
+	private int quantileSketchK;
+	private QuantileSketch addedValueSketches[];
+	private QuantileSketch removedValueSketches[];
+	// box plot values of each column, from the sketches when first asked for
+	private float boxPlotValues[][];
+	private volatile float exactBoxPlotValues[][];
+	// callbacks of the pending exact quantile computation, if any
+	private ArrayList<Runnable> exactQuantilesCallbacks;
+	// set once statistics of a newer query were derived from these
+	private volatile boolean superseded = false;
+
+	private QueryStatistics(QueryStatistics template) {
+		dataModel = template.dataModel;
+		queryFlags = template.queryFlags;
+		tupleCount = template.tupleCount;
+		computeCorrelations = template.computeCorrelations;
+		columnCount = template.columnCount;
+		quantileSketchK = template.quantileSketchK;
+		histogramMinValues = template.histogramMinValues;
+		histogramMaxValues = template.histogramMaxValues;
+		moments = new double[MOMENT_COUNT][columnCount];
+		minValues = new float[columnCount];
+		maxValues = new float[columnCount];
+		extremaStale = new boolean[columnCount];
+		histograms = new double[columnCount][];
+		addedValueSketches = new QuantileSketch[columnCount];
+		removedValueSketches = new QuantileSketch[columnCount];
+		boxPlotValues = new float[columnCount][];
+		for (int i = 0; i < columnCount; i++) {
+			minValues[i] = Float.POSITIVE_INFINITY;
+			maxValues[i] = Float.NEGATIVE_INFINITY;
+			histograms[i] = new double[template.histograms[i].length];
+			addedValueSketches[i] = new QuantileSketch(quantileSketchK);
+			removedValueSketches[i] = new QuantileSketch(quantileSketchK);
+		}
+		if (computeCorrelations) {
+			pairMoments = new double[PAIR_MOMENT_COUNT][(columnCount * (columnCount - 1)) / 2];
+		}
+	}
+
+	private QueryStatistics(DataModel dataModel, QueryFlagSnapshot queryFlags,
+			boolean computeCorrelations, int quantileSketchK) {
+		this.dataModel = dataModel;
+		this.queryFlags = queryFlags;
+		this.computeCorrelations = computeCorrelations;
+		this.quantileSketchK = quantileSketchK;
+		tupleCount = queryFlags != null ? queryFlags.getTupleCount()
+				: dataModel.getTupleCount();
+		columnCount = dataModel.getColumnCount();
+		histogramMinValues = new double[columnCount];
+		histogramMaxValues = new double[columnCount];
+		histograms = new double[columnCount][];
+		for (int i = 0; i < columnCount; i++) {
+			Column column = dataModel.getColumn(i);
+			histogramMinValues[i] = column.getSummaryStats().getMin();
+			histogramMaxValues[i] = column.getSummaryStats().getMax();
+			// use the bins of the column histogram so the two line up
+			Histogram histogram = column.getSummaryStats().getHistogram();
+			histograms[i] = new double[histogram != null ? histogram
+					.getNumBins() : 0];
+		}
+	}
+
+	/**
+	 * Computes the statistics of the tuples whose flag is set in the query
+	 * flag snapshot, or of the tuples whose query flag is set in the data
+	 * model if the snapshot is null.
+	 */
+	public static QueryStatistics compute(DataModel dataModel,
+			QueryFlagSnapshot queryFlags, boolean computeCorrelations) {
+		return compute(dataModel, queryFlags, computeCorrelations,
+				QuantileSketch.DEFAULT_K);
+	}
+
+	/**
+	 * Computes the statistics with quantile sketches of the given k, see
+	 * QuantileSketch.getK() for the k of a rank error.
+	 */
+	public static QueryStatistics compute(DataModel dataModel,
+			QueryFlagSnapshot queryFlags, boolean computeCorrelations,
+			int quantileSketchK) {
+		QueryStatistics template = new QueryStatistics(dataModel, queryFlags,
+				computeCorrelations, quantileSketchK);
+		return ForkJoinPool.commonPool().invoke(
+				new StatisticsTask(dataModel, template, 0, template.tupleCount));
+	}
+
+	/**
+	 * Returns the statistics of the tuples queried in the new snapshot. The
+	 * statistics are derived from these by adding the tuples that entered the
+	 * query and removing those that left it, unless the columns changed, most
+	 * tuples changed, too many values were removed from the quantile
+	 * sketches or correlations are needed that these do not have, in which
+	 * case they are computed again. These statistics stay unchanged.
+	 */
+	public QueryStatistics update(QueryFlagSnapshot newQueryFlags,
+			boolean computeCorrelations) {
+		boolean compatible = dataModel.getColumnCount() == columnCount
+				&& (!computeCorrelations || this.computeCorrelations);
+		if (compatible && newQueryFlags == queryFlags) {
+			return this;
+		}
+		int changedTuples[] = null;
+		if (compatible && queryFlags != null && newQueryFlags != null) {
+			changedTuples = newQueryFlags.getChangedTuples(queryFlags);
+		}
+		superseded = true;
+		if (changedTuples == null
+				|| changedTuples.length > newQueryFlags.getTupleCount() / 2) {
+			return compute(dataModel, newQueryFlags, computeCorrelations,
+					quantileSketchK);
+		}
+
+		QueryStatistics statistics = new QueryStatistics(this);
+		statistics.queryFlags = newQueryFlags;
+		statistics.merge(this);
+		for (int tupleIndex : changedTuples) {
+			Tuple tuple = dataModel.getTuple(tupleIndex);
+			statistics.addTuple(tuple, newQueryFlags.getQueryFlag(tupleIndex) ? 1 : -1);
+		}
+		for (int i = 0; i < columnCount; i++) {
+			if (statistics.removedValueSketches[i].getCount() * 2 > statistics.moments[N][i]) {
+				return compute(dataModel, newQueryFlags, computeCorrelations,
+						quantileSketchK);
+			}
+		}
+		return statistics;
+	}
+
+	/**
+	 * Computes the parts of the statistics that are otherwise computed on
+	 * first use, the extrema after values were removed and the box plot
+	 * values, so that reading the statistics takes no pass over the tuples.
+	 * Meant to be called off the event dispatch thread before the statistics
+	 * are handed to it.
+	 */
+	public void prepare() {
+		for (int i = 0; i < columnCount; i++) {
+			updateExtrema(i);
+			getSketchBoxPlotValues(i);
+		}
+	}
+
+	/**
+	 * Returns the query flags the statistics were computed from, or null if
+	 * they were read from the data model.
+	 */
+	public QueryFlagSnapshot getQueryFlags() {
+		return queryFlags;
+	}
+
+	public boolean hasCorrelations() {
+		return computeCorrelations;
+	}
+
+	public int getColumnCount() {
+		return columnCount;
+	}
+
+	public int getQuantileSketchK() {
+		return quantileSketchK;
+	}
+
+	public long getCount(int columnIndex) {
+		return (long) moments[N][columnIndex];
+	}
+
+	public double getMean(int columnIndex) {
+		return moments[N][columnIndex] > 0 ? moments[MEAN][columnIndex]
+				: Double.NaN;
+	}
+
+	public double getVariance(int columnIndex) {
+		double n = moments[N][columnIndex];
+		if (n < 2) {
+			return Double.NaN;
+		}
+		return Math.max(0., moments[M2][columnIndex] / (n - 1));
+	}
+
+	public double getStandardDeviation(int columnIndex) {
+		return Math.sqrt(getVariance(columnIndex));
+	}
+
+	public double getSkewness(int columnIndex) {
+		double n = moments[N][columnIndex];
+		double m2 = moments[M2][columnIndex];
+		if (n < 3 || m2 <= 0.) {
+			return Double.NaN;
+		}
+		return (Math.sqrt(n) * moments[M3][columnIndex]) / Math.pow(m2, 1.5);
+	}
+
+	/**
+	 * Returns the excess kurtosis, which is zero for a normal distribution.
+	 */
+	public double getKurtosis(int columnIndex) {
+		double n = moments[N][columnIndex];
+		double m2 = moments[M2][columnIndex];
+		if (n < 4 || m2 <= 0.) {
+			return Double.NaN;
+		}
+		return ((n * moments[M4][columnIndex]) / (m2 * m2)) - 3.;
+	}
+
+	public float getMin(int columnIndex) {
+		updateExtrema(columnIndex);
+		return moments[N][columnIndex] > 0 ? minValues[columnIndex] : Float.NaN;
+	}
+
+	public float getMax(int columnIndex) {
+		updateExtrema(columnIndex);
+		return moments[N][columnIndex] > 0 ? maxValues[columnIndex] : Float.NaN;
+	}
+
+	/**
+	 * Returns the value at the given fraction of the queried values of a
+	 * column from its quantile sketch, or NaN if there are none.
+	 */
+	public float getQuantile(int columnIndex, double fraction) {
+		if (moments[N][columnIndex] <= 0) {
+			return Float.NaN;
+		}
+		QuantileSketch.SortedView view = new QuantileSketch.SortedView(
+				addedValueSketches[columnIndex],
+				removedValueSketches[columnIndex]);
+		return clamp(columnIndex, view.getQuantile(fraction));
+	}
+
+	public float getQuantile1(int columnIndex) {
+		return getBoxPlotValue(columnIndex, QUANTILE_1);
+	}
+
+	public float getMedian(int columnIndex) {
+		return getBoxPlotValue(columnIndex, MEDIAN);
+	}
+
+	public float getQuantile3(int columnIndex) {
+		return getBoxPlotValue(columnIndex, QUANTILE_3);
+	}
+
+	public float getIQR(int columnIndex) {
+		return getQuantile3(columnIndex) - getQuantile1(columnIndex);
+	}
+
+	/**
+	 * Returns the smallest queried value within 1.5 interquartile ranges
+	 * below the first quartile.
+	 */
+	public float getLowerWhisker(int columnIndex) {
+		return getBoxPlotValue(columnIndex, LOWER_WHISKER);
+	}
+
+	/**
+	 * Returns the largest queried value within 1.5 interquartile ranges above
+	 * the third quartile.
+	 */
+	public float getUpperWhisker(int columnIndex) {
+		return getBoxPlotValue(columnIndex, UPPER_WHISKER);
+	}
+
+	/**
+	 * Returns true if the quartiles and whiskers are exact rather than
+	 * estimated from the quantile sketches.
+	 */
+	public boolean hasExactQuantiles() {
+		return exactBoxPlotValues != null;
+	}
+
+	/**
+	 * Computes the exact quartiles and whiskers of all columns by sorting the
+	 * queried values, which takes O(n log n) time, so it is meant to be called
+	 * off the event dispatch thread.
+	 */
+	public void computeExactQuantiles() {
+		if (exactBoxPlotValues != null) {
+			return;
+		}
+		float values[][] = new float[columnCount][];
+		int sizes[] = new int[columnCount];
+		for (int i = 0; i < columnCount; i++) {
+			values[i] = new float[(int) moments[N][i]];
+		}
+		for (int tupleIndex = 0; tupleIndex < tupleCount; tupleIndex++) {
+			Tuple tuple = dataModel.getTuple(tupleIndex);
+			boolean queried = queryFlags != null ? queryFlags
+					.getQueryFlag(tupleIndex) : tuple.getQueryFlag();
+			if (!queried) {
+				continue;
+			}
+			for (int i = 0; i < columnCount; i++) {
+				float value = tuple.getElement(i);
+				if (!Float.isNaN(value) && sizes[i] < values[i].length) {
+					values[i][sizes[i]++] = value;
+				}
+			}
+		}
+
+		float exactValues[][] = new float[columnCount][];
+		for (int i = 0; i < columnCount; i++) {
+			float columnValues[] = values[i];
+			int size = sizes[i];
+			Arrays.parallelSort(columnValues, 0, size);
+			float boxPlot[] = new float[BOX_PLOT_VALUE_COUNT];
+			if (size == 0) {
+				Arrays.fill(boxPlot, Float.NaN);
+			} else {
+				boxPlot[QUANTILE_1] = columnValues[getRankIndex(size, 0.25)];
+				boxPlot[MEDIAN] = columnValues[getRankIndex(size, 0.5)];
+				boxPlot[QUANTILE_3] = columnValues[getRankIndex(size, 0.75)];
+				float fence = 1.5f * (boxPlot[QUANTILE_3] - boxPlot[QUANTILE_1]);
+				int lower = Arrays.binarySearch(columnValues, 0, size,
+						boxPlot[QUANTILE_1] - fence);
+				lower = lower < 0 ? -lower - 1 : lower;
+				while (lower > 0 && columnValues[lower - 1] >= boxPlot[QUANTILE_1] - fence) {
+					lower--;
+				}
+				int upper = Arrays.binarySearch(columnValues, 0, size,
+						boxPlot[QUANTILE_3] + fence);
+				upper = upper < 0 ? -upper - 2 : upper;
+				while (upper < size - 1 && columnValues[upper + 1] <= boxPlot[QUANTILE_3] + fence) {
+					upper++;
+				}
+				boxPlot[LOWER_WHISKER] = columnValues[Math.min(lower, size - 1)];
+				boxPlot[UPPER_WHISKER] = columnValues[Math.max(upper, 0)];
+			}
+			exactValues[i] = boxPlot;
+		}
+		exactBoxPlotValues = exactValues;
+	}
+
+	/**
+	 * Computes the exact quantiles on a background thread and then runs the
+	 * callback on the event dispatch thread. The statistics may be shared by
+	 * several views, so a callback given while the computation is pending is
+	 * run along with the first. Nothing is computed if newer statistics were
+	 * derived from these or the number of tuples changed before the
+	 * computation starts.
+	 */
+	public void computeExactQuantilesLater(Runnable callback) {
+		synchronized (this) {
+			if (exactBoxPlotValues != null) {
+				return;
+			}
+			if (exactQuantilesCallbacks != null) {
+				exactQuantilesCallbacks.add(callback);
+				return;
+			}
+			exactQuantilesCallbacks = new ArrayList<Runnable>();
+			exactQuantilesCallbacks.add(callback);
+		}
+		quantileExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				ArrayList<Runnable> callbacks;
+				try {
+					if (!superseded && dataModel.getTupleCount() == tupleCount) {
+						computeExactQuantiles();
+					}
+				} finally {
+					synchronized (QueryStatistics.this) {
+						callbacks = exactQuantilesCallbacks;
+						exactQuantilesCallbacks = null;
+					}
+				}
+				if (exactBoxPlotValues == null) {
+					return;
+				}
+				for (Runnable callback : callbacks) {
+					SwingUtilities.invokeLater(callback);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns the bin counts of the queried values over the bins of the
+	 * column's histogram of all tuples.
+	 */
+	public double[] getHistogram(int columnIndex) {
+		return histograms[columnIndex];
+	}
+
+	/**
+	 * Returns Pearson's correlation coefficient of two columns, or NaN if
+	 * correlations were not computed, there are fewer than two pairs of
+	 * values or a column is constant.
+	 */
+	public double getCorrelationCoefficient(int columnIndex1, int columnIndex2) {
+		if (!computeCorrelations) {
+			return Double.NaN;
+		}
+		if (columnIndex1 == columnIndex2) {
+			return 1.;
+		}
+		int pair = getPairIndex(Math.min(columnIndex1, columnIndex2),
+				Math.max(columnIndex1, columnIndex2));
+		double m2x = pairMoments[PAIR_M2_X][pair];
+		double m2y = pairMoments[PAIR_M2_Y][pair];
+		if (pairMoments[PAIR_N][pair] < 2 || m2x <= 0. || m2y <= 0.) {
+			return Double.NaN;
+		}
+		double r = pairMoments[PAIR_C][pair] / Math.sqrt(m2x * m2y);
+		return Math.max(-1., Math.min(1., r));
+	}
+
+	/**
+	 * Returns the correlation coefficients of a column with all columns in
+	 * data model order, in the form of the data model's summary statistics.
+	 */
+	public ArrayList<Float> getCorrelationCoefficients(int columnIndex) {
+		ArrayList<Float> coefficients = new ArrayList<Float>(columnCount);
+		for (int i = 0; i < columnCount; i++) {
+			coefficients.add((float) getCorrelationCoefficient(columnIndex, i));
+		}
+		return coefficients;
+	}
+
+	private float getBoxPlotValue(int columnIndex, int valueIndex) {
+		float exactValues[][] = exactBoxPlotValues;
+		if (exactValues != null) {
+			return exactValues[columnIndex][valueIndex];
+		}
+		return getSketchBoxPlotValues(columnIndex)[valueIndex];
+	}
+
+	private synchronized float[] getSketchBoxPlotValues(int columnIndex) {
+		if (boxPlotValues[columnIndex] != null) {
+			return boxPlotValues[columnIndex];
+		}
+		float boxPlot[] = new float[BOX_PLOT_VALUE_COUNT];
+		if (moments[N][columnIndex] <= 0) {
+			Arrays.fill(boxPlot, Float.NaN);
+		} else {
+			QuantileSketch.SortedView view = new QuantileSketch.SortedView(
+					addedValueSketches[columnIndex],
+					removedValueSketches[columnIndex]);
+			boxPlot[QUANTILE_1] = clamp(columnIndex, view.getQuantile(0.25));
+			boxPlot[MEDIAN] = clamp(columnIndex, view.getQuantile(0.5));
+			boxPlot[QUANTILE_3] = clamp(columnIndex, view.getQuantile(0.75));
+			float fence = 1.5f * (boxPlot[QUANTILE_3] - boxPlot[QUANTILE_1]);
+			float lowerWhisker = view.getCeiling(boxPlot[QUANTILE_1] - fence);
+			float upperWhisker = view.getFloor(boxPlot[QUANTILE_3] + fence);
+			boxPlot[LOWER_WHISKER] = Float.isNaN(lowerWhisker) ? getMin(columnIndex)
+					: clamp(columnIndex, lowerWhisker);
+			boxPlot[UPPER_WHISKER] = Float.isNaN(upperWhisker) ? getMax(columnIndex)
+					: clamp(columnIndex, upperWhisker);
+		}
+		boxPlotValues[columnIndex] = boxPlot;
+		return boxPlot;
+	}
+
+	// keeps a sketch value, which may have left the query, within the extrema
+	private float clamp(int columnIndex, float value) {
+		return Math.max(getMin(columnIndex), Math.min(getMax(columnIndex), value));
+	}
+
+	// index of the value at a fraction of n sorted values by nearest rank
+	private static int getRankIndex(int n, double fraction) {
+		return Math.max(0, Math.min(n - 1, (int) Math.ceil(fraction * n) - 1));
+	}
+
+	private int getPairIndex(int i, int j) {
+		// pairs (0, 1) ... (0, n - 1), (1, 2) ... in order
+		return (i * ((2 * columnCount) - i - 1)) / 2 + (j - i - 1);
+	}
+
+	// finds the minimum and maximum again after one of them was removed
+	private synchronized void updateExtrema(int columnIndex) {
+		if (!extremaStale[columnIndex]) {
+			return;
+		}
+		float min = Float.POSITIVE_INFINITY;
+		float max = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < queryFlags.getTupleCount(); i++) {
+			if (queryFlags.getQueryFlag(i)) {
+				float value = dataModel.getTuple(i).getElement(columnIndex);
+				if (value < min) {
+					min = value;
+				}
+				if (value > max) {
+					max = value;
+				}
+			}
+		}
+		minValues[columnIndex] = min;
+		maxValues[columnIndex] = max;
+		extremaStale[columnIndex] = false;
+	}
+
+	/**
+	 * Adds the values of a tuple to the statistics for a count of 1, or
+	 * removes them for a count of -1.
+	 */
+	private void addTuple(Tuple tuple, int count) {
+		for (int i = 0; i < columnCount; i++) {
+			float value = tuple.getElement(i);
+			if (Float.isNaN(value)) {
+				continue;
+			}
+			combineMoments(moments, i, count, value, 0., 0., 0.);
+			if (count > 0) {
+				addedValueSketches[i].update(value);
+				if (value < minValues[i]) {
+					minValues[i] = value;
+				}
+				if (value > maxValues[i]) {
+					maxValues[i] = value;
+				}
+			} else {
+				removedValueSketches[i].update(value);
+				if (value <= minValues[i] || value >= maxValues[i]) {
+					extremaStale[i] = true;
+				}
+			}
+
+			double bins[] = histograms[i];
+			double range = histogramMaxValues[i] - histogramMinValues[i];
+			if (bins.length > 0 && value >= histogramMinValues[i]
+					&& value <= histogramMaxValues[i]) {
+				int bin = range > 0. ? (int) (((value - histogramMinValues[i]) / range) * bins.length)
+						: 0;
+				bins[Math.min(bin, bins.length - 1)] += count;
+			}
+		}
+
+		if (!computeCorrelations) {
+			return;
+		}
+		int pair = 0;
+		for (int i = 0; i < columnCount; i++) {
+			float x = tuple.getElement(i);
+			if (Float.isNaN(x)) {
+				pair += columnCount - i - 1;
+				continue;
+			}
+			for (int j = i + 1; j < columnCount; j++, pair++) {
+				float y = tuple.getElement(j);
+				if (!Float.isNaN(y)) {
+					combinePairMoments(pairMoments, pair, count, x, y, 0., 0.,
+							0.);
+				}
+			}
+		}
+	}
+
+	private void merge(QueryStatistics other) {
+		for (int i = 0; i < columnCount; i++) {
+			combineMoments(moments, i, other.moments[N][i],
+					other.moments[MEAN][i], other.moments[M2][i],
+					other.moments[M3][i], other.moments[M4][i]);
+			minValues[i] = Math.min(minValues[i], other.minValues[i]);
+			maxValues[i] = Math.max(maxValues[i], other.maxValues[i]);
+			extremaStale[i] |= other.extremaStale[i];
+			addedValueSketches[i].merge(other.addedValueSketches[i]);
+			removedValueSketches[i].merge(other.removedValueSketches[i]);
+			for (int bin = 0; bin < histograms[i].length; bin++) {
+				histograms[i][bin] += other.histograms[i][bin];
+			}
+		}
+		if (computeCorrelations) {
+			double otherMoments[][] = other.pairMoments;
+			for (int pair = 0; pair < pairMoments[PAIR_N].length; pair++) {
+				combinePairMoments(pairMoments, pair,
+						otherMoments[PAIR_N][pair],
+						otherMoments[PAIR_MEAN_X][pair],
+						otherMoments[PAIR_MEAN_Y][pair],
+						otherMoments[PAIR_M2_X][pair],
+						otherMoments[PAIR_M2_Y][pair],
+						otherMoments[PAIR_C][pair]);
+			}
+		}
+	}
+
+	/**
+	 * Combines the moments at index i with a set of nB values with the given
+	 * mean and central moments. A single value has central moments of zero,
+	 * and a negative count removes the set.
+	 */
+	private static void combineMoments(double moments[][], int i, double nB,
+			double meanB, double m2B, double m3B, double m4B) {
+		double nA = moments[N][i];
+		double n = nA + nB;
+		if (nB == 0.) {
+			return;
+		}
+		if (n <= 0.) {
+			for (int k = 0; k < MOMENT_COUNT; k++) {
+				moments[k][i] = 0.;
+			}
+			return;
+		}
+		double m2A = moments[M2][i];
+		double m3A = moments[M3][i];
+		double delta = meanB - moments[MEAN][i];
+		double deltaN = delta / n;
+		double deltaN2 = deltaN * deltaN;
+		double product = nA * nB;
+
+		moments[M4][i] += m4B + (delta * deltaN * deltaN2 * product * ((nA * nA) - product + (nB * nB)))
+				+ (6. * deltaN2 * ((nA * nA * m2B) + (nB * nB * m2A)))
+				+ (4. * deltaN * ((nA * m3B) - (nB * m3A)));
+		moments[M3][i] += m3B + (delta * deltaN2 * product * (nA - nB))
+				+ (3. * deltaN * ((nA * m2B) - (nB * m2A)));
+		moments[M2][i] += m2B + (delta * deltaN * product);
+		moments[MEAN][i] += nB * deltaN;
+		moments[N][i] = n;
+	}
+
+	private static void combinePairMoments(double moments[][], int pair,
+			double nB, double meanXB, double meanYB, double m2XB, double m2YB,
+			double cB) {
+		double nA = moments[PAIR_N][pair];
+		double n = nA + nB;
+		if (nB == 0.) {
+			return;
+		}
+		if (n <= 0.) {
+			for (int k = 0; k < PAIR_MOMENT_COUNT; k++) {
+				moments[k][pair] = 0.;
+			}
+			return;
+		}
+		double deltaX = meanXB - moments[PAIR_MEAN_X][pair];
+		double deltaY = meanYB - moments[PAIR_MEAN_Y][pair];
+		double factor = (nA * nB) / n;
+		moments[PAIR_C][pair] += cB + (deltaX * deltaY * factor);
+		moments[PAIR_M2_X][pair] += m2XB + (deltaX * deltaX * factor);
+		moments[PAIR_M2_Y][pair] += m2YB + (deltaY * deltaY * factor);
+		moments[PAIR_MEAN_X][pair] += (nB * deltaX) / n;
+		moments[PAIR_MEAN_Y][pair] += (nB * deltaY) / n;
+		moments[PAIR_N][pair] = n;
+	}
+
+	private static class StatisticsTask extends RecursiveTask<QueryStatistics> {
+		private static final long serialVersionUID = 1L;
+		private DataModel dataModel;
+		private QueryStatistics template;
+		private int startTuple;
+		private int endTuple;
+
+		public StatisticsTask(DataModel dataModel, QueryStatistics template,
+				int startTuple, int endTuple) {
+			this.dataModel = dataModel;
+			this.template = template;
+			this.startTuple = startTuple;
+			this.endTuple = endTuple;
+		}
+
+		@Override
+		protected QueryStatistics compute() {
+			if (endTuple - startTuple > CHUNK_SIZE) {
+				int middle = (startTuple + endTuple) >>> 1;
+				StatisticsTask left = new StatisticsTask(dataModel, template,
+						startTuple, middle);
+				StatisticsTask right = new StatisticsTask(dataModel, template,
+						middle, endTuple);
+				left.fork();
+				QueryStatistics rightStatistics = right.compute();
+				QueryStatistics leftStatistics = left.join();
+				leftStatistics.merge(rightStatistics);
+				return leftStatistics;
+			}
+
+			QueryStatistics statistics = new QueryStatistics(template);
+			QueryFlagSnapshot queryFlags = template.queryFlags;
+			for (int i = startTuple; i < endTuple; i++) {
+				Tuple tuple = dataModel.getTuple(i);
+				boolean queried = queryFlags != null ? queryFlags
+						.getQueryFlag(i) : tuple.getQueryFlag();
+				if (queried) {
+					statistics.addTuple(tuple, 1);
+				}
+			}
+			return statistics;
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package gov.ornl.eden;
+
+import gov.ornl.datatable.DataModel;
+import gov.ornl.datatable.Tuple;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Sufficient statistics for a simple linear regression of y on x: the count
+ * and the sums of x, y, xy, x squared and y squared. Points can be added and
+ * removed one at a time and statistics of disjoint sets of points can be
+ * merged, so the statistics of a tuple subset can be computed in parallel
+ * chunks and then kept up to date as tuples enter or leave the subset.
+ *
+ * The sums are taken over the values minus a fixed origin, usually the
+ * column means, to limit the loss of precision in the variance terms.
+ * Statistics can only be merged if they share the same origin.
+ *
+ * Instances are not thread safe. Once statistics are handed to another
+ * thread, such as a renderer, they are updated through a copy.
+ */
+public class RegressionStatistics {
+	// tuples per leaf task of the parallel computation
+	private static final int CHUNK_SIZE = 65536;
+
+	private double originX;
+	private double originY;
+	private long n = 0;
+	private double sumX = 0.;
+	private double sumY = 0.;
+	private double sumXY = 0.;
+	private double sumXX = 0.;
+	private double sumYY = 0.;
+
+	public RegressionStatistics(double originX, double originY) {
+		this.originX = originX;
+		this.originY = originY;
+	}
+
+	public void addData(double x, double y) {
+		double dx = x - originX;
+		double dy = y - originY;
+		n++;
+		sumX += dx;
+		sumY += dy;
+		sumXY += dx * dy;
+		sumXX += dx * dx;
+		sumYY += dy * dy;
+	}
+
+	public void removeData(double x, double y) {
+		double dx = x - originX;
+		double dy = y - originY;
+		n--;
+		sumX -= dx;
+		sumY -= dy;
+		sumXY -= dx * dy;
+		sumXX -= dx * dx;
+		sumYY -= dy * dy;
+	}
+
+	public void merge(RegressionStatistics other) {
+		n += other.n;
+		sumX += other.sumX;
+		sumY += other.sumY;
+		sumXY += other.sumXY;
+		sumXX += other.sumXX;
+		sumYY += other.sumYY;
+	}
+
+	/**
+	 * Returns independent statistics of the same points with the same origin.
+	 */
+	public RegressionStatistics copy() {
+		RegressionStatistics statistics = new RegressionStatistics(originX,
+				originY);
+		statistics.merge(this);
+		return statistics;
+	}
+
+	public long getN() {
+		return n;
+	}
+
+	public double getSlope() {
+		double sxx = (n * sumXX) - (sumX * sumX);
+		if (n < 2 || sxx == 0.) {
+			return Double.NaN;
+		}
+		return ((n * sumXY) - (sumX * sumY)) / sxx;
+	}
+
+	public double getIntercept() {
+		double slope = getSlope();
+		// intercept in shifted coordinates, then moved back to the origin
+		double shiftedIntercept = (sumY - (slope * sumX)) / n;
+		return originY + shiftedIntercept - (slope * originX);
+	}
+
+	public double predict(double x) {
+		return getIntercept() + (getSlope() * x);
+	}
+
+	/**
+	 * Returns Pearson's correlation coefficient, or NaN for fewer than two
+	 * points or a constant variable.
+	 */
+	public double getR() {
+		double sxx = (n * sumXX) - (sumX * sumX);
+		double syy = (n * sumYY) - (sumY * sumY);
+		if (n < 2 || sxx <= 0. || syy <= 0.) {
+			return Double.NaN;
+		}
+		double r = ((n * sumXY) - (sumX * sumY)) / Math.sqrt(sxx * syy);
+		return Math.max(-1., Math.min(1., r));
+	}
+
+	/**
+	 * Computes the statistics of all tuples and of the tuples whose flag is
+	 * set in the query flag snapshot in one parallel pass over the table.
+	 * Returns the statistics of all tuples at index 0 and of the queried
+	 * tuples at index 1.
+	 */
+	public static RegressionStatistics[] compute(DataModel dataModel,
+			int xColumnIndex, int yColumnIndex, QueryFlagSnapshot queryFlags,
+			double originX, double originY) {
+		return ForkJoinPool.commonPool().invoke(
+				new StatisticsTask(dataModel, xColumnIndex, yColumnIndex,
+						queryFlags, originX, originY, 0, queryFlags
+								.getTupleCount()));
+	}
+
+	private static class StatisticsTask extends
+			RecursiveTask<RegressionStatistics[]> {
+		private static final long serialVersionUID = 1L;
+		private DataModel dataModel;
+		private int xColumnIndex;
+		private int yColumnIndex;
+		private QueryFlagSnapshot queryFlags;
+		private double originX;
+		private double originY;
+		private int startTuple;
+		private int endTuple;
+
+		public StatisticsTask(DataModel dataModel, int xColumnIndex,
+				int yColumnIndex, QueryFlagSnapshot queryFlags,
+				double originX, double originY, int startTuple, int endTuple) {
+			this.dataModel = dataModel;
+			this.xColumnIndex = xColumnIndex;
+			this.yColumnIndex = yColumnIndex;
+			this.queryFlags = queryFlags;
+			this.originX = originX;
+			this.originY = originY;
+			this.startTuple = startTuple;
+			this.endTuple = endTuple;
+		}
+
+		@Override
+		protected RegressionStatistics[] compute() {
+			if (endTuple - startTuple > CHUNK_SIZE) {
+				int middle = (startTuple + endTuple) >>> 1;
+				StatisticsTask left = new StatisticsTask(dataModel,
+						xColumnIndex, yColumnIndex, queryFlags, originX,
+						originY, startTuple, middle);
+				StatisticsTask right = new StatisticsTask(dataModel,
+						xColumnIndex, yColumnIndex, queryFlags, originX,
+						originY, middle, endTuple);
+				left.fork();
+				RegressionStatistics rightStatistics[] = right.compute();
+				RegressionStatistics leftStatistics[] = left.join();
+				leftStatistics[0].merge(rightStatistics[0]);
+				leftStatistics[1].merge(rightStatistics[1]);
+				return leftStatistics;
+			}
+
+			RegressionStatistics allStatistics = new RegressionStatistics(
+					originX, originY);
+			RegressionStatistics queryStatistics = new RegressionStatistics(
+					originX, originY);
+			for (int i = startTuple; i < endTuple; i++) {
+				Tuple tuple = dataModel.getTuple(i);
+				float x = tuple.getElement(xColumnIndex);
+				float y = tuple.getElement(yColumnIndex);
+				allStatistics.addData(x, y);
+				if (queryFlags.getQueryFlag(i)) {
+					queryStatistics.addData(x, y);
+				}
+			}
+			return new RegressionStatistics[] { allStatistics, queryStatistics };
+		}
+	}
+}
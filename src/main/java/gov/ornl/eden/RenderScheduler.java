@@ -0,0 +1,186 @@
+package gov.ornl.eden;
+
+import java.awt.Component;
+import java.util.HashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs renderers on a fixed number of worker threads. Each submission gets a
+ * generation token. Per render target only the latest submission is kept:
+ * submitting a renderer cancels the previous renderer of the same target
+ * and drops it from the queue if it has not started, so a burst of requests
+ * collapses into a single render. Waiting renderers run in priority order,
+ * with renderers of visible panels ahead of those of hidden ones, and in
+ * submission order within a priority.
+ */
+public class RenderScheduler {
+	private static final Logger log = LoggerFactory
+			.getLogger(RenderScheduler.class);
+
+	public static final int VISIBLE_PRIORITY = 0;
+	public static final int HIDDEN_PRIORITY = 1;
+
+	private static final RenderScheduler defaultScheduler = new RenderScheduler(
+			Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+	private ThreadPoolExecutor executor;
+	private AtomicLong nextGeneration = new AtomicLong();
+	private HashMap<RenderTarget, RenderTask> latestTasks = new HashMap<RenderTarget, RenderTask>();
+
+	public RenderScheduler(int workerCount) {
+		final AtomicInteger threadCount = new AtomicInteger();
+		ThreadFactory threadFactory = new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "eden-render-"
+						+ threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		executor = new ThreadPoolExecutor(workerCount, workerCount, 0L,
+				TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(),
+				threadFactory);
+	}
+
+	public static RenderScheduler getDefault() {
+		return defaultScheduler;
+	}
+
+	/**
+	 * Returns the priority of renders for the given owner.
+	 */
+	public static int getPriority(Object owner) {
+		if (owner instanceof Component && !((Component) owner).isShowing()) {
+			return HIDDEN_PRIORITY;
+		}
+		return VISIBLE_PRIORITY;
+	}
+
+	public void submit(Renderer renderer) {
+		RenderTask task = new RenderTask(renderer,
+				getPriority(renderer.getRenderTargetOwner()),
+				nextGeneration.incrementAndGet());
+		renderer.setGeneration(task.generation);
+
+		if (task.target != null) {
+			RenderTask previousTask;
+			synchronized (latestTasks) {
+				previousTask = latestTasks.put(task.target, task);
+			}
+			if (previousTask != null && previousTask.renderer != renderer) {
+				previousTask.renderer.cancel();
+				executor.remove(previousTask);
+			}
+		}
+
+		executor.execute(task);
+	}
+
+	/**
+	 * Cancels the current renderer of every target of the given owner.
+	 */
+	public void cancelAll(Object owner) {
+		synchronized (latestTasks) {
+			for (RenderTask task : latestTasks.values()) {
+				if (task.target.owner == owner) {
+					task.renderer.cancel();
+					executor.remove(task);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of renderers waiting for a worker.
+	 */
+	public int getQueuedCount() {
+		return executor.getQueue().size();
+	}
+
+	private void taskDone(RenderTask task) {
+		if (task.target != null) {
+			synchronized (latestTasks) {
+				if (latestTasks.get(task.target) == task) {
+					latestTasks.remove(task.target);
+				}
+			}
+		}
+	}
+
+	private class RenderTask implements Runnable, Comparable<RenderTask> {
+		final Renderer renderer;
+		final RenderTarget target;
+		final int priority;
+		final long generation;
+
+		RenderTask(Renderer renderer, int priority, long generation) {
+			this.renderer = renderer;
+			this.priority = priority;
+			this.generation = generation;
+			if (renderer.getRenderTargetOwner() != null) {
+				target = new RenderTarget(renderer.getRenderTargetOwner(),
+						renderer.getRenderTargetName());
+			} else {
+				target = null;
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (renderer.begin()) {
+					renderer.run();
+				}
+			} catch (RuntimeException e) {
+				log.error("Renderer " + renderer.getName() + " failed", e);
+			} finally {
+				renderer.isRunning = false;
+				taskDone(this);
+			}
+		}
+
+		@Override
+		public int compareTo(RenderTask other) {
+			if (priority != other.priority) {
+				return priority < other.priority ? -1 : 1;
+			}
+			return Long.compare(generation, other.generation);
+		}
+	}
+
+	private static class RenderTarget {
+		final Object owner;
+		final String name;
+
+		RenderTarget(Object owner, String name) {
+			this.owner = owner;
+			this.name = name;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof RenderTarget)) {
+				return false;
+			}
+			RenderTarget other = (RenderTarget) object;
+			return owner == other.owner
+					&& (name == null ? other.name == null : name
+							.equals(other.name));
+		}
+
+		@Override
+		public int hashCode() {
+			return (31 * System.identityHashCode(owner))
+					+ (name == null ? 0 : name.hashCode());
+		}
+	}
+}
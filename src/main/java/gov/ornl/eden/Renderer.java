@@ -1,17 +1,74 @@
 package gov.ornl.eden;
 
 import java.awt.image.BufferedImage;
-import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
-public abstract class Renderer extends Thread {
+/**
+ * Base class of the background image renderers. A renderer is a task that is
+ * started with start(), which hands it to the shared RenderScheduler rather
+ * than creating a thread for it. Renderers that draw the same part of a view
+ * share a render target, and starting a new renderer for a target cancels
+ * the one it supersedes.
+ *
+ * Cancellation is cooperative: cancel() clears isRunning, which run()
+ * implementations check regularly, and a cancelled renderer no longer
+ * notifies its listeners.
+ */
+public abstract class Renderer implements Runnable {
 	private final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(this
 			.getClass());
 
-	public boolean isRunning = false;
-	protected ArrayList<RendererListener> listeners = new ArrayList<RendererListener>();
-	protected BufferedImage image;
+	private static final AtomicLong nextId = new AtomicLong();
+
+	public volatile boolean isRunning = false;
+	protected List<RendererListener> listeners = new CopyOnWriteArrayList<RendererListener>();
+	protected volatile BufferedImage image;
+
+	private final long id = nextId.incrementAndGet();
+	private String name = "Renderer-" + id;
+	private volatile boolean cancelled = false;
+	private Object renderTargetOwner;
+	private String renderTargetName;
+	private long generation;
+
+	/**
+	 * Schedules this renderer on the shared render scheduler.
+	 */
+	public void start() {
+		RenderScheduler.getDefault().submit(this);
+	}
+
+	/**
+	 * Stops this renderer. If it has not started yet it never will, and if it
+	 * is running it stops at its next check of isRunning.
+	 */
+	public synchronized void cancel() {
+		cancelled = true;
+		isRunning = false;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Called by the scheduler right before run(). Returns false if the
+	 * renderer was cancelled while it was waiting.
+	 */
+	synchronized boolean begin() {
+		if (cancelled) {
+			return false;
+		}
+		isRunning = true;
+		return true;
+	}
 
 	protected void fireRendererFinished() {
+		if (cancelled) {
+			return;
+		}
 		for (RendererListener listener : listeners) {
 			listener.rendererFinished(this);
 		}
@@ -30,4 +87,47 @@ public abstract class Renderer extends Thread {
 	public BufferedImage getRenderedImage() {
 		return image;
 	}
+
+	public long getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Sets the part of a view this renderer draws. The owner is usually the
+	 * panel that shows the image, and it decides the priority of the render:
+	 * renderers of a panel that is not showing run after those of visible
+	 * panels.
+	 */
+	public void setRenderTarget(Object owner, String targetName) {
+		renderTargetOwner = owner;
+		renderTargetName = targetName;
+	}
+
+	public Object getRenderTargetOwner() {
+		return renderTargetOwner;
+	}
+
+	public String getRenderTargetName() {
+		return renderTargetName;
+	}
+
+	/**
+	 * Returns the generation token the scheduler assigned to this renderer
+	 * when it was submitted. Later submissions get higher generations.
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+
+	void setGeneration(long generation) {
+		this.generation = generation;
+	}
 }
@@ -17,12 +17,14 @@ import java.awt.geom.Ellipse2D;
 import java.io.File;
 
 import javax.swing.BorderFactory;
+import javax.swing.ButtonGroup;
 import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JFrame;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JPanel;
+import javax.swing.JRadioButtonMenuItem;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 
@@ -33,17 +35,23 @@ public class ScatterPlotFrame extends JFrame implements DisplaySettingsPanelList
 	Column xColumn;
 	Column yColumn;
 	DataModel dataModel;
+	QueryScheduler queryScheduler;
 	DisplaySettingsPanel displaySettingsPanel;
 
 	private JCheckBoxMenuItem showCorrelationIndicatorMenuItem;
 	private JCheckBoxMenuItem useQueryCorrelationMenuItem;
 	private JCheckBoxMenuItem showRegressionLineMenuItem;
 	private JCheckBoxMenuItem useQueryRegressionLineMenuItem;
+	private JRadioButtonMenuItem pointRenderingMenuItem;
+	private JRadioButtonMenuItem squareBinRenderingMenuItem;
+	private JRadioButtonMenuItem hexBinRenderingMenuItem;
+	private JCheckBoxMenuItem outlineFocusBinsMenuItem;
 
-	public ScatterPlotFrame(DataModel dataModel, Column xColumn,
-			Column yColumn, ScatterplotConfiguration config,
+	public ScatterPlotFrame(DataModel dataModel, QueryScheduler queryScheduler,
+			Column xColumn, Column yColumn, ScatterplotConfiguration config,
 			ScatterplotConfiguration nonqueryConfig) {
 		this.dataModel = dataModel;
+		this.queryScheduler = queryScheduler;
 		this.xColumn = xColumn;
 		this.yColumn = yColumn;
 		this.config = config;
@@ -119,6 +127,47 @@ public class ScatterPlotFrame extends JFrame implements DisplaySettingsPanelList
 		useQueryRegressionLineMenuItem.addItemListener(this);
 		regressionDisplayMenu.add(useQueryRegressionLineMenuItem);
 
+		JMenu pointDisplayMenu = new JMenu("Point Display");
+		menu.add(pointDisplayMenu);
+		ButtonGroup pointRenderingGroup = new ButtonGroup();
+		pointRenderingMenuItem = new JRadioButtonMenuItem("Points");
+		pointRenderingMenuItem.setMnemonic(KeyEvent.VK_P);
+		pointRenderingMenuItem
+				.setSelected(spPanel.getPointRenderingMode() == ScatterplotConfiguration.POINT_RENDERING);
+		pointRenderingMenuItem.addItemListener(this);
+		pointRenderingGroup.add(pointRenderingMenuItem);
+		pointDisplayMenu.add(pointRenderingMenuItem);
+
+		squareBinRenderingMenuItem = new JRadioButtonMenuItem("Square Bins");
+		squareBinRenderingMenuItem.setMnemonic(KeyEvent.VK_S);
+		squareBinRenderingMenuItem
+				.setSelected(spPanel.getPointRenderingMode() == ScatterplotConfiguration.SQUARE_BIN_RENDERING);
+		squareBinRenderingMenuItem.addItemListener(this);
+		pointRenderingGroup.add(squareBinRenderingMenuItem);
+		pointDisplayMenu.add(squareBinRenderingMenuItem);
+
+		hexBinRenderingMenuItem = new JRadioButtonMenuItem("Hexagonal Bins");
+		hexBinRenderingMenuItem.setMnemonic(KeyEvent.VK_H);
+		hexBinRenderingMenuItem
+				.setSelected(spPanel.getPointRenderingMode() == ScatterplotConfiguration.HEX_BIN_RENDERING);
+		hexBinRenderingMenuItem.addItemListener(this);
+		pointRenderingGroup.add(hexBinRenderingMenuItem);
+		pointDisplayMenu.add(hexBinRenderingMenuItem);
+
+		pointDisplayMenu.addSeparator();
+		outlineFocusBinsMenuItem = new JCheckBoxMenuItem(
+				"Outline Selected Data Bins");
+		outlineFocusBinsMenuItem.setMnemonic(KeyEvent.VK_O);
+		outlineFocusBinsMenuItem.setSelected(spPanel.getOutlineFocusBins());
+		outlineFocusBinsMenuItem.addItemListener(this);
+		pointDisplayMenu.add(outlineFocusBinsMenuItem);
+
+		menu.addSeparator();
+		mi = new JMenuItem("Reset Zoom", KeyEvent.VK_R);
+		mi.setActionCommand("resetZoom");
+		mi.addActionListener(this);
+		menu.add(mi);
+
 	}
 
 	private void initializePanel() {
@@ -130,7 +179,8 @@ public class ScatterPlotFrame extends JFrame implements DisplaySettingsPanelList
 		JScrollPane displaySettingsScroller = new JScrollPane(
 				displaySettingsPanel);
 
-		spPanel = new ScatterPlotPanel(dataModel, config, nonqueryConfig);
+		spPanel = new ScatterPlotPanel(dataModel, queryScheduler, config,
+				nonqueryConfig);
 		spPanel.setBackground(Color.white);
 
 		JSplitPane mainSplit = new JSplitPane(JSplitPane.VERTICAL_SPLIT,
@@ -154,6 +204,8 @@ public class ScatterPlotFrame extends JFrame implements DisplaySettingsPanelList
 					File f = new File(filename);
 					DataModel dm = new DataModel();
 					dm.clear();
+					QueryScheduler queryScheduler = new QueryScheduler(dm,
+							new QueryEngine(dm));
 
 					ScatterplotConfiguration config = new ScatterplotConfiguration();
 					config.pointColor = new Color(50, 50, 120, 100);
@@ -199,8 +251,8 @@ public class ScatterPlotFrame extends JFrame implements DisplaySettingsPanelList
 					// Column xCol = dm.getColumn(0);
 					// Column yCol = dm.getColumn(2);
 					dm.setQueriedTuples();
-					ScatterPlotFrame window = new ScatterPlotFrame(dm, xCol,
-							yCol, config, nonqueryConfig);
+					ScatterPlotFrame window = new ScatterPlotFrame(dm,
+							queryScheduler, xCol, yCol, config, nonqueryConfig);
 					window.setVisible(true);
 					window.setColumns(xCol, yCol);
 				} catch (Exception ex) {
@@ -224,6 +276,8 @@ public class ScatterPlotFrame extends JFrame implements DisplaySettingsPanelList
 	public void actionPerformed(ActionEvent event) {
 		if (event.getActionCommand().equals("close")) {
 			dispose();
+		} else if (event.getActionCommand().equals("resetZoom")) {
+			spPanel.resetZoom();
 		}
 	}
 
@@ -241,6 +295,20 @@ public class ScatterPlotFrame extends JFrame implements DisplaySettingsPanelList
 		} else if (event.getSource() == this.useQueryRegressionLineMenuItem) {
 			spPanel.setUseQueryRegressionLine(useQueryRegressionLineMenuItem
 					.isSelected());
+		} else if (event.getSource() == this.pointRenderingMenuItem) {
+			if (pointRenderingMenuItem.isSelected()) {
+				spPanel.setPointRenderingMode(ScatterplotConfiguration.POINT_RENDERING);
+			}
+		} else if (event.getSource() == this.squareBinRenderingMenuItem) {
+			if (squareBinRenderingMenuItem.isSelected()) {
+				spPanel.setPointRenderingMode(ScatterplotConfiguration.SQUARE_BIN_RENDERING);
+			}
+		} else if (event.getSource() == this.hexBinRenderingMenuItem) {
+			if (hexBinRenderingMenuItem.isSelected()) {
+				spPanel.setPointRenderingMode(ScatterplotConfiguration.HEX_BIN_RENDERING);
+			}
+		} else if (event.getSource() == this.outlineFocusBinsMenuItem) {
+			spPanel.setOutlineFocusBins(outlineFocusBinsMenuItem.isSelected());
 		}
 	}
 
@@ -19,20 +19,26 @@ import java.awt.event.ComponentListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.JComponent;
 import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
 
-import org.apache.commons.math3.stat.regression.SimpleRegression;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class ScatterPlotPanel extends JComponent implements MouseMotionListener,
-		MouseListener, ComponentListener, DataModelListener, RendererListener {
+		MouseListener, MouseWheelListener, ComponentListener, DataModelListener,
+		RendererListener, QuerySchedulerListener {
 	private final Logger log = LoggerFactory.getLogger(ScatterPlotPanel.class);
 
 	public final static DecimalFormat DECIMAL_FORMAT = new DecimalFormat(
@@ -41,6 +47,18 @@ public class ScatterPlotPanel extends JComponent implements MouseMotionListener,
 	private final static int BORDER = 2;
 	private final static int BORDER2 = BORDER * 2;
 	private final static int AXIS_SIZE = 40;
+	private final static double MAX_ZOOM = 1024.;
+	private final static double ZOOM_STEP = 1.25;
+
+	private static final ExecutorService statisticsExecutor = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "eden-regression");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
 
 	private BufferedImage axesImage = null;
 	private BufferedImage pointsImage = null;
@@ -70,12 +88,25 @@ public class ScatterPlotPanel extends JComponent implements MouseMotionListener,
 	private Point endDragPoint = new Point();
 	private boolean dragging = false;
 	private Rectangle dragRect;
+	private Point panPoint = null;
+
+	// visible part of the plot in coordinates normalized to the column
+	// ranges, with y pointing up
+	private Rectangle2D.Double viewport = new Rectangle2D.Double(0, 0, 1, 1);
+	private ScatterplotQuadtree quadtree;
 
 	ScatterplotConfiguration queryScatterPlotConfig = new ScatterplotConfiguration();
 	ScatterplotConfiguration nonqueryScatterPlotConfig = new ScatterplotConfiguration();
 
 	private ScatterplotAxesRenderer axesPlotRenderer;
-	private SimpleRegression simpleRegression;
+	// regression statistics of all tuples and of the queried tuples
+	private RegressionStatistics allStatistics;
+	private RegressionStatistics queryStatistics;
+	private QueryFlagSnapshot statisticsQueryFlags;
+	// bumped on the event dispatch thread for every statistics update, so
+	// that an update still running when a newer one is started is dropped
+	private volatile int statisticsGeneration = 0;
+	private QueryScheduler queryScheduler;
 	private int axisBufferSize;
 	private int axisSize;
 	private Rectangle centeredRectangle;
@@ -89,13 +120,16 @@ public class ScatterPlotPanel extends JComponent implements MouseMotionListener,
 	PCAxisSelection xAxisSelection;
 	PCAxisSelection yAxisSelection;
 
-	public ScatterPlotPanel(DataModel dataModel,
+	public ScatterPlotPanel(DataModel dataModel, QueryScheduler queryScheduler,
 			ScatterplotConfiguration queryScatterPlotConfig,
 			ScatterplotConfiguration nonqueryScatterPlotConfig) {
 		this.dataModel = dataModel;
+		this.queryScheduler = queryScheduler;
+		queryScheduler.addQuerySchedulerListener(this);
 		addComponentListener(this);
 		addMouseListener(this);
 		addMouseMotionListener(this);
+		addMouseWheelListener(this);
 		dataModel.addDataModelListener(this);
 
 		this.queryScatterPlotConfig = queryScatterPlotConfig;
@@ -142,7 +176,6 @@ public class ScatterPlotPanel extends JComponent implements MouseMotionListener,
 		if (this.showRegressionLine != showRegressionLine) {
 			this.showRegressionLine = showRegressionLine;
 			queryScatterPlotConfig.showRegressionLine = showRegressionLine;
-			calculateStatistics();
 			startScatterplotRenderer();
 		}
 	}
@@ -155,7 +188,6 @@ public class ScatterPlotPanel extends JComponent implements MouseMotionListener,
 		if (this.useQueryRegressionLine != useQueryRegressionLine) {
 			this.useQueryRegressionLine = useQueryRegressionLine;
 			queryScatterPlotConfig.useQueryRegressionLine = useQueryRegressionLine;
-			calculateStatistics();
 			startScatterplotRenderer();
 		}
 	}
@@ -175,6 +207,33 @@ public class ScatterPlotPanel extends JComponent implements MouseMotionListener,
 		return showFilteredData;
 	}
 
+	/**
+	 * Sets the rendering mode of both point layers to one of the
+	 * ScatterplotConfiguration rendering modes.
+	 */
+	public void setPointRenderingMode(int renderingMode) {
+		if (queryScatterPlotConfig.renderingMode != renderingMode) {
+			queryScatterPlotConfig.renderingMode = renderingMode;
+			nonqueryScatterPlotConfig.renderingMode = renderingMode;
+			startScatterplotRenderer();
+		}
+	}
+
+	public int getPointRenderingMode() {
+		return queryScatterPlotConfig.renderingMode;
+	}
+
+	public void setOutlineFocusBins(boolean outlineFocusBins) {
+		if (queryScatterPlotConfig.outlineFocusBins != outlineFocusBins) {
+			queryScatterPlotConfig.outlineFocusBins = outlineFocusBins;
+			startScatterplotRenderer();
+		}
+	}
+
+	public boolean getOutlineFocusBins() {
+		return queryScatterPlotConfig.outlineFocusBins;
+	}
+
 	// public void setUseQueryCorrelationCoefficient(boolean
 	// useQueryCorrelation) {
 	// this.useQueryCorrelation = useQueryCorrelation;
@@ -209,32 +268,191 @@ public class ScatterPlotPanel extends JComponent implements MouseMotionListener,
 		startScatterplotRenderer();
 	}
 
+	/**
+	 * Zooms out to show the full column ranges again.
+	 */
+	public void resetZoom() {
+		setViewport(0., 0., 1.);
+	}
+
+	public boolean isZoomed() {
+		return viewport.width < 1. || viewport.height < 1.;
+	}
+
+	/**
+	 * Shows the square part of the plot with the given lower left corner and
+	 * extent in normalized coordinates, keeping it inside the unit square.
+	 */
+	private void setViewport(double x, double y, double extent) {
+		extent = Math.max(1. / MAX_ZOOM, Math.min(1., extent));
+		x = Math.max(0., Math.min(1. - extent, x));
+		y = Math.max(0., Math.min(1. - extent, y));
+		if (x != viewport.x || y != viewport.y || extent != viewport.width) {
+			viewport = new Rectangle2D.Double(x, y, extent, extent);
+			startScatterplotRenderer();
+		}
+	}
+
+	private ScatterplotQuadtree getQuadtree() {
+		if (quadtree == null) {
+			quadtree = new ScatterplotQuadtree(dataModel, xColumn, yColumn);
+		}
+		return quadtree;
+	}
+
+	private static float toColumnValue(Column column, double normValue) {
+		return column.getSummaryStats().getMin()
+				+ (float) (normValue * (column.getSummaryStats().getMax() - column
+						.getSummaryStats().getMin()));
+	}
+
 	public void setAxes(Column xColumn, Column yColumn) {
 		this.xColumn = xColumn;
 		this.yColumn = yColumn;
+		viewport = new Rectangle2D.Double(0, 0, 1, 1);
+		quadtree = null;
 		layoutPlot();
 		calculateStatistics();
-		startScatterplotRenderer();
 	}
 
+	/**
+	 * Computes the regression statistics of all tuples and of the tuples
+	 * queried by the applied query in one parallel pass on a background
+	 * thread. The plot is rendered again when they are published.
+	 */
 	private void calculateStatistics() {
-		if (xColumn != null && yColumn != null) {
-			simpleRegression = new SimpleRegression();
-			int xColumnIdx = dataModel.getColumnIndex(xColumn);
-			int yColumnIdx = dataModel.getColumnIndex(yColumn);
-
-			for (int iTuple = 0; iTuple < dataModel.getTupleCount(); iTuple++) {
-				Tuple tuple = dataModel.getTuple(iTuple);
-
-				if (useQueryRegressionLine && tuple.getQueryFlag()) {
-					simpleRegression.addData(tuple.getElement(xColumnIdx),
-							tuple.getElement(yColumnIdx));
-				} else if (!useQueryRegressionLine) {
-					simpleRegression.addData(tuple.getElement(xColumnIdx),
-							tuple.getElement(yColumnIdx));
+		allStatistics = null;
+		queryStatistics = null;
+		statisticsQueryFlags = null;
+		QueryFlagSnapshot queryFlags = getAppliedQueryFlags();
+		if (queryFlags == null) {
+			// computed when the query scheduler publishes the flags
+			statisticsGeneration++;
+			return;
+		}
+		updateStatistics(queryFlags);
+	}
+
+	/**
+	 * Brings the statistics up to date with the given query flags on a
+	 * background thread and then publishes them on the event dispatch
+	 * thread. The queried tuple statistics are updated by adding the tuples
+	 * that entered the query and removing the tuples that left it, with a
+	 * full pass if there are no statistics yet or most tuples changed. The
+	 * running renderers may still predict from the current statistics, so a
+	 * copy is updated and then replaces them.
+	 */
+	private void updateStatistics(final QueryFlagSnapshot queryFlags) {
+		if (xColumn == null || yColumn == null) {
+			return;
+		}
+
+		final int generation = ++statisticsGeneration;
+		final int xColumnIdx = dataModel.getColumnIndex(xColumn);
+		final int yColumnIdx = dataModel.getColumnIndex(yColumn);
+		final double originX = xColumn.getSummaryStats().getMean();
+		final double originY = yColumn.getSummaryStats().getMean();
+		final RegressionStatistics baseAllStatistics = allStatistics;
+		final RegressionStatistics baseQueryStatistics = queryStatistics;
+		final QueryFlagSnapshot baseQueryFlags = statisticsQueryFlags;
+		statisticsExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (generation != statisticsGeneration
+						|| dataModel.getTupleCount() != queryFlags
+								.getTupleCount()) {
+					return;
 				}
+
+				final RegressionStatistics statistics[] = computeStatistics(
+						xColumnIdx, yColumnIdx, originX, originY, queryFlags,
+						baseAllStatistics, baseQueryStatistics, baseQueryFlags);
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						if (generation != statisticsGeneration) {
+							return;
+						}
+						if (statistics != null) {
+							allStatistics = statistics[0];
+							queryStatistics = statistics[1];
+							statisticsQueryFlags = queryFlags;
+						}
+						startScatterplotRenderer();
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Returns the statistics of all tuples and of the queried tuples for
+	 * the given query flags, or null if the base statistics already hold
+	 * for them. Called on the statistics thread.
+	 */
+	private RegressionStatistics[] computeStatistics(int xColumnIdx,
+			int yColumnIdx, double originX, double originY,
+			QueryFlagSnapshot queryFlags,
+			RegressionStatistics baseAllStatistics,
+			RegressionStatistics baseQueryStatistics,
+			QueryFlagSnapshot baseQueryFlags) {
+		if (baseQueryStatistics == null || baseQueryFlags == null) {
+			return RegressionStatistics.compute(dataModel, xColumnIdx,
+					yColumnIdx, queryFlags, originX, originY);
+		}
+
+		int changedTuples[] = queryFlags.getChangedTuples(baseQueryFlags);
+		if (changedTuples == null
+				|| changedTuples.length > queryFlags.getTupleCount() / 2) {
+			return RegressionStatistics.compute(dataModel, xColumnIdx,
+					yColumnIdx, queryFlags, originX, originY);
+		}
+		if (changedTuples.length == 0) {
+			// keep the snapshot so that state derived from it stays valid
+			return null;
+		}
+
+		RegressionStatistics statistics = baseQueryStatistics.copy();
+		for (int ituple : changedTuples) {
+			Tuple tuple = dataModel.getTuple(ituple);
+			if (queryFlags.getQueryFlag(ituple)) {
+				statistics.addData(tuple.getElement(xColumnIdx),
+						tuple.getElement(yColumnIdx));
+			} else {
+				statistics.removeData(tuple.getElement(xColumnIdx),
+						tuple.getElement(yColumnIdx));
 			}
 		}
+		return new RegressionStatistics[] { baseAllStatistics, statistics };
+	}
+
+	/**
+	 * Returns the query flags the query scheduler published for the applied
+	 * query, or the flags it last wrote to the tuples if the applied query
+	 * has no selections, or null if it has not written any since the tuples
+	 * changed. The flags of the scheduler come from the bitmaps of the query
+	 * engine if the selected columns are indexed, so successive snapshots
+	 * are compared without a scan of the tuples.
+	 */
+	private QueryFlagSnapshot getAppliedQueryFlags() {
+		QueryResult result = queryScheduler.getAppliedResult();
+		if (result != null && result.getQueryFlags() != null) {
+			return result.getQueryFlags();
+		}
+		return queryScheduler.getTupleQueryFlags();
+	}
+
+	private RegressionStatistics getRegressionStatistics() {
+		return useQueryRegressionLine ? queryStatistics : allStatistics;
+	}
+
+	private float getCorrelationCoefficient() {
+		RegressionStatistics statistics = useQueryCorrelation ? queryStatistics
+				: allStatistics;
+		if (statistics == null || Double.isNaN(statistics.getR())) {
+			return 0.f;
+		}
+		return (float) statistics.getR();
 	}
 
 	public void paintComponent(Graphics g) {
@@ -348,47 +566,67 @@ public class ScatterPlotPanel extends JComponent implements MouseMotionListener,
 		// }
 		//
 		// layoutPlot();
+		quadtree = null;
 		calculateStatistics();
-		startScatterplotRenderer();
 	}
 
 	private void startScatterplotRenderer() {
-		if (xColumn == null || yColumn == null || plotSize == 0) {
+		if (xColumn == null || yColumn == null || plotSize == 0
+				|| statisticsQueryFlags == null) {
 			return;
 		}
 
 		if (plotRenderer != null) {
-			plotRenderer.isRunning = false;
+			plotRenderer.cancel();
 			plotRenderer.removeRendererListener(this);
 		}
 
 		plotRenderer = new ScatterplotPointsRenderer(dataModel, xColumn,
 				yColumn, plotRectangle.width+axisSize, axisSize, queryScatterPlotConfig,
-				simpleRegression, true, false, antialiasEnabled);
+				getRegressionStatistics(), true, false, antialiasEnabled);
+		// the points follow the flags of the statistics, which may be those
+		// of the rectangle that is being dragged
+		plotRenderer.setQueryFlags(statisticsQueryFlags);
+		if (isZoomed()) {
+			plotRenderer.setViewport(viewport, getQuadtree(), statisticsQueryFlags);
+		}
 		plotRenderer.addRendererListener(this);
+		plotRenderer.setRenderTarget(this, "focusPoints");
 		plotRenderer.start();
 
 		if (filteredPlotRenderer != null) {
-			filteredPlotRenderer.isRunning = false;
+			filteredPlotRenderer.cancel();
 			filteredPlotRenderer.removeRendererListener(this);
 		}
 
 		filteredPlotRenderer = new ScatterplotPointsRenderer(dataModel,
 				xColumn, yColumn, plotRectangle.width+axisSize, axisSize,
-				nonqueryScatterPlotConfig, simpleRegression, false, true,
+				nonqueryScatterPlotConfig, getRegressionStatistics(), false, true,
 				antialiasEnabled);
+		filteredPlotRenderer.setQueryFlags(statisticsQueryFlags);
+		if (isZoomed()) {
+			filteredPlotRenderer.setViewport(viewport, getQuadtree(),
+					statisticsQueryFlags);
+		}
 		filteredPlotRenderer.addRendererListener(this);
+		filteredPlotRenderer.setRenderTarget(this, "contextPoints");
 		filteredPlotRenderer.start();
 
 		if (axesPlotRenderer != null) {
-			axesPlotRenderer.isRunning = false;
+			axesPlotRenderer.cancel();
 			axesPlotRenderer.removeRendererListener(this);
 		}
 
 		axesPlotRenderer = new ScatterplotAxesRenderer(dataModel, xColumn,
 				yColumn, plotRectangle.width+axisSize, axisSize, queryScatterPlotConfig,
 				antialiasEnabled);
+		axesPlotRenderer.setCorrelationCoefficient(getCorrelationCoefficient());
+		axesPlotRenderer.setValueRange(toColumnValue(xColumn, viewport.getMinX()),
+				toColumnValue(xColumn, viewport.getMaxX()),
+				toColumnValue(yColumn, viewport.getMinY()),
+				toColumnValue(yColumn, viewport.getMaxY()));
 		axesPlotRenderer.addRendererListener(this);
+		axesPlotRenderer.setRenderTarget(this, "axes");
 		axesPlotRenderer.start();
 	}
 
@@ -429,9 +667,9 @@ public class ScatterPlotPanel extends JComponent implements MouseMotionListener,
 //				yColumn.setMaxQueryValue(yColumn.getMaxValue());
 //				yColumn.setMinQueryValue(yColumn.getMinValue());
 //			}
-			dataModel.setQueriedTuples();
+			// the plot is rendered when the scheduler publishes the result
+			queryScheduler.apply();
 			dragRect = null;
-			startScatterplotRenderer();
 			repaint();
 		}
 	}
@@ -447,6 +685,11 @@ public class ScatterPlotPanel extends JComponent implements MouseMotionListener,
 
 	@Override
 	public void mousePressed(MouseEvent event) {
+		if (SwingUtilities.isRightMouseButton(event)) {
+			// right button drags pan the plot
+			panPoint = event.getPoint();
+			return;
+		}
 		startDragPoint.setLocation(event.getPoint());
 		if (xAxisSelection != null) {
 			dataModel.clearColumnSelectionRange(xAxisSelection.getColumnSelectionRange());
@@ -456,13 +699,16 @@ public class ScatterPlotPanel extends JComponent implements MouseMotionListener,
 			dataModel.clearColumnSelectionRange(yAxisSelection.getColumnSelectionRange());
 			yAxisSelection = null;
 		}
-		dataModel.setQueriedTuples();
-		startScatterplotRenderer();
+		// the query is applied once the rectangle is released or clicked
 		repaint();
 	}
 
 	@Override
 	public void mouseReleased(MouseEvent event) {
+		if (panPoint != null) {
+			panPoint = null;
+			return;
+		}
 		if (dragging) {
 			dragging = false;
 
@@ -471,6 +717,8 @@ public class ScatterPlotPanel extends JComponent implements MouseMotionListener,
 			g2.draw(dragRect);
 
 			updateQueryPoints();
+			queryScheduler.cancel();
+			queryScheduler.apply();
 
 			repaint();
 		}
@@ -478,16 +726,19 @@ public class ScatterPlotPanel extends JComponent implements MouseMotionListener,
 
 	private float XPositionToValue(int x) {
 		float normVal = (float) (x - plotRectangle.x) / (float) (plotRectangle.width);
-		float val = xColumn.getSummaryStats().getMin() + (normVal * (xColumn.getSummaryStats().getMax() - xColumn.getSummaryStats().getMin()));
-		return val;
+		return toColumnValue(xColumn, viewport.getMinX() + (normVal * viewport.width));
 	}
 
 	private float YPositionToValue(int y) {
 		float normVal = (float) (y - plotRectangle.y) / (float) (plotRectangle.height);
-		float val = yColumn.getSummaryStats().getMax() - (normVal * (yColumn.getSummaryStats().getMax() - yColumn.getSummaryStats().getMin()));
-		return val;
+		return toColumnValue(yColumn, viewport.getMaxY() - (normVal * viewport.height));
 	}
 
+	/**
+	 * Sets the x and y column selections to the ranges of the rectangle and
+	 * has the query scheduler evaluate the query, so the plot previews it
+	 * without applying it to the data model.
+	 */
 	private void updateQueryPoints() {
 		float minXQueryValue = XPositionToValue(dragRect.x);
 		float maxXQueryValue = XPositionToValue(dragRect.x + dragRect.width);
@@ -497,10 +748,17 @@ public class ScatterPlotPanel extends JComponent implements MouseMotionListener,
 		log.debug("minYValue = " + minYQueryValue + " maxYValue = " + maxYQueryValue);
 		
 		// set a column selection for x and y columns
-		ColumnSelectionRange xSelectionRange = dataModel.addColumnSelectionRangeToActiveQuery(xColumn, minXQueryValue, maxXQueryValue);
-		xAxisSelection = new PCAxisSelection(xSelectionRange);
-		ColumnSelectionRange ySelectionRange = dataModel.addColumnSelectionRangeToActiveQuery(yColumn, minYQueryValue, maxYQueryValue);
-		yAxisSelection = new PCAxisSelection(ySelectionRange);
+		if (xAxisSelection == null || yAxisSelection == null) {
+			ColumnSelectionRange xSelectionRange = dataModel.addColumnSelectionRangeToActiveQuery(xColumn, minXQueryValue, maxXQueryValue);
+			xAxisSelection = new PCAxisSelection(xSelectionRange);
+			ColumnSelectionRange ySelectionRange = dataModel.addColumnSelectionRangeToActiveQuery(yColumn, minYQueryValue, maxYQueryValue);
+			yAxisSelection = new PCAxisSelection(ySelectionRange);
+		} else {
+			xAxisSelection.getColumnSelectionRange().setMinValue(minXQueryValue);
+			xAxisSelection.getColumnSelectionRange().setMaxValue(maxXQueryValue);
+			yAxisSelection.getColumnSelectionRange().setMinValue(minYQueryValue);
+			yAxisSelection.getColumnSelectionRange().setMaxValue(maxYQueryValue);
+		}
 		
 //		xColumn.setMinQueryValue(XPositionToValue(dragRect.x));
 //		xColumn.setMaxQueryValue(XPositionToValue(dragRect.x + dragRect.width));
@@ -512,12 +770,19 @@ public class ScatterPlotPanel extends JComponent implements MouseMotionListener,
 //				+ xColumn.getMinQueryValue() + " ymax="
 //				+ yColumn.getMaxQueryValue() + " ymin="
 //				+ yColumn.getMinQueryValue());
-		dataModel.setQueriedTuples();
-		startScatterplotRenderer();
+		queryScheduler.submit(dataModel.getActiveQuery());
 	}
 
 	@Override
 	public void mouseDragged(MouseEvent event) {
+		if (panPoint != null) {
+			double dx = (double) (event.getX() - panPoint.x) / plotRectangle.width;
+			double dy = (double) (event.getY() - panPoint.y) / plotRectangle.height;
+			panPoint = event.getPoint();
+			setViewport(viewport.x - (dx * viewport.width), viewport.y
+					+ (dy * viewport.height), viewport.width);
+			return;
+		}
 		dragging = true;
 		endDragPoint.setLocation(event.getPoint());
 		dragRect = new Rectangle(
@@ -528,7 +793,7 @@ public class ScatterPlotPanel extends JComponent implements MouseMotionListener,
 						- endDragPoint.x), Math.abs(startDragPoint.y
 						- endDragPoint.y));
 		setMousePoint(event.getPoint());
-//		updateQueryPoints();
+		updateQueryPoints();
 		repaint();
 	}
 
@@ -582,19 +847,57 @@ public class ScatterPlotPanel extends JComponent implements MouseMotionListener,
 		repaint();
 	}
 
+	@Override
+	public void mouseWheelMoved(MouseWheelEvent event) {
+		if (xColumn == null || yColumn == null || plotRectangle == null) {
+			return;
+		}
+
+		// zoom about the value under the mouse
+		double normX = (double) (event.getX() - plotRectangle.x) / plotRectangle.width;
+		double normY = 1. - ((double) (event.getY() - plotRectangle.y) / plotRectangle.height);
+		normX = Math.max(0., Math.min(1., normX));
+		normY = Math.max(0., Math.min(1., normY));
+		double anchorX = viewport.x + (normX * viewport.width);
+		double anchorY = viewport.y + (normY * viewport.height);
+
+		double extent = viewport.width
+				* Math.pow(ZOOM_STEP, event.getPreciseWheelRotation());
+		extent = Math.max(1. / MAX_ZOOM, Math.min(1., extent));
+		setViewport(anchorX - (normX * extent), anchorY - (normY * extent),
+				extent);
+	}
+
 	@Override
 	public void queryChanged(DataModel dataModel) {
 		// layoutPlot();
 		// recalculatePoints();
-		calculateStatistics();
-		startScatterplotRenderer();
+		// the statistics and plot update when the scheduler publishes
+	}
+
+	@Override
+	public void queryResultPublished(QueryScheduler queryScheduler,
+			QueryResult result) {
+		QueryFlagSnapshot queryFlags = result.getQueryFlags();
+		if (!result.isAppliedQuery()) {
+			// a preview of the rectangle that is being dragged
+			if (!dragging || queryFlags == null) {
+				return;
+			}
+		} else if (queryFlags == null) {
+			queryFlags = queryScheduler.getTupleQueryFlags();
+			if (queryFlags == null) {
+				return;
+			}
+		}
+		updateStatistics(queryFlags);
 	}
 
 	@Override
 	public void tuplesAdded(DataModel dataModel, ArrayList<Tuple> newTuples) {
 		// TODO Auto-generated method stub
+		quadtree = null;
 		calculateStatistics();
-		startScatterplotRenderer();
 	}
 
 	@Override
@@ -619,14 +922,10 @@ public class ScatterPlotPanel extends JComponent implements MouseMotionListener,
 	@Override
 	public void dataModelColumnSelectionRemoved(DataModel dataModel, ColumnSelectionRange columnSelectionRange) {
 		// TODO Auto-generated method stub
-		calculateStatistics();
-		startScatterplotRenderer();
 	}
 	
 	@Override
 	public void dataModelColumnSelectionAdded(DataModel dataModel, ColumnSelectionRange columnSelectionRange) {
 		// TODO Auto-generated method stub
-		calculateStatistics();
-		startScatterplotRenderer();
 	}
 }
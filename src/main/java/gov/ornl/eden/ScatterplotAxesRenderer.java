@@ -35,6 +35,8 @@ public class ScatterplotAxesRenderer extends Renderer {
 	protected int axisSize;
 	protected int tickSize;
 	protected boolean antialias;
+	// value range labeled on the axes
+	protected float xMin, xMax, yMin, yMax;
 
 	public ScatterplotAxesRenderer(DataModel dataModel, Column xColumn,
 			Column yColumn, int plotSize, int axisSize,
@@ -50,6 +52,10 @@ public class ScatterplotAxesRenderer extends Renderer {
 
 		xColumnIndex = dataModel.getColumnIndex(xColumn);
 		yColumnIndex = dataModel.getColumnIndex(yColumn);
+		xMin = xColumn.getSummaryStats().getMin();
+		xMax = xColumn.getSummaryStats().getMax();
+		yMin = yColumn.getSummaryStats().getMin();
+		yMax = yColumn.getSummaryStats().getMax();
 
 		// setup image
 		image = new BufferedImage(plotSize + axisSize + 1, plotSize + axisSize
@@ -83,7 +89,7 @@ public class ScatterplotAxesRenderer extends Renderer {
 		correlationRect = new Rectangle(left - 1, plot_bottom + 2, axisSize,
 				axisSize);
 
-		// TODO: Make code pull real correlation coefficient from Data Model
+		// replaced through setCorrelationCoefficient() by views that compute it
 		float corrCoef = 0.5f;
 //		if (config.useQueryCorrelationCoefficient
 //				&& dataModel.isColumnQuerySet()) {
@@ -98,6 +104,24 @@ public class ScatterplotAxesRenderer extends Renderer {
 		correlationColor = Utilities.getColorForCorrelationCoefficient(corrCoef, 1.);
 	}
 
+	/**
+	 * Sets the correlation coefficient shown by the correlation indicator.
+	 */
+	public void setCorrelationCoefficient(float corrCoef) {
+		correlationColor = Utilities.getColorForCorrelationCoefficient(corrCoef, 1.);
+	}
+
+	/**
+	 * Sets the value range labeled on the axes when the plot shows only part
+	 * of the column ranges.
+	 */
+	public void setValueRange(float xMin, float xMax, float yMin, float yMax) {
+		this.xMin = xMin;
+		this.xMax = xMax;
+		this.yMin = yMin;
+		this.yMax = yMax;
+	}
+
 	public Column getXColumn() {
 		return xColumn;
 	}
@@ -119,8 +143,6 @@ public class ScatterplotAxesRenderer extends Renderer {
 	}
 
 	public void run() {
-		isRunning = true;
-
 		g2.setColor(config.axisLineColor);
 
 		// Draw correlation coefficient color block
@@ -171,22 +193,22 @@ public class ScatterplotAxesRenderer extends Renderer {
 
 		if (config.showAxisLabels) {
 			// Y Axis min and max labeling
-			String valueString = DECIMAL_FORMAT.format(yColumn.getSummaryStats().getMax());
+			String valueString = DECIMAL_FORMAT.format(yMax);
 			int stringWidth = g2.getFontMetrics().stringWidth(valueString);
 			g2.drawString(valueString, plot_left - stringWidth
 					- (g2.getFontMetrics().getHeight() / 2), plot_top
 					+ g2.getFontMetrics().getHeight());
-			valueString = DECIMAL_FORMAT.format(yColumn.getSummaryStats().getMin());
+			valueString = DECIMAL_FORMAT.format(yMin);
 			stringWidth = g2.getFontMetrics().stringWidth(valueString);
 			g2.drawString(valueString, plot_left - stringWidth
 					- (g2.getFontMetrics().getHeight() / 2), plot_bottom - 3);
 
 			// X Axis min and max labeling
-			valueString = DECIMAL_FORMAT.format(xColumn.getSummaryStats().getMin());
+			valueString = DECIMAL_FORMAT.format(xMin);
 			stringWidth = g2.getFontMetrics().stringWidth(valueString);
 			g2.drawString(valueString, plot_left + 3, plot_bottom
 					+ g2.getFontMetrics().getHeight());
-			valueString = DECIMAL_FORMAT.format(xColumn.getSummaryStats().getMax());
+			valueString = DECIMAL_FORMAT.format(xMax);
 			stringWidth = g2.getFontMetrics().stringWidth(valueString);
 			g2.drawString(valueString, plot_right - stringWidth - 3,
 					plot_bottom + g2.getFontMetrics().getHeight());
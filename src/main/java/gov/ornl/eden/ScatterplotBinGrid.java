@@ -0,0 +1,178 @@
+package gov.ornl.eden;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Polygon;
+
+/**
+ * Counts scatterplot points in a grid of square or hexagonal bins covering
+ * the plot image, and draws the occupied bins colored by density. Adding a
+ * point is a single integer increment, and drawing costs one fill per
+ * occupied bin regardless of the number of points.
+ */
+public class ScatterplotBinGrid {
+	private static final double SQRT_3 = Math.sqrt(3.);
+
+	private int renderingMode;
+	private int binSize;
+	private int columnCount;
+	private int rowCount;
+	private int counts[];
+	// hexagon circumradius; a hexagon is binSize wide
+	private double hexRadius;
+
+	/**
+	 * Creates a grid over an image of the given size. The rendering mode is
+	 * ScatterplotConfiguration.SQUARE_BIN_RENDERING or HEX_BIN_RENDERING.
+	 */
+	public ScatterplotBinGrid(int renderingMode, int binSize, int width,
+			int height) {
+		this.renderingMode = renderingMode;
+		this.binSize = Math.max(2, binSize);
+		if (renderingMode == ScatterplotConfiguration.HEX_BIN_RENDERING) {
+			hexRadius = this.binSize / SQRT_3;
+			columnCount = (int) Math.ceil(width / (double) this.binSize) + 2;
+			rowCount = (int) Math.ceil(height / (1.5 * hexRadius)) + 2;
+		} else {
+			columnCount = (width + this.binSize - 1) / this.binSize;
+			rowCount = (height + this.binSize - 1) / this.binSize;
+		}
+		counts = new int[columnCount * rowCount];
+	}
+
+	public void add(int x, int y) {
+		int index = getBinIndex(x, y);
+		if (index >= 0) {
+			counts[index]++;
+		}
+	}
+
+	/**
+	 * Adds count points at the given position, as when adding the aggregated
+	 * points of a level-of-detail cell.
+	 */
+	public void add(int x, int y, int count) {
+		int index = getBinIndex(x, y);
+		if (index >= 0) {
+			counts[index] += count;
+		}
+	}
+
+	public int getMaxCount() {
+		int maxCount = 0;
+		for (int count : counts) {
+			if (count > maxCount) {
+				maxCount = count;
+			}
+		}
+		return maxCount;
+	}
+
+	/**
+	 * Fills the occupied bins with the given color. The least occupied bins
+	 * get the alpha of the color and the most occupied bin is opaque, with a
+	 * logarithmic ramp in between. If outline is set, the bins are also
+	 * outlined in the opaque color.
+	 */
+	public void draw(Graphics2D g2, Color color, boolean outline) {
+		int maxCount = getMaxCount();
+		if (maxCount == 0) {
+			return;
+		}
+
+		double logMax = Math.log1p(maxCount);
+		int minAlpha = color.getAlpha();
+		Color outlineColor = new Color(color.getRed(), color.getGreen(),
+				color.getBlue());
+		Color binColors[] = new Color[256];
+
+		for (int row = 0; row < rowCount; row++) {
+			for (int column = 0; column < columnCount; column++) {
+				int count = counts[(row * columnCount) + column];
+				if (count == 0) {
+					continue;
+				}
+
+				int alpha = minAlpha
+						+ (int) ((Math.log1p(count) / logMax) * (255 - minAlpha));
+				alpha = Math.min(alpha, 255);
+				if (binColors[alpha] == null) {
+					binColors[alpha] = new Color(color.getRed(),
+							color.getGreen(), color.getBlue(), alpha);
+				}
+				g2.setColor(binColors[alpha]);
+
+				if (renderingMode == ScatterplotConfiguration.HEX_BIN_RENDERING) {
+					Polygon hexagon = getHexagon(column, row);
+					g2.fillPolygon(hexagon);
+					if (outline) {
+						g2.setColor(outlineColor);
+						g2.drawPolygon(hexagon);
+					}
+				} else {
+					int x = column * binSize;
+					int y = row * binSize;
+					g2.fillRect(x, y, binSize, binSize);
+					if (outline) {
+						g2.setColor(outlineColor);
+						g2.drawRect(x, y, binSize - 1, binSize - 1);
+					}
+				}
+			}
+		}
+	}
+
+	private int getBinIndex(int x, int y) {
+		int column;
+		int row;
+		if (renderingMode == ScatterplotConfiguration.HEX_BIN_RENDERING) {
+			// pixel to axial coordinates of a pointy-top hexagon grid
+			double q = ((SQRT_3 / 3. * x) - (y / 3.)) / hexRadius;
+			double r = (2. / 3. * y) / hexRadius;
+
+			// round the cube coordinates to the nearest hexagon
+			double s = -q - r;
+			long rq = Math.round(q);
+			long rr = Math.round(r);
+			long rs = Math.round(s);
+			double dq = Math.abs(rq - q);
+			double dr = Math.abs(rr - r);
+			double ds = Math.abs(rs - s);
+			if (dq > dr && dq > ds) {
+				rq = -rr - rs;
+			} else if (dr > ds) {
+				rr = -rq - rs;
+			}
+
+			// axial to offset coordinates, shifted by one so that hexagons
+			// overlapping the top and left image edges have valid indices
+			row = (int) rr + 1;
+			column = (int) (rq + ((rr - (rr & 1)) / 2)) + 1;
+		} else {
+			column = x / binSize;
+			row = y / binSize;
+		}
+
+		if (x < 0 || y < 0 || column < 0 || row < 0 || column >= columnCount
+				|| row >= rowCount) {
+			return -1;
+		}
+		return (row * columnCount) + column;
+	}
+
+	private Polygon getHexagon(int column, int row) {
+		int r = row - 1;
+		int q = column - 1 - ((r - (r & 1)) / 2);
+		double centerX = hexRadius * SQRT_3 * (q + (r / 2.));
+		double centerY = hexRadius * 1.5 * r;
+
+		Polygon hexagon = new Polygon();
+		for (int corner = 0; corner < 6; corner++) {
+			double angle = Math.toRadians((60 * corner) - 30);
+			hexagon.addPoint(
+					(int) Math.round(centerX + (hexRadius * Math.cos(angle))),
+					(int) Math.round(centerY + (hexRadius * Math.sin(angle))));
+		}
+		return hexagon;
+	}
+}
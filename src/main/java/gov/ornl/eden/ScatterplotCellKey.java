@@ -0,0 +1,67 @@
+package gov.ornl.eden;
+
+import gov.ornl.datatable.Column;
+
+/**
+ * Identifies one layer of a cell of the scatterplot matrix. Point layers
+ * depend on the query, so their keys carry the query generation they were
+ * rendered for; the axes layer does not and uses a generation of zero. The
+ * style is a value snapshot of the configuration fields the layer depends
+ * on (see ScatterplotConfiguration.getPointStyle() and getAxesStyle()).
+ */
+public class ScatterplotCellKey {
+	public static final int FOCUS_LAYER = 0;
+	public static final int CONTEXT_LAYER = 1;
+	public static final int AXES_LAYER = 2;
+
+	private final Column xColumn;
+	private final Column yColumn;
+	private final int layer;
+	private final int queryGeneration;
+	private final int plotSize;
+	private final int axisSize;
+	private final boolean antialias;
+	private final Object style;
+
+	public ScatterplotCellKey(Column xColumn, Column yColumn, int layer,
+			int queryGeneration, int plotSize, int axisSize,
+			boolean antialias, Object style) {
+		this.xColumn = xColumn;
+		this.yColumn = yColumn;
+		this.layer = layer;
+		this.queryGeneration = layer == AXES_LAYER ? 0 : queryGeneration;
+		this.plotSize = plotSize;
+		this.axisSize = axisSize;
+		this.antialias = antialias;
+		this.style = style;
+	}
+
+	@Override
+	public boolean equals(Object object) {
+		if (this == object) {
+			return true;
+		}
+		if (!(object instanceof ScatterplotCellKey)) {
+			return false;
+		}
+		ScatterplotCellKey other = (ScatterplotCellKey) object;
+		return xColumn == other.xColumn && yColumn == other.yColumn
+				&& layer == other.layer
+				&& queryGeneration == other.queryGeneration
+				&& plotSize == other.plotSize && axisSize == other.axisSize
+				&& antialias == other.antialias && style.equals(other.style);
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = System.identityHashCode(xColumn);
+		hash = (31 * hash) + System.identityHashCode(yColumn);
+		hash = (31 * hash) + layer;
+		hash = (31 * hash) + queryGeneration;
+		hash = (31 * hash) + plotSize;
+		hash = (31 * hash) + axisSize;
+		hash = (31 * hash) + (antialias ? 1 : 0);
+		hash = (31 * hash) + style.hashCode();
+		return hash;
+	}
+}
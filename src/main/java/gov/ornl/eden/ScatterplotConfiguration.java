@@ -4,6 +4,8 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.Shape;
 import java.awt.geom.Line2D;
+import java.util.Arrays;
+import java.util.List;
 
 public class ScatterplotConfiguration {
 	private static final Font DEFAULT_AXIS_LABEL_FONT = new Font("Dialog",
@@ -11,6 +13,14 @@ public class ScatterplotConfiguration {
 	private static final int DEFAULT_BORDER_SIZE = 4;
 	private static final Shape DEFAULT_POINT_SHAPE = new Line2D.Float(0, 0, 0, 0);
 	public final static Color DEFAULT_POINT_COLOR = new Color(20, 20, 80, 100);
+	private static final int DEFAULT_BIN_SIZE = 6;
+
+	// draws every point with pointShape
+	public static final int POINT_RENDERING = 0;
+	// counts points in square bins and colors the bins by density
+	public static final int SQUARE_BIN_RENDERING = 1;
+	// counts points in hexagonal bins and colors the bins by density
+	public static final int HEX_BIN_RENDERING = 2;
 
 	public boolean showTickMarks = false;
 	public boolean showGridLines = false;
@@ -26,4 +36,29 @@ public class ScatterplotConfiguration {
 	public boolean showCorrelationIndicator = true;
 	public boolean useQueryRegressionLine = true;
 	public boolean useQueryCorrelationCoefficient = true;
+	public int renderingMode = POINT_RENDERING;
+	// width of a bin in pixels for the binned rendering modes
+	public int binSize = DEFAULT_BIN_SIZE;
+	// outline the bins of the focus (selected) points in binned modes
+	public boolean outlineFocusBins = false;
+
+	/**
+	 * Returns a snapshot of the fields that affect how points are drawn,
+	 * comparable with equals().
+	 */
+	public List<Object> getPointStyle() {
+		return Arrays.<Object> asList(pointColor, pointShape.getClass(),
+				pointShape.getBounds2D(), renderingMode, binSize,
+				outlineFocusBins);
+	}
+
+	/**
+	 * Returns a snapshot of the fields that affect how the axes are drawn,
+	 * comparable with equals().
+	 */
+	public List<Object> getAxesStyle() {
+		return Arrays.<Object> asList(labelFont, labelColor, axisLineColor,
+				borderSize, showTickMarks, showGridLines, showAxisLabels,
+				showAxisNames, showCorrelationIndicator);
+	}
 }
@@ -0,0 +1,486 @@
+package gov.ornl.eden;
+
+import gov.ornl.datatable.Column;
+import gov.ornl.datatable.DataModel;
+import gov.ornl.datatable.Tuple;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Renders the focus and context points of every cell of a scatterplot matrix
+ * in a shared scan of the tuples. The x columns are dealt out to one block
+ * per worker, and each worker makes a single pass over the tuples in chunks.
+ * For every chunk the screen positions of each column are computed once and
+ * then plotted into all cells of the block, so the table is read once per
+ * block instead of twice per cell. Points are stamped as PointSprites into
+ * the premultiplied pixels of the cell images.
+ *
+ * Only the cells on and above the diagonal are rasterized. Cell (y, x) shows
+ * the same points as cell (x, y) with the axes swapped, so it is derived by
+ * reflecting the image of cell (x, y) across its anti-diagonal. Both axes
+ * round to the nearest pixel, so the reflection lands every point exactly
+ * where it would be plotted. If a cell cache is set, pairs of cells that are
+ * already cached for the current query generation are not rendered again,
+ * and the new cells are added to it.
+ *
+ * In the binned rendering modes of a layer's configuration, the points of
+ * that layer are counted into a bin grid per cell and the grids are drawn
+ * after the pass. A bin grid is not symmetric about the anti-diagonal, so the
+ * points of cell (y, x) are counted into a grid of their own instead of
+ * reflecting the drawn bins of cell (x, y).
+ */
+public class ScatterplotMatrixRenderer extends Renderer {
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	// tuples whose screen positions are computed per round
+	private static final int TUPLE_CHUNK_SIZE = 4096;
+
+	private static final ForkJoinPool RENDER_POOL = ForkJoinPool.commonPool();
+
+	private DataModel dataModel;
+	private ArrayList<Column> columns;
+	private int columnIndices[];
+	private float columnMinValues[];
+	private float columnMaxValues[];
+	private int plotSize;
+	private int axisSize;
+	private int size;
+	private int left, top;
+	private ScatterplotConfiguration focusConfig;
+	private ScatterplotConfiguration contextConfig;
+	private Object focusStyle;
+	private Object contextStyle;
+	private boolean antialias;
+	private BufferedImage focusImages[][];
+	private BufferedImage contextImages[][];
+	private boolean renderPair[][];
+	private MemoryBoundedCache<ScatterplotCellKey, BufferedImage> cellCache;
+	private QueryFlagSnapshot queryFlags;
+	private int queryGeneration;
+	private Column preferredColumn;
+
+	public ScatterplotMatrixRenderer(DataModel dataModel,
+			ArrayList<Column> columns, int plotSize, int axisSize,
+			ScatterplotConfiguration focusConfig,
+			ScatterplotConfiguration contextConfig, boolean antialias) {
+		this.dataModel = dataModel;
+		this.columns = new ArrayList<Column>(columns);
+		this.plotSize = plotSize;
+		this.axisSize = axisSize;
+		this.focusConfig = focusConfig;
+		this.contextConfig = contextConfig;
+		this.antialias = antialias;
+		focusStyle = focusConfig.getPointStyle();
+		contextStyle = contextConfig.getPointStyle();
+
+		// same cell geometry as ScatterplotPointsRenderer
+		size = plotSize - axisSize - 4;
+		left = 2;
+		top = 2;
+
+		columnIndices = new int[columns.size()];
+		columnMinValues = new float[columns.size()];
+		columnMaxValues = new float[columns.size()];
+		for (int i = 0; i < columns.size(); i++) {
+			Column column = columns.get(i);
+			columnIndices[i] = dataModel.getColumnIndex(column);
+			columnMinValues[i] = column.getSummaryStats().getMin();
+			columnMaxValues[i] = column.getSummaryStats().getMax();
+		}
+
+		focusImages = new BufferedImage[columns.size()][columns.size()];
+		contextImages = new BufferedImage[columns.size()][columns.size()];
+	}
+
+	/**
+	 * Lets this renderer take cells from the given cache and add the cells it
+	 * renders. The points are plotted with the given query flags, which must
+	 * be those of the query generation; the generation must change whenever
+	 * the flags change. The cache is not used if the flags are null. Cells of
+	 * the preferred column, if any, are added to the cache last so they are
+	 * the last to be evicted.
+	 */
+	public void setCellCache(
+			MemoryBoundedCache<ScatterplotCellKey, BufferedImage> cellCache,
+			QueryFlagSnapshot queryFlags, int queryGeneration,
+			Column preferredColumn) {
+		this.cellCache = queryFlags != null ? cellCache : null;
+		this.queryFlags = queryFlags;
+		this.queryGeneration = queryGeneration;
+		this.preferredColumn = preferredColumn;
+	}
+
+	public int getQueryGeneration() {
+		return queryGeneration;
+	}
+
+	/**
+	 * Returns the cache key of one point layer of a cell as rendered by this
+	 * renderer.
+	 */
+	public ScatterplotCellKey getCellKey(Column xColumn, Column yColumn,
+			int layer) {
+		return new ScatterplotCellKey(xColumn, yColumn, layer,
+				queryGeneration, plotSize, axisSize, antialias,
+				layer == ScatterplotCellKey.FOCUS_LAYER ? focusStyle
+						: contextStyle);
+	}
+
+	public int getColumnCount() {
+		return columns.size();
+	}
+
+	public Column getColumn(int index) {
+		return columns.get(index);
+	}
+
+	public BufferedImage getFocusImage(int xIndex, int yIndex) {
+		return focusImages[xIndex][yIndex];
+	}
+
+	public BufferedImage getContextImage(int xIndex, int yIndex) {
+		return contextImages[xIndex][yIndex];
+	}
+
+	public void run() {
+		if (columns.isEmpty() || size <= 0) {
+			return;
+		}
+
+		int columnCount = columns.size();
+		renderPair = new boolean[columnCount][columnCount];
+		ArrayList<Integer> renderColumns = new ArrayList<Integer>();
+		for (int ix = 0; ix < columnCount; ix++) {
+			for (int iy = ix; iy < columnCount; iy++) {
+				renderPair[ix][iy] = !takeCachedPair(ix, iy);
+				if (renderPair[ix][iy] && !renderColumns.contains(ix)) {
+					renderColumns.add(ix);
+				}
+			}
+		}
+
+		// deal the columns out round robin so the triangle is balanced
+		int taskCount = Math.max(1,
+				Math.min(RENDER_POOL.getParallelism(), renderColumns.size()));
+		ArrayList<ColumnBlockTask> tasks = new ArrayList<ColumnBlockTask>();
+		for (int itask = 0; itask < taskCount && itask < renderColumns.size(); itask++) {
+			int blockColumns[] = new int[(renderColumns.size() - itask + taskCount - 1)
+					/ taskCount];
+			for (int i = 0; i < blockColumns.length; i++) {
+				blockColumns[i] = renderColumns.get(itask + (i * taskCount));
+			}
+			tasks.add(new ColumnBlockTask(blockColumns));
+		}
+
+		for (ColumnBlockTask task : tasks) {
+			RENDER_POOL.execute(task);
+		}
+		for (ColumnBlockTask task : tasks) {
+			task.join();
+		}
+
+		if (!isRunning) {
+			return;
+		}
+
+		if (cellCache != null) {
+			cacheRenderedCells();
+		}
+
+		isRunning = false;
+		fireRendererFinished();
+	}
+
+	/**
+	 * Fills the images of cells (x, y) and (y, x) from the cache. Returns
+	 * false if any of them is missing.
+	 */
+	private boolean takeCachedPair(int ix, int iy) {
+		if (cellCache == null) {
+			return false;
+		}
+		Column xColumn = columns.get(ix);
+		Column yColumn = columns.get(iy);
+		focusImages[ix][iy] = cellCache.get(getCellKey(xColumn, yColumn,
+				ScatterplotCellKey.FOCUS_LAYER));
+		contextImages[ix][iy] = cellCache.get(getCellKey(xColumn, yColumn,
+				ScatterplotCellKey.CONTEXT_LAYER));
+		focusImages[iy][ix] = cellCache.get(getCellKey(yColumn, xColumn,
+				ScatterplotCellKey.FOCUS_LAYER));
+		contextImages[iy][ix] = cellCache.get(getCellKey(yColumn, xColumn,
+				ScatterplotCellKey.CONTEXT_LAYER));
+		return focusImages[ix][iy] != null && contextImages[ix][iy] != null
+				&& focusImages[iy][ix] != null && contextImages[iy][ix] != null;
+	}
+
+	private void cacheRenderedCells() {
+		int preferredIndex = columns.indexOf(preferredColumn);
+		for (int pass = 0; pass < 2; pass++) {
+			for (int ix = 0; ix < columns.size(); ix++) {
+				for (int iy = ix; iy < columns.size(); iy++) {
+					boolean preferred = ix == preferredIndex
+							|| iy == preferredIndex;
+					if (!renderPair[ix][iy] || preferred != (pass == 1)) {
+						continue;
+					}
+					cacheCell(ix, iy);
+					if (iy != ix) {
+						cacheCell(iy, ix);
+					}
+				}
+			}
+		}
+	}
+
+	private void cacheCell(int ix, int iy) {
+		Column xColumn = columns.get(ix);
+		Column yColumn = columns.get(iy);
+		cellCache.put(getCellKey(xColumn, yColumn,
+				ScatterplotCellKey.FOCUS_LAYER), focusImages[ix][iy]);
+		cellCache.put(getCellKey(xColumn, yColumn,
+				ScatterplotCellKey.CONTEXT_LAYER), contextImages[ix][iy]);
+	}
+
+	private void drawBinGrid(ScatterplotBinGrid binGrid,
+			BufferedImage cellImage, Color color, boolean outline) {
+		Graphics2D g2 = (Graphics2D) cellImage.getGraphics();
+		if (antialias) {
+			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_ON);
+		}
+		binGrid.draw(g2, color, outline);
+		g2.dispose();
+	}
+
+	private void renderColumnBlock(int blockColumns[]) {
+		int blockColumnCount = blockColumns.length;
+		int columnCount = columns.size();
+
+		ScatterplotBinGrid focusGrids[][] = createBinGrids(focusConfig,
+				blockColumns, false);
+		ScatterplotBinGrid contextGrids[][] = createBinGrids(contextConfig,
+				blockColumns, false);
+		ScatterplotBinGrid swappedFocusGrids[][] = createBinGrids(focusConfig,
+				blockColumns, true);
+		ScatterplotBinGrid swappedContextGrids[][] = createBinGrids(
+				contextConfig, blockColumns, true);
+		int focusPixels[][][] = new int[blockColumnCount][columnCount][];
+		int contextPixels[][][] = new int[blockColumnCount][columnCount][];
+		for (int ib = 0; ib < blockColumnCount; ib++) {
+			int ix = blockColumns[ib];
+			for (int iy = ix; iy < columnCount; iy++) {
+				if (!renderPair[ix][iy]) {
+					continue;
+				}
+				focusImages[ix][iy] = new BufferedImage(size + 4, size + 4,
+						BufferedImage.TYPE_INT_ARGB_PRE);
+				contextImages[ix][iy] = new BufferedImage(size + 4, size + 4,
+						BufferedImage.TYPE_INT_ARGB_PRE);
+				focusPixels[ib][iy] = getPixels(focusImages[ix][iy]);
+				contextPixels[ib][iy] = getPixels(contextImages[ix][iy]);
+			}
+		}
+		PointSprite focusSprite = new PointSprite(focusConfig.pointShape,
+				focusConfig.pointColor, antialias);
+		PointSprite contextSprite = new PointSprite(contextConfig.pointShape,
+				contextConfig.pointColor, antialias);
+		int cellWidth = size + 4;
+		int focusOffset = (int) (focusConfig.pointShape.getBounds2D().getWidth() / 2.);
+		int contextOffset = (int) (contextConfig.pointShape.getBounds2D().getWidth() / 2.);
+
+		int tupleCount = queryFlags != null ? queryFlags.getTupleCount()
+				: dataModel.getTupleCount();
+		boolean chunkQueryFlags[] = new boolean[TUPLE_CHUNK_SIZE];
+		int xPositions[][] = new int[blockColumnCount][TUPLE_CHUNK_SIZE];
+		int yPositions[][] = new int[columnCount][TUPLE_CHUNK_SIZE];
+
+		for (int chunkStart = 0; chunkStart < tupleCount; chunkStart += TUPLE_CHUNK_SIZE) {
+			if (!isRunning) {
+				break;
+			}
+			int chunkSize = Math.min(TUPLE_CHUNK_SIZE, tupleCount - chunkStart);
+
+			for (int i = 0; i < chunkSize; i++) {
+				Tuple tuple = dataModel.getTuple(chunkStart + i);
+				chunkQueryFlags[i] = queryFlags != null ? queryFlags
+						.getQueryFlag(chunkStart + i) : tuple.getQueryFlag();
+				for (int icol = 0; icol < columnCount; icol++) {
+					float value = tuple.getElement(columnIndices[icol]);
+					yPositions[icol][i] = toScreenY(value,
+							columnMinValues[icol], columnMaxValues[icol]);
+				}
+				for (int ib = 0; ib < blockColumnCount; ib++) {
+					int icol = blockColumns[ib];
+					float value = tuple.getElement(columnIndices[icol]);
+					xPositions[ib][i] = toScreenX(value,
+							columnMinValues[icol], columnMaxValues[icol]);
+				}
+			}
+
+			for (int ib = 0; ib < blockColumnCount; ib++) {
+				int ix = blockColumns[ib];
+				int x[] = xPositions[ib];
+				for (int iy = ix; iy < columnCount; iy++) {
+					if (!renderPair[ix][iy]) {
+						continue;
+					}
+					int y[] = yPositions[iy];
+					boolean swapped = iy != ix;
+					for (int i = 0; i < chunkSize; i++) {
+						if (chunkQueryFlags[i]) {
+							if (focusGrids != null) {
+								focusGrids[ib][iy].add(x[i], y[i]);
+								if (swapped) {
+									swappedFocusGrids[ib][iy].add(
+											cellWidth - y[i], cellWidth - x[i]);
+								}
+							} else {
+								focusSprite.stamp(focusPixels[ib][iy], cellWidth,
+										cellWidth, x[i] - focusOffset, y[i]
+												- focusOffset);
+							}
+						} else if (contextGrids != null) {
+							contextGrids[ib][iy].add(x[i], y[i]);
+							if (swapped) {
+								swappedContextGrids[ib][iy].add(
+										cellWidth - y[i], cellWidth - x[i]);
+							}
+						} else {
+							contextSprite.stamp(contextPixels[ib][iy], cellWidth,
+									cellWidth, x[i] - contextOffset, y[i]
+											- contextOffset);
+						}
+					}
+				}
+			}
+		}
+
+		for (int ib = 0; ib < blockColumnCount; ib++) {
+			int ix = blockColumns[ib];
+			for (int iy = ix; iy < columnCount; iy++) {
+				if (!renderPair[ix][iy]) {
+					continue;
+				}
+				if (focusGrids != null && isRunning) {
+					drawBinGrid(focusGrids[ib][iy], focusImages[ix][iy],
+							focusConfig.pointColor, focusConfig.outlineFocusBins);
+				}
+				if (contextGrids != null && isRunning) {
+					drawBinGrid(contextGrids[ib][iy], contextImages[ix][iy],
+							contextConfig.pointColor, false);
+				}
+
+				if (iy == ix || !isRunning) {
+					continue;
+				}
+				if (focusGrids != null) {
+					focusImages[iy][ix] = new BufferedImage(cellWidth,
+							cellWidth, BufferedImage.TYPE_INT_ARGB_PRE);
+					drawBinGrid(swappedFocusGrids[ib][iy], focusImages[iy][ix],
+							focusConfig.pointColor, focusConfig.outlineFocusBins);
+				} else {
+					focusImages[iy][ix] = transpose(focusImages[ix][iy]);
+				}
+				if (contextGrids != null) {
+					contextImages[iy][ix] = new BufferedImage(cellWidth,
+							cellWidth, BufferedImage.TYPE_INT_ARGB_PRE);
+					drawBinGrid(swappedContextGrids[ib][iy],
+							contextImages[iy][ix], contextConfig.pointColor,
+							false);
+				} else {
+					contextImages[iy][ix] = transpose(contextImages[ix][iy]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the bin grids of the cells of a block, or null in the point
+	 * rendering mode. The swapped grids are those of the cells below the
+	 * diagonal, so there is none for the diagonal cell.
+	 */
+	private ScatterplotBinGrid[][] createBinGrids(
+			ScatterplotConfiguration config, int blockColumns[],
+			boolean swapped) {
+		if (config.renderingMode == ScatterplotConfiguration.POINT_RENDERING) {
+			return null;
+		}
+		int columnCount = columns.size();
+		ScatterplotBinGrid binGrids[][] = new ScatterplotBinGrid[blockColumns.length][columnCount];
+		for (int ib = 0; ib < blockColumns.length; ib++) {
+			int firstRow = swapped ? blockColumns[ib] + 1 : blockColumns[ib];
+			for (int iy = firstRow; iy < columnCount; iy++) {
+				if (renderPair[blockColumns[ib]][iy]) {
+					binGrids[ib][iy] = new ScatterplotBinGrid(
+							config.renderingMode, config.binSize, size + 4,
+							size + 4);
+				}
+			}
+		}
+		return binGrids;
+	}
+
+	/**
+	 * Returns the image of the cell with the axes swapped. A point at (x, y)
+	 * in a cell of width w is at (w - y, w - x) in the swapped cell, since x
+	 * grows to the right and y grows downwards from the same margin and both
+	 * are rounded the same way by toScreenX and toScreenY.
+	 */
+	private static BufferedImage transpose(BufferedImage cellImage) {
+		int width = cellImage.getWidth();
+		BufferedImage transposedImage = new BufferedImage(width, width,
+				cellImage.getType());
+		int pixels[] = ((DataBufferInt) cellImage.getRaster().getDataBuffer())
+				.getData();
+		int transposedPixels[] = ((DataBufferInt) transposedImage.getRaster()
+				.getDataBuffer()).getData();
+		for (int y = 1; y < width; y++) {
+			int rowOffset = y * width;
+			for (int x = 1; x < width; x++) {
+				transposedPixels[((width - x) * width) + (width - y)] = pixels[rowOffset
+						+ x];
+			}
+		}
+		return transposedImage;
+	}
+
+	private static int[] getPixels(BufferedImage cellImage) {
+		return ((DataBufferInt) cellImage.getRaster().getDataBuffer())
+				.getData();
+	}
+
+	private int toScreenY(float value, float minValue, float maxValue) {
+		// mirror of toScreenX, so y = (left + top + size) - x for equal values
+		float normVal = (value - minValue) / (maxValue - minValue);
+		return top + size - Math.round(normVal * size);
+	}
+
+	private int toScreenX(float value, float minValue, float maxValue) {
+		float normVal = (value - minValue) / (maxValue - minValue);
+		return left + Math.round(normVal * size);
+	}
+
+	private class ColumnBlockTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private int blockColumns[];
+
+		public ColumnBlockTask(int blockColumns[]) {
+			this.blockColumns = blockColumns;
+		}
+
+		@Override
+		protected void compute() {
+			renderColumnBlock(blockColumns);
+		}
+	}
+}
@@ -9,9 +9,10 @@ import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 
-import org.apache.commons.math3.stat.regression.SimpleRegression;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,14 +30,19 @@ public class ScatterplotPointsRenderer extends Renderer {
 	protected int left, right, bottom, top;
 	protected Rectangle correlationRect;
 	protected Color correlationColor;
-	protected SimpleRegression simpleRegression;
+	protected RegressionStatistics regression;
 	protected boolean showFocusPoints;
 	protected boolean showContextPoints;
 	protected boolean antialias;
+	// visible value range, the column ranges unless a viewport is set
+	protected float xMin, xMax, yMin, yMax;
+	protected Rectangle2D viewport;
+	protected ScatterplotQuadtree quadtree;
+	protected QueryFlagSnapshot queryFlags;
 
 	public ScatterplotPointsRenderer(DataModel dataModel, Column xColumn,
 			Column yColumn, int plotSize, int axisSize,
-			ScatterplotConfiguration config, SimpleRegression simpleRegression,
+			ScatterplotConfiguration config, RegressionStatistics regression,
 			boolean showFocusPoints, boolean showContextPoints,
 			boolean antialias) {
 		this.antialias = antialias;
@@ -47,13 +53,17 @@ public class ScatterplotPointsRenderer extends Renderer {
 		this.yColumn = yColumn;
 		this.size = plotSize - axisSize - 4;
 		this.dataModel = dataModel;
-		this.simpleRegression = simpleRegression;
+		this.regression = regression;
 
 		xColumnIndex = dataModel.getColumnIndex(xColumn);
 		yColumnIndex = dataModel.getColumnIndex(yColumn);
+		xMin = xColumn.getSummaryStats().getMin();
+		xMax = xColumn.getSummaryStats().getMax();
+		yMin = yColumn.getSummaryStats().getMin();
+		yMax = yColumn.getSummaryStats().getMax();
 
-		// setup image
-		image = new BufferedImage(size + 4, size + 4, BufferedImage.TYPE_INT_ARGB);
+		// setup image; premultiplied so point sprites can be blended directly
+		image = new BufferedImage(size + 4, size + 4, BufferedImage.TYPE_INT_ARGB_PRE);
 		g2 = (Graphics2D) image.getGraphics();
 		if (antialias) {
 			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
@@ -76,6 +86,34 @@ public class ScatterplotPointsRenderer extends Renderer {
 		top = 2;
 	}
 
+	/**
+	 * Draws only the part of the plot inside the given viewport, which is in
+	 * coordinates normalized to the column ranges with y pointing up. The
+	 * points are looked up in the quadtree, and the query flags of the
+	 * snapshot decide which of them are focus points.
+	 */
+	public void setViewport(Rectangle2D viewport, ScatterplotQuadtree quadtree,
+			QueryFlagSnapshot queryFlags) {
+		this.viewport = viewport;
+		this.quadtree = quadtree;
+		this.queryFlags = queryFlags;
+
+		float xRange = xColumn.getSummaryStats().getMax() - xColumn.getSummaryStats().getMin();
+		float yRange = yColumn.getSummaryStats().getMax() - yColumn.getSummaryStats().getMin();
+		xMin = xColumn.getSummaryStats().getMin() + (float) (viewport.getMinX() * xRange);
+		xMax = xColumn.getSummaryStats().getMin() + (float) (viewport.getMaxX() * xRange);
+		yMin = yColumn.getSummaryStats().getMin() + (float) (viewport.getMinY() * yRange);
+		yMax = yColumn.getSummaryStats().getMin() + (float) (viewport.getMaxY() * yRange);
+	}
+
+	/**
+	 * Takes the focus points from the query flags of the snapshot instead of
+	 * the query flags of the tuples, e.g. for a query that is being brushed.
+	 */
+	public void setQueryFlags(QueryFlagSnapshot queryFlags) {
+		this.queryFlags = queryFlags;
+	}
+
 	public Column getXColumn() {
 		return xColumn;
 	}
@@ -97,7 +135,6 @@ public class ScatterplotPointsRenderer extends Renderer {
 	}
 
 	public void run() {
-		isRunning = true;
 		// log.debug("Renderer thread " + this.getId() + " running...");
 
 		// Draw a center line for x and y (diagnostic)
@@ -112,52 +149,85 @@ public class ScatterplotPointsRenderer extends Renderer {
 		// config.pointColor.getGreen() + ", "
 		// + config.pointColor.getBlue() + ", " + config.pointColor.getAlpha());
 
-		// draw points
-		for (int ituple = 0; ituple < dataModel.getTupleCount(); ituple++) {
+		ScatterplotBinGrid binGrid = null;
+		PointSprite pointSprite = null;
+		int pixels[] = null;
+		if (config.renderingMode != ScatterplotConfiguration.POINT_RENDERING) {
+			binGrid = new ScatterplotBinGrid(config.renderingMode,
+					config.binSize, image.getWidth(), image.getHeight());
+		} else {
+			pointSprite = new PointSprite(config.pointShape, config.pointColor,
+					antialias);
+			pixels = ((DataBufferInt) image.getRaster().getDataBuffer())
+					.getData();
+		}
+		int imageWidth = image.getWidth();
+		int imageHeight = image.getHeight();
+
+		if (quadtree != null) {
+			// draw the viewport from the level-of-detail index
+			binGrid = drawViewport(binGrid, pointSprite, pixels);
 			if (isRunning == false) {
 				return;
 			}
-			Tuple currentTuple = dataModel.getTuple(ituple);
+		} else {
+			// draw points
+			int offset = (int) (config.pointShape.getBounds2D().getWidth() / 2.);
+			for (int ituple = 0; ituple < dataModel.getTupleCount(); ituple++) {
+				if (isRunning == false) {
+					return;
+				}
+				Tuple currentTuple = dataModel.getTuple(ituple);
+				boolean queried = queryFlags != null ? queryFlags
+						.getQueryFlag(ituple) : currentTuple.getQueryFlag();
+				if ((queried && !showFocusPoints)
+						|| (!queried && !showContextPoints)) {
+					continue;
+				}
 
-			if ((currentTuple.getQueryFlag() && !showFocusPoints)
-					|| (!currentTuple.getQueryFlag() && !showContextPoints)) {
-				continue;
-			}
+				float xValue;
+				try {
+					xValue = currentTuple.getElement(xColumnIndex);
+				} catch (Exception ex) {
+					ex.printStackTrace();
+					continue;
+				}
 
-			float xValue;
-			try {
-				xValue = currentTuple.getElement(xColumnIndex);
-			} catch (Exception ex) {
-				ex.printStackTrace();
-				continue;
+				int x = toScreenX(xValue, xMin, xMax, left, size);
+				float yValue = currentTuple.getElement(yColumnIndex);
+				int y = toScreenY(yValue, yMin, yMax, top, size);
+				if (binGrid != null) {
+					binGrid.add(x, y);
+					continue;
+				}
+				pointSprite.stamp(pixels, imageWidth, imageHeight, x - offset, y - offset);
 			}
+		}
 
-			int x = toScreenX(xValue, xColumn.getSummaryStats().getMin(), xColumn.getSummaryStats().getMax(), left, size);
-			float yValue = currentTuple.getElement(yColumnIndex);
-			int y = toScreenY(yValue, yColumn.getSummaryStats().getMin(), yColumn.getSummaryStats().getMax(), top, size);
-			int offsetX = x - (int) (config.pointShape.getBounds2D().getWidth() / 2.);
-			int offsetY = y - (int) (config.pointShape.getBounds2D().getWidth() / 2.);
-
-			g2.translate(offsetX, offsetY);
-			g2.draw(config.pointShape);
-			g2.translate(-offsetX, -offsetY);
+		if (binGrid != null) {
+			if (isRunning == false) {
+				return;
+			}
+			binGrid.draw(g2, config.pointColor, showFocusPoints
+					&& config.outlineFocusBins);
 		}
 
 		// draw regression line (trendline)
-		if (config.showRegressionLine && simpleRegression != null) {
+		if (config.showRegressionLine && regression != null
+				&& !Double.isNaN(regression.getSlope())) {
 			if (isRunning == false) {
 				return;
 			}
 
 			double startX = xColumn.getSummaryStats().getMin();
-			double startY = simpleRegression.predict(startX);
+			double startY = regression.predict(startX);
 			double endX = xColumn.getSummaryStats().getMax();
-			double endY = simpleRegression.predict(endX);
+			double endY = regression.predict(endX);
 
-			int start_ix = toScreenX((float) startX, xColumn.getSummaryStats().getMin(), xColumn.getSummaryStats().getMax(), left, size);
-			int start_iy = toScreenY((float) startY, yColumn.getSummaryStats().getMin(), yColumn.getSummaryStats().getMax(), top, size);
-			int end_ix = toScreenX((float) endX, xColumn.getSummaryStats().getMin(), xColumn.getSummaryStats().getMax(), left, size);
-			int end_iy = toScreenY((float) endY, yColumn.getSummaryStats().getMin(), yColumn.getSummaryStats().getMax(), top, size);
+			int start_ix = toScreenX((float) startX, xMin, xMax, left, size);
+			int start_iy = toScreenY((float) startY, yMin, yMax, top, size);
+			int end_ix = toScreenX((float) endX, xMin, xMax, left, size);
+			int end_iy = toScreenY((float) endY, yMin, yMax, top, size);
 
 			g2.setColor(Color.black);
 			g2.drawLine(start_ix, start_iy, end_ix, end_iy);
@@ -167,6 +237,91 @@ public class ScatterplotPointsRenderer extends Renderer {
 		fireRendererFinished();
 	}
 
+	/**
+	 * Draws the points inside the viewport. If the viewport holds more points
+	 * than the plot has pixels, the counts of the coarsest quadtree level
+	 * whose cells fit in a pixel are added to density bins instead of the
+	 * individual points. Returns the bin grid to draw, which is a new grid
+	 * of small square bins if point rendering fell back to the counts.
+	 */
+	private ScatterplotBinGrid drawViewport(ScatterplotBinGrid binGrid,
+			PointSprite pointSprite, int pixels[]) {
+		int imageWidth = image.getWidth();
+		int imageHeight = image.getHeight();
+		int runs[] = quadtree.getViewportRuns(viewport);
+		int level = ScatterplotQuadtree.getLevelForResolution(viewport, size);
+
+		if (level <= ScatterplotQuadtree.MAX_COUNT_LEVEL
+				&& ScatterplotQuadtree.getRunPointCount(runs) > size * size) {
+			int allCounts[] = quadtree.getCounts(level);
+			int queryCounts[] = quadtree.getQueryCounts(level, queryFlags);
+			if (binGrid == null) {
+				binGrid = new ScatterplotBinGrid(
+						ScatterplotConfiguration.SQUARE_BIN_RENDERING, 2,
+						imageWidth, imageHeight);
+			}
+
+			int side = 1 << level;
+			int minCellX = Math.max(0, (int) (viewport.getMinX() * side));
+			int maxCellX = Math.min(side, (int) Math.ceil(viewport.getMaxX() * side));
+			int minCellY = Math.max(0, (int) (viewport.getMinY() * side));
+			int maxCellY = Math.min(side, (int) Math.ceil(viewport.getMaxY() * side));
+			for (int cellY = minCellY; cellY < maxCellY; cellY++) {
+				if (isRunning == false) {
+					return binGrid;
+				}
+				float yValue = yColumn.getSummaryStats().getMin()
+						+ (((cellY + .5f) / side) * (yColumn.getSummaryStats().getMax() - yColumn.getSummaryStats().getMin()));
+				int y = toScreenY(yValue, yMin, yMax, top, size);
+				for (int cellX = minCellX; cellX < maxCellX; cellX++) {
+					int cell = (cellY * side) + cellX;
+					int count = 0;
+					if (showFocusPoints) {
+						count += queryCounts[cell];
+					}
+					if (showContextPoints) {
+						count += allCounts[cell] - queryCounts[cell];
+					}
+					if (count == 0) {
+						continue;
+					}
+					float xValue = xColumn.getSummaryStats().getMin()
+							+ (((cellX + .5f) / side) * (xColumn.getSummaryStats().getMax() - xColumn.getSummaryStats().getMin()));
+					binGrid.add(toScreenX(xValue, xMin, xMax, left, size), y, count);
+				}
+			}
+
+			return binGrid;
+		}
+
+		int tupleIndices[] = quadtree.getSortedTupleIndices();
+		int offset = (int) (config.pointShape.getBounds2D().getWidth() / 2.);
+		for (int irun = 0; irun < runs.length; irun += 2) {
+			if (isRunning == false) {
+				return binGrid;
+			}
+			for (int i = runs[irun]; i < runs[irun + 1]; i++) {
+				int ituple = tupleIndices[i];
+				boolean queried = queryFlags.getQueryFlag(ituple);
+				if ((queried && !showFocusPoints)
+						|| (!queried && !showContextPoints)) {
+					continue;
+				}
+
+				Tuple currentTuple = dataModel.getTuple(ituple);
+				int x = toScreenX(currentTuple.getElement(xColumnIndex), xMin, xMax, left, size);
+				int y = toScreenY(currentTuple.getElement(yColumnIndex), yMin, yMax, top, size);
+				if (binGrid != null) {
+					binGrid.add(x, y);
+				} else {
+					pointSprite.stamp(pixels, imageWidth, imageHeight, x - offset, y - offset);
+				}
+			}
+		}
+
+		return binGrid;
+	}
+
 	private int toScreenY(float value, float minValue, float maxValue, int offset, int plotHeight) {
 		float normVal = 1.f - ((value - minValue) / (maxValue - minValue));
 		int y = offset + (int) (normVal * plotHeight);
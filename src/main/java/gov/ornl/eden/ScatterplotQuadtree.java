@@ -0,0 +1,289 @@
+package gov.ornl.eden;
+
+import gov.ornl.datatable.Column;
+import gov.ornl.datatable.DataModel;
+import gov.ornl.datatable.Tuple;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+/**
+ * A level-of-detail index of the points of one scatterplot column pair. The
+ * points are normalized to the unit square spanned by the column ranges (y
+ * pointing up) and sorted along the Z-order curve of a 2^MAX_LEVEL grid, so
+ * the points under any quadtree node are a contiguous run of the sorted
+ * tuple indices. The leaves therefore hold the raw points, and a pyramid of
+ * point counts is kept for the levels up to MAX_COUNT_LEVEL.
+ *
+ * The counts of all points are fixed once the index is built. The counts of
+ * the queried points are built from a query flag snapshot and kept until a
+ * different snapshot is asked for. The index itself is built on first use,
+ * which is normally on a renderer thread, so the accessors are synchronized.
+ */
+public class ScatterplotQuadtree {
+	public static final int MAX_LEVEL = 15;
+	public static final int MAX_COUNT_LEVEL = 10;
+
+	// partially visible nodes with no more points than this are not split
+	private static final int SMALL_RUN_SIZE = 32;
+
+	private DataModel dataModel;
+	private int xColumnIndex;
+	private int yColumnIndex;
+	private float xMin;
+	private float xMax;
+	private float yMin;
+	private float yMax;
+
+	// Z-order codes at MAX_LEVEL in ascending order and the matching tuples
+	private int codes[];
+	private int tupleIndices[];
+
+	// counts per level, indexed by (cellY * (1 << level)) + cellX
+	private int allCounts[][];
+	private int queryCounts[][];
+	private QueryFlagSnapshot queryCountFlags;
+
+	public ScatterplotQuadtree(DataModel dataModel, Column xColumn,
+			Column yColumn) {
+		this.dataModel = dataModel;
+		xColumnIndex = dataModel.getColumnIndex(xColumn);
+		yColumnIndex = dataModel.getColumnIndex(yColumn);
+		xMin = xColumn.getSummaryStats().getMin();
+		xMax = xColumn.getSummaryStats().getMax();
+		yMin = yColumn.getSummaryStats().getMin();
+		yMax = yColumn.getSummaryStats().getMax();
+	}
+
+	/**
+	 * Returns the coarsest level whose cells are no larger than one pixel
+	 * when the given normalized viewport is drawn plotSize pixels wide.
+	 */
+	public static int getLevelForResolution(Rectangle2D viewport, int plotSize) {
+		double extent = Math.min(viewport.getWidth(), viewport.getHeight());
+		int level = (int) Math.ceil(Math.log(plotSize / extent) / Math.log(2.));
+		return Math.max(0, Math.min(level, MAX_LEVEL));
+	}
+
+	/**
+	 * Returns the tuple indices in Z-order. The array is shared and must not
+	 * be modified.
+	 */
+	public synchronized int[] getSortedTupleIndices() {
+		buildIndex();
+		return tupleIndices;
+	}
+
+	/**
+	 * Returns the runs of the sorted tuple indices that cover the normalized
+	 * viewport, as pairs of start (inclusive) and end (exclusive) positions.
+	 * Runs at the edge of the viewport may include points just outside of it.
+	 */
+	public synchronized int[] getViewportRuns(Rectangle2D viewport) {
+		buildIndex();
+		RunList runs = new RunList();
+		collectRuns(0, 0, 0, viewport, runs);
+		return Arrays.copyOf(runs.runs, runs.size);
+	}
+
+	/**
+	 * Returns the number of points in the given runs.
+	 */
+	public static int getRunPointCount(int runs[]) {
+		int pointCount = 0;
+		for (int i = 0; i < runs.length; i += 2) {
+			pointCount += runs[i + 1] - runs[i];
+		}
+		return pointCount;
+	}
+
+	/**
+	 * Returns the counts of all points in the cells of the given level, which
+	 * must not exceed MAX_COUNT_LEVEL. The array is shared and must not be
+	 * modified.
+	 */
+	public synchronized int[] getCounts(int level) {
+		buildIndex();
+		return allCounts[level];
+	}
+
+	/**
+	 * Returns the counts of the points that are queried in the given snapshot
+	 * in the cells of the given level. The array is shared and must not be
+	 * modified.
+	 */
+	public synchronized int[] getQueryCounts(int level,
+			QueryFlagSnapshot queryFlags) {
+		buildIndex();
+		if (queryCountFlags != queryFlags) {
+			queryCounts = buildCounts(queryFlags);
+			queryCountFlags = queryFlags;
+		}
+		return queryCounts[level];
+	}
+
+	private void buildIndex() {
+		if (codes != null) {
+			return;
+		}
+
+		int tupleCount = dataModel.getTupleCount();
+		long keys[] = new long[tupleCount];
+		int side = 1 << MAX_LEVEL;
+		for (int i = 0; i < tupleCount; i++) {
+			Tuple tuple = dataModel.getTuple(i);
+			int cellX = toCell(tuple.getElement(xColumnIndex), xMin, xMax, side);
+			int cellY = toCell(tuple.getElement(yColumnIndex), yMin, yMax, side);
+			keys[i] = ((long) interleave(cellX, cellY) << 32) | i;
+		}
+		Arrays.parallelSort(keys);
+
+		codes = new int[tupleCount];
+		tupleIndices = new int[tupleCount];
+		for (int i = 0; i < tupleCount; i++) {
+			codes[i] = (int) (keys[i] >>> 32);
+			tupleIndices[i] = (int) keys[i];
+		}
+
+		allCounts = buildCounts(null);
+	}
+
+	/**
+	 * Builds the count pyramid of all points, or of the queried points if a
+	 * snapshot is given.
+	 */
+	private int[][] buildCounts(QueryFlagSnapshot queryFlags) {
+		int counts[][] = new int[MAX_COUNT_LEVEL + 1][];
+		int side = 1 << MAX_COUNT_LEVEL;
+		int finest[] = new int[side * side];
+		int shift = 2 * (MAX_LEVEL - MAX_COUNT_LEVEL);
+		for (int i = 0; i < codes.length; i++) {
+			if (queryFlags != null && !queryFlags.getQueryFlag(tupleIndices[i])) {
+				continue;
+			}
+			int code = codes[i] >>> shift;
+			finest[(compact(code >>> 1) * side) + compact(code)]++;
+		}
+		counts[MAX_COUNT_LEVEL] = finest;
+
+		for (int level = MAX_COUNT_LEVEL - 1; level >= 0; level--) {
+			int levelSide = 1 << level;
+			int finer[] = counts[level + 1];
+			int coarse[] = new int[levelSide * levelSide];
+			for (int cellY = 0; cellY < levelSide; cellY++) {
+				int row0 = (cellY * 2) * (levelSide * 2);
+				int row1 = row0 + (levelSide * 2);
+				for (int cellX = 0; cellX < levelSide; cellX++) {
+					int x = cellX * 2;
+					coarse[(cellY * levelSide) + cellX] = finer[row0 + x]
+							+ finer[row0 + x + 1] + finer[row1 + x]
+							+ finer[row1 + x + 1];
+				}
+			}
+			counts[level] = coarse;
+		}
+		return counts;
+	}
+
+	private void collectRuns(int level, int cellX, int cellY,
+			Rectangle2D viewport, RunList runs) {
+		double cellSize = 1. / (1 << level);
+		double nodeMinX = cellX * cellSize;
+		double nodeMinY = cellY * cellSize;
+		double nodeMaxX = nodeMinX + cellSize;
+		double nodeMaxY = nodeMinY + cellSize;
+		if (nodeMaxX <= viewport.getMinX() || nodeMinX >= viewport.getMaxX()
+				|| nodeMaxY <= viewport.getMinY()
+				|| nodeMinY >= viewport.getMaxY()) {
+			return;
+		}
+
+		int shift = 2 * (MAX_LEVEL - level);
+		long firstCode = (long) interleave(cellX, cellY) << shift;
+		int start = lowerBound(firstCode);
+		int end = lowerBound(firstCode + (1L << shift));
+		if (start == end) {
+			return;
+		}
+
+		boolean contained = nodeMinX >= viewport.getMinX()
+				&& nodeMaxX <= viewport.getMaxX()
+				&& nodeMinY >= viewport.getMinY()
+				&& nodeMaxY <= viewport.getMaxY();
+		if (contained || level == MAX_LEVEL || end - start <= SMALL_RUN_SIZE) {
+			runs.add(start, end);
+			return;
+		}
+
+		// children in Z-order so that adjacent runs can be merged
+		collectRuns(level + 1, cellX * 2, cellY * 2, viewport, runs);
+		collectRuns(level + 1, (cellX * 2) + 1, cellY * 2, viewport, runs);
+		collectRuns(level + 1, cellX * 2, (cellY * 2) + 1, viewport, runs);
+		collectRuns(level + 1, (cellX * 2) + 1, (cellY * 2) + 1, viewport, runs);
+	}
+
+	private int lowerBound(long code) {
+		int low = 0;
+		int high = codes.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (codes[mid] < code) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private static int toCell(float value, float minValue, float maxValue,
+			int side) {
+		float normValue = (value - minValue) / (maxValue - minValue);
+		int cell = (int) (normValue * side);
+		if (!(cell > 0)) {
+			return 0;
+		}
+		return Math.min(cell, side - 1);
+	}
+
+	// spreads the low 16 bits of value to the even bits of the result
+	private static int spread(int value) {
+		value &= 0x0000ffff;
+		value = (value | (value << 8)) & 0x00ff00ff;
+		value = (value | (value << 4)) & 0x0f0f0f0f;
+		value = (value | (value << 2)) & 0x33333333;
+		value = (value | (value << 1)) & 0x55555555;
+		return value;
+	}
+
+	// gathers the even bits of value into the low 16 bits of the result
+	private static int compact(int value) {
+		value &= 0x55555555;
+		value = (value | (value >>> 1)) & 0x33333333;
+		value = (value | (value >>> 2)) & 0x0f0f0f0f;
+		value = (value | (value >>> 4)) & 0x00ff00ff;
+		value = (value | (value >>> 8)) & 0x0000ffff;
+		return value;
+	}
+
+	private static int interleave(int cellX, int cellY) {
+		return spread(cellX) | (spread(cellY) << 1);
+	}
+
+	private static class RunList {
+		int runs[] = new int[64];
+		int size = 0;
+
+		void add(int start, int end) {
+			if (size > 0 && runs[size - 1] == start) {
+				runs[size - 1] = end;
+				return;
+			}
+			if (size + 2 > runs.length) {
+				runs = Arrays.copyOf(runs, runs.length * 2);
+			}
+			runs[size++] = start;
+			runs[size++] = end;
+		}
+	}
+}
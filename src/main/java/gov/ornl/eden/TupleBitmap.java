@@ -0,0 +1,346 @@
+package gov.ornl.eden;
+
+import java.util.Arrays;
+
+/**
+ * A compressed set of tuple indices in the style of a Roaring bitmap. The
+ * indices are split into chunks of 65536 by their upper 16 bits and each
+ * non-empty chunk is stored either as a sorted array of its lower 16 bits,
+ * if it holds at most 4096 indices, or as a bitset of 1024 words. Sparse
+ * selections stay small, dense ones cost one bit per tuple, and the set
+ * operations work a chunk at a time.
+ *
+ * Bitmaps are not modified once built, so they can be cached and shared
+ * between threads.
+ */
+public class TupleBitmap {
+	private static final int ARRAY_CONTAINER_MAX = 4096;
+	private static final int BITSET_WORDS = 1024;
+
+	private static final int AND = 0;
+	private static final int OR = 1;
+	private static final int XOR = 2;
+	private static final int AND_NOT = 3;
+
+	public static final TupleBitmap EMPTY = new TupleBitmap(new int[0],
+			new Object[0], new int[0], 0);
+
+	// chunk numbers in ascending order and their containers, each either a
+	// char[] of sorted lower bits or a long[] bitset
+	private int keys[];
+	private Object containers[];
+	private int cardinalities[];
+	private int size;
+	private int cardinality;
+
+	private TupleBitmap(int keys[], Object containers[], int cardinalities[],
+			int size) {
+		this.keys = keys;
+		this.containers = containers;
+		this.cardinalities = cardinalities;
+		this.size = size;
+		for (int i = 0; i < size; i++) {
+			cardinality += cardinalities[i];
+		}
+	}
+
+	/**
+	 * Returns the bitmap of the tuples at the sorted positions start
+	 * (inclusive) to end (exclusive) of the given column index.
+	 */
+	public static TupleBitmap fromSortedPositions(ColumnSortIndex sortIndex,
+			int start, int end) {
+		Builder builder = new Builder(sortIndex.getTupleCount());
+		for (int position = start; position < end; position++) {
+			builder.add(sortIndex.getTuple(position));
+		}
+		return builder.build();
+	}
+
+	public int getCardinality() {
+		return cardinality;
+	}
+
+	public boolean isEmpty() {
+		return cardinality == 0;
+	}
+
+	public boolean contains(int tupleIndex) {
+		int i = Arrays.binarySearch(keys, 0, size, tupleIndex >>> 16);
+		if (i < 0) {
+			return false;
+		}
+		char low = (char) tupleIndex;
+		if (containers[i] instanceof long[]) {
+			return (((long[]) containers[i])[low >>> 6] & (1L << low)) != 0;
+		}
+		return Arrays.binarySearch((char[]) containers[i], low) >= 0;
+	}
+
+	public TupleBitmap and(TupleBitmap other) {
+		return combine(other, AND);
+	}
+
+	public TupleBitmap or(TupleBitmap other) {
+		return combine(other, OR);
+	}
+
+	public TupleBitmap xor(TupleBitmap other) {
+		return combine(other, XOR);
+	}
+
+	public TupleBitmap andNot(TupleBitmap other) {
+		return combine(other, AND_NOT);
+	}
+
+	/**
+	 * Returns the tuple indices in ascending order.
+	 */
+	public int[] toArray() {
+		int tupleIndices[] = new int[cardinality];
+		int next = 0;
+		for (int i = 0; i < size; i++) {
+			int high = keys[i] << 16;
+			if (containers[i] instanceof long[]) {
+				long words[] = (long[]) containers[i];
+				for (int word = 0; word < BITSET_WORDS; word++) {
+					long bits = words[word];
+					while (bits != 0) {
+						tupleIndices[next++] = high | (word << 6)
+								| Long.numberOfTrailingZeros(bits);
+						bits &= bits - 1;
+					}
+				}
+			} else {
+				for (char low : (char[]) containers[i]) {
+					tupleIndices[next++] = high | low;
+				}
+			}
+		}
+		return tupleIndices;
+	}
+
+	/**
+	 * Sets the flags of the tuples in this bitmap to true.
+	 */
+	public void setFlags(boolean flags[]) {
+		for (int i = 0; i < size; i++) {
+			int high = keys[i] << 16;
+			if (containers[i] instanceof long[]) {
+				long words[] = (long[]) containers[i];
+				for (int word = 0; word < BITSET_WORDS; word++) {
+					long bits = words[word];
+					while (bits != 0) {
+						flags[high | (word << 6) | Long.numberOfTrailingZeros(bits)] = true;
+						bits &= bits - 1;
+					}
+				}
+			} else {
+				for (char low : (char[]) containers[i]) {
+					flags[high | low] = true;
+				}
+			}
+		}
+	}
+
+	private TupleBitmap combine(TupleBitmap other, int operation) {
+		int maxSize = operation == AND ? Math.min(size, other.size)
+				: operation == AND_NOT ? size : size + other.size;
+		int newKeys[] = new int[maxSize];
+		Object newContainers[] = new Object[maxSize];
+		int newCardinalities[] = new int[maxSize];
+		int newSize = 0;
+
+		int i = 0;
+		int j = 0;
+		while (i < size || j < other.size) {
+			int key = i < size ? keys[i] : Integer.MAX_VALUE;
+			int otherKey = j < other.size ? other.keys[j] : Integer.MAX_VALUE;
+			Object container = null;
+			int containerCardinality = 0;
+			if (key == otherKey) {
+				container = combine(containers[i], other.containers[j],
+						operation);
+				containerCardinality = getContainerCardinality(container);
+				i++;
+				j++;
+			} else if (key < otherKey) {
+				if (operation != AND) {
+					container = containers[i];
+					containerCardinality = cardinalities[i];
+				}
+				i++;
+			} else {
+				if (operation == OR || operation == XOR) {
+					container = other.containers[j];
+					containerCardinality = other.cardinalities[j];
+				}
+				key = otherKey;
+				j++;
+			}
+
+			if (containerCardinality > 0) {
+				newKeys[newSize] = key;
+				newContainers[newSize] = container;
+				newCardinalities[newSize] = containerCardinality;
+				newSize++;
+			}
+		}
+		return new TupleBitmap(newKeys, newContainers, newCardinalities,
+				newSize);
+	}
+
+	private static Object combine(Object container, Object otherContainer,
+			int operation) {
+		if (container instanceof char[] && otherContainer instanceof char[]) {
+			return combineArrays((char[]) container, (char[]) otherContainer,
+					operation);
+		}
+
+		long words[] = toWords(container);
+		long otherWords[] = toWords(otherContainer);
+		long result[] = new long[BITSET_WORDS];
+		int resultCardinality = 0;
+		for (int word = 0; word < BITSET_WORDS; word++) {
+			switch (operation) {
+			case AND:
+				result[word] = words[word] & otherWords[word];
+				break;
+			case OR:
+				result[word] = words[word] | otherWords[word];
+				break;
+			case XOR:
+				result[word] = words[word] ^ otherWords[word];
+				break;
+			default:
+				result[word] = words[word] & ~otherWords[word];
+				break;
+			}
+			resultCardinality += Long.bitCount(result[word]);
+		}
+		return compact(result, resultCardinality);
+	}
+
+	private static Object combineArrays(char values[], char otherValues[],
+			int operation) {
+		char result[] = new char[operation == AND ? Math.min(values.length,
+				otherValues.length) : values.length + otherValues.length];
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		while (i < values.length || j < otherValues.length) {
+			int value = i < values.length ? values[i] : Integer.MAX_VALUE;
+			int otherValue = j < otherValues.length ? otherValues[j] : Integer.MAX_VALUE;
+			if (value == otherValue) {
+				if (operation == AND || operation == OR) {
+					result[count++] = (char) value;
+				}
+				i++;
+				j++;
+			} else if (value < otherValue) {
+				if (operation != AND) {
+					result[count++] = (char) value;
+				}
+				i++;
+			} else {
+				if (operation == OR || operation == XOR) {
+					result[count++] = (char) otherValue;
+				}
+				j++;
+			}
+		}
+
+		if (count > ARRAY_CONTAINER_MAX) {
+			long words[] = new long[BITSET_WORDS];
+			for (int k = 0; k < count; k++) {
+				words[result[k] >>> 6] |= 1L << result[k];
+			}
+			return words;
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	private static long[] toWords(Object container) {
+		if (container instanceof long[]) {
+			return (long[]) container;
+		}
+		long words[] = new long[BITSET_WORDS];
+		for (char low : (char[]) container) {
+			words[low >>> 6] |= 1L << low;
+		}
+		return words;
+	}
+
+	// stores a sparse bitset as an array of its set bits
+	private static Object compact(long words[], int bitCount) {
+		if (bitCount > ARRAY_CONTAINER_MAX) {
+			return words;
+		}
+		char values[] = new char[bitCount];
+		int next = 0;
+		for (int word = 0; word < BITSET_WORDS; word++) {
+			long bits = words[word];
+			while (bits != 0) {
+				values[next++] = (char) ((word << 6) | Long.numberOfTrailingZeros(bits));
+				bits &= bits - 1;
+			}
+		}
+		return values;
+	}
+
+	private static int getContainerCardinality(Object container) {
+		if (container instanceof char[]) {
+			return ((char[]) container).length;
+		}
+		int bitCount = 0;
+		for (long word : (long[]) container) {
+			bitCount += Long.bitCount(word);
+		}
+		return bitCount;
+	}
+
+	/**
+	 * Collects tuple indices in any order into bitset chunks and compresses
+	 * the sparse chunks when the bitmap is built.
+	 */
+	public static class Builder {
+		private long chunks[][];
+		private int chunkCounts[];
+
+		public Builder(int tupleCount) {
+			int chunkCount = (tupleCount + 65535) >>> 16;
+			chunks = new long[chunkCount][];
+			chunkCounts = new int[chunkCount];
+		}
+
+		public void add(int tupleIndex) {
+			int chunk = tupleIndex >>> 16;
+			if (chunks[chunk] == null) {
+				chunks[chunk] = new long[BITSET_WORDS];
+			}
+			long bit = 1L << tupleIndex;
+			int word = (tupleIndex & 0xffff) >>> 6;
+			if ((chunks[chunk][word] & bit) == 0) {
+				chunks[chunk][word] |= bit;
+				chunkCounts[chunk]++;
+			}
+		}
+
+		public TupleBitmap build() {
+			int keys[] = new int[chunks.length];
+			Object containers[] = new Object[chunks.length];
+			int cardinalities[] = new int[chunks.length];
+			int size = 0;
+			for (int chunk = 0; chunk < chunks.length; chunk++) {
+				if (chunkCounts[chunk] == 0) {
+					continue;
+				}
+				keys[size] = chunk;
+				containers[size] = compact(chunks[chunk], chunkCounts[chunk]);
+				cardinalities[size] = chunkCounts[chunk];
+				size++;
+			}
+			return new TupleBitmap(keys, containers, cardinalities, size);
+		}
+	}
+}
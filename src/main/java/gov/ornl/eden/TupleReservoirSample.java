@@ -0,0 +1,48 @@
+package gov.ornl.eden;
+
+import java.util.Random;
+
+/**
+ * A fixed-size uniform random sample of tuple indices drawn with reservoir
+ * sampling. The sampled indices are shuffled afterwards, so every prefix of
+ * the sample is itself a uniform sample and callers can take as many indices
+ * as their time budget allows.
+ */
+public class TupleReservoirSample {
+	private int sampleIndices[];
+
+	public TupleReservoirSample(int tupleCount, int capacity, long seed) {
+		Random random = new Random(seed);
+
+		int sampleSize = Math.min(tupleCount, capacity);
+		sampleIndices = new int[sampleSize];
+		for (int i = 0; i < sampleSize; i++) {
+			sampleIndices[i] = i;
+		}
+		for (int i = sampleSize; i < tupleCount; i++) {
+			int j = random.nextInt(i + 1);
+			if (j < sampleSize) {
+				sampleIndices[j] = i;
+			}
+		}
+
+		for (int i = sampleSize - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = sampleIndices[i];
+			sampleIndices[i] = sampleIndices[j];
+			sampleIndices[j] = swap;
+		}
+	}
+
+	public int size() {
+		return sampleIndices.length;
+	}
+
+	/**
+	 * Returns the sampled tuple indices. The array is shared and must not be
+	 * modified.
+	 */
+	public int[] getIndices() {
+		return sampleIndices;
+	}
+}
@@ -0,0 +1,169 @@
+package gov.ornl.eden;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import gov.ornl.datatable.SummaryStats;
+
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BinnedDataCubeTest {
+	private static final int TUPLE_COUNT = 50000;
+	private static final int COLUMN_COUNT = 3;
+	private static final int BIN_COUNT = 64;
+	private static final int HISTOGRAM_BIN_COUNT = 10;
+	private static final int DENSITY_BIN_COUNT = 16;
+	private static final long BUILD_TIMEOUT = 30000L;
+
+	private float values[][];
+	private TestDataModel dataModel;
+	private BinnedDataCube dataCube;
+	private TestQuery query;
+
+	@Before
+	public void setUp() {
+		values = TestDataModel.randomValues(new Random(1), TUPLE_COUNT,
+				COLUMN_COUNT, 0.f);
+		dataModel = new TestDataModel(values, HISTOGRAM_BIN_COUNT);
+		dataCube = new BinnedDataCube(dataModel, BIN_COUNT,
+				BinnedDataCube.DEFAULT_MAX_BYTES);
+		dataCube.build(new int[] { 0, 1, 2 });
+		query = new TestQuery(dataModel);
+	}
+
+	@After
+	public void tearDown() {
+		dataCube.dispose();
+	}
+
+	@Test
+	public void queryHistogramsMatchTuples() throws InterruptedException {
+		// two ranges of the column whose values have NaNs
+		query.addRange(dataModel.getColumn(2), -2.f, -0.5f);
+		query.addRange(dataModel.getColumn(2), 0.3f, 1.f);
+		QueryState queryState = new QueryState(query);
+
+		for (int columnIndex = 0; columnIndex < COLUMN_COUNT; columnIndex++) {
+			double expected[] = new double[HISTOGRAM_BIN_COUNT];
+			for (int i = 0; i < TUPLE_COUNT; i++) {
+				int brushedBin = toBin(2, values[i][2]);
+				int bin = toBin(columnIndex, values[i][columnIndex]);
+				if (brushedBin >= 0 && bin >= 0
+						&& isBrushed(queryState, 2, brushedBin)) {
+					expected[(int) (((bin + 0.5) / BIN_COUNT) * HISTOGRAM_BIN_COUNT)]++;
+				}
+			}
+			assertArrayEquals(expected, getQueryHistogram(queryState,
+					columnIndex), 0.);
+		}
+	}
+
+	@Test
+	public void densityCountsMatchTuples() throws InterruptedException {
+		query.addRange(dataModel.getColumn(0), -0.5f, 1.5f);
+		QueryState queryState = new QueryState(query);
+
+		// the brushed column on either side, and a pair of non-adjacent axes
+		int pairs[][] = { { 0, 1 }, { 1, 0 }, { 2, 0 } };
+		for (int pair[] : pairs) {
+			for (int kind = 0; kind < 3; kind++) {
+				boolean countFocus = kind != 1;
+				boolean countContext = kind != 0;
+				int expected[] = new int[DENSITY_BIN_COUNT * DENSITY_BIN_COUNT];
+				for (int i = 0; i < TUPLE_COUNT; i++) {
+					int leftBin = toBin(pair[0], values[i][pair[0]]);
+					int rightBin = toBin(pair[1], values[i][pair[1]]);
+					if (leftBin < 0 || rightBin < 0) {
+						continue;
+					}
+					boolean focus = isBrushed(queryState, 0,
+							pair[0] == 0 ? leftBin : rightBin);
+					if (focus ? countFocus : countContext) {
+						int leftDensityBin = (int) (((leftBin + 0.5) / BIN_COUNT) * DENSITY_BIN_COUNT);
+						int rightDensityBin = (int) (((rightBin + 0.5) / BIN_COUNT) * DENSITY_BIN_COUNT);
+						expected[(leftDensityBin * DENSITY_BIN_COUNT)
+								+ rightDensityBin]++;
+					}
+				}
+				assertArrayEquals(expected, getDensityCounts(queryState,
+						pair[0], pair[1], countFocus, countContext));
+			}
+		}
+	}
+
+	@Test
+	public void queriesOnSeveralColumnsAreNotAnswered() {
+		query.addRange(dataModel.getColumn(0), -0.5f, 1.5f);
+		query.addRange(dataModel.getColumn(1), -0.5f, 1.5f);
+		QueryState queryState = new QueryState(query);
+
+		assertNull(dataCube.getQueryHistogram(queryState, 0));
+		assertNull(dataCube.getDensityCounts(queryState, 0, 1,
+				DENSITY_BIN_COUNT, true, true));
+		assertEquals(2, queryState.getColumnCount());
+	}
+
+	// waits for the column counts and pair tables of the background build
+	private double[] getQueryHistogram(QueryState queryState, int columnIndex)
+			throws InterruptedException {
+		long start = System.currentTimeMillis();
+		while (System.currentTimeMillis() - start < BUILD_TIMEOUT) {
+			double binCounts[] = dataCube.getQueryHistogram(queryState,
+					columnIndex);
+			if (binCounts != null) {
+				return binCounts;
+			}
+			Thread.sleep(10L);
+		}
+		throw new AssertionError("data cube was not built");
+	}
+
+	private int[] getDensityCounts(QueryState queryState, int leftColumnIndex,
+			int rightColumnIndex, boolean countFocus, boolean countContext)
+			throws InterruptedException {
+		long start = System.currentTimeMillis();
+		while (System.currentTimeMillis() - start < BUILD_TIMEOUT) {
+			int densityCounts[] = dataCube.getDensityCounts(queryState,
+					leftColumnIndex, rightColumnIndex, DENSITY_BIN_COUNT,
+					countFocus, countContext);
+			if (densityCounts != null) {
+				return densityCounts;
+			}
+			Thread.sleep(10L);
+		}
+		throw new AssertionError("data cube was not built");
+	}
+
+	// equal bins over the column range, or -1 for NaN
+	private int toBin(int columnIndex, float value) {
+		if (Float.isNaN(value)) {
+			return -1;
+		}
+		SummaryStats summaryStats = dataModel.getColumn(columnIndex)
+				.getSummaryStats();
+		float range = summaryStats.getMax() - summaryStats.getMin();
+		int bin = (int) (((value - summaryStats.getMin()) / range) * BIN_COUNT);
+		return Math.max(0, Math.min(bin, BIN_COUNT - 1));
+	}
+
+	// a bin is brushed when its center lies in one of the ranges
+	private boolean isBrushed(QueryState queryState, int columnIndex, int bin) {
+		SummaryStats summaryStats = dataModel.getColumn(columnIndex)
+				.getSummaryStats();
+		float binWidth = (summaryStats.getMax() - summaryStats.getMin())
+				/ BIN_COUNT;
+		float center = summaryStats.getMin() + ((bin + 0.5f) * binWidth);
+		for (int range = 0; range < queryState.getRangeCount(0); range++) {
+			if (center >= queryState.getMinValue(0, range)
+					&& center <= queryState.getMaxValue(0, range)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,123 @@
+package gov.ornl.eden;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ColumnSortIndexTest {
+	private static final float NEGATIVE_NAN = Float.intBitsToFloat(0xffc00000);
+
+	@Test
+	public void sortsValuesWithTheirTuples() {
+		float values[] = randomValues(new Random(1), 20000);
+		ColumnSortIndex sortIndex = new ColumnSortIndex(new TestDataModel(
+				toRows(values), 10), 0);
+
+		assertEquals(values.length, sortIndex.getTupleCount());
+		boolean seen[] = new boolean[values.length];
+		for (int position = 0; position < values.length; position++) {
+			int tupleIndex = sortIndex.getTuple(position);
+			assertTrue(!seen[tupleIndex]);
+			seen[tupleIndex] = true;
+			assertEquals(Float.floatToIntBits(values[tupleIndex]),
+					Float.floatToIntBits(sortIndex.getValue(position)));
+			if (position > 0) {
+				assertTrue(Float.compare(sortIndex.getValue(position - 1),
+						sortIndex.getValue(position)) <= 0);
+			}
+		}
+	}
+
+	@Test
+	public void nanValuesSortLast() {
+		float values[] = { 1.f, NEGATIVE_NAN, Float.NEGATIVE_INFINITY, Float.NaN,
+				-2.f, Float.POSITIVE_INFINITY, -0.f, 0.f };
+		ColumnSortIndex sortIndex = new ColumnSortIndex(new TestDataModel(
+				toRows(values), 10), 0);
+
+		float expected[] = { Float.NEGATIVE_INFINITY, -2.f, -0.f, 0.f, 1.f,
+				Float.POSITIVE_INFINITY, Float.NaN, Float.NaN };
+		for (int position = 0; position < expected.length; position++) {
+			assertEquals(Float.floatToIntBits(expected[position]),
+					Float.floatToIntBits(sortIndex.getValue(position)));
+		}
+		// a range up to infinity still excludes NaN
+		assertEquals(6, sortIndex.upperBound(Float.POSITIVE_INFINITY));
+	}
+
+	@Test
+	public void boundsMatchRangeTest() {
+		Random random = new Random(2);
+		float values[] = randomValues(random, 20000);
+		ColumnSortIndex sortIndex = new ColumnSortIndex(new TestDataModel(
+				toRows(values), 10), 0);
+
+		for (int i = 0; i < 200; i++) {
+			float minValue = (float) random.nextGaussian();
+			float maxValue = minValue + (float) Math.abs(random.nextGaussian());
+			// also use values that occur in the column
+			if (i % 2 == 0) {
+				minValue = values[random.nextInt(values.length)];
+				maxValue = Math.max(minValue, values[random.nextInt(values.length)]);
+			}
+			if (Float.isNaN(minValue) || Float.isNaN(maxValue)) {
+				continue;
+			}
+
+			boolean inRange[] = new boolean[values.length];
+			int below = 0;
+			int upTo = 0;
+			for (int tupleIndex = 0; tupleIndex < values.length; tupleIndex++) {
+				float value = values[tupleIndex];
+				inRange[tupleIndex] = value >= minValue && value <= maxValue;
+				if (value < minValue) {
+					below++;
+				}
+				if (value <= maxValue) {
+					upTo++;
+				}
+			}
+
+			int start = sortIndex.lowerBound(minValue);
+			int end = sortIndex.upperBound(maxValue);
+			assertEquals(below, start);
+			assertEquals(upTo, end);
+			boolean inInterval[] = new boolean[values.length];
+			for (int position = start; position < end; position++) {
+				inInterval[sortIndex.getTuple(position)] = true;
+			}
+			for (int tupleIndex = 0; tupleIndex < values.length; tupleIndex++) {
+				assertEquals(inRange[tupleIndex], inInterval[tupleIndex]);
+			}
+		}
+	}
+
+	// coarse values so that ties are common, with NaNs of both signs
+	private static float[] randomValues(Random random, int count) {
+		float values[] = new float[count];
+		for (int i = 0; i < count; i++) {
+			int kind = random.nextInt(100);
+			if (kind == 0) {
+				values[i] = Float.NaN;
+			} else if (kind == 1) {
+				values[i] = NEGATIVE_NAN;
+			} else if (kind == 2) {
+				values[i] = -0.f;
+			} else {
+				values[i] = Math.round(random.nextGaussian() * 100.) / 100.f;
+			}
+		}
+		return values;
+	}
+
+	private static float[][] toRows(float values[]) {
+		float rows[][] = new float[values.length][1];
+		for (int i = 0; i < values.length; i++) {
+			rows[i][0] = values[i];
+		}
+		return rows;
+	}
+}
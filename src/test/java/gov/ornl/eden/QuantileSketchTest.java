@@ -0,0 +1,210 @@
+package gov.ornl.eden;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class QuantileSketchTest {
+	private static final double[] FRACTIONS = { 0.01, 0.1, 0.25, 0.5, 0.75,
+			0.9, 0.99 };
+
+	@Test
+	public void countAndWeightStayExactThroughCompaction() {
+		float values[] = randomValues(new Random(1), 100000);
+		QuantileSketch sketch = new QuantileSketch(64);
+		for (float value : values) {
+			sketch.update(value);
+		}
+
+		float sorted[] = sortedCopy(values);
+		assertEquals(values.length, sketch.getCount());
+		assertEquals(values.length,
+				new QuantileSketch.SortedView(sketch, null).getTotalWeight());
+		assertEquals(sorted[0], sketch.getMin(), 0.f);
+		assertEquals(sorted[sorted.length - 1], sketch.getMax(), 0.f);
+	}
+
+	@Test
+	public void quantilesAreWithinRankError() {
+		float values[] = randomValues(new Random(2), 100000);
+		QuantileSketch sketch = new QuantileSketch();
+		for (float value : values) {
+			sketch.update(value);
+		}
+
+		float sorted[] = sortedCopy(values);
+		for (double fraction : FRACTIONS) {
+			assertRankWithin(sorted, fraction, sketch.getQuantile(fraction),
+					getTolerance(sketch.getK(), values.length, sorted.length));
+		}
+	}
+
+	@Test
+	public void mergedChunksMatchAllValues() {
+		float values[] = randomValues(new Random(3), 100000);
+		QuantileSketch merged = new QuantileSketch();
+		int chunkSize = 14000;
+		for (int start = 0; start < values.length; start += chunkSize) {
+			QuantileSketch chunk = new QuantileSketch();
+			for (int i = start; i < Math.min(values.length, start + chunkSize); i++) {
+				chunk.update(values[i]);
+			}
+			merged.merge(chunk);
+		}
+
+		float sorted[] = sortedCopy(values);
+		assertEquals(values.length, merged.getCount());
+		assertEquals(values.length,
+				new QuantileSketch.SortedView(merged, null).getTotalWeight());
+		assertEquals(sorted[0], merged.getMin(), 0.f);
+		assertEquals(sorted[sorted.length - 1], merged.getMax(), 0.f);
+		for (double fraction : FRACTIONS) {
+			assertRankWithin(sorted, fraction, merged.getQuantile(fraction),
+					getTolerance(merged.getK(), values.length, sorted.length));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void mergeRejectsOtherK() {
+		QuantileSketch sketch = new QuantileSketch(100);
+		QuantileSketch other = new QuantileSketch(200);
+		other.update(1.f);
+		sketch.merge(other);
+	}
+
+	@Test
+	public void sortedViewSubtractsRemovedValues() {
+		float values[] = randomValues(new Random(4), 100000);
+		QuantileSketch added = new QuantileSketch();
+		QuantileSketch removed = new QuantileSketch();
+		float remaining[] = new float[values.length];
+		int remainingCount = 0;
+		for (float value : values) {
+			added.update(value);
+			// remove the values below the mean again
+			if (value < 0.f) {
+				removed.update(value);
+			} else {
+				remaining[remainingCount++] = value;
+			}
+		}
+
+		QuantileSketch.SortedView view = new QuantileSketch.SortedView(added,
+				removed);
+		float sorted[] = sortedCopy(Arrays.copyOf(remaining, remainingCount));
+		assertEquals(remainingCount, view.getTotalWeight());
+		for (double fraction : FRACTIONS) {
+			// the error is relative to all values added and removed
+			assertRankWithin(sorted, fraction, view.getQuantile(fraction),
+					getTolerance(added.getK(),
+							added.getCount() + removed.getCount(),
+							sorted.length));
+		}
+	}
+
+	@Test
+	public void sortedViewSkipsRemovedValues() {
+		QuantileSketch added = new QuantileSketch();
+		QuantileSketch removed = new QuantileSketch();
+		for (int i = 1; i <= 10; i++) {
+			added.update(i);
+		}
+		removed.update(1.f);
+		removed.update(2.f);
+		removed.update(10.f);
+
+		QuantileSketch.SortedView view = new QuantileSketch.SortedView(added,
+				removed);
+		assertEquals(7, view.getTotalWeight());
+		assertEquals(3.f, view.getQuantile(0.), 0.f);
+		assertEquals(6.f, view.getQuantile(0.5), 0.f);
+		assertEquals(9.f, view.getQuantile(1.), 0.f);
+		assertEquals(3.f, view.getCeiling(0.f), 0.f);
+		assertEquals(3.f, view.getCeiling(2.f), 0.f);
+		assertEquals(5.f, view.getCeiling(5.f), 0.f);
+		assertEquals(9.f, view.getFloor(10.f), 0.f);
+		assertEquals(9.f, view.getFloor(11.f), 0.f);
+		assertTrue(Float.isNaN(view.getFloor(2.f)));
+		assertTrue(Float.isNaN(view.getCeiling(9.5f)));
+	}
+
+	@Test
+	public void emptySketchHasNoQuantiles() {
+		QuantileSketch sketch = new QuantileSketch();
+		assertTrue(Float.isNaN(sketch.getQuantile(0.5)));
+		assertTrue(Float.isNaN(sketch.getMin()));
+		assertTrue(Float.isNaN(sketch.getMax()));
+	}
+
+	@Test
+	public void kMatchesRankError() {
+		for (double rankError : new double[] { 0.05, 0.01, 0.002 }) {
+			int k = QuantileSketch.getK(rankError);
+			assertTrue(QuantileSketch.getRankError(k) <= rankError);
+			assertTrue(QuantileSketch.getRankError(k - 1) > rankError);
+		}
+	}
+
+	private static float[] randomValues(Random random, int count) {
+		float values[] = new float[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = (float) random.nextGaussian();
+		}
+		return values;
+	}
+
+	private static float[] sortedCopy(float values[]) {
+		float sorted[] = values.clone();
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	// twice the rank error of the sketch in values of the sorted array
+	private static double getTolerance(int k, long sketchedCount,
+			int sortedCount) {
+		return (2. * QuantileSketch.getRankError(k) * sketchedCount)
+				/ sortedCount;
+	}
+
+	/**
+	 * Checks that the fraction of the sorted values below the quantile is at
+	 * most, and the fraction up to and including it at least, the target
+	 * fraction within the tolerance.
+	 */
+	private static void assertRankWithin(float sorted[], double fraction,
+			float quantile, double tolerance) {
+		int below = lowerBound(sorted, quantile);
+		int upTo = upperBound(sorted, quantile);
+		double n = sorted.length;
+		assertTrue("quantile " + fraction + " is " + quantile + " at ranks "
+				+ (below / n) + " to " + (upTo / n),
+				below / n <= fraction + tolerance
+						&& upTo / n >= fraction - tolerance);
+	}
+
+	private static int lowerBound(float sorted[], float value) {
+		int i = Arrays.binarySearch(sorted, value);
+		if (i < 0) {
+			return -i - 1;
+		}
+		while (i > 0 && sorted[i - 1] == value) {
+			i--;
+		}
+		return i;
+	}
+
+	private static int upperBound(float sorted[], float value) {
+		int i = Arrays.binarySearch(sorted, value);
+		if (i < 0) {
+			return -i - 1;
+		}
+		while (i < sorted.length && sorted[i] == value) {
+			i++;
+		}
+		return i;
+	}
+}
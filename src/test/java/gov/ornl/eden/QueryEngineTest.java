@@ -0,0 +1,143 @@
+package gov.ornl.eden;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import gov.ornl.datatable.Query;
+import gov.ornl.eden.TestQuery.TestRange;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class QueryEngineTest {
+	private static final int TUPLE_COUNT = 200000;
+	private static final int COLUMN_COUNT = 3;
+	private static final long INDEX_TIMEOUT = 30000L;
+
+	@Test
+	public void movedBoundsFlipChangedTuples() throws InterruptedException {
+		Random random = new Random(1);
+		float values[][] = TestDataModel.randomValues(random, TUPLE_COUNT,
+				COLUMN_COUNT, 0.f);
+		TestDataModel dataModel = new TestDataModel(values, 10);
+		QueryEngine queryEngine = new QueryEngine(dataModel);
+		TestQuery query = new TestQuery(dataModel);
+		TestRange range0 = query.addRange(dataModel.getColumn(0), -0.5f, 0.5f);
+		TestRange range2 = query.addRange(dataModel.getColumn(2), -1.f, 1.f);
+
+		QueryFlagSnapshot queryFlags = evaluateIndexed(queryEngine, query);
+		assertMatches(values, query, queryFlags);
+
+		// drag brush edges, sometimes on both columns at once
+		for (int step = 0; step < 40; step++) {
+			range0.setMinValue(range0.getMinValue()
+					+ (float) (random.nextGaussian() * 0.05));
+			range0.setMaxValue(Math.max(range0.getMinValue(),
+					range0.getMaxValue() + (float) (random.nextGaussian() * 0.05)));
+			if (step % 3 == 0) {
+				range2.setMaxValue(range2.getMaxValue()
+						+ (float) (random.nextGaussian() * 0.1));
+			}
+			queryFlags = assertIncremental(queryEngine, values, query,
+					queryFlags);
+		}
+
+		// a second range on a column is combined by OR
+		TestRange range0b = query.addRange(dataModel.getColumn(0), 1.f, 1.5f);
+		queryFlags = queryEngine.evaluate(query);
+		assertMatches(values, query, queryFlags);
+		for (int step = 0; step < 10; step++) {
+			range0b.setMaxValue(range0b.getMaxValue() + 0.05f);
+			queryFlags = assertIncremental(queryEngine, values, query,
+					queryFlags);
+		}
+
+		query.removeRange(range0b);
+		queryFlags = queryEngine.evaluate(query);
+		assertMatches(values, query, queryFlags);
+
+		// nothing moved, so the previous flags stay
+		assertSame(queryFlags, queryEngine.evaluate(query));
+		assertMatches(values, query, queryEngine.scan(query));
+	}
+
+	@Test
+	public void emptyQueryIsNotEvaluated() {
+		TestDataModel dataModel = new TestDataModel(
+				TestDataModel.randomValues(new Random(2), 1000, COLUMN_COUNT,
+						0.f), 10);
+		QueryEngine queryEngine = new QueryEngine(dataModel);
+
+		assertNull(queryEngine.evaluate(new TestQuery(dataModel)));
+		assertNull(queryEngine.scan(new TestQuery(dataModel)));
+	}
+
+	/**
+	 * Evaluates the query after its bounds moved and checks the flags and
+	 * the tuples that changed from the previous flags against a plain
+	 * evaluation. Returns the new flags.
+	 */
+	private static QueryFlagSnapshot assertIncremental(
+			QueryEngine queryEngine, float values[][], TestQuery query,
+			QueryFlagSnapshot previous) {
+		QueryFlagSnapshot queryFlags = queryEngine.evaluate(query);
+		boolean flags[] = assertMatches(values, query, queryFlags);
+
+		int changedCount = 0;
+		for (int i = 0; i < TUPLE_COUNT; i++) {
+			if (flags[i] != previous.getQueryFlag(i)) {
+				changedCount++;
+			}
+		}
+		int expectedChanges[] = new int[changedCount];
+		int next = 0;
+		for (int i = 0; i < TUPLE_COUNT; i++) {
+			if (flags[i] != previous.getQueryFlag(i)) {
+				expectedChanges[next++] = i;
+			}
+		}
+		assertArrayEquals(expectedChanges, queryFlags.getChangedTuples(previous));
+		assertArrayEquals(expectedChanges, queryFlags.getBitmap()
+				.xor(previous.getBitmap()).toArray());
+		return queryFlags;
+	}
+
+	// checks the flags against a plain evaluation and returns the latter
+	private static boolean[] assertMatches(float values[][], TestQuery query,
+			QueryFlagSnapshot queryFlags) {
+		assertNotNull(queryFlags);
+		boolean flags[] = new boolean[TUPLE_COUNT];
+		int queriedTupleCount = 0;
+		for (int i = 0; i < TUPLE_COUNT; i++) {
+			flags[i] = query.isQueried(values[i]);
+			if (flags[i]) {
+				queriedTupleCount++;
+			}
+			assertEquals(flags[i], queryFlags.getQueryFlag(i));
+		}
+		assertEquals(queriedTupleCount, queryFlags.getQueriedTupleCount());
+		if (queryFlags.getBitmap() != null) {
+			assertEquals(queriedTupleCount, queryFlags.getBitmap()
+					.getCardinality());
+		}
+		return flags;
+	}
+
+	// waits for the sort indices of the selected columns
+	private static QueryFlagSnapshot evaluateIndexed(QueryEngine queryEngine,
+			Query query) throws InterruptedException {
+		long start = System.currentTimeMillis();
+		while (System.currentTimeMillis() - start < INDEX_TIMEOUT) {
+			QueryFlagSnapshot queryFlags = queryEngine.evaluate(query);
+			if (queryFlags != null) {
+				return queryFlags;
+			}
+			Thread.sleep(10L);
+		}
+		throw new AssertionError("column sort indices were not built");
+	}
+}
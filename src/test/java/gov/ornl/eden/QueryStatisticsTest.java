@@ -0,0 +1,305 @@
+package gov.ornl.eden;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import gov.ornl.datatable.DataModel;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class QueryStatisticsTest {
+	// more than two chunks of the parallel pass, so partial statistics merge
+	private static final int TUPLE_COUNT = 150000;
+	private static final int COLUMN_COUNT = 3;
+	private static final int BIN_COUNT = 20;
+	private static final int K = 200;
+
+	@Test
+	public void computeMatchesTwoPass() {
+		Random random = new Random(1);
+		TestDataModel dataModel = new TestDataModel(
+				TestDataModel.randomValues(random, TUPLE_COUNT, COLUMN_COUNT,
+						1000.f), BIN_COUNT);
+		boolean queryFlags[] = TestDataModel.randomFlags(random, TUPLE_COUNT,
+				0.4);
+
+		QueryStatistics statistics = QueryStatistics.compute(dataModel,
+				TestDataModel.toSnapshot(queryFlags), true, K);
+		assertMatchesTwoPass(dataModel, queryFlags, statistics, 1);
+	}
+
+	@Test
+	public void updateAddsAndRemovesChangedTuples() {
+		Random random = new Random(2);
+		TestDataModel dataModel = new TestDataModel(
+				TestDataModel.randomValues(random, TUPLE_COUNT, COLUMN_COUNT,
+						1000.f), BIN_COUNT);
+		boolean queryFlags[] = TestDataModel.randomFlags(random, TUPLE_COUNT,
+				0.4);
+		QueryStatistics statistics = QueryStatistics.compute(dataModel,
+				TestDataModel.toSnapshot(queryFlags), true, K);
+
+		// each round removes the extrema of the first column, so they are
+		// found again, and merges statistics that already removed values
+		for (int round = 0; round < 3; round++) {
+			queryFlags = queryFlags.clone();
+			for (int i = 0; i < TUPLE_COUNT / 50; i++) {
+				int tupleIndex = random.nextInt(TUPLE_COUNT);
+				queryFlags[tupleIndex] = !queryFlags[tupleIndex];
+			}
+			float values[] = getQueriedValues(dataModel, queryFlags, 0);
+			queryFlags[findTuple(dataModel, queryFlags, 0, values[0])] = false;
+			queryFlags[findTuple(dataModel, queryFlags, 0,
+					values[values.length - 1])] = false;
+
+			statistics = statistics.update(
+					TestDataModel.toSnapshot(queryFlags), true);
+			assertMatchesTwoPass(dataModel, queryFlags, statistics,
+					1.2 + (round * 0.1));
+		}
+	}
+
+	@Test
+	public void updateOfMostTuplesMatchesTwoPass() {
+		Random random = new Random(3);
+		TestDataModel dataModel = new TestDataModel(
+				TestDataModel.randomValues(random, TUPLE_COUNT, COLUMN_COUNT,
+						0.f), BIN_COUNT);
+		boolean queryFlags[] = TestDataModel.randomFlags(random, TUPLE_COUNT,
+				0.2);
+		QueryStatistics statistics = QueryStatistics.compute(dataModel,
+				TestDataModel.toSnapshot(queryFlags), false, K);
+
+		queryFlags = TestDataModel.randomFlags(random, TUPLE_COUNT, 0.8);
+		statistics = statistics.update(TestDataModel.toSnapshot(queryFlags),
+				true);
+		assertMatchesTwoPass(dataModel, queryFlags, statistics, 1);
+	}
+
+	@Test
+	public void exactQuantilesMatchNearestRank() {
+		Random random = new Random(4);
+		TestDataModel dataModel = new TestDataModel(
+				TestDataModel.randomValues(random, TUPLE_COUNT, COLUMN_COUNT,
+						0.f), BIN_COUNT);
+		boolean queryFlags[] = TestDataModel.randomFlags(random, TUPLE_COUNT,
+				0.3);
+		QueryStatistics statistics = QueryStatistics.compute(dataModel,
+				TestDataModel.toSnapshot(queryFlags), false, K);
+		statistics.computeExactQuantiles();
+
+		assertTrue(statistics.hasExactQuantiles());
+		for (int icol = 0; icol < COLUMN_COUNT; icol++) {
+			float values[] = getQueriedValues(dataModel, queryFlags, icol);
+			float q1 = getNearestRank(values, 0.25);
+			float q3 = getNearestRank(values, 0.75);
+			float fence = 1.5f * (q3 - q1);
+			assertEquals(q1, statistics.getQuantile1(icol), 0.f);
+			assertEquals(getNearestRank(values, 0.5),
+					statistics.getMedian(icol), 0.f);
+			assertEquals(q3, statistics.getQuantile3(icol), 0.f);
+			assertEquals(getCeiling(values, q1 - fence),
+					statistics.getLowerWhisker(icol), 0.f);
+			assertEquals(getFloor(values, q3 + fence),
+					statistics.getUpperWhisker(icol), 0.f);
+		}
+	}
+
+	@Test
+	public void emptyQueryHasNoStatistics() {
+		Random random = new Random(5);
+		TestDataModel dataModel = new TestDataModel(
+				TestDataModel.randomValues(random, 1000, COLUMN_COUNT, 0.f),
+				BIN_COUNT);
+		QueryStatistics statistics = QueryStatistics.compute(dataModel,
+				TestDataModel.toSnapshot(new boolean[1000]), true, K);
+
+		assertEquals(0, statistics.getCount(0));
+		assertTrue(Double.isNaN(statistics.getMean(0)));
+		assertTrue(Double.isNaN(statistics.getVariance(0)));
+		assertTrue(Float.isNaN(statistics.getMin(0)));
+		assertTrue(Float.isNaN(statistics.getMedian(0)));
+		assertTrue(Double.isNaN(statistics.getCorrelationCoefficient(0, 1)));
+	}
+
+	/**
+	 * Checks the statistics against a two-pass computation over the queried
+	 * tuples. The quantiles from the sketches are checked by rank, within
+	 * the given multiple of the sketch rank error relative to the queried
+	 * values.
+	 */
+	private static void assertMatchesTwoPass(DataModel dataModel,
+			boolean queryFlags[], QueryStatistics statistics,
+			double rankErrorFactor) {
+		for (int icol = 0; icol < COLUMN_COUNT; icol++) {
+			float values[] = getQueriedValues(dataModel, queryFlags, icol);
+			int n = values.length;
+			double mean = 0.;
+			for (float value : values) {
+				mean += value;
+			}
+			mean /= n;
+			double m2 = 0.;
+			double m3 = 0.;
+			double m4 = 0.;
+			for (float value : values) {
+				double d = value - mean;
+				m2 += d * d;
+				m3 += d * d * d;
+				m4 += d * d * d * d;
+			}
+
+			assertEquals(n, statistics.getCount(icol));
+			assertClose(mean, statistics.getMean(icol));
+			assertClose(m2 / (n - 1), statistics.getVariance(icol));
+			assertClose((Math.sqrt(n) * m3) / Math.pow(m2, 1.5),
+					statistics.getSkewness(icol));
+			assertClose(((n * m4) / (m2 * m2)) - 3.,
+					statistics.getKurtosis(icol));
+			assertEquals(values[0], statistics.getMin(icol), 0.f);
+			assertEquals(values[n - 1], statistics.getMax(icol), 0.f);
+			assertArrayEquals(getHistogram(dataModel, icol, values),
+					statistics.getHistogram(icol), 0.);
+
+			double tolerance = rankErrorFactor * 2.
+					* QuantileSketch.getRankError(K);
+			assertRankWithin(values, 0.25, statistics.getQuantile1(icol),
+					tolerance);
+			assertRankWithin(values, 0.5, statistics.getMedian(icol),
+					tolerance);
+			assertRankWithin(values, 0.75, statistics.getQuantile3(icol),
+					tolerance);
+		}
+
+		if (!statistics.hasCorrelations()) {
+			return;
+		}
+		for (int icol = 0; icol < COLUMN_COUNT; icol++) {
+			for (int jcol = icol + 1; jcol < COLUMN_COUNT; jcol++) {
+				assertClose(getCorrelation(dataModel, queryFlags, icol, jcol),
+						statistics.getCorrelationCoefficient(icol, jcol));
+			}
+		}
+	}
+
+	private static void assertClose(double expected, double actual) {
+		assertEquals(expected, actual, 1e-8 * Math.max(1., Math.abs(expected)));
+	}
+
+	private static void assertRankWithin(float sorted[], double fraction,
+			float quantile, double tolerance) {
+		double n = sorted.length;
+		double below = 0;
+		double upTo = 0;
+		for (float value : sorted) {
+			if (value < quantile) {
+				below++;
+			}
+			if (value <= quantile) {
+				upTo++;
+			}
+		}
+		assertTrue("quantile " + fraction + " is at ranks " + (below / n)
+				+ " to " + (upTo / n), below / n <= fraction + tolerance
+				&& upTo / n >= fraction - tolerance);
+	}
+
+	// sorted non-NaN values of a column in the queried tuples
+	private static float[] getQueriedValues(DataModel dataModel,
+			boolean queryFlags[], int columnIndex) {
+		float values[] = new float[queryFlags.length];
+		int count = 0;
+		for (int i = 0; i < queryFlags.length; i++) {
+			float value = dataModel.getTuple(i).getElement(columnIndex);
+			if (queryFlags[i] && !Float.isNaN(value)) {
+				values[count++] = value;
+			}
+		}
+		values = Arrays.copyOf(values, count);
+		Arrays.sort(values);
+		return values;
+	}
+
+	private static int findTuple(DataModel dataModel, boolean queryFlags[],
+			int columnIndex, float value) {
+		for (int i = 0; i < queryFlags.length; i++) {
+			if (queryFlags[i]
+					&& dataModel.getTuple(i).getElement(columnIndex) == value) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("no queried tuple has " + value);
+	}
+
+	// bins over the range of the values of all tuples, as the histogram of
+	// the column has
+	private static double[] getHistogram(DataModel dataModel,
+			int columnIndex, float values[]) {
+		double min = dataModel.getColumn(columnIndex).getSummaryStats().getMin();
+		double max = dataModel.getColumn(columnIndex).getSummaryStats().getMax();
+		double bins[] = new double[BIN_COUNT];
+		for (float value : values) {
+			int bin = (int) (((value - min) / (max - min)) * BIN_COUNT);
+			bins[Math.min(bin, BIN_COUNT - 1)]++;
+		}
+		return bins;
+	}
+
+	private static double getCorrelation(DataModel dataModel,
+			boolean queryFlags[], int columnIndex1, int columnIndex2) {
+		double sumX = 0.;
+		double sumY = 0.;
+		int n = 0;
+		for (int i = 0; i < queryFlags.length; i++) {
+			float x = dataModel.getTuple(i).getElement(columnIndex1);
+			float y = dataModel.getTuple(i).getElement(columnIndex2);
+			if (queryFlags[i] && !Float.isNaN(x) && !Float.isNaN(y)) {
+				sumX += x;
+				sumY += y;
+				n++;
+			}
+		}
+		double meanX = sumX / n;
+		double meanY = sumY / n;
+		double sxx = 0.;
+		double syy = 0.;
+		double sxy = 0.;
+		for (int i = 0; i < queryFlags.length; i++) {
+			float x = dataModel.getTuple(i).getElement(columnIndex1);
+			float y = dataModel.getTuple(i).getElement(columnIndex2);
+			if (queryFlags[i] && !Float.isNaN(x) && !Float.isNaN(y)) {
+				sxx += (x - meanX) * (x - meanX);
+				syy += (y - meanY) * (y - meanY);
+				sxy += (x - meanX) * (y - meanY);
+			}
+		}
+		return sxy / Math.sqrt(sxx * syy);
+	}
+
+	private static float getNearestRank(float sorted[], double fraction) {
+		int index = (int) Math.ceil(fraction * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+
+	private static float getCeiling(float sorted[], float value) {
+		for (float sortedValue : sorted) {
+			if (sortedValue >= value) {
+				return sortedValue;
+			}
+		}
+		return Float.NaN;
+	}
+
+	private static float getFloor(float sorted[], float value) {
+		for (int i = sorted.length - 1; i >= 0; i--) {
+			if (sorted[i] <= value) {
+				return sorted[i];
+			}
+		}
+		return Float.NaN;
+	}
+}
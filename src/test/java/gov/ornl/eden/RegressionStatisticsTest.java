@@ -0,0 +1,176 @@
+package gov.ornl.eden;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RegressionStatisticsTest {
+	private static final int POINT_COUNT = 100000;
+	// far from zero with a small spread, where unshifted sums lose precision
+	private static final double OFFSET = 1.e6;
+
+	@Test
+	public void addedPointsMatchTwoPass() {
+		double points[][] = randomPoints(new Random(1), POINT_COUNT);
+		RegressionStatistics statistics = new RegressionStatistics(OFFSET,
+				2. * OFFSET);
+		for (double point[] : points) {
+			statistics.addData(point[0], point[1]);
+		}
+
+		assertMatchesTwoPass(points, new boolean[points.length], statistics);
+	}
+
+	@Test
+	public void removedPointsMatchTwoPass() {
+		Random random = new Random(2);
+		double points[][] = randomPoints(random, POINT_COUNT);
+		RegressionStatistics statistics = new RegressionStatistics(OFFSET,
+				2. * OFFSET);
+		for (double point[] : points) {
+			statistics.addData(point[0], point[1]);
+		}
+		boolean removed[] = new boolean[points.length];
+		for (int i = 0; i < points.length; i++) {
+			if (random.nextInt(3) == 0) {
+				removed[i] = true;
+				statistics.removeData(points[i][0], points[i][1]);
+			}
+		}
+
+		assertMatchesTwoPass(points, removed, statistics);
+	}
+
+	@Test
+	public void mergedChunksMatchTwoPass() {
+		Random random = new Random(3);
+		double points[][] = randomPoints(random, POINT_COUNT);
+		boolean removed[] = new boolean[points.length];
+		RegressionStatistics statistics = new RegressionStatistics(OFFSET,
+				2. * OFFSET);
+		int chunkSize = 7000;
+		for (int start = 0; start < points.length; start += chunkSize) {
+			RegressionStatistics chunk = new RegressionStatistics(OFFSET,
+					2. * OFFSET);
+			for (int i = start; i < Math.min(points.length, start + chunkSize); i++) {
+				chunk.addData(points[i][0], points[i][1]);
+			}
+			// chunks that had points removed merge the same way
+			for (int i = start; i < Math.min(points.length, start + chunkSize); i += 5) {
+				removed[i] = true;
+				chunk.removeData(points[i][0], points[i][1]);
+			}
+			statistics.merge(chunk);
+		}
+
+		assertMatchesTwoPass(points, removed, statistics);
+	}
+
+	@Test
+	public void copyIsIndependent() {
+		double points[][] = randomPoints(new Random(4), 1000);
+		RegressionStatistics statistics = new RegressionStatistics(OFFSET,
+				2. * OFFSET);
+		for (double point[] : points) {
+			statistics.addData(point[0], point[1]);
+		}
+		RegressionStatistics copy = statistics.copy();
+		copy.removeData(points[0][0], points[0][1]);
+
+		assertMatchesTwoPass(points, new boolean[points.length], statistics);
+		boolean removed[] = new boolean[points.length];
+		removed[0] = true;
+		assertMatchesTwoPass(points, removed, copy);
+	}
+
+	@Test
+	public void computeMatchesTwoPass() {
+		Random random = new Random(5);
+		// more than two chunks of the parallel pass
+		int tupleCount = 150000;
+		float values[][] = TestDataModel.randomValues(random, tupleCount, 2,
+				1000.f);
+		TestDataModel dataModel = new TestDataModel(values, 10);
+		boolean queryFlags[] = TestDataModel.randomFlags(random, tupleCount,
+				0.3);
+
+		RegressionStatistics statistics[] = RegressionStatistics.compute(
+				dataModel, 0, 1, TestDataModel.toSnapshot(queryFlags),
+				dataModel.getColumn(0).getSummaryStats().getMean(), dataModel
+						.getColumn(1).getSummaryStats().getMean());
+
+		double points[][] = new double[tupleCount][];
+		boolean notQueried[] = new boolean[tupleCount];
+		for (int i = 0; i < tupleCount; i++) {
+			points[i] = new double[] { values[i][0], values[i][1] };
+			notQueried[i] = !queryFlags[i];
+		}
+		assertMatchesTwoPass(points, new boolean[tupleCount], statistics[0]);
+		assertMatchesTwoPass(points, notQueried, statistics[1]);
+	}
+
+	@Test
+	public void constantXHasNoSlope() {
+		RegressionStatistics statistics = new RegressionStatistics(0., 0.);
+		statistics.addData(1., 1.);
+		statistics.addData(1., 2.);
+
+		assertTrue(Double.isNaN(statistics.getSlope()));
+		assertTrue(Double.isNaN(statistics.getR()));
+	}
+
+	// y = 2x plus noise, with x spread by one around the offset
+	private static double[][] randomPoints(Random random, int count) {
+		double points[][] = new double[count][2];
+		for (int i = 0; i < count; i++) {
+			double x = OFFSET + random.nextGaussian();
+			points[i][0] = x;
+			points[i][1] = (2. * x) + (0.5 * random.nextGaussian());
+		}
+		return points;
+	}
+
+	/**
+	 * Checks the statistics against a two-pass least squares fit of the
+	 * points that were not skipped.
+	 */
+	private static void assertMatchesTwoPass(double points[][],
+			boolean skipped[], RegressionStatistics statistics) {
+		double meanX = 0.;
+		double meanY = 0.;
+		int n = 0;
+		for (int i = 0; i < points.length; i++) {
+			if (!skipped[i]) {
+				meanX += points[i][0];
+				meanY += points[i][1];
+				n++;
+			}
+		}
+		meanX /= n;
+		meanY /= n;
+		double sxx = 0.;
+		double syy = 0.;
+		double sxy = 0.;
+		for (int i = 0; i < points.length; i++) {
+			if (!skipped[i]) {
+				double dx = points[i][0] - meanX;
+				double dy = points[i][1] - meanY;
+				sxx += dx * dx;
+				syy += dy * dy;
+				sxy += dx * dy;
+			}
+		}
+		double slope = sxy / sxx;
+		double intercept = meanY - (slope * meanX);
+
+		assertEquals(n, statistics.getN());
+		assertEquals(slope, statistics.getSlope(), 1e-8 * Math.abs(slope));
+		assertEquals(sxy / Math.sqrt(sxx * syy), statistics.getR(), 1e-8);
+		// compare predictions at the data, since the intercept is far away
+		assertEquals(intercept + (slope * meanX),
+				statistics.predict(meanX), 1e-6);
+	}
+}
@@ -0,0 +1,165 @@
+package gov.ornl.eden;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ScatterplotQuadtreeTest {
+	private static final int TUPLE_COUNT = 50000;
+	private static final int SIDE = 1 << ScatterplotQuadtree.MAX_LEVEL;
+
+	@Test
+	public void tuplesAreSortedInZOrder() {
+		float values[][] = TestDataModel.randomValues(new Random(1),
+				TUPLE_COUNT, 2, 0.f);
+		TestDataModel dataModel = new TestDataModel(values, 10);
+		ScatterplotQuadtree quadtree = new ScatterplotQuadtree(dataModel,
+				dataModel.getColumn(0), dataModel.getColumn(1));
+		int cells[][] = toCells(dataModel, values);
+
+		int tupleIndices[] = quadtree.getSortedTupleIndices();
+		assertEquals(TUPLE_COUNT, tupleIndices.length);
+		boolean seen[] = new boolean[TUPLE_COUNT];
+		for (int position = 0; position < TUPLE_COUNT; position++) {
+			int tupleIndex = tupleIndices[position];
+			assertTrue(!seen[tupleIndex]);
+			seen[tupleIndex] = true;
+			if (position > 0) {
+				int previous = tupleIndices[position - 1];
+				long previousCode = interleave(cells[previous]);
+				long code = interleave(cells[tupleIndex]);
+				// ties keep the order of the tuples
+				assertTrue(previousCode < code
+						|| (previousCode == code && previous < tupleIndex));
+			}
+		}
+	}
+
+	@Test
+	public void viewportRunsCoverVisiblePoints() {
+		Random random = new Random(2);
+		float values[][] = TestDataModel.randomValues(random, TUPLE_COUNT, 2,
+				0.f);
+		TestDataModel dataModel = new TestDataModel(values, 10);
+		ScatterplotQuadtree quadtree = new ScatterplotQuadtree(dataModel,
+				dataModel.getColumn(0), dataModel.getColumn(1));
+		int cells[][] = toCells(dataModel, values);
+		int tupleIndices[] = quadtree.getSortedTupleIndices();
+
+		int runs[] = quadtree.getViewportRuns(new Rectangle2D.Double(0., 0.,
+				1., 1.));
+		assertArrayEquals(new int[] { 0, TUPLE_COUNT }, runs);
+
+		for (int i = 0; i < 100; i++) {
+			double x = random.nextDouble();
+			double y = random.nextDouble();
+			double width = random.nextDouble() * (1. - x) * 0.5;
+			double height = random.nextDouble() * (1. - y) * 0.5;
+			Rectangle2D viewport = new Rectangle2D.Double(x, y, width, height);
+			runs = quadtree.getViewportRuns(viewport);
+
+			// ascending, disjoint and merged when adjacent
+			assertEquals(0, runs.length % 2);
+			for (int j = 0; j < runs.length; j++) {
+				assertTrue(runs[j] >= 0 && runs[j] <= TUPLE_COUNT);
+				if (j > 0) {
+					assertTrue(runs[j - 1] < runs[j]);
+				}
+			}
+
+			boolean inRuns[] = new boolean[TUPLE_COUNT];
+			for (int j = 0; j < runs.length; j += 2) {
+				for (int position = runs[j]; position < runs[j + 1]; position++) {
+					inRuns[tupleIndices[position]] = true;
+				}
+			}
+			int pointCount = 0;
+			for (int tupleIndex = 0; tupleIndex < TUPLE_COUNT; tupleIndex++) {
+				if (inRuns[tupleIndex]) {
+					pointCount++;
+				}
+				double centerX = (cells[tupleIndex][0] + 0.5) / SIDE;
+				double centerY = (cells[tupleIndex][1] + 0.5) / SIDE;
+				if (viewport.contains(centerX, centerY)) {
+					assertTrue(inRuns[tupleIndex]);
+				}
+			}
+			assertEquals(pointCount, ScatterplotQuadtree.getRunPointCount(runs));
+		}
+	}
+
+	@Test
+	public void countsMatchCells() {
+		Random random = new Random(3);
+		float values[][] = TestDataModel.randomValues(random, TUPLE_COUNT, 2,
+				0.f);
+		TestDataModel dataModel = new TestDataModel(values, 10);
+		ScatterplotQuadtree quadtree = new ScatterplotQuadtree(dataModel,
+				dataModel.getColumn(0), dataModel.getColumn(1));
+		int cells[][] = toCells(dataModel, values);
+		boolean queryFlags[] = TestDataModel.randomFlags(random, TUPLE_COUNT,
+				0.3);
+		QueryFlagSnapshot snapshot = TestDataModel.toSnapshot(queryFlags);
+
+		for (int level = 0; level <= ScatterplotQuadtree.MAX_COUNT_LEVEL; level++) {
+			int levelSide = 1 << level;
+			int shift = ScatterplotQuadtree.MAX_LEVEL - level;
+			int counts[] = new int[levelSide * levelSide];
+			int queryCounts[] = new int[levelSide * levelSide];
+			for (int tupleIndex = 0; tupleIndex < TUPLE_COUNT; tupleIndex++) {
+				int cell = ((cells[tupleIndex][1] >> shift) * levelSide)
+						+ (cells[tupleIndex][0] >> shift);
+				counts[cell]++;
+				if (queryFlags[tupleIndex]) {
+					queryCounts[cell]++;
+				}
+			}
+			assertArrayEquals(counts, quadtree.getCounts(level));
+			assertArrayEquals(queryCounts, quadtree.getQueryCounts(level,
+					snapshot));
+		}
+
+		// a new snapshot replaces the kept query counts
+		boolean otherFlags[] = new boolean[TUPLE_COUNT];
+		otherFlags[0] = true;
+		int otherCounts[] = quadtree.getQueryCounts(0,
+				TestDataModel.toSnapshot(otherFlags));
+		assertArrayEquals(new int[] { 1 }, otherCounts);
+	}
+
+	// cells at MAX_LEVEL of the normalized points, NaN in the first cell
+	private static int[][] toCells(TestDataModel dataModel, float values[][]) {
+		int cells[][] = new int[values.length][2];
+		for (int column = 0; column < 2; column++) {
+			float minValue = dataModel.getColumn(column).getSummaryStats()
+					.getMin();
+			float maxValue = dataModel.getColumn(column).getSummaryStats()
+					.getMax();
+			for (int i = 0; i < values.length; i++) {
+				float value = values[i][column];
+				int cell = 0;
+				if (!Float.isNaN(value)) {
+					cell = (int) (((value - minValue) / (maxValue - minValue)) * SIDE);
+					cell = Math.max(0, Math.min(cell, SIDE - 1));
+				}
+				cells[i][column] = cell;
+			}
+		}
+		return cells;
+	}
+
+	// x in the even bits and y in the odd bits
+	private static long interleave(int cell[]) {
+		long code = 0L;
+		for (int bit = 0; bit < ScatterplotQuadtree.MAX_LEVEL; bit++) {
+			code |= (long) ((cell[0] >> bit) & 1) << (2 * bit);
+			code |= (long) ((cell[1] >> bit) & 1) << ((2 * bit) + 1);
+		}
+		return code;
+	}
+}
@@ -0,0 +1,158 @@
+package gov.ornl.eden;
+
+import gov.ornl.datatable.Column;
+import gov.ornl.datatable.DataModel;
+import gov.ornl.datatable.Histogram;
+import gov.ornl.datatable.SummaryStats;
+import gov.ornl.datatable.Tuple;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * A data model over rows of generated values. The summary statistics of each
+ * column report the range and mean of its values and a histogram with the
+ * given number of bins, which is all the code under test reads from them.
+ */
+class TestDataModel extends DataModel {
+	private ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+	private ArrayList<Column> columns = new ArrayList<Column>();
+
+	TestDataModel(float values[][], int binCount) {
+		int columnCount = values.length > 0 ? values[0].length : 0;
+		for (float row[] : values) {
+			Tuple tuple = new Tuple();
+			for (float value : row) {
+				tuple.addElement(value);
+			}
+			tuples.add(tuple);
+		}
+		for (int icol = 0; icol < columnCount; icol++) {
+			float min = Float.POSITIVE_INFINITY;
+			float max = Float.NEGATIVE_INFINITY;
+			double sum = 0.;
+			int count = 0;
+			for (float row[] : values) {
+				if (!Float.isNaN(row[icol])) {
+					min = Math.min(min, row[icol]);
+					max = Math.max(max, row[icol]);
+					sum += row[icol];
+					count++;
+				}
+			}
+			columns.add(new TestColumn("c" + icol, min, max,
+					(float) (sum / count), binCount));
+		}
+	}
+
+	/**
+	 * Returns rows of normally distributed values around the given offset,
+	 * where each column is correlated with the first and one value in a
+	 * hundred of the last column is NaN.
+	 */
+	static float[][] randomValues(Random random, int tupleCount,
+			int columnCount, float offset) {
+		float values[][] = new float[tupleCount][columnCount];
+		for (int ituple = 0; ituple < tupleCount; ituple++) {
+			double base = random.nextGaussian();
+			for (int icol = 0; icol < columnCount; icol++) {
+				values[ituple][icol] = offset
+						+ (float) ((base * icol) + random.nextGaussian());
+			}
+			if (columnCount > 1 && random.nextInt(100) == 0) {
+				values[ituple][columnCount - 1] = Float.NaN;
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Returns query flags where each tuple is queried with the given
+	 * probability.
+	 */
+	static boolean[] randomFlags(Random random, int tupleCount,
+			double queriedFraction) {
+		boolean queryFlags[] = new boolean[tupleCount];
+		for (int i = 0; i < tupleCount; i++) {
+			queryFlags[i] = random.nextDouble() < queriedFraction;
+		}
+		return queryFlags;
+	}
+
+	static QueryFlagSnapshot toSnapshot(boolean queryFlags[]) {
+		int queriedTupleCount = 0;
+		for (boolean queryFlag : queryFlags) {
+			if (queryFlag) {
+				queriedTupleCount++;
+			}
+		}
+		return new QueryFlagSnapshot(queryFlags.clone(), queriedTupleCount);
+	}
+
+	@Override
+	public int getTupleCount() {
+		return tuples.size();
+	}
+
+	@Override
+	public Tuple getTuple(int index) {
+		return tuples.get(index);
+	}
+
+	@Override
+	public int getColumnCount() {
+		return columns.size();
+	}
+
+	@Override
+	public Column getColumn(int index) {
+		return columns.get(index);
+	}
+
+	@Override
+	public int getColumnIndex(Column column) {
+		return columns.indexOf(column);
+	}
+
+	private static class TestColumn extends Column {
+		private SummaryStats summaryStats;
+
+		public TestColumn(String name, final float min, final float max,
+				final float mean, final int binCount) {
+			super(name);
+			final Histogram histogram = new Histogram(name, new double[0],
+					binCount, min, max) {
+				@Override
+				public int getNumBins() {
+					return binCount;
+				}
+			};
+			summaryStats = new SummaryStats() {
+				@Override
+				public float getMin() {
+					return min;
+				}
+
+				@Override
+				public float getMax() {
+					return max;
+				}
+
+				@Override
+				public float getMean() {
+					return mean;
+				}
+
+				@Override
+				public Histogram getHistogram() {
+					return histogram;
+				}
+			};
+		}
+
+		@Override
+		public SummaryStats getSummaryStats() {
+			return summaryStats;
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package gov.ornl.eden;
+
+import gov.ornl.datatable.Column;
+import gov.ornl.datatable.ColumnSelection;
+import gov.ornl.datatable.ColumnSelectionRange;
+import gov.ornl.datatable.Query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * A query whose ranges are held here, so that they can be moved like a brush
+ * and evaluated by hand against the values of a test data model.
+ */
+class TestQuery extends Query {
+	private TestDataModel dataModel;
+	private ArrayList<TestColumnSelection> columnSelections = new ArrayList<TestColumnSelection>();
+
+	TestQuery(TestDataModel dataModel) {
+		super("test");
+		this.dataModel = dataModel;
+	}
+
+	TestRange addRange(Column column, float minValue, float maxValue) {
+		TestColumnSelection columnSelection = (TestColumnSelection) getColumnSelection(column);
+		if (columnSelection == null) {
+			columnSelection = new TestColumnSelection(column,
+					dataModel.getColumnIndex(column));
+			columnSelections.add(columnSelection);
+		}
+		TestRange range = new TestRange(columnSelection, minValue, maxValue);
+		columnSelection.ranges.add(range);
+		return range;
+	}
+
+	void removeRange(TestRange range) {
+		for (TestColumnSelection columnSelection : columnSelections) {
+			columnSelection.ranges.remove(range);
+		}
+	}
+
+	/**
+	 * Returns true if the row lies in a range of every column with ranges.
+	 */
+	boolean isQueried(float row[]) {
+		for (TestColumnSelection columnSelection : columnSelections) {
+			if (columnSelection.ranges.isEmpty()) {
+				continue;
+			}
+			float value = row[columnSelection.columnIndex];
+			boolean inRange = false;
+			for (TestRange range : columnSelection.ranges) {
+				inRange |= value >= range.getMinValue()
+						&& value <= range.getMaxValue();
+			}
+			if (!inRange) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean hasColumnSelections() {
+		for (TestColumnSelection columnSelection : columnSelections) {
+			if (!columnSelection.ranges.isEmpty()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Collection<ColumnSelection> getAllColumnSelections() {
+		return new ArrayList<ColumnSelection>(columnSelections);
+	}
+
+	@Override
+	public ColumnSelection getColumnSelection(Column column) {
+		for (TestColumnSelection columnSelection : columnSelections) {
+			if (columnSelection.column == column) {
+				return columnSelection;
+			}
+		}
+		return null;
+	}
+
+	private static class TestColumnSelection extends ColumnSelection {
+		private Column column;
+		private int columnIndex;
+		private ArrayList<TestRange> ranges = new ArrayList<TestRange>();
+
+		public TestColumnSelection(Column column, int columnIndex) {
+			super(column);
+			this.column = column;
+			this.columnIndex = columnIndex;
+		}
+
+		@Override
+		public Column getColumn() {
+			return column;
+		}
+
+		@Override
+		public ArrayList<ColumnSelectionRange> getColumnSelectionRanges() {
+			return new ArrayList<ColumnSelectionRange>(ranges);
+		}
+	}
+
+	static class TestRange extends ColumnSelectionRange {
+		private ColumnSelection columnSelection;
+		private float minValue;
+		private float maxValue;
+
+		public TestRange(ColumnSelection columnSelection, float minValue,
+				float maxValue) {
+			super(columnSelection, minValue, maxValue);
+			this.columnSelection = columnSelection;
+			this.minValue = minValue;
+			this.maxValue = maxValue;
+		}
+
+		@Override
+		public ColumnSelection getColumnSelection() {
+			return columnSelection;
+		}
+
+		@Override
+		public float getMinValue() {
+			return minValue;
+		}
+
+		@Override
+		public float getMaxValue() {
+			return maxValue;
+		}
+
+		@Override
+		public void setMinValue(float minValue) {
+			this.minValue = minValue;
+		}
+
+		@Override
+		public void setMaxValue(float maxValue) {
+			this.maxValue = maxValue;
+		}
+	}
+}
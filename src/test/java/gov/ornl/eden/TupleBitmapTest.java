@@ -0,0 +1,147 @@
+package gov.ornl.eden;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TupleBitmapTest {
+	private static final int CHUNK_SIZE = 65536;
+	// chunks of every kind, and a partial last chunk
+	private static final int TUPLE_COUNT = (6 * CHUNK_SIZE) + 1234;
+
+	@Test
+	public void builtBitmapMatchesFlags() {
+		Random random = new Random(1);
+		for (int round = 0; round < 5; round++) {
+			boolean flags[] = randomFlags(random);
+			assertMatches(flags, build(flags, random));
+		}
+	}
+
+	@Test
+	public void containerLimitsMatchFlags() {
+		// exactly at and just over the array container limit
+		for (int count : new int[] { 1, 4095, 4096, 4097, CHUNK_SIZE }) {
+			boolean flags[] = new boolean[TUPLE_COUNT];
+			for (int i = 0; i < count; i++) {
+				flags[CHUNK_SIZE + ((i * 7919) % CHUNK_SIZE)] = true;
+			}
+			assertMatches(flags, build(flags, new Random(count)));
+		}
+	}
+
+	@Test
+	public void mergesMatchFlags() {
+		Random random = new Random(2);
+		for (int round = 0; round < 10; round++) {
+			boolean flags[] = randomFlags(random);
+			boolean otherFlags[] = randomFlags(random);
+			TupleBitmap bitmap = build(flags, random);
+			TupleBitmap other = build(otherFlags, random);
+
+			boolean and[] = new boolean[TUPLE_COUNT];
+			boolean or[] = new boolean[TUPLE_COUNT];
+			boolean xor[] = new boolean[TUPLE_COUNT];
+			boolean andNot[] = new boolean[TUPLE_COUNT];
+			for (int i = 0; i < TUPLE_COUNT; i++) {
+				and[i] = flags[i] && otherFlags[i];
+				or[i] = flags[i] || otherFlags[i];
+				xor[i] = flags[i] != otherFlags[i];
+				andNot[i] = flags[i] && !otherFlags[i];
+			}
+			assertMatches(and, bitmap.and(other));
+			assertMatches(or, bitmap.or(other));
+			assertMatches(xor, bitmap.xor(other));
+			assertMatches(andNot, bitmap.andNot(other));
+			assertMatches(new boolean[TUPLE_COUNT], bitmap.xor(bitmap));
+			assertMatches(flags, bitmap.or(TupleBitmap.EMPTY));
+			assertMatches(new boolean[TUPLE_COUNT], bitmap.and(TupleBitmap.EMPTY));
+		}
+	}
+
+	@Test
+	public void sortedPositionsMatchRange() {
+		Random random = new Random(3);
+		float rows[][] = TestDataModel.randomValues(random, TUPLE_COUNT, 1, 0.f);
+		ColumnSortIndex sortIndex = new ColumnSortIndex(new TestDataModel(rows,
+				10), 0);
+		int start = sortIndex.lowerBound(-0.5f);
+		int end = sortIndex.upperBound(1.f);
+
+		boolean flags[] = new boolean[TUPLE_COUNT];
+		for (int i = 0; i < TUPLE_COUNT; i++) {
+			flags[i] = rows[i][0] >= -0.5f && rows[i][0] <= 1.f;
+		}
+		assertMatches(flags, TupleBitmap.fromSortedPositions(sortIndex, start,
+				end));
+	}
+
+	/**
+	 * Returns flags whose chunks are empty, sparse, around the array
+	 * container limit, dense or full, so that merges see every pair of
+	 * container kinds and results that change kind.
+	 */
+	private static boolean[] randomFlags(Random random) {
+		double densities[] = { 0., 0.001, 0.05, 0.0625, 0.07, 0.5, 0.99, 1. };
+		boolean flags[] = new boolean[TUPLE_COUNT];
+		for (int chunkStart = 0; chunkStart < TUPLE_COUNT; chunkStart += CHUNK_SIZE) {
+			double density = densities[random.nextInt(densities.length)];
+			for (int i = chunkStart; i < Math.min(TUPLE_COUNT, chunkStart
+					+ CHUNK_SIZE); i++) {
+				flags[i] = random.nextDouble() < density;
+			}
+		}
+		return flags;
+	}
+
+	// adds the set tuples in random order, some of them twice
+	private static TupleBitmap build(boolean flags[], Random random) {
+		int tupleIndices[] = new int[TUPLE_COUNT];
+		int count = 0;
+		for (int i = 0; i < TUPLE_COUNT; i++) {
+			if (flags[i]) {
+				tupleIndices[count++] = i;
+			}
+		}
+		for (int i = count - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = tupleIndices[i];
+			tupleIndices[i] = tupleIndices[j];
+			tupleIndices[j] = swap;
+		}
+
+		TupleBitmap.Builder builder = new TupleBitmap.Builder(TUPLE_COUNT);
+		for (int i = 0; i < count; i++) {
+			builder.add(tupleIndices[i]);
+			if (i % 10 == 0) {
+				builder.add(tupleIndices[i]);
+			}
+		}
+		return builder.build();
+	}
+
+	private static void assertMatches(boolean flags[], TupleBitmap bitmap) {
+		int expected[] = new int[TUPLE_COUNT];
+		int count = 0;
+		for (int i = 0; i < TUPLE_COUNT; i++) {
+			if (flags[i]) {
+				expected[count++] = i;
+			}
+			assertEquals(flags[i], bitmap.contains(i));
+		}
+		assertEquals(count, bitmap.getCardinality());
+		assertEquals(count == 0, bitmap.isEmpty());
+		int tupleIndices[] = bitmap.toArray();
+		assertEquals(count, tupleIndices.length);
+		for (int i = 0; i < count; i++) {
+			assertEquals(expected[i], tupleIndices[i]);
+		}
+
+		boolean setFlags[] = new boolean[TUPLE_COUNT];
+		bitmap.setFlags(setFlags);
+		assertArrayEquals(flags, setFlags);
+	}
+}